@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.util.ReaderUtil;
@@ -29,6 +30,17 @@ public class BoboBrowser extends MultiBoboBrowser
     super(createBrowsables(reader));
   }
 
+  /**
+   * @param reader BoboIndexReader
+   * @param executorService executor used to browse the segments concurrently
+   * @throws IOException
+   * @see MultiBoboBrowser#setExecutorService(ExecutorService)
+   */
+  public BoboBrowser(BoboIndexReader reader, ExecutorService executorService) throws IOException
+  {
+    super(createBrowsables(reader), executorService);
+  }
+
   public static Browsable[] createBrowsables(BoboIndexReader reader)
   {
     List<IndexReader> readerList = new ArrayList<IndexReader>();
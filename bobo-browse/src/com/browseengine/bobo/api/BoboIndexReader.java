@@ -42,6 +42,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
@@ -57,14 +62,18 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.ReaderUtil;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 import org.springframework.context.support.GenericApplicationContext;
 
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.RuntimeFacetHandlerFactory;
+import com.browseengine.bobo.facets.data.FacetDataCacheSnapshot;
+import com.browseengine.bobo.search.FacetCountCache;
 
 /**
  * bobo browse index reader
@@ -87,8 +96,17 @@ public class BoboIndexReader extends FilterIndexReader
   protected BoboIndexReader[] _subReaders = null;
   protected int[] _starts = null;
   private Directory _dir = null;
+  private int _facetCountCacheSize = 0;
+  private FacetCountCache _facetCountCache = null;
+  private long _valueDocIdSetCacheSize = 0L;
+  private ValueDocIdSetCache _valueDocIdSetCache = null;
+  private ExecutorService _loadExecutorService = null;
+  private boolean _lazyFacetLoading = false;
+  private SortField[] _indexSort = null;
   
-  private final Map<String,Object> _facetDataMap = new HashMap<String,Object>();
+  // written concurrently when facets are loaded on an executor or lazily
+  private final Map<String,Object> _facetDataMap = new ConcurrentHashMap<String,Object>();
+  private Map<String,FutureTask<Object>> _lazyFacetLoads = new ConcurrentHashMap<String,FutureTask<Object>>();
   private final ThreadLocal<Map<String,Object>> _runtimeFacetDataMap = new ThreadLocal<Map<String,Object>>()
   {
     protected Map<String,Object> initialValue() { return new HashMap<String,Object>(); }
@@ -137,9 +155,73 @@ public class BoboIndexReader extends FilterIndexReader
                                             Collection<FacetHandler<?>> facetHandlers,
                                             Collection<RuntimeFacetHandlerFactory<?,?>> facetHandlerFactories,
                                             WorkArea workArea) throws IOException
+  {
+    return BoboIndexReader.getInstance(reader, facetHandlers, facetHandlerFactories, workArea, null);
+  }
+
+  /**
+   * Creates a reader that loads its facet data on an executor. The facet handlers of every segment are
+   * loaded as tasks of their own, a handler once the handlers it depends on are loaded for its segment,
+   * so segments and independent handlers load in parallel. Readers created by {@link #reopen()} load
+   * their new segments the same way.
+   * 
+   * @param reader
+   *          index reader
+   * @param facetHandlers
+   *          List of facet handlers
+   * @param facetHandlerFactories
+   *          runtime facet handler factories
+   * @param workArea
+   *          work area, only used when facets are loaded on the calling thread, every loading thread of the
+   *          executor gets its own
+   * @param loadExecutorService
+   *          executor the facet data is loaded on, null to load on the calling thread
+   * @throws IOException
+   */
+  public static BoboIndexReader getInstance(IndexReader reader,
+                                            Collection<FacetHandler<?>> facetHandlers,
+                                            Collection<RuntimeFacetHandlerFactory<?,?>> facetHandlerFactories,
+                                            WorkArea workArea,
+                                            ExecutorService loadExecutorService) throws IOException
+  {
+    return BoboIndexReader.getInstance(reader, facetHandlers, facetHandlerFactories, workArea, loadExecutorService, false);
+  }
+
+  /**
+   * Creates a reader that can load the facet data of each segment on first use. With lazy facet loading
+   * the facet handlers are only checked for missing dependencies when the reader is opened, and the data
+   * of a facet is loaded the first time it is asked for, e.g. by a browse request that selects or counts
+   * the facet. Concurrent requests for the same facet of a segment share one load. Facets can be loaded
+   * ahead of their first use with {@link #prefetchFacetData(List)}.
+   * <p>
+   * A facet that fails to load lazily is not removed from the reader, the requests using it fail instead.
+   *
+   * @param reader
+   *          index reader
+   * @param facetHandlers
+   *          List of facet handlers
+   * @param facetHandlerFactories
+   *          runtime facet handler factories
+   * @param workArea
+   *          work area, only used when facets are loaded eagerly on the calling thread
+   * @param loadExecutorService
+   *          executor the facet data is loaded on, prefetched on with lazy facet loading, may be null
+   * @param lazyFacetLoading
+   *          true to load facet data on first use, false to load all of it when the reader is opened
+   * @throws IOException
+   */
+  public static BoboIndexReader getInstance(IndexReader reader,
+                                            Collection<FacetHandler<?>> facetHandlers,
+                                            Collection<RuntimeFacetHandlerFactory<?,?>> facetHandlerFactories,
+                                            WorkArea workArea,
+                                            ExecutorService loadExecutorService,
+                                            boolean lazyFacetLoading) throws IOException
   {
     BoboIndexReader boboReader = new BoboIndexReader(reader, facetHandlers, facetHandlerFactories, workArea);
+    boboReader._loadExecutorService = loadExecutorService;
+    boboReader._lazyFacetLoading = lazyFacetLoading;
     boboReader.facetInit();
+    boboReader.removeStaleSnapshots(null);
     return boboReader;
   }
 
@@ -222,8 +304,11 @@ public class BoboIndexReader extends FilterIndexReader
 		  else{
 			  isNewReader = true;
 			  SegmentReader newSreader = SegmentReader.get(true, sinfo, 1);
-			  breader = BoboIndexReader.getInstanceAsSubReader(newSreader,this._facetHandlers,this._runtimeFacetHandlerFactories);
+			  breader = new BoboIndexReader(newSreader, _facetHandlers, _runtimeFacetHandlerFactories, new WorkArea(), false);
 			  breader._dir = _dir;
+			  breader._loadExecutorService = _loadExecutorService;
+			  breader._lazyFacetLoading = _lazyFacetLoading;
+			  breader.facetInit();
 			  currentReaders.add(breader);
 		  }
 	  }
@@ -233,8 +318,25 @@ public class BoboIndexReader extends FilterIndexReader
 	  }
 	  else{
 		  MultiReader newMreader = new MultiReader(currentReaders.toArray(new BoboIndexReader[currentReaders.size()]),false);
-		  BoboIndexReader newReader = BoboIndexReader.getInstanceAsSubReader(newMreader,this._facetHandlers,this._runtimeFacetHandlerFactories);
+		  BoboIndexReader newReader = new BoboIndexReader(newMreader, _facetHandlers, _runtimeFacetHandlerFactories, new WorkArea(), false);
 		  newReader._dir = _dir;
+		  newReader._loadExecutorService = _loadExecutorService;
+		  newReader._lazyFacetLoading = _lazyFacetLoading;
+		  newReader.setSubReaders((BoboIndexReader[])newMreader.getSequentialSubReaders(), null);
+		  if (newReader._subReaders == null){
+			  newReader.facetInit();
+		  }
+		  else{
+			  // the sub readers have their facet data loaded already
+			  newReader.initialize(_facetHandlers);
+			  for (BoboIndexReader subReader : newReader._subReaders){
+				  newReader._facetHandlerMap.keySet().retainAll(subReader.getFacetNames());
+			  }
+		  }
+		  newReader.setFacetCountCacheSize(_facetCountCacheSize);
+		  newReader.setValueDocIdSetCacheSize(_valueDocIdSetCacheSize);
+		  newReader.setIndexSort(_indexSort);
+		  newReader.removeStaleSnapshots(sinfos);
 		  return newReader;
 	  }
 	}
@@ -247,12 +349,14 @@ public class BoboIndexReader extends FilterIndexReader
 	  
 	  SegmentInfo sinfo = null;
 	  boolean sameSeg = false;
+	  boolean moreDels = false;
 	  //get SegmentInfo instance
 	  for (int i=0;i<size;++i){
 		SegmentInfo sinfoTmp = (SegmentInfo)sinfos.get(i);
 		if (sinfoTmp.name.equals(sreader.getSegmentName())){
 		  int numDels2 = sinfoTmp.getDelCount();
 		  sameSeg = numDels==numDels2;
+		  moreDels = numDels2 > numDels;
 		  sinfo = sinfoTmp;
 		  break;
 		}
@@ -267,14 +371,23 @@ public class BoboIndexReader extends FilterIndexReader
 	  }
 	  else{
 		SegmentReader newSreader = SegmentReader.get(true, sinfo, 1);
-		return BoboIndexReader.getInstanceAsSubReader(newSreader,this._facetHandlers,this._runtimeFacetHandlerFactories);
+		BoboIndexReader newReader = new BoboIndexReader(newSreader, _facetHandlers, _runtimeFacetHandlerFactories, new WorkArea(), false);
+		newReader._dir = _dir;
+		newReader._loadExecutorService = _loadExecutorService;
+		newReader._lazyFacetLoading = _lazyFacetLoading;
+		// segments are write-once, so when only deletes were added the facet data can be carried over
+		newReader.facetInit(new HashSet<String>(), moreDels ? this : null);
+		newReader.setFacetCountCacheSize(_facetCountCacheSize);
+		newReader.setValueDocIdSetCacheSize(_valueDocIdSetCacheSize);
+		newReader.setIndexSort(_indexSort);
+		return newReader;
 	  }
 	}
 	else{
 	  // should not reach here, a catch-all default case
 	  IndexReader reader = in.reopen(true);
 	  if (in!=reader){
-	    return BoboIndexReader.getInstance(newInner, _facetHandlers, _runtimeFacetHandlerFactories, _workArea);
+	    return BoboIndexReader.getInstance(newInner, _facetHandlers, _runtimeFacetHandlerFactories, _workArea, _loadExecutorService, _lazyFacetLoading);
 	  }
 	  else{
 		return this;
@@ -282,6 +395,56 @@ public class BoboIndexReader extends FilterIndexReader
 	}
   }
 
+  /**
+   * Removes the facet data snapshots of the segments that are neither in the latest commit nor in this
+   * reader, if any facet handler keeps snapshots.
+   * @param sinfos segments of the latest commit, null to read them
+   * @see FacetDataCacheSnapshot#removeStaleSnapshots(Directory, Set)
+   */
+  private void removeStaleSnapshots(SegmentInfos sinfos)
+  {
+    if (!(_dir instanceof FSDirectory)) return;
+    boolean snapshotEnabled = false;
+    for (FacetHandler<?> handler : _facetHandlerMap.values())
+    {
+      snapshotEnabled = snapshotEnabled || handler.isSnapshotEnabled();
+    }
+    if (!snapshotEnabled) return;
+    try
+    {
+      if (sinfos == null)
+      {
+        sinfos = new SegmentInfos();
+        sinfos.read(_dir);
+      }
+      Set<String> segmentNames = new HashSet<String>();
+      for (int i = 0; i < sinfos.size(); ++i)
+      {
+        segmentNames.add(sinfos.info(i).name);
+      }
+      // the reader may be open on an older commit
+      if (_subReaders != null)
+      {
+        for (BoboIndexReader subReader : _subReaders)
+        {
+          if (subReader.in instanceof SegmentReader)
+          {
+            segmentNames.add(((SegmentReader)subReader.in).getSegmentName());
+          }
+        }
+      }
+      int count = FacetDataCacheSnapshot.removeStaleSnapshots(_dir, segmentNames);
+      if (count > 0 && logger.isDebugEnabled())
+      {
+        logger.debug("removed " + count + " stale facet data snapshots");
+      }
+    }
+    catch (IOException e)
+    {
+      logger.warn("unable to remove stale facet data snapshots: " + e.getMessage(), e);
+    }
+  }
+
   @Override
   public synchronized IndexReader reopen(boolean openReadOnly)
 		throws CorruptIndexException, IOException {
@@ -291,11 +454,84 @@ public class BoboIndexReader extends FilterIndexReader
   }
 
   public Object getFacetData(String name){
-	  return _facetDataMap.get(name);
+	  Object data = _facetDataMap.get(name);
+	  if (data == null && _lazyFacetLoading){
+	    data = loadFacetDataLazily(name);
+	  }
+	  return data;
+  }
+
+  /**
+   * Runs the lazy load of a facet on the calling thread, or waits for the thread that already runs it.
+   * A failed load is only reported to the threads that ran or waited for it, the facet is removed after.
+   */
+  private Object loadFacetDataLazily(String name){
+    FutureTask<Object> task = _lazyFacetLoads.get(name);
+    if (task == null) return null;
+    task.run();
+    try{
+      return task.get();
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted loading facet: " + name, e);
+    }
+    catch(ExecutionException e){
+      throw new RuntimeException("facet load failed: " + name, e.getCause());
+    }
+  }
+
+  /**
+   * Loads the facet data of a reader opened with lazy facet loading ahead of its first use. The loads are
+   * queued on the load executor in the given order, so facets listed first are available first, or run on
+   * the calling thread if there is no executor. Facets that are loaded already are skipped, facets that fail
+   * to load are logged and removed from the reader.
+   * @param names names of the facets to load, by priority
+   */
+  public void prefetchFacetData(List<String> names)
+  {
+    BoboIndexReader[] readers = _subReaders != null ? _subReaders : new BoboIndexReader[]{ this };
+    for (String name : names)
+    {
+      for (BoboIndexReader reader : readers)
+      {
+        FutureTask<Object> task = reader._lazyFacetLoads.get(name);
+        if (task == null || task.isDone()) continue;
+        if (_loadExecutorService != null)
+        {
+          _loadExecutorService.execute(task);
+        }
+        else
+        {
+          task.run();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return whether the data of a facet is loaded, in every segment for a reader with sub readers
+   */
+  public boolean isFacetDataLoaded(String name)
+  {
+    if (_subReaders != null)
+    {
+      for (BoboIndexReader subReader : _subReaders)
+      {
+        if (!subReader.isFacetDataLoaded(name)) return false;
+      }
+      return true;
+    }
+    return _facetDataMap.containsKey(name);
+  }
+
+  public boolean isLazyFacetLoading()
+  {
+    return _lazyFacetLoading;
   }
   
   public Object putFacetData(String name,Object data){
-	  return _facetDataMap.put(name, data);
+	  return data == null ? _facetDataMap.remove(name) : _facetDataMap.put(name, data);
   }
   
   public Object getRuntimeFacetData(String name)
@@ -322,10 +558,117 @@ public class BoboIndexReader extends FilterIndexReader
     _runtimeFacetDataMap.set(null);
   }
 
+  /**
+   * Declares that the docs of each segment are in the order of a sort, e.g. because the index is written
+   * in that order, so that a request with that sort and early termination enabled stops collecting a
+   * segment once it can add no more hits. The declaration is kept by {@link #reopen()}; segments written
+   * since must be sorted the same way, which is up to the application.
+   * @param indexSort sort of the docs of every segment, null (the default) if they are in no particular order
+   * @see BrowseRequest#setEarlyTermination(boolean)
+   */
+  public void setIndexSort(SortField[] indexSort)
+  {
+    _indexSort = indexSort;
+    if (_subReaders != null)
+    {
+      for (BoboIndexReader subReader : _subReaders)
+      {
+        subReader.setIndexSort(indexSort);
+      }
+    }
+  }
+
+  public SortField[] getIndexSort()
+  {
+    return _indexSort;
+  }
+
+  /**
+   * Enables caching of facet counts per segment. Each segment reader keeps the count distributions of
+   * up to <code>maxEntries</code> distinct requests, so repeated requests only count the segments that
+   * were added or changed since. Segments that are carried over by {@link #reopen()} keep their cache.
+   * @param maxEntries number of requests cached per segment, 0 (the default) to disable caching
+   */
+  public void setFacetCountCacheSize(int maxEntries)
+  {
+    _facetCountCacheSize = maxEntries;
+    if (_subReaders != null)
+    {
+      for (BoboIndexReader subReader : _subReaders)
+      {
+        subReader.setFacetCountCacheSize(maxEntries);
+      }
+    }
+    else if (maxEntries <= 0)
+    {
+      _facetCountCache = null;
+    }
+    else if (_facetCountCache == null || _facetCountCache.getMaxEntries() != maxEntries)
+    {
+      _facetCountCache = new FacetCountCache(maxEntries);
+    }
+  }
+
+  public int getFacetCountCacheSize()
+  {
+    return _facetCountCacheSize;
+  }
+
+  /**
+   * @return the facet count cache of this segment, null if caching is disabled or this reader has sub readers
+   */
+  public FacetCountCache getFacetCountCache()
+  {
+    return _facetCountCache;
+  }
+
+  /**
+   * Enables caching of the doc sets of frequently selected facet values per segment. Values that are
+   * selected repeatedly get their docs kept as a doc id array or bitset, which the facet filters use in
+   * place of scanning the facet data.
+   * @param maxBytes bound on the size of the doc sets cached per segment, 0 (the default) to disable caching
+   * @see ValueDocIdSetCache
+   */
+  public void setValueDocIdSetCacheSize(long maxBytes)
+  {
+    _valueDocIdSetCacheSize = maxBytes;
+    if (_subReaders != null)
+    {
+      for (BoboIndexReader subReader : _subReaders)
+      {
+        subReader.setValueDocIdSetCacheSize(maxBytes);
+      }
+    }
+    else if (maxBytes <= 0)
+    {
+      _valueDocIdSetCache = null;
+    }
+    else if (_valueDocIdSetCache == null || _valueDocIdSetCache.getMaxBytes() != maxBytes)
+    {
+      _valueDocIdSetCache = new ValueDocIdSetCache(maxBytes);
+    }
+  }
+
+  public long getValueDocIdSetCacheSize()
+  {
+    return _valueDocIdSetCacheSize;
+  }
+
+  /**
+   * @return the value doc set cache of this segment, null if caching is disabled or this reader has sub readers
+   */
+  public ValueDocIdSetCache getValueDocIdSetCache()
+  {
+    return _valueDocIdSetCache;
+  }
+
   @Override
   protected void doClose() throws IOException
   {
 	_facetDataMap.clear();
+	_lazyFacetLoads.clear();
+	_facetCountCache = null;
+	_valueDocIdSetCache = null;
     if(_srcReader != null) _srcReader.close();
     super.doClose();
   }
@@ -345,7 +688,8 @@ public class BoboIndexReader extends FilterIndexReader
   private void loadFacetHandler(String name,
                                 Set<String> loaded,
                                 Set<String> visited,
-                                WorkArea workArea) throws IOException
+                                WorkArea workArea,
+                                BoboIndexReader oldReader) throws IOException
   {
     FacetHandler<?> facetHandler = _facetHandlerMap.get(name);
     if (facetHandler != null && !loaded.contains(name))
@@ -367,7 +711,7 @@ public class BoboIndexReader extends FilterIndexReader
               throw new IOException("Facet handler dependency cycle detected, facet handler: "
                   + name + " not loaded");
             }
-            loadFacetHandler(f, loaded, visited, workArea);
+            loadFacetHandler(f, loaded, visited, workArea, oldReader);
           }
           if (!loaded.contains(f))
           {
@@ -377,8 +721,46 @@ public class BoboIndexReader extends FilterIndexReader
         }
       }
 
+      if (_lazyFacetLoading && (oldReader == null || oldReader._facetDataMap.get(name) == null))
+      {
+        // loaded by the first getFacetData, data the previous reader had loaded is carried over right away
+        final FacetHandler<?> handler = facetHandler;
+        _lazyFacetLoads.put(name, new FutureTask<Object>(new Callable<Object>()
+        {
+          public Object call() throws Exception
+          {
+            long start = System.currentTimeMillis();
+            try
+            {
+              handler.loadFacetData(BoboIndexReader.this, new WorkArea());
+            }
+            catch (Exception e)
+            {
+              // as with a failed eager load, the facet is dropped from this reader and later uses see no handler
+              _facetHandlerMap.remove(handler.getName());
+              _lazyFacetLoads.remove(handler.getName());
+              logger.error("facet load failed: " + handler.getName() + ": " + e.getMessage(), e);
+              throw e;
+            }
+            if (logger.isDebugEnabled()){
+              logger.debug("facetHandler lazily loaded: " + handler.getName() + ", took: " + (System.currentTimeMillis() - start) + " ms");
+            }
+            return _facetDataMap.get(handler.getName());
+          }
+        }));
+        loaded.add(name);
+        return;
+      }
+
       long start = System.currentTimeMillis();
-      facetHandler.loadFacetData(this, workArea);
+      if (oldReader != null)
+      {
+        facetHandler.loadFacetData(this, oldReader, workArea);
+      }
+      else
+      {
+        facetHandler.loadFacetData(this, workArea);
+      }
       long end = System.currentTimeMillis();
       if (logger.isDebugEnabled()){
     	StringBuffer buf = new StringBuffer();
@@ -389,7 +771,7 @@ public class BoboIndexReader extends FilterIndexReader
     }
   }
   
-  private void loadFacetHandlers(WorkArea workArea, Set<String> toBeRemoved)
+  private void loadFacetHandlers(WorkArea workArea, Set<String> toBeRemoved, BoboIndexReader oldReader)
   {
     Set<String> loaded = new HashSet<String>();
     Set<String> visited = new HashSet<String>();
@@ -398,7 +780,7 @@ public class BoboIndexReader extends FilterIndexReader
     {
       try
       {
-        loadFacetHandler(name, loaded, visited, workArea);
+        loadFacetHandler(name, loaded, visited, workArea, oldReader);
       }
       catch (Exception ioe)
       {
@@ -504,7 +886,8 @@ public class BoboIndexReader extends FilterIndexReader
     }
     
     _facetHandlers = facetHandlers;
-    _facetHandlerMap = new HashMap<String, FacetHandler<?>>();
+    // concurrent, a failed lazy load removes its handler while the reader is in use
+    _facetHandlerMap = new ConcurrentHashMap<String, FacetHandler<?>>();
     for (FacetHandler<?> facetHandler : facetHandlers)
     {
       _facetHandlerMap.put(facetHandler.getName(), facetHandler);
@@ -547,22 +930,7 @@ public class BoboIndexReader extends FilterIndexReader
     if(useSubReaders)
     {
       _dir = reader.directory();
-      BoboIndexReader[] subReaders = (BoboIndexReader[])in.getSequentialSubReaders();
-      if(subReaders != null && subReaders.length > 0)
-      {
-        _subReaders = subReaders;
-        
-        int maxDoc = 0;
-        _starts = new int[_subReaders.length + 1];
-        for (int i = 0; i < _subReaders.length; i++)
-        {
-          _subReaders[i]._dir = _dir;
-          if(facetHandlers != null) _subReaders[i].setFacetHandlers(facetHandlers);
-          _starts[i] = maxDoc;
-          maxDoc += _subReaders[i].maxDoc();
-        }
-        _starts[_subReaders.length] = maxDoc;
-      }
+      setSubReaders((BoboIndexReader[])in.getSequentialSubReaders(), facetHandlers);
     }
     _runtimeFacetHandlerFactories = facetHandlerFactories;
     _runtimeFacetHandlerFactoryMap = new HashMap<String,RuntimeFacetHandlerFactory<?,?>>();
@@ -577,22 +945,82 @@ public class BoboIndexReader extends FilterIndexReader
     _workArea = workArea;
   }
 
+  private void setSubReaders(BoboIndexReader[] subReaders, Collection<FacetHandler<?>> facetHandlers)
+  {
+    if(subReaders != null && subReaders.length > 0)
+    {
+      _subReaders = subReaders;
+      
+      int maxDoc = 0;
+      _starts = new int[_subReaders.length + 1];
+      for (int i = 0; i < _subReaders.length; i++)
+      {
+        _subReaders[i]._dir = _dir;
+        if(facetHandlers != null) _subReaders[i].setFacetHandlers(facetHandlers);
+        _starts[i] = maxDoc;
+        maxDoc += _subReaders[i].maxDoc();
+      }
+      _starts[_subReaders.length] = maxDoc;
+    }
+  }
+
   protected void facetInit() throws IOException
   {
     facetInit(new HashSet<String>());
   }
   
   protected void facetInit(Set<String> toBeRemoved) throws IOException
+  {
+    facetInit(toBeRemoved, null);
+  }
+  
+  /**
+   * @param toBeRemoved
+   * @param oldReader previous reader of the same segment with fewer deleted docs, whose facet data may be reused, or null
+   * @throws IOException
+   */
+  private void facetInit(Set<String> toBeRemoved, BoboIndexReader oldReader) throws IOException
   {
     initialize(_facetHandlers);
-    if(_subReaders == null)
+    if(_loadExecutorService != null && !_lazyFacetLoading)
     {
-      loadFacetHandlers(_workArea, toBeRemoved);  
+      BoboIndexReader[] readers;
+      BoboIndexReader[] oldReaders;
+      if(_subReaders == null)
+      {
+        readers = new BoboIndexReader[]{ this };
+        oldReaders = new BoboIndexReader[]{ oldReader };
+      }
+      else
+      {
+        readers = _subReaders;
+        oldReaders = new BoboIndexReader[_subReaders.length];
+        for(BoboIndexReader r : _subReaders)
+        {
+          r._loadExecutorService = _loadExecutorService;
+          r.initialize(r._facetHandlers);
+        }
+      }
+      new ParallelFacetLoader(_loadExecutorService).load(readers, oldReaders, toBeRemoved);
+      for(String name : toBeRemoved)
+      {
+        for(BoboIndexReader r : readers)
+        {
+          r._facetHandlerMap.remove(name);
+        }
+        _facetHandlerMap.remove(name);
+      }
+    }
+    else if(_subReaders == null)
+    {
+      loadFacetHandlers(_workArea, toBeRemoved, oldReader);  
     }
     else
     {
       for(BoboIndexReader r : _subReaders)
       {
+        r._loadExecutorService = _loadExecutorService;
+        r._lazyFacetLoading = _lazyFacetLoading;
         r.facetInit(toBeRemoved);
       }
       
@@ -607,6 +1035,15 @@ public class BoboIndexReader extends FilterIndexReader
   {
     _facetHandlers = facetHandlers;
   }
+
+  /**
+   * @return the executor facet data is loaded on, null if it is loaded on the calling thread
+   */
+  public ExecutorService getLoadExecutorService()
+  {
+    return _loadExecutorService;
+  }
+
   /**
    * @deprecated use {@link org.apache.lucene.search.MatchAllDocsQuery} instead.
    * @return query that matches all docs in the index
@@ -824,6 +1261,9 @@ public class BoboIndexReader extends FilterIndexReader
     copy._runtimeFacetHandlerFactoryMap = this._runtimeFacetHandlerFactoryMap;
     copy._workArea = this._workArea;
     copy._facetDataMap.putAll(this._facetDataMap);
+    copy._lazyFacetLoading = this._lazyFacetLoading;
+    copy._lazyFacetLoads = this._lazyFacetLoads;
+    copy._indexSort = this._indexSort;
     copy._srcReader = in;
     copy._starts = this._starts;
     return copy;
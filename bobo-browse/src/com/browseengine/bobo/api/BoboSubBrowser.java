@@ -32,7 +32,9 @@ import com.browseengine.bobo.facets.RuntimeFacetHandler;
 import com.browseengine.bobo.facets.RuntimeFacetHandlerFactory;
 import com.browseengine.bobo.facets.filter.AndFilter;
 import com.browseengine.bobo.facets.filter.RandomAccessFilter;
+import com.browseengine.bobo.facets.impl.DefaultFacetCountCollector;
 import com.browseengine.bobo.search.BoboSearcher2;
+import com.browseengine.bobo.search.FacetCountCache;
 import com.browseengine.bobo.search.FacetHitCollector;
 import com.browseengine.bobo.sort.SortCollector;
 
@@ -243,6 +245,18 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
     boolean isNoQueryNoFilter = isNoQueryNoFilter(req);
 
     boolean isDefaultSearch = isNoQueryNoFilter && selCount == 0;
+
+    // runtime facets depend on per request data, so requests using them are not cached
+    FacetCountCache countCache = (!isDefaultSearch && _runtimeFacetHandlers.isEmpty()) ? _reader.getFacetCountCache() : null;
+    FacetCountCache.Key cacheKey = null;
+    Map<String,int[]> cachedCounts = null;
+    if (countCache != null)
+    {
+      cacheKey = FacetCountCache.createKey(req);
+      cachedCounts = countCache.get(cacheKey);
+    }
+    Map<String,FacetCountCollector> cachedCollectors = new HashMap<String,FacetCountCollector>();
+    boolean searchDone = false;
     try
     {
       
@@ -317,6 +331,26 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
                 preFilterList.add(filter);
               }
             }
+
+            if (cachedCounts != null && facetHitCollector._collectAllSource == null)
+            {
+              int[] count = cachedCounts.get(name);
+              if (count != null)
+              {
+                FacetCountCollector cachedCollector = facetHitCollector._facetCountCollectorSource.getFacetCountCollector(_reader, start);
+                if (cachedCollector instanceof DefaultFacetCountCollector)
+                {
+                  ((DefaultFacetCountCollector)cachedCollector).setCountDistribution(count);
+                  cachedCollectors.put(name, cachedCollector);
+                  // the counts are known, the selection now only restricts the hits
+                  if (facetHitCollector._filter != null)
+                  {
+                    preFilterList.add(facetHitCollector._filter);
+                  }
+                  facetHitCollector = null;
+                }
+              }
+            }
           }
         }
         if (facetHitCollector != null)
@@ -352,9 +386,11 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
           weight = createWeight(q);
         }
         search(weight, finalFilter, collector, start);
+        searchDone = true;
       }
       finally
       {
+        facetMap.putAll(cachedCollectors);
         for (FacetHitCollector facetCollector : facetHitCollectorList)
         {
           String name = facetCollector.facetHandler.getName();
@@ -363,6 +399,11 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
           if (resultcollector == null || resultcollector.size() == 0){
         	  resultcollector = facetCollector._collectAllCollectorList;
           }
+          else if (searchDone && countCache != null && resultcollector.size() == 1 && resultcollector.get(0) instanceof DefaultFacetCountCollector
+                   && !(collector instanceof SortCollector && ((SortCollector)collector).isTerminatedEarly())){
+            // the counts array may be pooled and recycled once the collector is closed, cache a copy
+            countCache.put(cacheKey, name, resultcollector.get(0).getCountDistribution().clone());
+          }
           if (resultcollector!=null){
         	FacetSpec fspec = req.getFacetSpec(name);
         	assert fspec != null;
@@ -410,6 +451,9 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
     long start = System.currentTimeMillis();
 
     SortCollector collector = getSortCollector(req.getSort(),req.getQuery(), req.getOffset(), req.getCount(), req.isFetchStoredFields(),false);
+    collector.setFieldsToFetch(req.getFieldsToFetch(), req.getStoredFieldsToFetch(), req.isLazyFieldValues());
+    collector.setCursor(req.getCursor());
+    collector.setEarlyTermination(req.isEarlyTermination());
     
     Map<String, FacetAccessible> facetCollectors = new HashMap<String, FacetAccessible>();
     browse(req, collector, facetCollectors);
@@ -441,6 +485,7 @@ public class BoboSubBrowser extends BoboSearcher2 implements Browsable,Closeable
     }
     result.setHits(hits);
     result.setNumHits(collector.getTotalHits());
+    result.setNumHitsLowerBound(collector.isTerminatedEarly());
     result.setTotalDocs(_reader.numDocs());
     result.addAll(facetCollectors);
     long end = System.currentTimeMillis();
@@ -0,0 +1,54 @@
+package com.browseengine.bobo.api;
+
+import java.io.Serializable;
+
+/**
+ * Position in the sorted hits of a browse: the sort value and docid of a hit. A request given a cursor gets
+ * the hits sorting after that hit, so paging through the hits keeps <code>count</code> docs per segment
+ * instead of <code>offset+count</code>. A cursor only holds for the sort and the index it comes from; docs
+ * added or deleted since are skipped or returned as their sort values fall.
+ *
+ * @see BrowseResult#getCursor()
+ * @see BrowseRequest#setCursor(BrowseCursor)
+ */
+public class BrowseCursor implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final Comparable<?> _sortValue;
+  private final int _docid;
+
+  /**
+   * @param sortValue sort value of the hit, see {@link BrowseHit#getComparable()}
+   * @param docid docid of the hit
+   */
+  public BrowseCursor(Comparable<?> sortValue, int docid)
+  {
+    _sortValue = sortValue;
+    _docid = docid;
+  }
+
+  /**
+   * @return a cursor after a hit
+   */
+  public static BrowseCursor after(BrowseHit hit)
+  {
+    return new BrowseCursor(hit.getComparable(), hit.getDocid());
+  }
+
+  public Comparable<?> getSortValue()
+  {
+    return _sortValue;
+  }
+
+  public int getDocid()
+  {
+    return _docid;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "after: " + _sortValue + ", docid: " + _docid;
+  }
+}
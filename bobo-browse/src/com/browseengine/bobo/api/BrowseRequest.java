@@ -77,6 +77,11 @@ public class BrowseRequest implements Serializable{
 	private int _offset;
 	private int _count;
 	private boolean _fetchStoredFields;
+	private Set<String> _fieldsToFetch;
+	private Set<String> _storedFieldsToFetch;
+	private boolean _lazyFieldValues;
+	private BrowseCursor _cursor;
+	private boolean _earlyTermination;
 	private Filter _filter;
 	private boolean _showExplanation;
 	
@@ -183,6 +188,76 @@ public class BrowseRequest implements Serializable{
 		_fetchStoredFields = fetchStoredFields;
 	}
 	
+	/**
+	 * Sets the facets whose values the hits get, see {@link BrowseHit#getFields(String)}.
+	 * @param fieldsToFetch facet names, null (the default) for all facets, empty for none
+	 */
+	public void setFieldsToFetch(Set<String> fieldsToFetch){
+		_fieldsToFetch = fieldsToFetch;
+	}
+	
+	public Set<String> getFieldsToFetch(){
+		return _fieldsToFetch;
+	}
+	
+	/**
+	 * Sets the stored fields loaded for the hits when stored fields are fetched. Only the listed fields are
+	 * read from the index and, unlike with all stored fields, the facet values are not added to them.
+	 * @param storedFieldsToFetch stored field names, null (the default) for all stored fields and the facet values
+	 * @see #setFetchStoredFields(boolean)
+	 */
+	public void setStoredFieldsToFetch(Set<String> storedFieldsToFetch){
+		_storedFieldsToFetch = storedFieldsToFetch;
+	}
+	
+	public Set<String> getStoredFieldsToFetch(){
+		return _storedFieldsToFetch;
+	}
+	
+	/**
+	 * Sets whether the hits get their facet values when they are read instead of when the hits are built,
+	 * which saves decoding the values nobody reads. The reader browsed must then stay open until the
+	 * values are read.
+	 * @see LazyBrowseHit
+	 */
+	public void setLazyFieldValues(boolean lazyFieldValues){
+		_lazyFieldValues = lazyFieldValues;
+	}
+	
+	public boolean isLazyFieldValues(){
+		return _lazyFieldValues;
+	}
+	
+	/**
+	 * Sets the hit the hits of this request start after, usually the cursor of the previous page with an
+	 * offset of 0. The hits kept while browsing are then only <code>offset+count</code> past the cursor,
+	 * however deep the page. The hit count still counts all the hits.
+	 * @param cursor cursor from a result of a request with the same sort, null (the default) to start at the first hit
+	 * @see BrowseResult#getCursor()
+	 */
+	public void setCursor(BrowseCursor cursor){
+		_cursor = cursor;
+	}
+	
+	public BrowseCursor getCursor(){
+		return _cursor;
+	}
+	
+	/**
+	 * Sets whether a segment whose docs are in the order of the sort of this request stops being searched
+	 * once it can add no more hits, see {@link BoboIndexReader#setIndexSort(SortField[])}. Docs in docid
+	 * order always are. The hit count and the facet counts of such a request only cover the docs searched,
+	 * see {@link BrowseResult#isNumHitsLowerBound()}.
+	 * @param earlyTermination whether to stop searching sorted segments early, false by default
+	 */
+	public void setEarlyTermination(boolean earlyTermination){
+		_earlyTermination = earlyTermination;
+	}
+	
+	public boolean isEarlyTermination(){
+		return _earlyTermination;
+	}
+	
 	/**
 	 * Sets a facet spec
 	 * @param name field name
@@ -358,6 +433,10 @@ public class BrowseRequest implements Serializable{
       buf.append("selections: ").append(_selections).append('\n');
       buf.append("facet spec: ").append(_facetSpecMap).append('\n');
       buf.append("fetch stored fields: ").append(_fetchStoredFields);
+      if (_fieldsToFetch != null) buf.append('\n').append("fields to fetch: ").append(_fieldsToFetch);
+      if (_storedFieldsToFetch != null) buf.append('\n').append("stored fields to fetch: ").append(_storedFieldsToFetch);
+      if (_cursor != null) buf.append('\n').append("cursor: ").append(_cursor);
+      if (_earlyTermination) buf.append('\n').append("early termination");
       return buf.toString();
 	}
 }
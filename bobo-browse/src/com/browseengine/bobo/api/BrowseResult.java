@@ -66,6 +66,7 @@ public class BrowseResult implements Serializable{
 	private Map<String,FacetAccessible> _facetMap;
 	private BrowseHit[] hits;
 	private long time;
+	private boolean numHitsLowerBound;
 	private static BrowseHit[] NO_HITS=new BrowseHit[0];
 		
 	/**
@@ -106,6 +107,19 @@ public class BrowseResult implements Serializable{
 	public void setNumHits(int hits) {
 		numHits = hits;
 	}
+	
+	/**
+	 * Whether the search stopped early, so the hit count and the facet counts may be short of the real ones
+	 * @return true if the counts are lower bounds
+	 * @see BrowseRequest#setEarlyTermination(boolean)
+	 */
+	public boolean isNumHitsLowerBound() {
+		return numHitsLowerBound;
+	}
+	
+	public void setNumHitsLowerBound(boolean lowerBound) {
+		numHitsLowerBound = lowerBound;
+	}
 
 	/**
 	 * Gets the total number of docs in the index
@@ -159,6 +173,15 @@ public class BrowseResult implements Serializable{
 		return hits==null ? NO_HITS : hits;
 	}
 	
+	/**
+	 * Gets the cursor after the last hit, for the request of the next page
+	 * @return cursor after the last hit, null if there are no hits
+	 * @see BrowseRequest#setCursor(BrowseCursor)
+	 */
+	public BrowseCursor getCursor(){
+		return (hits==null || hits.length==0) ? null : BrowseCursor.after(hits[hits.length-1]);
+	}
+	
 	/**
 	 * Sets the search time in milliseconds
 	 * @param time search time
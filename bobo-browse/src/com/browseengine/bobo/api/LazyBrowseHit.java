@@ -0,0 +1,114 @@
+package com.browseengine.bobo.api;
+
+import java.io.ObjectStreamException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.browseengine.bobo.facets.FacetHandler;
+
+/**
+ * Browse hit that gets the facet values of its doc from the facet data when they are read rather than when
+ * the hit is built. The values of a facet are decoded once, on the first read. The reader the hit comes from
+ * must stay open until then; serializing the hit reads all values first.
+ *
+ * @see BrowseRequest#setLazyFieldValues(boolean)
+ */
+public class LazyBrowseHit extends BrowseHit
+{
+  private static final long serialVersionUID = 1L;
+
+  private transient BoboIndexReader _reader;
+  private transient int _readerDoc;
+  private transient Map<String,FacetHandler<?>> _facetHandlerMap;
+
+  /**
+   * @param reader segment reader of the hit
+   * @param readerDoc doc of the hit in the segment
+   * @param facetHandlerMap facets whose values the hit has
+   */
+  public LazyBrowseHit(BoboIndexReader reader, int readerDoc, Map<String,FacetHandler<?>> facetHandlerMap)
+  {
+    _reader = reader;
+    _readerDoc = readerDoc;
+    _facetHandlerMap = facetHandlerMap;
+    setFieldValues(new HashMap<String,String[]>());
+    setRawFieldValues(new HashMap<String,Object[]>());
+  }
+
+  @Override
+  public String[] getFields(String field)
+  {
+    Map<String,String[]> fieldValues = super.getFieldValues();
+    String[] vals = fieldValues.get(field);
+    if (vals == null && _facetHandlerMap != null && !fieldValues.containsKey(field))
+    {
+      FacetHandler<?> facetHandler = _facetHandlerMap.get(field);
+      if (facetHandler != null)
+      {
+        vals = facetHandler.getFieldValues(_reader, _readerDoc);
+        fieldValues.put(field, vals);
+      }
+    }
+    return vals;
+  }
+
+  @Override
+  public Object[] getRawFields(String field)
+  {
+    Map<String,Object[]> rawFieldValues = super.getRawFieldValues();
+    Object[] vals = rawFieldValues.get(field);
+    if (vals == null && _facetHandlerMap != null && !rawFieldValues.containsKey(field))
+    {
+      FacetHandler<?> facetHandler = _facetHandlerMap.get(field);
+      if (facetHandler != null)
+      {
+        vals = facetHandler.getRawFieldValues(_reader, _readerDoc);
+        rawFieldValues.put(field, vals);
+      }
+    }
+    return vals;
+  }
+
+  @Override
+  public Map<String,String[]> getFieldValues()
+  {
+    if (_facetHandlerMap != null)
+    {
+      for (String name : _facetHandlerMap.keySet())
+      {
+        getFields(name);
+      }
+    }
+    return super.getFieldValues();
+  }
+
+  @Override
+  public Map<String,Object[]> getRawFieldValues()
+  {
+    if (_facetHandlerMap != null)
+    {
+      for (String name : _facetHandlerMap.keySet())
+      {
+        getRawFields(name);
+      }
+    }
+    return super.getRawFieldValues();
+  }
+
+  @Override
+  public String toString()
+  {
+    getFieldValues();
+    return super.toString();
+  }
+
+  /**
+   * Reads all values before the hit is written, the fields of {@link BrowseHit} are written first.
+   */
+  protected Object writeReplace() throws ObjectStreamException
+  {
+    getFieldValues();
+    getRawFieldValues();
+    return this;
+  }
+}
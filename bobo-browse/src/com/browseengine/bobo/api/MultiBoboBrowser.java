@@ -10,6 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.search.Collector;
@@ -23,6 +27,7 @@ import org.apache.lucene.search.Weight;
 
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.sort.SortCollector;
+import com.browseengine.bobo.sort.SortCollectorImpl;
 
 
 /**
@@ -33,6 +38,7 @@ public class MultiBoboBrowser extends MultiSearcher implements Browsable,Closeab
   private static Logger logger = Logger.getLogger(MultiBoboBrowser.class);
   
   protected final Browsable[] _subBrowsers;
+  private ExecutorService _executorService = null;
   /**
    * 
    * @param browsers
@@ -45,6 +51,38 @@ public class MultiBoboBrowser extends MultiSearcher implements Browsable,Closeab
     _subBrowsers = browsers;
   }
 
+  /**
+   * 
+   * @param browsers
+   *          Browsers to search on
+   * @param executorService
+   *          executor used to browse the sub-browsers concurrently, null to browse them serially
+   * @throws IOException
+   * @see #setExecutorService(ExecutorService)
+   */
+  public MultiBoboBrowser(Browsable[] browsers, ExecutorService executorService) throws IOException
+  {
+    this(browsers);
+    _executorService = executorService;
+  }
+
+  /**
+   * Sets the executor used by {@link #browse(BrowseRequest)} to browse the sub-browsers concurrently.
+   * Each sub-browser is then searched and facet counted on its own task with its own hit queue,
+   * and the hits and facets are merged once all tasks are done. Requests that carry runtime facet
+   * handler data are always browsed serially, since runtime facet data is bound to the browsing thread.
+   * @param executorService executor, or null (the default) to browse the sub-browsers serially
+   */
+  public void setExecutorService(ExecutorService executorService)
+  {
+    _executorService = executorService;
+  }
+
+  public ExecutorService getExecutorService()
+  {
+    return _executorService;
+  }
+
   /**
    * Implementation of the browse method using a Lucene HitCollector
    * 
@@ -122,26 +160,126 @@ public class MultiBoboBrowser extends MultiSearcher implements Browsable,Closeab
     }
     finally
     {
-      Set<Entry<String,List<FacetAccessible>>> entries = mergedMap.entrySet();
-  	  for (Entry<String,List<FacetAccessible>> entry : entries)
-  	  {
-  		  String name = entry.getKey();
-  		  FacetHandler handler = getFacetHandler(name);
-  		  try
-  		  {
-  			  List<FacetAccessible> subList = entry.getValue();
-  			  if (subList!=null)
-  			  {
-  			    FacetAccessible merged = handler.merge(req.getFacetSpec(name), subList);
-  	  		  	facetMap.put(name, merged);
-  			  }
-  		  }
-  		  catch(Exception e)
-  		  {
-  			  logger.error(e.getMessage(),e);
-  		  }
-  	  }
+      mergeFacets(req, mergedMap, facetMap);
+    }
+  }
+
+  private void mergeFacets(BrowseRequest req, Map<String, List<FacetAccessible>> mergedMap, Map<String, FacetAccessible> facetMap)
+  {
+    Set<Entry<String,List<FacetAccessible>>> entries = mergedMap.entrySet();
+    for (Entry<String,List<FacetAccessible>> entry : entries)
+    {
+      String name = entry.getKey();
+      FacetHandler handler = getFacetHandler(name);
+      try
+      {
+        List<FacetAccessible> subList = entry.getValue();
+        if (subList!=null)
+        {
+          FacetAccessible merged = handler.merge(req.getFacetSpec(name), subList);
+          facetMap.put(name, merged);
+        }
+      }
+      catch(Exception e)
+      {
+        logger.error(e.getMessage(),e);
+      }
+    }
+  }
+
+  private boolean isParallelBrowse(BrowseRequest req, SortCollector collector)
+  {
+    if (_executorService == null || _subBrowsers.length < 2) return false;
+    if (!(collector instanceof SortCollectorImpl) || collector.getCollector() != null) return false;
+    Map<String, ?> facetHandlerData = req.getFacetHandlerDataMap();
+    return facetHandlerData == null || facetHandlerData.isEmpty();
+  }
+
+  /**
+   * Browses every sub-browser on its own task from the executor. Each task collects hits into
+   * its own sort collector and facet counts into its own map; the queues are folded into
+   * <code>collector</code> and the facets merged through {@link FacetHandler#merge} once all tasks are done.
+   */
+  private void browseParallel(final BrowseRequest req, SortCollectorImpl collector, Map<String, FacetAccessible> facetMap) throws BrowseException
+  {
+    final Browsable[] browsers = getSubBrowsers();
+    final int[] starts = getStarts();
+    final Weight weight;
+    try
+    {
+      Query q = req.getQuery();
+      if (q == null)
+      {
+        q = new MatchAllDocsQuery();
+      }
+      weight = createWeight(q);
+    }
+    catch (IOException ioe)
+    {
+      throw new BrowseException(ioe.getMessage(), ioe);
+    }
+
+    final int numHits = req.getOffset() + req.getCount();
+    final SortCollectorImpl[] subCollectors = new SortCollectorImpl[browsers.length];
+    List<Future<Map<String, FacetAccessible>>> futures = new ArrayList<Future<Map<String, FacetAccessible>>>(browsers.length);
+    for (int i = 0; i < browsers.length; i++)
+    {
+      final Browsable browser = browsers[i];
+      final int start = starts[i];
+      final SortCollectorImpl subCollector = (SortCollectorImpl)SortCollector.buildSortCollector(this, req.getQuery(), req.getSort(), 0, numHits, false, req.isFetchStoredFields());
+      subCollector.setCursor(req.getCursor());
+      subCollector.setEarlyTermination(req.isEarlyTermination());
+      subCollectors[i] = subCollector;
+      futures.add(_executorService.submit(new Callable<Map<String, FacetAccessible>>()
+      {
+        public Map<String, FacetAccessible> call() throws Exception
+        {
+          Map<String, FacetAccessible> facetColMap = new HashMap<String, FacetAccessible>();
+          browser.browse(req, weight, subCollector, facetColMap, start);
+          return facetColMap;
+        }
+      }));
     }
+
+    Map<String, List<FacetAccessible>> mergedMap = new HashMap<String,List<FacetAccessible>>();
+    BrowseException failure = null;
+    for (int i = 0; i < futures.size(); i++)
+    {
+      Map<String, FacetAccessible> facetColMap;
+      try
+      {
+        facetColMap = futures.get(i).get();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        if (failure == null) failure = new BrowseException("browse interrupted", e);
+        continue;
+      }
+      catch (ExecutionException e)
+      {
+        Throwable cause = e.getCause();
+        if (failure == null)
+        {
+          failure = cause instanceof BrowseException ? (BrowseException)cause : new BrowseException(String.valueOf(cause.getMessage()), cause);
+        }
+        continue;
+      }
+      collector.merge(subCollectors[i]);
+      for (Entry<String,FacetAccessible> entry : facetColMap.entrySet())
+      {
+        String name = entry.getKey();
+        List<FacetAccessible> list = mergedMap.get(name);
+        if (list == null)
+        {
+          list = new ArrayList<FacetAccessible>(browsers.length);
+          mergedMap.put(name, list);
+        }
+        list.add(entry.getValue());
+      }
+    }
+    mergeFacets(req, mergedMap, facetMap);
+    if (failure != null) throw failure;
   }
 
   /**
@@ -167,9 +305,19 @@ public class MultiBoboBrowser extends MultiSearcher implements Browsable,Closeab
 	  throw new IllegalArgumentException("both offset and count must be > 0: "+offset+"/"+count);
     }
     SortCollector collector = getSortCollector(req.getSort(),req.getQuery(), offset, count, req.isFetchStoredFields(),false);
+    collector.setFieldsToFetch(req.getFieldsToFetch(), req.getStoredFieldsToFetch(), req.isLazyFieldValues());
+    collector.setCursor(req.getCursor());
+    collector.setEarlyTermination(req.isEarlyTermination());
     
     Map<String, FacetAccessible> facetCollectors = new HashMap<String, FacetAccessible>();
-    browse(req, collector, facetCollectors);
+    if (isParallelBrowse(req, collector))
+    {
+      browseParallel(req, (SortCollectorImpl)collector, facetCollectors);
+    }
+    else
+    {
+      browse(req, collector, facetCollectors);
+    }
     BrowseHit[] hits = null;
     try{
       hits = collector.topDocs();
@@ -196,6 +344,7 @@ public class MultiBoboBrowser extends MultiSearcher implements Browsable,Closeab
     
     result.setHits(hits);
     result.setNumHits(collector.getTotalHits());
+    result.setNumHitsLowerBound(collector.isTerminatedEarly());
     result.setTotalDocs(numDocs());
     result.addAll(facetCollectors);
     long end = System.currentTimeMillis();
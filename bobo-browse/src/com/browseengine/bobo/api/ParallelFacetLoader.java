@@ -0,0 +1,225 @@
+package com.browseengine.bobo.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import com.browseengine.bobo.api.BoboIndexReader.WorkArea;
+import com.browseengine.bobo.facets.FacetHandler;
+
+/**
+ * Loads the facet data of segment readers on an executor. Every facet handler of every segment is a task
+ * of its own, which is submitted once the handlers it depends on ({@link FacetHandler#getDependsOn()})
+ * are loaded for the same segment. The calling thread does all the scheduling and waits for the tasks,
+ * tasks never wait for each other, so any pool size works.
+ * <p>
+ * A handler that fails to load, depends on a missing or failed handler or is part of a dependency cycle
+ * is reported in the <code>toBeRemoved</code> set, like the sequential loading in {@link BoboIndexReader} does.
+ */
+final class ParallelFacetLoader
+{
+  private static Logger logger = Logger.getLogger(ParallelFacetLoader.class);
+
+  private final ExecutorService _executorService;
+  // the work areas hold per thread scratch buffers
+  private final Map<Thread,WorkArea> _workAreas = new ConcurrentHashMap<Thread,WorkArea>();
+
+  ParallelFacetLoader(ExecutorService executorService)
+  {
+    _executorService = executorService;
+  }
+
+  private final class LoadTask implements Callable<LoadTask>
+  {
+    final BoboIndexReader _reader;
+    final BoboIndexReader _oldReader;
+    final FacetHandler<?> _handler;
+    final List<LoadTask> _dependants = new ArrayList<LoadTask>();
+    int _pending = 0;
+    boolean _done = false;
+    Exception _error = null;
+    long _took;
+
+    LoadTask(BoboIndexReader reader, BoboIndexReader oldReader, FacetHandler<?> handler)
+    {
+      _reader = reader;
+      _oldReader = oldReader;
+      _handler = handler;
+    }
+
+    public LoadTask call()
+    {
+      long start = System.currentTimeMillis();
+      try
+      {
+        if (_oldReader != null)
+        {
+          _handler.loadFacetData(_reader, _oldReader, getWorkArea());
+        }
+        else
+        {
+          _handler.loadFacetData(_reader, getWorkArea());
+        }
+      }
+      catch (Exception e)
+      {
+        _error = e;
+      }
+      _took = System.currentTimeMillis() - start;
+      return this;
+    }
+  }
+
+  private WorkArea getWorkArea()
+  {
+    // only the current thread puts its own entry
+    Thread thread = Thread.currentThread();
+    WorkArea workArea = _workAreas.get(thread);
+    if (workArea == null)
+    {
+      workArea = new WorkArea();
+      _workAreas.put(thread, workArea);
+    }
+    return workArea;
+  }
+
+  /**
+   * @param readers segment readers, initialized with their facet handlers
+   * @param oldReaders per segment reader, the previous reader of the segment whose facet data may be reused, or null
+   * @param toBeRemoved gets the names of the facets that could not be loaded
+   * @throws IOException if the loading is interrupted or a task fails with an error
+   */
+  void load(BoboIndexReader[] readers, BoboIndexReader[] oldReaders, Set<String> toBeRemoved) throws IOException
+  {
+    List<LoadTask> tasks = new ArrayList<LoadTask>();
+    for (int i = 0; i < readers.length; ++i)
+    {
+      Map<String,LoadTask> segmentTasks = new HashMap<String,LoadTask>();
+      for (FacetHandler<?> handler : readers[i].getFacetHandlerMap().values())
+      {
+        LoadTask task = new LoadTask(readers[i], oldReaders[i], handler);
+        segmentTasks.put(handler.getName(), task);
+        tasks.add(task);
+      }
+      for (LoadTask task : segmentTasks.values())
+      {
+        String name = task._handler.getName();
+        for (String dependsOn : task._handler.getDependsOn())
+        {
+          if (name.equals(dependsOn)) continue;
+          LoadTask dependedTask = segmentTasks.get(dependsOn);
+          if (dependedTask == null)
+          {
+            task._error = new IOException("unable to load facet handler: " + dependsOn);
+            continue;
+          }
+          // handlers are shared by the segments, so they are wired here rather than by the tasks
+          task._handler.putDependedFacetHandler(dependedTask._handler);
+          dependedTask._dependants.add(task);
+          task._pending++;
+        }
+      }
+    }
+
+    for (LoadTask task : tasks)
+    {
+      if (task._error != null)
+      {
+        fail(task, toBeRemoved);
+      }
+    }
+
+    CompletionService<LoadTask> completionService = new ExecutorCompletionService<LoadTask>(_executorService);
+    int running = 0;
+    for (LoadTask task : tasks)
+    {
+      if (!task._done && task._pending == 0)
+      {
+        completionService.submit(task);
+        running++;
+      }
+    }
+
+    try
+    {
+      while (running > 0)
+      {
+        LoadTask task = completionService.take().get();
+        running--;
+        if (task._error != null)
+        {
+          fail(task, toBeRemoved);
+          continue;
+        }
+        task._done = true;
+        if (logger.isDebugEnabled())
+        {
+          logger.debug("facetHandler loaded: " + task._handler.getName() + ", took: " + task._took + " ms");
+        }
+        for (LoadTask dependant : task._dependants)
+        {
+          if (!dependant._done && --dependant._pending == 0)
+          {
+            completionService.submit(dependant);
+            running++;
+          }
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      IOException ioe = new IOException("facet loading interrupted");
+      ioe.initCause(e);
+      throw ioe;
+    }
+    catch (ExecutionException e)
+    {
+      IOException ioe = new IOException("facet load failed: " + e.getCause().getMessage());
+      ioe.initCause(e.getCause());
+      throw ioe;
+    }
+    finally
+    {
+      _workAreas.clear();
+    }
+
+    for (LoadTask task : tasks)
+    {
+      if (!task._done)
+      {
+        task._done = true;
+        toBeRemoved.add(task._handler.getName());
+        logger.error("Facet handler dependency cycle detected, facet handler: " + task._handler.getName() + " not loaded");
+      }
+    }
+  }
+
+  private static void fail(LoadTask task, Set<String> toBeRemoved)
+  {
+    if (task._done) return;
+    task._done = true;
+    String name = task._handler.getName();
+    toBeRemoved.add(name);
+    logger.error("facet load failed: " + name + ": " + task._error.getMessage(), task._error);
+    for (LoadTask dependant : task._dependants)
+    {
+      if (dependant._error == null)
+      {
+        dependant._error = new IOException("unable to load facet handler: " + name);
+      }
+      fail(dependant, toBeRemoved);
+    }
+  }
+}
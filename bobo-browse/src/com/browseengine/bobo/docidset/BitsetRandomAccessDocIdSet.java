@@ -0,0 +1,40 @@
+package com.browseengine.bobo.docidset;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetIterator;
+
+/**
+ * Doc id set over a bitset of a segment's docs.
+ */
+public class BitsetRandomAccessDocIdSet extends RandomAccessDocIdSet
+{
+  private final OpenBitSet _bitset;
+
+  /**
+   * @param bitset bitset of at least maxDoc bits
+   */
+  public BitsetRandomAccessDocIdSet(OpenBitSet bitset)
+  {
+    _bitset = bitset;
+  }
+
+  public OpenBitSet getBitSet()
+  {
+    return _bitset;
+  }
+
+  @Override
+  public boolean get(int docId)
+  {
+    return _bitset.fastGet(docId);
+  }
+
+  @Override
+  public DocIdSetIterator iterator() throws IOException
+  {
+    return new OpenBitSetIterator(_bitset);
+  }
+}
@@ -38,7 +38,7 @@ public abstract class FilteredDocSetIterator extends DocIdSetIterator {
 				docid = _innerIter.nextDoc();
 			}
 		}
-		return DocIdSetIterator.NO_MORE_DOCS;
+		return (_currentDoc = DocIdSetIterator.NO_MORE_DOCS);
 	}
 
 	public final int advance(int n) throws IOException{
@@ -55,7 +55,7 @@ public abstract class FilteredDocSetIterator extends DocIdSetIterator {
 			  docid=_innerIter.nextDoc();
 			}
 		}
-		return DocIdSetIterator.NO_MORE_DOCS;
+		return (_currentDoc = DocIdSetIterator.NO_MORE_DOCS);
 	}
 
 }
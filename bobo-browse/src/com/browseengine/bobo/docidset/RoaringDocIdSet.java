@@ -0,0 +1,918 @@
+package com.browseengine.bobo.docidset;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * Compressed, immutable doc id set with random access. Doc ids are split into blocks of 64K docs and
+ * every non-empty block is stored in whichever of three containers is smallest for it:
+ * <ul>
+ * <li>an array of the sorted low 16 bits of its docs, 2 bytes per doc,</li>
+ * <li>a bitmap of the whole block, 8K bytes,</li>
+ * <li>runs of consecutive docs, 4 bytes per run.</li>
+ * </ul>
+ * A set costs about as much as the smaller of a doc id array and a bitset, or less when its docs come in
+ * runs. {@link #and(RoaringDocIdSet)}, {@link #or(RoaringDocIdSet)} and {@link #andNot(RoaringDocIdSet)}
+ * work block by block and skip the blocks only one side has where they can.
+ * <p>
+ * Sets are built in doc id order with a {@link Builder}.
+ */
+public class RoaringDocIdSet extends RandomAccessDocIdSet
+{
+  static final int BLOCK_SHIFT = 16;
+  static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+  static final int WORDS_PER_BLOCK = (1 << BLOCK_SHIFT) >>> 6;
+  /** largest array container, beyond it a bitmap is smaller */
+  static final int MAX_ARRAY_SIZE = 4096;
+
+  private static final RoaringDocIdSet EMPTY = new RoaringDocIdSet(new int[0], new Container[0], 0);
+
+  private final int[] _keys;
+  private final Container[] _containers;
+  private final int _cardinality;
+
+  private RoaringDocIdSet(int[] keys, Container[] containers, int numBlocks)
+  {
+    _keys = numBlocks == keys.length ? keys : Arrays.copyOf(keys, numBlocks);
+    _containers = numBlocks == containers.length ? containers : Arrays.copyOf(containers, numBlocks);
+    int cardinality = 0;
+    for (Container c : _containers)
+    {
+      cardinality += c.cardinality();
+    }
+    _cardinality = cardinality;
+  }
+
+  public static RoaringDocIdSet empty()
+  {
+    return EMPTY;
+  }
+
+  /**
+   * @return the set of the docs in <code>[from, to)</code>
+   */
+  public static RoaringDocIdSet range(int from, int to)
+  {
+    Builder builder = new Builder();
+    builder.addRange(from, to);
+    return builder.build();
+  }
+
+  /**
+   * Copies the docs of an iterator.
+   */
+  public static RoaringDocIdSet copyOf(DocIdSetIterator iter) throws IOException
+  {
+    Builder builder = new Builder();
+    int doc;
+    while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS)
+    {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Copies the docs of a set, sets that are roaring already are returned as they are.
+   */
+  public static RoaringDocIdSet copyOf(DocIdSet set) throws IOException
+  {
+    if (set instanceof RoaringDocIdSet)
+    {
+      return (RoaringDocIdSet)set;
+    }
+    DocIdSetIterator iter = set.iterator();
+    return iter == null ? EMPTY : copyOf(iter);
+  }
+
+  /**
+   * ANDs sets that are all roaring block by block, without going through their iterators.
+   * @return the intersection, null if any of the sets is not a {@link RoaringDocIdSet}
+   */
+  public static RoaringDocIdSet andAll(RandomAccessDocIdSet[] sets)
+  {
+    return combine(sets, true);
+  }
+
+  /**
+   * ORs sets that are all roaring block by block, without going through their iterators.
+   * @return the union, null if any of the sets is not a {@link RoaringDocIdSet}
+   */
+  public static RoaringDocIdSet orAll(RandomAccessDocIdSet[] sets)
+  {
+    return combine(sets, false);
+  }
+
+  private static RoaringDocIdSet combine(RandomAccessDocIdSet[] sets, boolean and)
+  {
+    for (RandomAccessDocIdSet s : sets)
+    {
+      if (!(s instanceof RoaringDocIdSet)) return null;
+    }
+    RoaringDocIdSet combined = (RoaringDocIdSet)sets[0];
+    for (int i = 1; i < sets.length; ++i)
+    {
+      combined = and ? combined.and((RoaringDocIdSet)sets[i]) : combined.or((RoaringDocIdSet)sets[i]);
+    }
+    return combined;
+  }
+
+  /**
+   * @return number of docs in the set
+   */
+  public int cardinality()
+  {
+    return _cardinality;
+  }
+
+  /**
+   * @return approximate heap size of the set in bytes
+   */
+  public long sizeInBytes()
+  {
+    long size = 32 + 8L * _keys.length;
+    for (Container c : _containers)
+    {
+      size += 16 + c.sizeInBytes();
+    }
+    return size;
+  }
+
+  private int blockIndex(int key, int from)
+  {
+    return Arrays.binarySearch(_keys, from, _keys.length, key);
+  }
+
+  @Override
+  public boolean get(int docId)
+  {
+    int i = blockIndex(docId >>> BLOCK_SHIFT, 0);
+    return i >= 0 && _containers[i].contains(docId & BLOCK_MASK);
+  }
+
+  @Override
+  public DocIdSetIterator iterator()
+  {
+    return new RoaringDocIdSetIterator();
+  }
+
+  /**
+   * @return the docs in both sets
+   */
+  public RoaringDocIdSet and(RoaringDocIdSet other)
+  {
+    int n = Math.min(_keys.length, other._keys.length);
+    int[] keys = new int[n];
+    Container[] containers = new Container[n];
+    int size = 0;
+    int i = 0, j = 0;
+    while (i < _keys.length && j < other._keys.length)
+    {
+      int k1 = _keys[i], k2 = other._keys[j];
+      if (k1 < k2)
+      {
+        i = skip(_keys, i, k2);
+      }
+      else if (k1 > k2)
+      {
+        j = skip(other._keys, j, k1);
+      }
+      else
+      {
+        Container c = _containers[i++].and(other._containers[j++]);
+        if (c != null)
+        {
+          keys[size] = k1;
+          containers[size++] = c;
+        }
+      }
+    }
+    return new RoaringDocIdSet(keys, containers, size);
+  }
+
+  /**
+   * @return the docs in either set
+   */
+  public RoaringDocIdSet or(RoaringDocIdSet other)
+  {
+    int n = _keys.length + other._keys.length;
+    int[] keys = new int[n];
+    Container[] containers = new Container[n];
+    int size = 0;
+    int i = 0, j = 0;
+    while (i < _keys.length || j < other._keys.length)
+    {
+      int k1 = i < _keys.length ? _keys[i] : Integer.MAX_VALUE;
+      int k2 = j < other._keys.length ? other._keys[j] : Integer.MAX_VALUE;
+      if (k1 < k2)
+      {
+        keys[size] = k1;
+        containers[size++] = _containers[i++];
+      }
+      else if (k1 > k2)
+      {
+        keys[size] = k2;
+        containers[size++] = other._containers[j++];
+      }
+      else
+      {
+        keys[size] = k1;
+        containers[size++] = _containers[i++].or(other._containers[j++]);
+      }
+    }
+    return new RoaringDocIdSet(keys, containers, size);
+  }
+
+  /**
+   * @return the docs in this set and not in the other one
+   */
+  public RoaringDocIdSet andNot(RoaringDocIdSet other)
+  {
+    int[] keys = new int[_keys.length];
+    Container[] containers = new Container[_keys.length];
+    int size = 0;
+    int j = 0;
+    for (int i = 0; i < _keys.length; ++i)
+    {
+      int k = _keys[i];
+      j = skip(other._keys, j, k);
+      Container c = _containers[i];
+      if (j < other._keys.length && other._keys[j] == k)
+      {
+        c = c.andNot(other._containers[j]);
+      }
+      if (c != null)
+      {
+        keys[size] = k;
+        containers[size++] = c;
+      }
+    }
+    return new RoaringDocIdSet(keys, containers, size);
+  }
+
+  /**
+   * @return the first index at or after <code>from</code> whose key is not less than <code>key</code>
+   */
+  private static int skip(int[] keys, int from, int key)
+  {
+    if (from >= keys.length || keys[from] >= key) return from;
+    int i = Arrays.binarySearch(keys, from, keys.length, key);
+    return i >= 0 ? i : -(i + 1);
+  }
+
+  private final class RoaringDocIdSetIterator extends DocIdSetIterator
+  {
+    private int _block = -1;
+    private int _base;
+    private ContainerIterator _iter;
+    private int _doc = -1;
+
+    @Override
+    public int docID()
+    {
+      return _doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException
+    {
+      if (_iter != null)
+      {
+        int low = _iter.next();
+        if (low >= 0)
+        {
+          return (_doc = _base | low);
+        }
+      }
+      return nextBlock(_block + 1);
+    }
+
+    @Override
+    public int advance(int target) throws IOException
+    {
+      int key = target >>> BLOCK_SHIFT;
+      if (_iter != null && _keys[_block] == key)
+      {
+        int low = _iter.advance(target & BLOCK_MASK);
+        if (low >= 0)
+        {
+          return (_doc = _base | low);
+        }
+        return nextBlock(_block + 1);
+      }
+      int block = skip(_keys, _block + 1, key);
+      if (block < _keys.length && _keys[block] == key)
+      {
+        open(block);
+        int low = _iter.advance(target & BLOCK_MASK);
+        if (low >= 0)
+        {
+          return (_doc = _base | low);
+        }
+        ++block;
+      }
+      return nextBlock(block);
+    }
+
+    private void open(int block)
+    {
+      _block = block;
+      _base = _keys[block] << BLOCK_SHIFT;
+      _iter = _containers[block].iterator();
+    }
+
+    private int nextBlock(int block)
+    {
+      if (block >= _keys.length)
+      {
+        _block = _keys.length;
+        _iter = null;
+        return (_doc = NO_MORE_DOCS);
+      }
+      // containers are never empty
+      open(block);
+      return (_doc = _base | _iter.next());
+    }
+  }
+
+  /**
+   * Collects docs in increasing order into a {@link RoaringDocIdSet}.
+   */
+  public static class Builder
+  {
+    private int[] _keys = new int[8];
+    private Container[] _containers = new Container[8];
+    private int _size = 0;
+    private final long[] _words = new long[WORDS_PER_BLOCK];
+    private int _key = -1;
+    private int _count = 0;
+    private int _last = -1;
+
+    /**
+     * @param doc a doc id greater than the ones added before
+     */
+    public Builder add(int doc)
+    {
+      if (doc <= _last)
+      {
+        throw new IllegalArgumentException("docs must be added in increasing order: " + doc + " after " + _last);
+      }
+      int key = doc >>> BLOCK_SHIFT;
+      if (key != _key)
+      {
+        flush();
+        _key = key;
+      }
+      int low = doc & BLOCK_MASK;
+      _words[low >>> 6] |= 1L << low;
+      _count++;
+      _last = doc;
+      return this;
+    }
+
+    /**
+     * Adds the docs in <code>[from, to)</code>, all greater than the ones added before.
+     */
+    public Builder addRange(int from, int to)
+    {
+      if (from >= to) return this;
+      if (from <= _last)
+      {
+        throw new IllegalArgumentException("docs must be added in increasing order: " + from + " after " + _last);
+      }
+      while (from < to)
+      {
+        int key = from >>> BLOCK_SHIFT;
+        if (key != _key)
+        {
+          flush();
+          _key = key;
+        }
+        int end = Math.min(to, (key + 1) << BLOCK_SHIFT);
+        setRange(_words, from & BLOCK_MASK, ((end - 1) & BLOCK_MASK) + 1);
+        _count += end - from;
+        from = end;
+      }
+      _last = to - 1;
+      return this;
+    }
+
+    private void flush()
+    {
+      if (_count == 0) return;
+      if (_size == _keys.length)
+      {
+        _keys = Arrays.copyOf(_keys, _size * 2);
+        _containers = Arrays.copyOf(_containers, _size * 2);
+      }
+      _keys[_size] = _key;
+      _containers[_size++] = Container.fromWords(_words, _count);
+      Arrays.fill(_words, 0L);
+      _count = 0;
+    }
+
+    public RoaringDocIdSet build()
+    {
+      flush();
+      _key = -1;
+      return _size == 0 ? EMPTY : new RoaringDocIdSet(_keys, _containers, _size);
+    }
+  }
+
+  /**
+   * Sets the bits <code>[from, to)</code> of a block's words.
+   */
+  static void setRange(long[] words, int from, int to)
+  {
+    if (from >= to) return;
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last)
+    {
+      words[first] |= firstMask & lastMask;
+      return;
+    }
+    words[first] |= firstMask;
+    for (int i = first + 1; i < last; ++i)
+    {
+      words[i] = -1L;
+    }
+    words[last] |= lastMask;
+  }
+
+  /**
+   * Iterates the low 16 bits of the docs of one container.
+   */
+  static interface ContainerIterator
+  {
+    /**
+     * @return the next value, -1 when done
+     */
+    int next();
+
+    /**
+     * @return the first value not less than <code>target</code> and after the current one, -1 if there is none
+     */
+    int advance(int target);
+  }
+
+  /**
+   * Docs of one block, never empty.
+   */
+  static abstract class Container
+  {
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    abstract long sizeInBytes();
+
+    abstract ContainerIterator iterator();
+
+    /**
+     * Sets the bits of the docs in a block's words.
+     */
+    abstract void orInto(long[] words);
+
+    long[] toWords()
+    {
+      long[] words = new long[WORDS_PER_BLOCK];
+      orInto(words);
+      return words;
+    }
+
+    /**
+     * @return the intersection, null if it is empty
+     */
+    Container and(Container other)
+    {
+      if (other instanceof ArrayContainer)
+      {
+        return ((ArrayContainer)other).filter(this, true);
+      }
+      long[] words = toWords();
+      if (other instanceof BitmapContainer)
+      {
+        long[] o = ((BitmapContainer)other)._words;
+        for (int i = 0; i < WORDS_PER_BLOCK; ++i)
+        {
+          words[i] &= o[i];
+        }
+      }
+      else
+      {
+        long[] o = other.toWords();
+        for (int i = 0; i < WORDS_PER_BLOCK; ++i)
+        {
+          words[i] &= o[i];
+        }
+      }
+      return fromWords(words, -1);
+    }
+
+    Container or(Container other)
+    {
+      long[] words = toWords();
+      other.orInto(words);
+      return fromWords(words, -1);
+    }
+
+    /**
+     * @return the docs not in the other container, null if there are none
+     */
+    Container andNot(Container other)
+    {
+      long[] words = toWords();
+      long[] o = other instanceof BitmapContainer ? ((BitmapContainer)other)._words : other.toWords();
+      for (int i = 0; i < WORDS_PER_BLOCK; ++i)
+      {
+        words[i] &= ~o[i];
+      }
+      return fromWords(words, -1);
+    }
+
+    /**
+     * Picks the smallest container for the bits of a block.
+     * @param count number of bits set, -1 if not known
+     * @return the container, null if no bit is set
+     */
+    static Container fromWords(long[] words, int count)
+    {
+      if (count < 0)
+      {
+        count = 0;
+        for (long w : words)
+        {
+          count += Long.bitCount(w);
+        }
+      }
+      if (count == 0) return null;
+      // a run starts at every set bit whose lower neighbour is clear
+      int runs = 0;
+      long carry = 0L;
+      for (long w : words)
+      {
+        runs += Long.bitCount(w & ~((w << 1) | carry));
+        carry = w >>> 63;
+      }
+      long arraySize = 2L * count;
+      long runSize = 4L * runs;
+      long bitmapSize = 8L * WORDS_PER_BLOCK;
+      if (runSize < arraySize && runSize < bitmapSize)
+      {
+        return RunContainer.fromWords(words, runs);
+      }
+      if (count <= MAX_ARRAY_SIZE)
+      {
+        return ArrayContainer.fromWords(words, count);
+      }
+      return new BitmapContainer(words.clone(), count);
+    }
+  }
+
+  static final class ArrayContainer extends Container
+  {
+    private final char[] _values;
+
+    ArrayContainer(char[] values)
+    {
+      _values = values;
+    }
+
+    static ArrayContainer fromWords(long[] words, int count)
+    {
+      char[] values = new char[count];
+      int n = 0;
+      for (int i = 0; i < words.length; ++i)
+      {
+        long w = words[i];
+        while (w != 0)
+        {
+          values[n++] = (char)((i << 6) + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+
+    @Override
+    int cardinality()
+    {
+      return _values.length;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return Arrays.binarySearch(_values, (char)low) >= 0;
+    }
+
+    @Override
+    long sizeInBytes()
+    {
+      return 2L * _values.length;
+    }
+
+    @Override
+    void orInto(long[] words)
+    {
+      for (char v : _values)
+      {
+        words[v >>> 6] |= 1L << v;
+      }
+    }
+
+    /**
+     * @param keep true to keep the values in the other container, false to keep the ones not in it
+     */
+    Container filter(Container other, boolean keep)
+    {
+      char[] values = new char[_values.length];
+      int n = 0;
+      for (char v : _values)
+      {
+        if (other.contains(v) == keep)
+        {
+          values[n++] = v;
+        }
+      }
+      return n == 0 ? null : new ArrayContainer(n == values.length ? values : Arrays.copyOf(values, n));
+    }
+
+    @Override
+    Container and(Container other)
+    {
+      return filter(other, true);
+    }
+
+    @Override
+    Container andNot(Container other)
+    {
+      return filter(other, false);
+    }
+
+    @Override
+    Container or(Container other)
+    {
+      if (other instanceof ArrayContainer && _values.length + ((ArrayContainer)other)._values.length <= MAX_ARRAY_SIZE)
+      {
+        char[] o = ((ArrayContainer)other)._values;
+        char[] values = new char[_values.length + o.length];
+        int i = 0, j = 0, n = 0;
+        while (i < _values.length && j < o.length)
+        {
+          char a = _values[i], b = o[j];
+          if (a <= b) i++;
+          if (b <= a) j++;
+          values[n++] = a < b ? a : b;
+        }
+        while (i < _values.length) values[n++] = _values[i++];
+        while (j < o.length) values[n++] = o[j++];
+        return new ArrayContainer(n == values.length ? values : Arrays.copyOf(values, n));
+      }
+      return super.or(other);
+    }
+
+    @Override
+    ContainerIterator iterator()
+    {
+      return new ContainerIterator()
+      {
+        private int _pos = -1;
+
+        public int next()
+        {
+          return ++_pos < _values.length ? _values[_pos] : -1;
+        }
+
+        public int advance(int target)
+        {
+          int from = _pos + 1;
+          if (from >= _values.length) return -1;
+          if (_values[from] < target)
+          {
+            int i = Arrays.binarySearch(_values, from, _values.length, (char)target);
+            from = i >= 0 ? i : -(i + 1);
+          }
+          _pos = from;
+          return _pos < _values.length ? _values[_pos] : -1;
+        }
+      };
+    }
+  }
+
+  static final class BitmapContainer extends Container
+  {
+    private final long[] _words;
+    private final int _cardinality;
+
+    BitmapContainer(long[] words, int cardinality)
+    {
+      _words = words;
+      _cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return _cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return (_words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    long sizeInBytes()
+    {
+      return 8L * _words.length;
+    }
+
+    @Override
+    void orInto(long[] words)
+    {
+      for (int i = 0; i < WORDS_PER_BLOCK; ++i)
+      {
+        words[i] |= _words[i];
+      }
+    }
+
+    @Override
+    long[] toWords()
+    {
+      return _words.clone();
+    }
+
+    /**
+     * @return the first set bit at or after <code>from</code>, -1 if there is none
+     */
+    int nextSetBit(int from)
+    {
+      if (from >= (WORDS_PER_BLOCK << 6)) return -1;
+      int i = from >>> 6;
+      long w = _words[i] & (-1L << from);
+      while (w == 0)
+      {
+        if (++i == WORDS_PER_BLOCK) return -1;
+        w = _words[i];
+      }
+      return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    @Override
+    ContainerIterator iterator()
+    {
+      return new ContainerIterator()
+      {
+        private int _cur = -1;
+
+        public int next()
+        {
+          return (_cur = nextSetBit(_cur + 1));
+        }
+
+        public int advance(int target)
+        {
+          return (_cur = nextSetBit(Math.max(target, _cur + 1)));
+        }
+      };
+    }
+  }
+
+  static final class RunContainer extends Container
+  {
+    /** first value of every run */
+    private final char[] _starts;
+    /** last value of every run */
+    private final char[] _ends;
+    private final int _cardinality;
+
+    RunContainer(char[] starts, char[] ends)
+    {
+      _starts = starts;
+      _ends = ends;
+      int cardinality = 0;
+      for (int i = 0; i < starts.length; ++i)
+      {
+        cardinality += ends[i] - starts[i] + 1;
+      }
+      _cardinality = cardinality;
+    }
+
+    static RunContainer fromWords(long[] words, int runs)
+    {
+      char[] starts = new char[runs];
+      char[] ends = new char[runs];
+      int n = 0;
+      int bit = nextBit(words, 0, true);
+      while (bit >= 0)
+      {
+        int end = nextBit(words, bit, false);
+        if (end < 0) end = WORDS_PER_BLOCK << 6;
+        starts[n] = (char)bit;
+        ends[n++] = (char)(end - 1);
+        bit = nextBit(words, end, true);
+      }
+      return new RunContainer(starts, ends);
+    }
+
+    /**
+     * @return the first bit at or after <code>from</code> that is set, or clear, -1 if there is none
+     */
+    private static int nextBit(long[] words, int from, boolean set)
+    {
+      if (from >= (WORDS_PER_BLOCK << 6)) return -1;
+      int i = from >>> 6;
+      long w = (set ? words[i] : ~words[i]) & (-1L << from);
+      while (w == 0)
+      {
+        if (++i == WORDS_PER_BLOCK) return -1;
+        w = set ? words[i] : ~words[i];
+      }
+      return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    @Override
+    int cardinality()
+    {
+      return _cardinality;
+    }
+
+    /**
+     * @return the run that holds a value, or -(insertion point) - 1
+     */
+    private int run(int low)
+    {
+      int i = Arrays.binarySearch(_starts, (char)low);
+      if (i >= 0) return i;
+      int prev = -(i + 1) - 1;
+      return prev >= 0 && _ends[prev] >= low ? prev : i;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return run(low) >= 0;
+    }
+
+    @Override
+    long sizeInBytes()
+    {
+      return 4L * _starts.length;
+    }
+
+    @Override
+    void orInto(long[] words)
+    {
+      for (int i = 0; i < _starts.length; ++i)
+      {
+        setRange(words, _starts[i], _ends[i] + 1);
+      }
+    }
+
+    @Override
+    ContainerIterator iterator()
+    {
+      return new ContainerIterator()
+      {
+        private int _run = 0;
+        private int _cur = -1;
+
+        public int next()
+        {
+          if (_run >= _starts.length) return -1;
+          if (_cur < _starts[_run])
+          {
+            return (_cur = _starts[_run]);
+          }
+          if (_cur < _ends[_run])
+          {
+            return ++_cur;
+          }
+          if (++_run >= _starts.length) return -1;
+          return (_cur = _starts[_run]);
+        }
+
+        public int advance(int target)
+        {
+          if (target <= _cur) return next();
+          if (_run >= _starts.length) return -1;
+          if (target > _ends[_run])
+          {
+            int r = run(target);
+            _run = r >= 0 ? r : -(r + 1);
+            if (_run >= _starts.length) return -1;
+          }
+          return (_cur = Math.max(target, (int)_starts[_run]));
+        }
+      };
+    }
+  }
+}
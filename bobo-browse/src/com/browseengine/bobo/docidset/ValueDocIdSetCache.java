@@ -0,0 +1,216 @@
+package com.browseengine.bobo.docidset;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the doc sets of single facet values of one segment, for the values that get selected most.
+ * A value is only cached once it has been selected {@link #ADMIT_COUNT} times; selection counts are
+ * kept for a bounded number of values and halved when that bound is hit, so values that stop being
+ * selected lose their standing. Cached sets are kept within a byte budget and evicted least recently
+ * used first.
+ * <p>
+ * A set is stored as a {@link RoaringDocIdSet}, so rare values cost a few bytes per doc, common values
+ * about one bit per doc of the segment, and cached sets of several clauses are combined block by block.
+ * <p>
+ * Like the {@link com.browseengine.bobo.search.FacetCountCache}, a cache held by a segment reader stays
+ * valid for the life of that reader.
+ */
+public class ValueDocIdSetCache
+{
+  /** number of selections after which a value is cached */
+  public static final int ADMIT_COUNT = 2;
+
+  private static final int MAX_COUNTED_VALUES = 4096;
+
+  private final long _maxBytes;
+  private long _bytes = 0L;
+  private final LinkedHashMap<Key,Entry> _cache;
+  private final Map<Key,int[]> _selectionCounts = new HashMap<Key,int[]>();
+  private final AtomicLong _hitCount = new AtomicLong();
+  private final AtomicLong _missCount = new AtomicLong();
+
+  /**
+   * @param maxBytes bound on the summed size of the cached doc sets
+   */
+  public ValueDocIdSetCache(long maxBytes)
+  {
+    _maxBytes = maxBytes;
+    _cache = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+  }
+
+  public long getMaxBytes()
+  {
+    return _maxBytes;
+  }
+
+  /**
+   * Records a selection of a value and gets its doc set. The value is cached when it has been selected
+   * often enough and its set fits the budget.
+   * @param facetName facet of the value
+   * @param index index of the value in the facet's value list
+   * @param freq number of docs with the value, or an upper bound of it
+   * @param maxDoc maxDoc of the segment
+   * @param docs uncached doc set of the value, iterated to fill the cache
+   * @return the cached set, or <code>docs</code> if the value is not cached
+   * @throws IOException
+   */
+  public RandomAccessDocIdSet get(String facetName, int index, int freq, int maxDoc, RandomAccessDocIdSet docs) throws IOException
+  {
+    Key key = new Key(facetName, index);
+    synchronized(this)
+    {
+      Entry entry = _cache.get(key);
+      if (entry != null)
+      {
+        _hitCount.incrementAndGet();
+        return entry._docs;
+      }
+      _missCount.incrementAndGet();
+      if (!admit(key) || sizeOf(freq, maxDoc) > _maxBytes)
+      {
+        return docs;
+      }
+    }
+    Entry entry = build(docs);
+    synchronized(this)
+    {
+      Entry old = _cache.put(key, entry);
+      _bytes += entry._bytes - (old == null ? 0 : old._bytes);
+      Iterator<Entry> iter = _cache.values().iterator();
+      while (_bytes > _maxBytes && iter.hasNext())
+      {
+        _bytes -= iter.next()._bytes;
+        iter.remove();
+      }
+      _selectionCounts.remove(key);
+    }
+    return entry._docs;
+  }
+
+  private boolean admit(Key key)
+  {
+    int[] count = _selectionCounts.get(key);
+    if (count == null)
+    {
+      if (_selectionCounts.size() >= MAX_COUNTED_VALUES)
+      {
+        age();
+      }
+      count = new int[1];
+      _selectionCounts.put(key, count);
+    }
+    return ++count[0] >= ADMIT_COUNT;
+  }
+
+  /**
+   * Halves the selection counts and forgets the values whose count drops to 0.
+   */
+  private void age()
+  {
+    Iterator<int[]> iter = _selectionCounts.values().iterator();
+    while (iter.hasNext())
+    {
+      int[] count = iter.next();
+      count[0] >>= 1;
+      if (count[0] == 0)
+      {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Estimates the size of a roaring set of freq docs, before runs are taken into account.
+   */
+  private static long sizeOf(int freq, int maxDoc)
+  {
+    return Math.min(2L * freq, bitsetSize(maxDoc));
+  }
+
+  private static long bitsetSize(int maxDoc)
+  {
+    return 8L * ((maxDoc + 63) >>> 6);
+  }
+
+  private static Entry build(RandomAccessDocIdSet docs) throws IOException
+  {
+    RoaringDocIdSet set = RoaringDocIdSet.copyOf(docs);
+    return new Entry(set, set.sizeInBytes());
+  }
+
+  /**
+   * @return number of cached values
+   */
+  public synchronized int size()
+  {
+    return _cache.size();
+  }
+
+  /**
+   * @return summed size of the cached doc sets in bytes
+   */
+  public synchronized long getBytes()
+  {
+    return _bytes;
+  }
+
+  public synchronized void clear()
+  {
+    _cache.clear();
+    _selectionCounts.clear();
+    _bytes = 0L;
+  }
+
+  public long getHitCount()
+  {
+    return _hitCount.get();
+  }
+
+  public long getMissCount()
+  {
+    return _missCount.get();
+  }
+
+  private static final class Entry
+  {
+    final RandomAccessDocIdSet _docs;
+    final long _bytes;
+
+    Entry(RandomAccessDocIdSet docs, long bytes)
+    {
+      _docs = docs;
+      _bytes = bytes;
+    }
+  }
+
+  private static final class Key
+  {
+    private final String _facetName;
+    private final int _index;
+
+    Key(String facetName, int index)
+    {
+      _facetName = facetName;
+      _index = index;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * _facetName.hashCode() + _index;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key)o;
+      return _index == other._index && _facetName.equals(other._facetName);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.browseengine.bobo.facets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import java.util.Collections;
 import java.util.Comparator;
@@ -26,6 +27,9 @@ import com.browseengine.bobo.facets.impl.CombinedFloatFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedIntFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedLongFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedShortFacetIterator;
+import com.browseengine.bobo.facets.impl.FacetHitcountComparatorFactory;
+import com.browseengine.bobo.util.IntBoundedPriorityQueue;
+import com.browseengine.bobo.util.IntBoundedPriorityQueue.IntComparator;
 
 /**
  * @author nnarkhed
@@ -115,34 +119,7 @@ public class CombinedFacetAccessible implements FacetAccessible
       };       
       if(maxCnt != Integer.MAX_VALUE)
       {
-        // we will maintain a min heap of size maxCnt
-        // Order by hits in descending order and max count is supplied
-        PriorityQueue queue = createPQ(maxCnt, comparator);
-        int qsize = 0;
-        while( (qsize < maxCnt) && ((facet = iter.next(minHits)) != null) )
-        {
-          queue.add(new BrowseFacet(String.valueOf(facet), iter.count));
-          qsize++;
-        }
-        if(facet != null)
-        {
-          BrowseFacet rootFacet = (BrowseFacet)queue.top();
-          minHits = rootFacet.getHitCount() + 1;
-          // facet count less than top of min heap, it will never be added 
-          while(((facet = iter.next(minHits)) != null))
-          {
-            rootFacet.setValue(String.valueOf(facet));
-            rootFacet.setHitCount(iter.count);
-            rootFacet = (BrowseFacet) queue.updateTop();
-            minHits = rootFacet.getHitCount() + 1;
-          }
-        }
-        // at this point, queue contains top maxCnt facets that have hitcount >= minHits
-        while(qsize-- > 0)
-        {
-          // append each entry to the beginning of the facet list to order facets by hits descending
-          list.addFirst((BrowseFacet) queue.pop());
-        }
+        return getTopFacetsByHits(iter, maxCnt, minHits);
       }
       else
       {
@@ -190,6 +167,271 @@ public class CombinedFacetAccessible implements FacetAccessible
     return list;
   }
 
+  /**
+   * Gets the maxCnt facets with the most hits. The candidates are ranked in a primitive heap of slots,
+   * their values are kept unformatted in the slots and only the winners become {@link BrowseFacet}s.
+   * A full heap only takes facets with more hits than its head, so among facets with equal hits the
+   * ones that come first in value order are kept.
+   */
+  private static List<BrowseFacet> getTopFacetsByHits(FacetIterator iter, int maxCnt, int minHits)
+  {
+    FacetValueSlots values = createValueSlots(iter, maxCnt, minHits);
+    final int[] counts = new int[maxCnt];
+    final int[] seqs = new int[maxCnt];
+    IntBoundedPriorityQueue queue = new IntBoundedPriorityQueue(new IntComparator()
+    {
+      public int compare(Integer s1, Integer s2)
+      {
+        return compare(s1.intValue(), s2.intValue());
+      }
+
+      // the head is the slot with the fewest hits, the latest one on ties
+      public int compare(int s1, int s2)
+      {
+        int val = counts[s1] - counts[s2];
+        if (val == 0)
+        {
+          val = seqs[s2] - seqs[s1];
+        }
+        return val;
+      }
+    }, maxCnt, -1);
+
+    int seq = 0;
+    while (seq < maxCnt && values.next(minHits))
+    {
+      counts[seq] = iter.count;
+      seqs[seq] = seq;
+      values.store(seq);
+      queue.offer(seq);
+      seq++;
+    }
+    if (seq == maxCnt)
+    {
+      int slot = queue.intElement();
+      while (values.next(Math.max(minHits, counts[slot] + 1)))
+      {
+        counts[slot] = iter.count;
+        seqs[slot] = seq++;
+        values.store(slot);
+        queue.updateTop();
+        slot = queue.intElement();
+      }
+    }
+
+    BrowseFacet[] facets = new BrowseFacet[queue.size()];
+    for (int i = facets.length - 1; i >= 0; --i)
+    {
+      int slot = queue.pollInt();
+      facets[i] = new BrowseFacet(values.format(slot), counts[slot]);
+    }
+    // same order as sorting all facets, ties are ordered by the formatted value
+    Arrays.sort(facets, FacetHitcountComparatorFactory.FACET_HITS_COMPARATOR);
+    return new ArrayList<BrowseFacet>(Arrays.asList(facets));
+  }
+
+  private static FacetValueSlots createValueSlots(FacetIterator iter, int maxCnt, int minHits)
+  {
+    // the primitive iterators report the end by a count below minHits, which needs minHits > 0
+    if (minHits > 0)
+    {
+      if (iter instanceof IntFacetIterator) return new IntValueSlots((IntFacetIterator)iter, maxCnt);
+      if (iter instanceof LongFacetIterator) return new LongValueSlots((LongFacetIterator)iter, maxCnt);
+      if (iter instanceof ShortFacetIterator) return new ShortValueSlots((ShortFacetIterator)iter, maxCnt);
+      if (iter instanceof FloatFacetIterator) return new FloatValueSlots((FloatFacetIterator)iter, maxCnt);
+      if (iter instanceof DoubleFacetIterator) return new DoubleValueSlots((DoubleFacetIterator)iter, maxCnt);
+    }
+    return new ObjectValueSlots(iter, maxCnt);
+  }
+
+  /**
+   * Advances a facet iterator and keeps the values of the current facet in numbered slots without
+   * formatting them.
+   */
+  private static abstract class FacetValueSlots
+  {
+    /**
+     * Moves to the next facet with at least minHits hits, its count is in the iterator.
+     * @return false if there is no such facet
+     */
+    abstract boolean next(int minHits);
+    abstract void store(int slot);
+    abstract String format(int slot);
+  }
+
+  private static final class ObjectValueSlots extends FacetValueSlots
+  {
+    private final FacetIterator _iter;
+    private final Comparable[] _vals;
+    private Comparable _facet;
+
+    ObjectValueSlots(FacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new Comparable[size];
+    }
+
+    boolean next(int minHits)
+    {
+      return (_facet = _iter.next(minHits)) != null;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return String.valueOf(_vals[slot]);
+    }
+  }
+
+  private static final class IntValueSlots extends FacetValueSlots
+  {
+    private final IntFacetIterator _iter;
+    private final int[] _vals;
+    private int _facet;
+
+    IntValueSlots(IntFacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new int[size];
+    }
+
+    boolean next(int minHits)
+    {
+      _facet = _iter.nextInt(minHits);
+      return _iter.count >= minHits;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return _iter.format(_vals[slot]);
+    }
+  }
+
+  private static final class LongValueSlots extends FacetValueSlots
+  {
+    private final LongFacetIterator _iter;
+    private final long[] _vals;
+    private long _facet;
+
+    LongValueSlots(LongFacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new long[size];
+    }
+
+    boolean next(int minHits)
+    {
+      _facet = _iter.nextLong(minHits);
+      return _iter.count >= minHits;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return _iter.format(_vals[slot]);
+    }
+  }
+
+  private static final class ShortValueSlots extends FacetValueSlots
+  {
+    private final ShortFacetIterator _iter;
+    private final short[] _vals;
+    private short _facet;
+
+    ShortValueSlots(ShortFacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new short[size];
+    }
+
+    boolean next(int minHits)
+    {
+      _facet = _iter.nextShort(minHits);
+      return _iter.count >= minHits;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return _iter.format(_vals[slot]);
+    }
+  }
+
+  private static final class FloatValueSlots extends FacetValueSlots
+  {
+    private final FloatFacetIterator _iter;
+    private final float[] _vals;
+    private float _facet;
+
+    FloatValueSlots(FloatFacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new float[size];
+    }
+
+    boolean next(int minHits)
+    {
+      _facet = _iter.nextFloat(minHits);
+      return _iter.count >= minHits;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return _iter.format(_vals[slot]);
+    }
+  }
+
+  private static final class DoubleValueSlots extends FacetValueSlots
+  {
+    private final DoubleFacetIterator _iter;
+    private final double[] _vals;
+    private double _facet;
+
+    DoubleValueSlots(DoubleFacetIterator iter, int size)
+    {
+      _iter = iter;
+      _vals = new double[size];
+    }
+
+    boolean next(int minHits)
+    {
+      _facet = _iter.nextDouble(minHits);
+      return _iter.count >= minHits;
+    }
+
+    void store(int slot)
+    {
+      _vals[slot] = _facet;
+    }
+
+    String format(int slot)
+    {
+      return _iter.format(_vals[slot]);
+    }
+  }
+
   private PriorityQueue createPQ(final int max, final Comparator<BrowseFacet> comparator)
   {
     PriorityQueue queue = new PriorityQueue()
@@ -17,6 +17,15 @@ public interface FacetCountCollector extends FacetAccessible
 	 */
 	void collect(int docid);
 	
+	/**
+	 * Collects a batch of hits, equivalent to calling {@link #collect(int)} for each of the first
+	 * <code>len</code> entries of <code>docs</code>. The facet engine buffers hits and hands them over
+	 * in batches so the counting loop runs without a virtual call per hit.
+	 * @param docs buffer of docids in increasing order
+	 * @param len number of valid entries in docs
+	 */
+	void collect(int[] docs, int len);
+	
 	/**
 	 * Collects all hits. This is called once per request by the facet engine in certain scenarios. 
 	 */
@@ -39,6 +39,9 @@ public abstract class FacetHandler<D>
 	private final Set<String> _dependsOn;
 	private final Map<String,FacetHandler<?>> _dependedFacetHandlers;
 	private TermCountSize _termCountSize;
+	private boolean _snapshotEnabled;
+	private boolean _blockSummaryEnabled;
+	private ArrayStorage _arrayStorage;
 	
 	public static enum TermCountSize{
 		small,
@@ -46,6 +49,18 @@ public abstract class FacetHandler<D>
 		large
 	}
 	
+	/**
+	 * Where the per document arrays of the facet data are stored.
+	 * <ul>
+	 *  <li>heap: int/short/byte arrays on the java heap</li>
+	 *  <li>direct: direct buffers outside of the java heap, which keeps large facet data out of the old generation</li>
+	 * </ul>
+	 */
+	public static enum ArrayStorage{
+		heap,
+		direct
+	}
+	
 	/**
 	 * Constructor
 	 * @param name name
@@ -61,6 +76,7 @@ public abstract class FacetHandler<D>
 		}
 		_dependedFacetHandlers = new HashMap<String,FacetHandler<?>>();
 		_termCountSize = TermCountSize.large;
+		_arrayStorage = ArrayStorage.heap;
 	}
 	
 	public void setTermCountSize(String termCountSize){
@@ -75,6 +91,47 @@ public abstract class FacetHandler<D>
 		return _termCountSize;
 	}
 	
+	public void setArrayStorage(String arrayStorage){
+		setArrayStorage(ArrayStorage.valueOf(arrayStorage.toLowerCase()));
+	}
+	
+	public void setArrayStorage(ArrayStorage arrayStorage){
+		_arrayStorage = arrayStorage;
+	}
+	
+	public ArrayStorage getArrayStorage(){
+		return _arrayStorage;
+	}
+	
+	/**
+	 * Enables on-disk snapshots of the facet data, so that a restart or a reopen
+	 * does not need to walk the terms again. Only applies to handlers backed by a
+	 * {@link com.browseengine.bobo.facets.data.FacetDataCache} over a segment stored in a file system directory.
+	 * @param snapshotEnabled
+	 */
+	public void setSnapshotEnabled(boolean snapshotEnabled){
+		_snapshotEnabled = snapshotEnabled;
+	}
+	
+	public boolean isSnapshotEnabled(){
+		return _snapshotEnabled;
+	}
+	
+	/**
+	 * Builds the per block bounds of the value indexes when the facet data is loaded, see
+	 * {@link com.browseengine.bobo.facets.data.OrdinalBlockSummary}. Value and range filters then skip
+	 * the blocks of docs without the selected values, which pays off when values cluster by doc id.
+	 * Only applies to handlers backed by a single valued {@link com.browseengine.bobo.facets.data.FacetDataCache}.
+	 * @param blockSummaryEnabled
+	 */
+	public void setBlockSummaryEnabled(boolean blockSummaryEnabled){
+		_blockSummaryEnabled = blockSummaryEnabled;
+	}
+	
+	public boolean isBlockSummaryEnabled(){
+		return _blockSummaryEnabled;
+	}
+	
 	/**
 	 * Constructor
 	 * @param name name
@@ -152,6 +209,44 @@ public abstract class FacetHandler<D>
 	{
 	  reader.putFacetData(_name, load(reader));
 	}
+	
+	/**
+	 * Loads facet data for a reopened segment reader whose only change is more deleted docs.
+	 * The data of the previous reader is carried over if {@link #reuseFacetData(BoboIndexReader, BoboIndexReader, Object)}
+	 * supports it, otherwise it is loaded again.
+	 * @param reader reopened reader
+	 * @param oldReader previous reader of the same segment
+	 * @param workArea
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public void loadFacetData(BoboIndexReader reader, BoboIndexReader oldReader, BoboIndexReader.WorkArea workArea) throws IOException
+	{
+	  D data = null;
+	  Object oldData = oldReader.getFacetData(_name);
+	  if (oldData != null)
+	  {
+	    data = reuseFacetData(reader, oldReader, (D)oldData);
+	  }
+	  if (data == null)
+	  {
+	    data = load(reader, workArea);
+	  }
+	  reader.putFacetData(_name, data);
+	}
+	
+	/**
+	 * Carries facet data over to a reader of the same segment that only has more deleted docs.
+	 * @param reader reopened reader
+	 * @param oldReader previous reader of the same segment
+	 * @param oldData facet data of oldReader
+	 * @return facet data for reader, or null (the default) if the data has to be loaded again
+	 * @throws IOException
+	 */
+	public D reuseFacetData(BoboIndexReader reader, BoboIndexReader oldReader, D oldData) throws IOException
+	{
+	  return null;
+	}
 
 	/**
 	 * Gets a filter from a given selection
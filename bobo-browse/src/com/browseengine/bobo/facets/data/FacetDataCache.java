@@ -3,8 +3,12 @@ package com.browseengine.bobo.facets.data;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
@@ -12,14 +16,20 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.NumericUtils;
 
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.FacetHandler.ArrayStorage;
 import com.browseengine.bobo.facets.FacetHandler.TermCountSize;
 import com.browseengine.bobo.sort.DocComparator;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.BigByteArray;
+import com.browseengine.bobo.util.BigDirectByteArray;
+import com.browseengine.bobo.util.BigDirectIntArray;
+import com.browseengine.bobo.util.BigDirectShortArray;
 import com.browseengine.bobo.util.BigIntArray;
+import com.browseengine.bobo.util.BigNestedIntArray;
 import com.browseengine.bobo.util.BigSegmentedArray;
 import com.browseengine.bobo.util.BigShortArray;
 
@@ -36,6 +46,11 @@ public class FacetDataCache<T> implements Serializable {
 	public int[] minIDs;
 	public int[] maxIDs;
 	private final TermCountSize _termCountSize;
+	private boolean _snapshotEnabled = false;
+	private boolean _blockSummaryEnabled = false;
+	private ArrayStorage _arrayStorage = ArrayStorage.heap;
+	private String _fieldName;
+	private transient OrdinalBlockSummary _blockSummary;
 	
 	public FacetDataCache(BigSegmentedArray orderArray,TermValueList<T> valArray,int[] freqs,int[] minIDs,int[] maxIDs,TermCountSize termCountSize)
 	{
@@ -57,7 +72,91 @@ public class FacetDataCache<T> implements Serializable {
 	  _termCountSize = TermCountSize.large;
 	}
 	
-	private final static BigSegmentedArray newInstance(TermCountSize termCountSize,int maxDoc){
+	public TermCountSize getTermCountSize()
+	{
+	  return _termCountSize;
+	}
+	
+	/**
+	 * Enables loading from and writing to on-disk snapshots, see {@link FacetDataCacheSnapshot}.
+	 * @param snapshotEnabled
+	 */
+	public void setSnapshotEnabled(boolean snapshotEnabled)
+	{
+	  _snapshotEnabled = snapshotEnabled;
+	}
+	
+	public boolean isSnapshotEnabled()
+	{
+	  return _snapshotEnabled;
+	}
+	
+	/**
+	 * Enables building the {@link OrdinalBlockSummary} of the order array when this cache is loaded.
+	 * @param blockSummaryEnabled
+	 */
+	public void setBlockSummaryEnabled(boolean blockSummaryEnabled)
+	{
+	  _blockSummaryEnabled = blockSummaryEnabled;
+	}
+	
+	public boolean isBlockSummaryEnabled()
+	{
+	  return _blockSummaryEnabled;
+	}
+	
+	/**
+	 * Sets where the order array is allocated when this cache is loaded.
+	 * @param arrayStorage
+	 */
+	public void setArrayStorage(ArrayStorage arrayStorage)
+	{
+	  _arrayStorage = arrayStorage;
+	}
+	
+	public ArrayStorage getArrayStorage()
+	{
+	  return _arrayStorage;
+	}
+	
+	/**
+	 * @return the indexed field the data was loaded from, null if it was not loaded from an index field
+	 */
+	public String getFieldName()
+	{
+	  return _fieldName;
+	}
+	
+	protected void setFieldName(String fieldName)
+	{
+	  _fieldName = fieldName;
+	}
+	
+	/**
+	 * Gets the per block bounds of the order array. Only meaningful for single valued data, where the
+	 * order array holds the value index of every doc.
+	 * @return the summary, null unless it was enabled with {@link #setBlockSummaryEnabled(boolean)} before loading
+	 */
+	public OrdinalBlockSummary getBlockSummary()
+	{
+	  return _blockSummary;
+	}
+	
+	private void loadBlockSummary()
+	{
+	  _blockSummary = (_blockSummaryEnabled && orderArray != null) ? new OrdinalBlockSummary(orderArray) : null;
+	}
+	
+	final static BigSegmentedArray newInstance(TermCountSize termCountSize,ArrayStorage arrayStorage,int maxDoc){
+		if (arrayStorage == ArrayStorage.direct){
+			if (termCountSize == TermCountSize.small){
+				return new BigDirectByteArray(maxDoc);
+			}
+			else if (termCountSize == TermCountSize.medium){
+				return new BigDirectShortArray(maxDoc);
+			}
+			else return new BigDirectIntArray(maxDoc);
+		}
 		if (termCountSize == TermCountSize.small){
 			return new BigByteArray(maxDoc);
 		}
@@ -71,11 +170,26 @@ public class FacetDataCache<T> implements Serializable {
   {
     String field = fieldName.intern();
     int maxDoc = reader.maxDoc();
+    _fieldName = field;
+    _blockSummary = null;
+
+    File snapshot = (_snapshotEnabled ? FacetDataCacheSnapshot.getSnapshotFile(reader, field) : null);
+    if (snapshot != null && FacetDataCacheSnapshot.read(snapshot, field, reader, this, listFactory))
+    {
+      loadBlockSummary();
+      return;
+    }
+    List<String> terms = null;
+    if (snapshot != null)
+    {
+      terms = new ArrayList<String>();
+      terms.add(null);
+    }
 
     BigSegmentedArray order = this.orderArray;
     if (order == null) // we want to reuse the memory
     {
-      order = newInstance(_termCountSize, maxDoc);
+      order = newInstance(_termCountSize, _arrayStorage, maxDoc);
     } else
     {
       order.ensureCapacity(maxDoc); // no need to fill to 0, we are reseting the
@@ -120,6 +234,7 @@ public class FacetDataCache<T> implements Serializable {
               + "documents in field \"" + field
               + "\", but it's impossible to sort on " + "tokenized fields");
         list.add(term.text());
+        if (terms != null) terms.add(term.text());
         termDocs.seek(termEnum);
         // freqList.add(termEnum.docFreq()); // doesn't take into account
         // deldocs
@@ -157,6 +272,125 @@ public class FacetDataCache<T> implements Serializable {
     this.freqs = freqList.toIntArray();
     this.minIDs = minIDList.toIntArray();
     this.maxIDs = maxIDList.toIntArray();
+    loadBlockSummary();
+
+    if (snapshot != null)
+    {
+      FacetDataCacheSnapshot.write(snapshot, field, reader, this, terms);
+    }
+  }
+
+  /**
+   * Creates the cache of a newer reader of the same segment, which only has more deleted docs.
+   * The postings did not change, so the order array and the value list are shared with this cache,
+   * and only freqs, minIDs and maxIDs are updated for the newly deleted docs.
+   * @param oldReader reader this cache was loaded for
+   * @param newReader reader of the same segment with more deleted docs
+   * @return the cache for newReader
+   * @throws IOException
+   */
+  public FacetDataCache<T> withDeletions(IndexReader oldReader, IndexReader newReader) throws IOException
+  {
+    FacetDataCache<T> dataCache = new FacetDataCache<T>(orderArray, valArray, freqs.clone(), minIDs.clone(), maxIDs.clone(), _termCountSize);
+    dataCache.setSnapshotEnabled(_snapshotEnabled);
+    dataCache.setArrayStorage(_arrayStorage);
+    dataCache.setBlockSummaryEnabled(_blockSummaryEnabled);
+    dataCache.setFieldName(_fieldName);
+    // deleted docs keep their value index, the bounds still hold
+    dataCache._blockSummary = _blockSummary;
+    dataCache.applyDeletions(getNewDeletions(oldReader, newReader), newReader);
+    return dataCache;
+  }
+
+  /**
+   * Gets the value indexes of a doc
+   * @param docid
+   * @param buf buffer of {@link com.browseengine.bobo.util.BigNestedIntArray#MAX_ITEMS} entries
+   * @return number of values
+   */
+  protected int getValues(int docid, int[] buf)
+  {
+    buf[0] = orderArray.get(docid);
+    return 1;
+  }
+
+  protected boolean containsValue(int docid, int index)
+  {
+    return orderArray.get(docid) == index;
+  }
+
+  protected final void applyDeletions(int[] deletedDocs, IndexReader reader)
+  {
+    int[] buf = new int[BigNestedIntArray.MAX_ITEMS];
+    BitSet changed = new BitSet(freqs.length);
+    for (int docid : deletedDocs)
+    {
+      int num = getValues(docid, buf);
+      for (int i = 0; i < num; ++i)
+      {
+        int index = buf[i];
+        if (index > 0)
+        {
+          freqs[index]--;
+          changed.set(index);
+        }
+      }
+    }
+
+    for (int index = changed.nextSetBit(0); index >= 0; index = changed.nextSetBit(index + 1))
+    {
+      if (freqs[index] <= 0)
+      {
+        minIDs[index] = -1;
+        maxIDs[index] = -1;
+        continue;
+      }
+      int minID = minIDs[index];
+      while (reader.isDeleted(minID) || !containsValue(minID, index))
+      {
+        minID++;
+      }
+      minIDs[index] = minID;
+      int maxID = maxIDs[index];
+      while (reader.isDeleted(maxID) || !containsValue(maxID, index))
+      {
+        maxID--;
+      }
+      maxIDs[index] = maxID;
+    }
+  }
+
+  /**
+   * Gets the docs that are deleted in newReader but not in oldReader.
+   * newReader has to be a reader of the same segment with a superset of the deleted docs of oldReader.
+   */
+  protected static int[] getNewDeletions(IndexReader oldReader, IndexReader newReader) throws IOException
+  {
+    IntArrayList deleted = new IntArrayList();
+    TermDocs oldDocs = oldReader.termDocs(null);
+    TermDocs newDocs = newReader.termDocs(null);
+    try
+    {
+      int newDoc = (newDocs.next() ? newDocs.doc() : Integer.MAX_VALUE);
+      while (oldDocs.next())
+      {
+        int docid = oldDocs.doc();
+        while (newDoc < docid)
+        {
+          newDoc = (newDocs.next() ? newDocs.doc() : Integer.MAX_VALUE);
+        }
+        if (newDoc != docid)
+        {
+          deleted.add(docid);
+        }
+      }
+    }
+    finally
+    {
+      oldDocs.close();
+      newDocs.close();
+    }
+    return deleted.toIntArray();
   }
 	
 	private static int[] convertString(FacetDataCache dataCache,String[] vals)
@@ -197,6 +431,24 @@ public class FacetDataCache<T> implements Serializable {
     return list.toIntArray();
   }
 
+  private static boolean hasSortKeys(TermValueList<?> valArray){
+    return valArray instanceof TermIntList || valArray instanceof TermLongList || valArray instanceof TermShortList
+        || valArray instanceof TermFloatList || valArray instanceof TermDoubleList;
+  }
+
+  /**
+   * @return the primitive value at an index of a list of numbers as a long that sorts the same way
+   */
+  private static long sortKey(TermValueList<?> valArray, int index){
+    // docs without a value, sorted first like their index
+    if (index == 0) return Long.MIN_VALUE;
+    if (valArray instanceof TermIntList) return ((TermIntList)valArray).getPrimitiveValue(index);
+    if (valArray instanceof TermLongList) return ((TermLongList)valArray).getPrimitiveValue(index);
+    if (valArray instanceof TermShortList) return ((TermShortList)valArray).getPrimitiveValue(index);
+    if (valArray instanceof TermFloatList) return NumericUtils.floatToSortableInt(((TermFloatList)valArray).getPrimitiveValue(index));
+    return NumericUtils.doubleToSortableLong(((TermDoubleList)valArray).getPrimitiveValue(index));
+  }
+
   public static class FacetDocComparatorSource extends DocComparatorSource{
 		private FacetHandler<FacetDataCache> _facetHandler;
 		public FacetDocComparatorSource(FacetHandler<FacetDataCache> facetHandler){
@@ -222,6 +474,47 @@ public class FacetDataCache<T> implements Serializable {
 				public int compare(ScoreDoc doc1, ScoreDoc doc2) {
 					return orderArray.get(doc1.doc) - orderArray.get(doc2.doc);	
 				}
+
+				// indexes whose values equal the bottom value, an empty range where it falls between two values
+				private int _bottomLow;
+				private int _bottomHigh;
+
+				@Override
+				public boolean setBottomValue(Comparable value) {
+					TermValueList<?> valArray = dataCache.valArray;
+					if (value == null || valArray.size() < 2) return false;
+					int index = valArray.indexOf(value);
+					if (value.equals(valArray.get(0))) {
+						// docs without a value, the search skips their index
+						_bottomLow = 0;
+						_bottomHigh = index == 1 ? 1 : 0;
+					}
+					else if (index >= 0) {
+						_bottomLow = _bottomHigh = index;
+					}
+					else {
+						_bottomLow = -index - 1;
+						_bottomHigh = _bottomLow - 1;
+					}
+					return true;
+				}
+
+				@Override
+				public int compareBottom(ScoreDoc doc) {
+					int index = orderArray.get(doc.doc);
+					return index < _bottomLow ? -1 : (index > _bottomHigh ? 1 : 0);
+				}
+
+				@Override
+				public int sortKeyCount() {
+					// the indexes of strings only hold in their segment
+					return hasSortKeys(dataCache.valArray) ? 1 : 0;
+				}
+
+				@Override
+				public long sortKey(ScoreDoc doc, int i) {
+					return FacetDataCache.sortKey(dataCache.valArray, orderArray.get(doc.doc));
+				}
 			};
 		}
 	}
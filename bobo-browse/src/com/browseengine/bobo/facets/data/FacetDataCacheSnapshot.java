@@ -0,0 +1,482 @@
+package com.browseengine.bobo.facets.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.util.BigNestedIntArray;
+import com.browseengine.bobo.util.BigSegmentedArray;
+
+/**
+ * Reads and writes on-disk snapshots of {@link FacetDataCache} and {@link MultiValueFacetDataCache}.
+ * <p>
+ * A snapshot is keyed by segment name and field, and is written next to the segment files
+ * (only for segments stored in a {@link FSDirectory}). It is memory-mapped on load, so that a
+ * restart or a reopen skips the TermEnum/TermDocs walk. A snapshot is only used when its version,
+ * segment, field, maxDoc and deleted docs all match the reader, otherwise the cache is loaded from
+ * the index as usual and the snapshot is rewritten.
+ * <p>
+ * Lucene never reuses segment names, so the snapshots of segments that were merged away are never read
+ * again. {@link BoboIndexReader} removes them with {@link #removeStaleSnapshots(Directory, Set)} when it
+ * is opened or reopened.
+ */
+public final class FacetDataCacheSnapshot
+{
+  private static Logger logger = Logger.getLogger(FacetDataCacheSnapshot.class);
+
+  public static final String SNAPSHOT_EXTENSION = ".bfc";
+
+  private static final int MAGIC = 0x424F4243; // "BOBC"
+  public static final int VERSION = 1;
+
+  private static final byte TYPE_SINGLE = 0;
+  private static final byte TYPE_MULTI = 1;
+
+  private FacetDataCacheSnapshot()
+  {
+  }
+
+  /**
+   * Gets the snapshot file of a field of a segment.
+   * @param reader segment reader, or a {@link BoboIndexReader} wrapping one
+   * @param fieldName field name
+   * @return the snapshot file, or null if the reader is not a segment reader stored in a file system directory
+   */
+  public static File getSnapshotFile(IndexReader reader, String fieldName)
+  {
+    SegmentReader segmentReader = getSegmentReader(reader);
+    if (segmentReader == null) return null;
+
+    Directory dir = segmentReader.directory();
+    if (!(dir instanceof FSDirectory)) return null;
+
+    String segmentName = segmentReader.getSegmentName();
+    try
+    {
+      return new File(((FSDirectory)dir).getFile(), segmentName + "_" + URLEncoder.encode(fieldName, "UTF-8") + SNAPSHOT_EXTENSION);
+    }
+    catch (IOException e)
+    {
+      // UTF-8 is always supported
+      throw new RuntimeException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Deletes the snapshot files, including ones left half written, of the segments that are not live.
+   * @param dir index directory, nothing is deleted unless it is a {@link FSDirectory}
+   * @param segmentNames names of the live segments
+   * @return the number of files deleted
+   */
+  public static int removeStaleSnapshots(Directory dir, Set<String> segmentNames)
+  {
+    if (!(dir instanceof FSDirectory)) return 0;
+    File[] files = ((FSDirectory)dir).getFile().listFiles();
+    if (files == null) return 0;
+
+    int count = 0;
+    for (File file : files)
+    {
+      String name = file.getName();
+      if (!name.endsWith(SNAPSHOT_EXTENSION) && !(name.contains(SNAPSHOT_EXTENSION + ".") && name.endsWith(".tmp")))
+      {
+        continue;
+      }
+      // segment names start with '_' and have no other, the field follows the next one
+      int sep = name.indexOf('_', 1);
+      if (!name.startsWith("_") || sep < 0 || segmentNames.contains(name.substring(0, sep)))
+      {
+        continue;
+      }
+      if (file.delete())
+      {
+        ++count;
+      }
+      else
+      {
+        logger.warn("unable to delete stale facet data snapshot " + file);
+      }
+    }
+    return count;
+  }
+
+  private static SegmentReader getSegmentReader(IndexReader reader)
+  {
+    while (reader instanceof BoboIndexReader)
+    {
+      reader = ((BoboIndexReader)reader).getInnerReader();
+    }
+    return (reader instanceof SegmentReader ? (SegmentReader)reader : null);
+  }
+
+  /**
+   * Writes a single value facet data cache.
+   * @param file snapshot file
+   * @param fieldName field name
+   * @param reader reader the cache was loaded from
+   * @param dataCache loaded data cache
+   * @param terms term texts in order, the first entry (no value) is ignored
+   */
+  public static void write(File file, String fieldName, IndexReader reader, FacetDataCache<?> dataCache, List<String> terms)
+  {
+    DataOutputStream out = null;
+    File tmp = null;
+    try
+    {
+      tmp = createTempFile(file);
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      writeHeader(out, TYPE_SINGLE, fieldName, reader, dataCache, terms);
+
+      BigSegmentedArray orderArray = dataCache.orderArray;
+      int maxDoc = reader.maxDoc();
+      for (int i = 0; i < maxDoc; ++i)
+      {
+        out.writeInt(orderArray.get(i));
+      }
+      out.close();
+      out = null;
+      commit(tmp, file);
+    }
+    catch (IOException e)
+    {
+      logger.warn("unable to write facet data snapshot " + file + ": " + e.getMessage(), e);
+      closeQuietly(out);
+      out = null;
+      if (tmp != null) tmp.delete();
+    }
+    finally
+    {
+      closeQuietly(out);
+    }
+  }
+
+  /**
+   * Writes a multi value facet data cache.
+   * @param file snapshot file
+   * @param fieldName field name
+   * @param reader reader the cache was loaded from
+   * @param dataCache loaded data cache
+   * @param terms term texts in order, the first entry (no value) is ignored
+   */
+  public static void writeMultiValue(File file, String fieldName, IndexReader reader, MultiValueFacetDataCache<?> dataCache, List<String> terms)
+  {
+    DataOutputStream out = null;
+    File tmp = null;
+    try
+    {
+      tmp = createTempFile(file);
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      writeHeader(out, TYPE_MULTI, fieldName, reader, dataCache, terms);
+
+      BigNestedIntArray nestedArray = dataCache._nestedArray;
+      int[] buf = new int[BigNestedIntArray.MAX_ITEMS];
+      int maxDoc = reader.maxDoc();
+      for (int i = 0; i < maxDoc; ++i)
+      {
+        int count = nestedArray.getData(i, buf);
+        out.writeInt(count);
+        for (int k = 0; k < count; ++k)
+        {
+          out.writeInt(buf[k]);
+        }
+      }
+      out.close();
+      out = null;
+      commit(tmp, file);
+    }
+    catch (IOException e)
+    {
+      logger.warn("unable to write facet data snapshot " + file + ": " + e.getMessage(), e);
+      closeQuietly(out);
+      out = null;
+      if (tmp != null) tmp.delete();
+    }
+    finally
+    {
+      closeQuietly(out);
+    }
+  }
+
+  /**
+   * Loads a single value facet data cache from a snapshot.
+   * @return true if the snapshot was valid and loaded, false if the cache needs to be loaded from the index
+   */
+  public static <T> boolean read(File file, String fieldName, IndexReader reader, FacetDataCache<T> dataCache, TermListFactory<T> listFactory)
+  {
+    if (!file.exists()) return false;
+    try
+    {
+      ByteBuffer buf = map(file);
+      Header<T> header = readHeader(buf, TYPE_SINGLE, file, fieldName, reader, listFactory);
+      if (header == null) return false;
+
+      int maxDoc = reader.maxDoc();
+      BigSegmentedArray order = dataCache.orderArray;
+      if (order == null)
+      {
+        order = FacetDataCache.newInstance(dataCache.getTermCountSize(), dataCache.getArrayStorage(), maxDoc);
+      }
+      else
+      {
+        order.ensureCapacity(maxDoc);
+      }
+      if (header.valArray.size() - 1 > order.maxValue())
+      {
+        logger.info("facet data snapshot " + file + " does not fit the term count size, ignored");
+        return false;
+      }
+      for (int i = 0; i < maxDoc; ++i)
+      {
+        order.add(i, buf.getInt());
+      }
+
+      dataCache.orderArray = order;
+      dataCache.valArray = header.valArray;
+      dataCache.freqs = header.freqs;
+      dataCache.minIDs = header.minIDs;
+      dataCache.maxIDs = header.maxIDs;
+      return true;
+    }
+    catch (Exception e)
+    {
+      logger.warn("unable to read facet data snapshot " + file + ": " + e.getMessage(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Loads a multi value facet data cache from a snapshot.
+   * @return true if the snapshot was valid and loaded, false if the cache needs to be loaded from the index
+   */
+  public static <T> boolean readMultiValue(File file, String fieldName, IndexReader reader, MultiValueFacetDataCache<T> dataCache, TermListFactory<T> listFactory)
+  {
+    if (!file.exists()) return false;
+    try
+    {
+      final ByteBuffer buf = map(file);
+      Header<T> header = readHeader(buf, TYPE_MULTI, file, fieldName, reader, listFactory);
+      if (header == null) return false;
+
+      final int maxDoc = reader.maxDoc();
+      final int maxItems = dataCache._nestedArray.getMaxItems();
+      dataCache._nestedArray.load(maxDoc, new BigNestedIntArray.Loader()
+      {
+        @Override
+        public void load() throws Exception
+        {
+          int[] data = new int[BigNestedIntArray.MAX_ITEMS];
+          for (int i = 0; i < maxDoc; ++i)
+          {
+            int count = buf.getInt();
+            for (int k = 0; k < count; ++k)
+            {
+              data[k] = buf.getInt();
+            }
+            if (count > 0)
+            {
+              add(i, data, 0, Math.min(count, maxItems));
+            }
+          }
+        }
+      });
+
+      dataCache.valArray = header.valArray;
+      dataCache.freqs = header.freqs;
+      dataCache.minIDs = header.minIDs;
+      dataCache.maxIDs = header.maxIDs;
+      return true;
+    }
+    catch (Exception e)
+    {
+      logger.warn("unable to read facet data snapshot " + file + ": " + e.getMessage(), e);
+      return false;
+    }
+  }
+
+  private static final class Header<T>
+  {
+    TermValueList<T> valArray;
+    int[] freqs;
+    int[] minIDs;
+    int[] maxIDs;
+  }
+
+  private static void writeHeader(DataOutputStream out, byte type, String fieldName, IndexReader reader,
+      FacetDataCache<?> dataCache, List<String> terms) throws IOException
+  {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeByte(type);
+    writeString(out, getSegmentReader(reader).getSegmentName());
+    writeString(out, fieldName);
+    out.writeInt(reader.maxDoc());
+    out.writeInt(reader.maxDoc() - reader.numDocs());
+    out.writeLong(deletedDocsChecksum(reader));
+
+    int numTerms = terms.size();
+    out.writeInt(numTerms);
+    for (int i = 1; i < numTerms; ++i)
+    {
+      writeString(out, terms.get(i));
+    }
+    writeInts(out, dataCache.freqs, numTerms);
+    writeInts(out, dataCache.minIDs, numTerms);
+    writeInts(out, dataCache.maxIDs, numTerms);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Header<T> readHeader(ByteBuffer buf, byte type, File file, String fieldName, IndexReader reader,
+      TermListFactory<T> listFactory) throws IOException
+  {
+    if (buf.getInt() != MAGIC) throw new IOException("not a facet data snapshot");
+    int version = buf.getInt();
+    if (version != VERSION || buf.get() != type)
+    {
+      logger.info("facet data snapshot " + file + " has version " + version + ", expected " + VERSION + ", ignored");
+      return null;
+    }
+    if (!getSegmentReader(reader).getSegmentName().equals(readString(buf)) || !fieldName.equals(readString(buf)))
+    {
+      throw new IOException("segment or field does not match");
+    }
+    if (buf.getInt() != reader.maxDoc() || buf.getInt() != (reader.maxDoc() - reader.numDocs())
+        || buf.getLong() != deletedDocsChecksum(reader))
+    {
+      logger.info("facet data snapshot " + file + " is stale, ignored");
+      return null;
+    }
+
+    Header<T> header = new Header<T>();
+    int numTerms = buf.getInt();
+    TermValueList<T> list = (listFactory == null ? (TermValueList<T>)new TermStringList() : listFactory.createTermList());
+    list.add(null);
+    for (int i = 1; i < numTerms; ++i)
+    {
+      list.add(readString(buf));
+    }
+    list.seal();
+    header.valArray = list;
+    header.freqs = readInts(buf, numTerms);
+    header.minIDs = readInts(buf, numTerms);
+    header.maxIDs = readInts(buf, numTerms);
+    return header;
+  }
+
+  /**
+   * deletions do not change the segment name, but they do change freqs, minIDs, maxIDs and the order array.
+   */
+  private static long deletedDocsChecksum(IndexReader reader)
+  {
+    long checksum = 0L;
+    if (reader.hasDeletions())
+    {
+      int maxDoc = reader.maxDoc();
+      for (int i = 0; i < maxDoc; ++i)
+      {
+        if (reader.isDeleted(i))
+        {
+          checksum = checksum * 31 + i;
+        }
+      }
+    }
+    return checksum;
+  }
+
+  private static ByteBuffer map(File file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return buf;
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  /**
+   * Creates a file to write a snapshot to before it is renamed to the snapshot file. The name is unique, so
+   * readers of different processes writing the same snapshot do not write to the same file.
+   */
+  private static File createTempFile(File file) throws IOException
+  {
+    return File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+  }
+
+  private static void commit(File tmp, File file) throws IOException
+  {
+    if (tmp.renameTo(file)) return;
+    // some platforms do not rename over an existing file
+    if (file.exists() && !file.delete())
+    {
+      throw new IOException("unable to replace " + file);
+    }
+    if (!tmp.renameTo(file))
+    {
+      throw new IOException("unable to rename " + tmp + " to " + file);
+    }
+  }
+
+  private static void closeQuietly(DataOutputStream out)
+  {
+    if (out != null)
+    {
+      try
+      {
+        out.close();
+      }
+      catch (IOException ignore)
+      {
+      }
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException
+  {
+    byte[] bytes = s.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buf) throws IOException
+  {
+    byte[] bytes = new byte[buf.getInt()];
+    buf.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private static void writeInts(DataOutputStream out, int[] vals, int len) throws IOException
+  {
+    for (int i = 0; i < len; ++i)
+    {
+      out.writeInt(vals[i]);
+    }
+  }
+
+  private static int[] readInts(ByteBuffer buf, int len)
+  {
+    int[] vals = new int[len];
+    buf.asIntBuffer().get(vals);
+    buf.position(buf.position() + (len << 2));
+    return vals;
+  }
+}
@@ -5,7 +5,10 @@ package com.browseengine.bobo.facets.data;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
@@ -17,9 +20,11 @@ import org.apache.lucene.search.ScoreDoc;
 
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.api.BoboIndexReader.WorkArea;
+import com.browseengine.bobo.facets.FacetHandler.ArrayStorage;
 import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
 import com.browseengine.bobo.sort.DocComparator;
 import com.browseengine.bobo.sort.DocComparatorSource;
+import com.browseengine.bobo.util.BigDirectNestedIntArray;
 import com.browseengine.bobo.util.BigIntBuffer;
 import com.browseengine.bobo.util.BigNestedIntArray;
 import com.browseengine.bobo.util.StringArrayComparator;
@@ -40,9 +45,25 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
   private boolean _overflow = false;
   
   public MultiValueFacetDataCache()
+  {
+    this(ArrayStorage.heap);
+  }
+  
+  private MultiValueFacetDataCache(BigNestedIntArray nestedArray, int maxItems)
+  {
+    super();
+    _nestedArray = nestedArray;
+    _maxItems = maxItems;
+  }
+  
+  /**
+   * @param arrayStorage where the nested array is stored once loaded
+   */
+  public MultiValueFacetDataCache(ArrayStorage arrayStorage)
   {
     super();
-    _nestedArray = new BigNestedIntArray();
+    setArrayStorage(arrayStorage);
+    _nestedArray = (arrayStorage == ArrayStorage.direct ? new BigDirectNestedIntArray() : new BigNestedIntArray());
   }
   
   public void setMaxItems(int maxItems)
@@ -67,6 +88,13 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
    */
   public void load(String fieldName, IndexReader reader, TermListFactory<T> listFactory, WorkArea workArea) throws IOException
   {
+    setFieldName(fieldName);
+    File snapshot = (isSnapshotEnabled() ? FacetDataCacheSnapshot.getSnapshotFile(reader, fieldName) : null);
+    if (snapshot != null && FacetDataCacheSnapshot.readMultiValue(snapshot, fieldName, reader, this, listFactory))
+    {
+      return;
+    }
+    List<String> terms = (snapshot != null ? new ArrayList<String>() : null);
     long t0 = System.currentTimeMillis();
     int maxdoc = reader.maxDoc();
     BufferedLoader loader = getBufferedLoader(maxdoc, workArea);
@@ -83,6 +111,7 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
     minIDList.add(-1);
     maxIDList.add(-1);
     freqList.add(0);
+    if (terms != null) terms.add(null);
     t++;
     
     _overflow = false;
@@ -103,6 +132,7 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
           if (val != null)
           {
             list.add(val);
+            if (terms != null) terms.add(val);
 
             tdoc.seek(tenum);
             //freqList.add(tenum.docFreq()); // removed because the df doesn't take into account the num of deletedDocs
@@ -170,6 +200,11 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
     this.freqs = freqList.toIntArray();
     this.minIDs = minIDList.toIntArray();
     this.maxIDs = maxIDList.toIntArray();
+
+    if (snapshot != null)
+    {
+      FacetDataCacheSnapshot.writeMultiValue(snapshot, fieldName, reader, this, terms);
+    }
   }
 
   /**
@@ -182,6 +217,13 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
    */
   public void load(String fieldName, IndexReader reader, TermListFactory<T> listFactory, Term sizeTerm) throws IOException
   {
+    setFieldName(fieldName);
+    File snapshot = (isSnapshotEnabled() ? FacetDataCacheSnapshot.getSnapshotFile(reader, fieldName) : null);
+    if (snapshot != null && FacetDataCacheSnapshot.readMultiValue(snapshot, fieldName, reader, this, listFactory))
+    {
+      return;
+    }
+    List<String> terms = (snapshot != null ? new ArrayList<String>() : null);
     int maxdoc = reader.maxDoc();
     Loader loader = new AllocOnlyLoader(_maxItems, sizeTerm, reader);
     
@@ -210,6 +252,7 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
     minIDList.add(-1);
     maxIDList.add(-1);
     freqList.add(0);
+    if (terms != null) terms.add(null);
     t++;
 
     _overflow = false;
@@ -230,6 +273,7 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
           if (val != null)
           {
             list.add(val);
+            if (terms != null) terms.add(val);
             
             tdoc.seek(tenum);
             //freqList.add(tenum.docFreq()); // removed because the df doesn't take into account the num of deletedDocs
@@ -284,8 +328,44 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T>
     this.freqs = freqList.toIntArray();
     this.minIDs = minIDList.toIntArray();
     this.maxIDs = maxIDList.toIntArray();
+
+    if (snapshot != null)
+    {
+      FacetDataCacheSnapshot.writeMultiValue(snapshot, fieldName, reader, this, terms);
+    }
   }
   
+  /**
+   * Creates the cache of a newer reader of the same segment, which only has more deleted docs.
+   * The nested array and the value list are shared with this cache.
+   */
+  @Override
+  public MultiValueFacetDataCache<T> withDeletions(IndexReader oldReader, IndexReader newReader) throws IOException
+  {
+    MultiValueFacetDataCache<T> dataCache = new MultiValueFacetDataCache<T>(_nestedArray, _maxItems);
+    dataCache.setSnapshotEnabled(isSnapshotEnabled());
+    dataCache.setArrayStorage(getArrayStorage());
+    dataCache.setFieldName(getFieldName());
+    dataCache.valArray = valArray;
+    dataCache.freqs = freqs.clone();
+    dataCache.minIDs = minIDs.clone();
+    dataCache.maxIDs = maxIDs.clone();
+    dataCache.applyDeletions(getNewDeletions(oldReader, newReader), newReader);
+    return dataCache;
+  }
+
+  @Override
+  protected int getValues(int docid, int[] buf)
+  {
+    return _nestedArray.getData(docid, buf);
+  }
+
+  @Override
+  protected boolean containsValue(int docid, int index)
+  {
+    return _nestedArray.contains(docid, index);
+  }
+
   private void logOverflow(String fieldName)
   {
     if (!_overflow)
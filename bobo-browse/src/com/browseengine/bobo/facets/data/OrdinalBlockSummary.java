@@ -0,0 +1,88 @@
+package com.browseengine.bobo.facets.data;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+import com.browseengine.bobo.util.BigSegmentedArray;
+
+/**
+ * Smallest and largest value index of every block of {@link #BLOCK_SIZE} docs of a single valued order
+ * array. Scans for docs with a value index in a range skip the blocks whose bounds do not overlap the
+ * range, which pays off when values cluster by doc id, e.g. dates in an index sorted by time.
+ * <p>
+ * Deleted docs keep their value index, so a summary stays valid for readers of the same segment with
+ * more deletions.
+ */
+public final class OrdinalBlockSummary
+{
+  public static final int BLOCK_SHIFT = 10;
+  public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+  private final int[] _min;
+  private final int[] _max;
+
+  public OrdinalBlockSummary(BigSegmentedArray orderArray)
+  {
+    int size = orderArray.size();
+    int numBlocks = (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    _min = new int[numBlocks];
+    _max = new int[numBlocks];
+    for (int block = 0; block < numBlocks; ++block)
+    {
+      int start = block << BLOCK_SHIFT;
+      int end = Math.min(size, start + BLOCK_SIZE);
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int doc = start; doc < end; ++doc)
+      {
+        int val = orderArray.get(doc);
+        if (val < min) min = val;
+        if (val > max) max = val;
+      }
+      _min[block] = min;
+      _max[block] = max;
+    }
+  }
+
+  /**
+   * @return whether the docs of a block may have a value index in <code>[minVal, maxVal]</code>
+   */
+  public boolean mayContain(int block, int minVal, int maxVal)
+  {
+    return _max[block] >= minVal && _min[block] <= maxVal;
+  }
+
+  /**
+   * Finds the first doc in <code>[docId, maxId]</code> with a value index in <code>[minVal, maxVal]</code>,
+   * like {@link BigSegmentedArray#findValueRange(int, int, int, int)} but without looking at the docs
+   * of blocks that cannot match.
+   * @return the doc, {@link DocIdSetIterator#NO_MORE_DOCS} if there is none
+   */
+  public int findValueRange(BigSegmentedArray orderArray, int minVal, int maxVal, int docId, int maxId)
+  {
+    int numBlocks = _min.length;
+    while (docId <= maxId)
+    {
+      int block = docId >>> BLOCK_SHIFT;
+      while (block < numBlocks && !mayContain(block, minVal, maxVal))
+      {
+        block++;
+      }
+      if (block >= numBlocks) break;
+      docId = Math.max(docId, block << BLOCK_SHIFT);
+      if (docId > maxId) break;
+      int blockEnd = Math.min(maxId, ((block + 1) << BLOCK_SHIFT) - 1);
+      int doc = orderArray.findValueRange(minVal, maxVal, docId, blockEnd);
+      if (doc != DocIdSetIterator.NO_MORE_DOCS) return doc;
+      docId = blockEnd + 1;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  /**
+   * @return approximate heap size in bytes
+   */
+  public long sizeInBytes()
+  {
+    return 8L * _min.length;
+  }
+}
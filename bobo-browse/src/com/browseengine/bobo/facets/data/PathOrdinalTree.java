@@ -0,0 +1,322 @@
+package com.browseengine.bobo.facets.data;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Tree of the paths of a path facet, built once from the sorted term list. Every path and every prefix
+ * of a path (a path cut after one of its separators) is a node; prefixes that are not terms themselves
+ * are added as nodes without a term. Nodes are numbered in depth first order with the children of a
+ * node in value order, so the subtree of a node is the range of nodes <code>[node, getEnd(node))</code>
+ * and rolling counts up to a node is a sum over that range.
+ * <p>
+ * Node 0 is the root above all paths, it has depth 0 and no term. Empty path parts, e.g. from leading or
+ * doubled separators, do not add depth, and a trailing separator is not part of a node's name.
+ */
+public class PathOrdinalTree
+{
+  private static final int NO_TERM = -1;
+
+  private final TermValueList<?> _valList;
+  private final String _sep;
+  private final int[] _term;
+  private final int[] _parent;
+  private final int[] _depth;
+  private final int[] _end;
+  private final int[] _nameTerm;
+  private final int[] _nameLength;
+  private final int[] _termNode;
+
+  /**
+   * @param valList sorted path terms, index 0 is the "no value" entry and gets no node
+   * @param sep path separator
+   */
+  public PathOrdinalTree(TermValueList<?> valList, String sep)
+  {
+    _valList = valList;
+    _sep = sep;
+    int numTerms = valList.size();
+
+    // nodes in creation order, node 0 is the root
+    IntArrayList parents = new IntArrayList();
+    IntArrayList depths = new IntArrayList();
+    IntArrayList terms = new IntArrayList();
+    IntArrayList nameTerms = new IntArrayList();
+    IntArrayList nameLengths = new IntArrayList();
+    final ArrayList<String> names = new ArrayList<String>();
+    HashMap<String,Integer> nodeByName = new HashMap<String,Integer>();
+    addNode(parents, depths, terms, nameTerms, nameLengths, names, -1, 0, NO_TERM, NO_TERM, 0, "");
+
+    int[] termNode = new int[numTerms];
+    Arrays.fill(termNode, -1);
+    IntArrayList partEnds = new IntArrayList();
+    for (int i = 1; i < numTerms; ++i)
+    {
+      String path = valList.get(i);
+      split(path, partEnds);
+      int depth = partEnds.size();
+      if (depth == 0) continue;
+      int parent = 0;
+      for (int d = 0; d < depth - 1; ++d)
+      {
+        int len = partEnds.getInt(d);
+        String name = path.substring(0, len);
+        Integer node = nodeByName.get(name);
+        if (node == null)
+        {
+          node = addNode(parents, depths, terms, nameTerms, nameLengths, names, parent, d + 1, NO_TERM, i, len, name);
+          nodeByName.put(name, node);
+        }
+        parent = node;
+      }
+      // "a/b/" is the node "a/b", a prefix node created before its term became known takes the term
+      int len = partEnds.getInt(depth - 1);
+      String name = path.substring(0, len);
+      Integer node = nodeByName.get(name);
+      if (node != null && terms.getInt(node) == NO_TERM)
+      {
+        terms.set(node.intValue(), i);
+      }
+      else
+      {
+        node = addNode(parents, depths, terms, nameTerms, nameLengths, names, parent, depth, i, i, len, name);
+        if (!nodeByName.containsKey(name))
+        {
+          nodeByName.put(name, node);
+        }
+      }
+      termNode[i] = node;
+    }
+    nodeByName = null;
+
+    // children in value order, as ranges of one array
+    int numNodes = parents.size();
+    Integer[] byName = new Integer[numNodes];
+    for (int i = 0; i < numNodes; ++i)
+    {
+      byName[i] = i;
+    }
+    Arrays.sort(byName, 1, numNodes, new Comparator<Integer>()
+    {
+      public int compare(Integer n1, Integer n2)
+      {
+        return names.get(n1).compareTo(names.get(n2));
+      }
+    });
+    int[] childStart = new int[numNodes + 1];
+    for (int i = 1; i < numNodes; ++i)
+    {
+      childStart[parents.getInt(i) + 1]++;
+    }
+    for (int i = 0; i < numNodes; ++i)
+    {
+      childStart[i + 1] += childStart[i];
+    }
+    int[] children = new int[numNodes];
+    int[] fill = childStart.clone();
+    for (int i = 1; i < numNodes; ++i)
+    {
+      int node = byName[i];
+      children[fill[parents.getInt(node)]++] = node;
+    }
+
+    // renumber in depth first order
+    _term = new int[numNodes];
+    _parent = new int[numNodes];
+    _depth = new int[numNodes];
+    _end = new int[numNodes];
+    _nameTerm = new int[numNodes];
+    _nameLength = new int[numNodes];
+    int[] newId = new int[numNodes];
+    int[] stack = new int[numNodes];
+    int[] next = childStart.clone();
+    int top = 0;
+    int pos = 0;
+    stack[top] = 0;
+    newId[0] = pos++;
+    while (top >= 0)
+    {
+      int node = stack[top];
+      if (next[node] < childStart[node + 1])
+      {
+        int child = children[next[node]++];
+        newId[child] = pos++;
+        stack[++top] = child;
+      }
+      else
+      {
+        _end[newId[node]] = pos;
+        top--;
+      }
+    }
+    for (int i = 0; i < numNodes; ++i)
+    {
+      int id = newId[i];
+      _term[id] = terms.getInt(i);
+      _parent[id] = i == 0 ? -1 : newId[parents.getInt(i)];
+      _depth[id] = depths.getInt(i);
+      _nameTerm[id] = nameTerms.getInt(i);
+      _nameLength[id] = nameLengths.getInt(i);
+    }
+    for (int i = 0; i < numTerms; ++i)
+    {
+      if (termNode[i] >= 0)
+      {
+        termNode[i] = newId[termNode[i]];
+      }
+    }
+    _termNode = termNode;
+  }
+
+  private static int addNode(IntArrayList parents, IntArrayList depths, IntArrayList terms,
+      IntArrayList nameTerms, IntArrayList nameLengths, ArrayList<String> names,
+      int parent, int depth, int term, int nameTerm, int nameLength, String name)
+  {
+    parents.add(parent);
+    depths.add(depth);
+    terms.add(term);
+    nameTerms.add(nameTerm);
+    nameLengths.add(nameLength);
+    names.add(name);
+    return parents.size() - 1;
+  }
+
+  /**
+   * Collects the end offsets of the non-empty parts of a path.
+   */
+  private void split(String path, IntArrayList partEnds)
+  {
+    partEnds.clear();
+    int sepLen = _sep.length();
+    int start = 0;
+    while (start <= path.length())
+    {
+      int idx = path.indexOf(_sep, start);
+      int end = idx < 0 ? path.length() : idx;
+      if (end > start)
+      {
+        partEnds.add(end);
+      }
+      if (idx < 0) break;
+      start = idx + sepLen;
+    }
+  }
+
+  /**
+   * @return the term list the tree was built from
+   */
+  public TermValueList<?> getValList()
+  {
+    return _valList;
+  }
+
+  /**
+   * @return number of nodes, including the root
+   */
+  public int size()
+  {
+    return _term.length;
+  }
+
+  /**
+   * @return the term index of a node, -1 if the node is a prefix only or the root
+   */
+  public int getTerm(int node)
+  {
+    return _term[node];
+  }
+
+  /**
+   * @return the parent of a node, -1 for the root
+   */
+  public int getParent(int node)
+  {
+    return _parent[node];
+  }
+
+  public int getDepth(int node)
+  {
+    return _depth[node];
+  }
+
+  /**
+   * @return the first node after the subtree of a node
+   */
+  public int getEnd(int node)
+  {
+    return _end[node];
+  }
+
+  /**
+   * @return the node of a term, -1 for terms without path parts
+   */
+  public int getTermNode(int term)
+  {
+    return _termNode[term];
+  }
+
+  /**
+   * @return the path of a node
+   */
+  public String getName(int node)
+  {
+    return _nameTerm[node] < 0 ? "" : _valList.get(_nameTerm[node]).substring(0, _nameLength[node]);
+  }
+
+  /**
+   * Finds the node of a path. A trailing separator is ignored.
+   * @param path a path, null or empty for the root
+   * @return the node, -1 if there is none
+   */
+  public int getNode(String path)
+  {
+    if (path == null || path.length() == 0) return 0;
+    if (path.endsWith(_sep))
+    {
+      path = path.substring(0, path.length() - _sep.length());
+      if (path.length() == 0) return 0;
+    }
+    int index = _valList.indexOf(path);
+    if (index > 0)
+    {
+      return _termNode[index];
+    }
+    // a prefix without a term: the ancestor of the first path below it
+    index = -(index + 1);
+    if (index >= _valList.size()) return -1;
+    String below = _valList.get(index);
+    if (!below.startsWith(path) || !below.startsWith(_sep, path.length()) || _termNode[index] < 0) return -1;
+    IntArrayList partEnds = new IntArrayList();
+    split(path, partEnds);
+    int node = _termNode[index];
+    while (_depth[node] > partEnds.size())
+    {
+      node = _parent[node];
+    }
+    return node > 0 && getName(node).equals(path) ? node : -1;
+  }
+
+  /**
+   * Sums the counts of the terms in the subtree of a node, the node's own term included.
+   * @param node node
+   * @param count count per term index
+   */
+  public int rollUp(int node, int[] count)
+  {
+    int sum = 0;
+    int end = _end[node];
+    for (int i = node; i < end; ++i)
+    {
+      int term = _term[i];
+      if (term >= 0)
+      {
+        sum += count[term];
+      }
+    }
+    return sum;
+  }
+}
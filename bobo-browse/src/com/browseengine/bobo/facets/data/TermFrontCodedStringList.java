@@ -0,0 +1,40 @@
+package com.browseengine.bobo.facets.data;
+
+import java.util.List;
+
+import com.browseengine.bobo.util.FrontCodedStringList;
+
+/**
+ * String term list kept front coded in one byte array, see {@link FrontCodedStringList}. It costs a small
+ * decode on every lookup, in exchange for a fraction of the memory of {@link TermStringList} for facets with
+ * many values, e.g. ids or urls. Use it through {@link TermListFactory#FrontCodedStringListFactory}.
+ */
+public class TermFrontCodedStringList extends TermStringList
+{
+  @Override
+  protected List<?> buildPrimitiveList(int capacity)
+  {
+    _type = String.class;
+    return capacity < 0 ? new FrontCodedStringList() : new FrontCodedStringList(capacity);
+  }
+
+  @Override
+  protected int binarySearch(String val)
+  {
+    return ((FrontCodedStringList)_innerList).indexOf(val);
+  }
+
+  @Override
+  public void seal()
+  {
+    ((FrontCodedStringList)_innerList).trimToSize();
+  }
+
+  /**
+   * @return approximate heap size of the terms in bytes
+   */
+  public long sizeInBytes()
+  {
+    return ((FrontCodedStringList)_innerList).sizeInBytes();
+  }
+}
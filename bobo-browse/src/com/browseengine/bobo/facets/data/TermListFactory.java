@@ -17,4 +17,20 @@ public interface TermListFactory<T>
 		  return String.class;
 		}
 	};
+	
+	/**
+	 * Creates front coded string term lists, for facets with many values.
+	 * @see TermFrontCodedStringList
+	 */
+	public static TermListFactory<String> FrontCodedStringListFactory=new TermListFactory<String>()
+	{
+		public TermValueList<String> createTermList()
+		{
+			return new TermFrontCodedStringList();
+		}
+		public Class<?> getType()
+		{
+		  return String.class;
+		}
+	};
 }
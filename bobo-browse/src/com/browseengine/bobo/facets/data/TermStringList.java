@@ -53,10 +53,10 @@ public class TermStringList extends TermValueList<String> {
 	  {
 	    if (o == null) return -1;
 	    if (o.equals("") && "".equals(_innerList.get(1))) return 1; 
-	    return Collections.binarySearch(((ArrayList<String>)_innerList), (String)o);
+	    return binarySearch((String)o);
 	  } else
 	  {
-      return Collections.binarySearch(((ArrayList<String>)_innerList), (String)o);
+      return binarySearch((String)o);
 	  }
 	}
 
@@ -65,6 +65,14 @@ public class TermStringList extends TermValueList<String> {
 		((ArrayList<String>)_innerList).trimToSize();
 	}
 
+  /**
+   * @return the index of a value in the inner list, or <code>-(insertion point) - 1</code>
+   */
+  protected int binarySearch(String val)
+  {
+    return Collections.binarySearch(((ArrayList<String>)_innerList), val);
+  }
+
   @Override
   public boolean containsWithType(String val)
   {
@@ -72,10 +80,10 @@ public class TermStringList extends TermValueList<String> {
     {
       if (val == null) return false;
       if (val.equals("")) return  "".equals(_innerList.get(1)); 
-      return Collections.binarySearch(((ArrayList<String>)_innerList), val)>=0;
+      return binarySearch(val)>=0;
     } else
     {
-      return Collections.binarySearch(((ArrayList<String>)_innerList), val)>=0;
+      return binarySearch(val)>=0;
     } 
   }
 
@@ -86,10 +94,10 @@ public class TermStringList extends TermValueList<String> {
     {
       if (o == null) return -1;
       if (o.equals("") && "".equals(_innerList.get(1))) return 1; 
-      return Collections.binarySearch(((ArrayList<String>)_innerList), (String)o);
+      return binarySearch((String)o);
     } else
     {
-      return Collections.binarySearch(((ArrayList<String>)_innerList), (String)o);
+      return binarySearch((String)o);
     }
   }
 
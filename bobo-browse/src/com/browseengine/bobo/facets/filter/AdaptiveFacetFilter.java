@@ -16,6 +16,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.TermValueList;
@@ -62,7 +63,8 @@ public class AdaptiveFacetFilter extends RandomAccessFilter {
 			throws IOException {
 	
       RandomAccessDocIdSet innerDocSet = _facetFilter.getRandomAccessDocIdSet(reader);
-      if (innerDocSet==EmptyDocIdSet.getInstance()){
+      // a cached roaring set iterates its docs without the postings and combines with other roaring sets
+      if (innerDocSet==EmptyDocIdSet.getInstance() || innerDocSet instanceof RoaringDocIdSet){
     	  return innerDocSet;
       }
 		  
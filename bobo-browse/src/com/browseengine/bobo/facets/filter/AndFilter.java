@@ -8,6 +8,9 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
 
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.docidset.EmptyDocIdSet;
+import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
 import com.kamikaze.docidset.impl.AndDocIdSet;
 
 public class AndFilter extends Filter 
@@ -31,10 +34,27 @@ public class AndFilter extends Filter
     }
     else
     {
-      List<DocIdSet> list = new ArrayList<DocIdSet>(_filters.size());
-      for (Filter f : _filters)
+      List<? extends Filter> filters = _filters;
+      if (reader instanceof BoboIndexReader)
       {
-        list.add(f.getDocIdSet(reader));
+        // the sparsest clause leads the intersection
+        filters = RandomAccessAndFilter.sortBySelectivity(_filters, (BoboIndexReader)reader);
+      }
+      List<DocIdSet> list = new ArrayList<DocIdSet>(filters.size());
+      boolean randomAccess = true;
+      for (Filter f : filters)
+      {
+        DocIdSet s = f.getDocIdSet(reader);
+        if (s == null || s == EmptyDocIdSet.getInstance())
+        {
+          return EmptyDocIdSet.getInstance();
+        }
+        randomAccess &= s instanceof RandomAccessDocIdSet;
+        list.add(s);
+      }
+      if (randomAccess)
+      {
+        return new RandomAccessAndFilter.AndRandomAccessDocIdSet(list.toArray(new RandomAccessDocIdSet[list.size()]));
       }
       return new AndDocIdSet(list);
     }
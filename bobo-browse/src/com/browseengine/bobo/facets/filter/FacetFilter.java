@@ -8,8 +8,11 @@ import org.apache.lucene.search.DocIdSetIterator;
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.RuntimeFacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.OrdinalBlockSummary;
 import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class FacetFilter extends RandomAccessFilter 
@@ -51,13 +54,28 @@ public class FacetFilter extends RandomAccessFilter
 		protected final int _index;
 		protected final int _maxID;
         protected final BigSegmentedArray _orderArray;
+        private final OrdinalBlockSummary _blockSummary;
 		
 		public FacetDocIdSetIterator(FacetDataCache dataCache,int index)
+		{
+			this(dataCache, index, null);
+		}
+		
+		/**
+		 * @param blockSummary block bounds of the order array to skip blocks without the value, or null
+		 */
+		public FacetDocIdSetIterator(FacetDataCache dataCache,int index,OrdinalBlockSummary blockSummary)
 		{
 			_index=index;
 			_doc=Math.max(-1,dataCache.minIDs[_index]-1);
 			_maxID = dataCache.maxIDs[_index];
 			_orderArray = dataCache.orderArray;
+			_blockSummary = blockSummary;
+		}
+		
+		private int find(int docId)
+		{
+			return _blockSummary == null ? _orderArray.findValue(_index, docId, _maxID) : _blockSummary.findValueRange(_orderArray, _index, _index, docId, _maxID);
 		}
 		
 		@Override
@@ -68,7 +86,7 @@ public class FacetFilter extends RandomAccessFilter
 		@Override
 		public int nextDoc() throws IOException
 		{
-          return (_doc = (_doc < _maxID ? _orderArray.findValue(_index, (_doc + 1), _maxID) : NO_MORE_DOCS));
+          return (_doc = (_doc < _maxID ? find(_doc + 1) : NO_MORE_DOCS));
 		}
 
 		@Override
@@ -76,13 +94,22 @@ public class FacetFilter extends RandomAccessFilter
 		{
           if (_doc < id)
           {
-            return (_doc = (id <= _maxID ? _orderArray.findValue(_index, id, _maxID) : NO_MORE_DOCS));
+            return (_doc = (id <= _maxID ? find(id) : NO_MORE_DOCS));
           }
           return nextDoc();
         }
 
 	}
 
+	/**
+	 * @return the value doc set cache of a segment for the values of a facet, null if there is none or the
+	 * facet data is built per request
+	 */
+	static ValueDocIdSetCache getValueDocIdSetCache(BoboIndexReader reader, FacetHandler<?> facetHandler)
+	{
+		return facetHandler instanceof RuntimeFacetHandler ? null : reader.getValueDocIdSetCache();
+	}
+
 	@Override
 	public RandomAccessDocIdSet getRandomAccessDocIdSet(BoboIndexReader reader) throws IOException 
 	{
@@ -92,13 +119,16 @@ public class FacetFilter extends RandomAccessFilter
 		{
 		  return EmptyDocIdSet.getInstance();
 		}
-		else
+		RandomAccessDocIdSet docs = new FacetDataRandomAccessDocIdSet(dataCache, index);
+		ValueDocIdSetCache cache = getValueDocIdSetCache(reader, _facetHandler);
+		if (cache != null)
 		{
-			return new FacetDataRandomAccessDocIdSet(dataCache, index);
+			docs = cache.get(_facetHandler.getName(), index, dataCache.freqs[index], reader.maxDoc(), docs);
 		}
+		return docs;
 	}
 
-	private static class FacetDataRandomAccessDocIdSet extends RandomAccessDocIdSet{
+	static class FacetDataRandomAccessDocIdSet extends RandomAccessDocIdSet{
 
 		private final FacetDataCache _dataCache;
 	    private final BigSegmentedArray _orderArray;
@@ -116,7 +146,7 @@ public class FacetFilter extends RandomAccessFilter
 
 		@Override
 		public DocIdSetIterator iterator() throws IOException {
-			return new FacetDocIdSetIterator(_dataCache,_index);
+			return new FacetDocIdSetIterator(_dataCache,_index,_dataCache.getBlockSummary());
 		}
 		
 	}
@@ -2,15 +2,23 @@ package com.browseengine.bobo.facets.filter;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitVector;
+import org.apache.lucene.util.OpenBitSet;
 
 import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.docidset.BitsetRandomAccessDocIdSet;
 import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.TermStringList;
 import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class FacetOrFilter extends RandomAccessFilter
@@ -20,6 +28,17 @@ public class FacetOrFilter extends RandomAccessFilter
    */
   private static final long serialVersionUID = 1L;
   
+  /**
+   * estimated cost of reading one posting, relative to checking one doc of single valued facet data
+   */
+  static final int POSTING_COST = 4;
+  
+  /**
+   * most values of one selection that are looked up in the {@link ValueDocIdSetCache}, larger selections
+   * would fill the cache with values that are rarely selected on their own
+   */
+  static final int MAX_CACHED_VALUES = 16;
+  
   protected final FacetHandler<FacetDataCache> _facetHandler;
   protected final String[] _vals;
   private final boolean _takeCompliment;
@@ -47,14 +66,13 @@ public class FacetOrFilter extends RandomAccessFilter
     double selectivity = 0;
     FacetDataCache dataCache = _facetHandler.getFacetData(reader);
     int accumFreq=0;
-    for(String value : _vals)
+    int[] idxes = _valueConverter.convert(dataCache, _vals);
+    if(idxes != null)
     {
-      int idx = dataCache.valArray.indexOf(value);
-      if(idx < 0)
+      for(int idx : idxes)
       {
-        continue;
+        accumFreq +=dataCache.freqs[idx];
       }
-      accumFreq +=dataCache.freqs[idx];
     }
     int total = reader.maxDoc();
     selectivity = (double)accumFreq/(double)total;
@@ -78,8 +96,143 @@ public class FacetOrFilter extends RandomAccessFilter
     }
     else
     {
-    	return new FacetOrRandomAccessDocIdSet(_facetHandler, reader, _vals, _valueConverter,_takeCompliment);
+      FacetDataCache dataCache = _facetHandler.getFacetData(reader);
+      int[] index = _valueConverter.convert(dataCache, _vals);
+      ValueDocIdSetCache cache = FacetFilter.getValueDocIdSetCache(reader, _facetHandler);
+      if (cache != null && index != null && index.length <= MAX_CACHED_VALUES)
+      {
+        RandomAccessDocIdSet[] docs = new RandomAccessDocIdSet[index.length];
+        for (int i = 0; i < index.length; ++i)
+        {
+          RandomAccessDocIdSet uncached = new FacetFilter.FacetDataRandomAccessDocIdSet(dataCache, index[i]);
+          docs[i] = cache.get(_facetHandler.getName(), index[i], dataCache.freqs[index[i]], reader.maxDoc(), uncached);
+          if (docs[i] == uncached)
+          {
+            docs = null;
+            break;
+          }
+        }
+        if (docs != null)
+        {
+          return orCached(docs, reader.maxDoc(), _takeCompliment);
+        }
+      }
+      if (usePostings(dataCache, index, _takeCompliment, reader.maxDoc(), 1))
+      {
+        return new BitsetRandomAccessDocIdSet(orPostings(reader, dataCache, index, _takeCompliment));
+      }
+      return new FacetOrRandomAccessDocIdSet(dataCache, index, _takeCompliment);
+    }
+  }
+  
+  /**
+   * Decides between checking the docs in the range the selected values span one by one and OR-ing the
+   * postings of the values into a doc bitset once. The bitset is used when reading the postings costs less
+   * than the doc checks of one pass over the range; later random access then costs a bit lookup.
+   * @param index selected value indexes
+   * @param takeCompliment whether the docs without the values are wanted, which spans all docs
+   * @param checkCost cost of checking one doc, relative to single valued facet data
+   */
+  static boolean usePostings(FacetDataCache dataCache, int[] index, boolean takeCompliment, int maxDoc, int checkCost)
+  {
+    // postings can only be looked up for terms whose values are the indexed text
+    if (index == null || dataCache.getFieldName() == null || !(dataCache.valArray instanceof TermStringList))
+    {
+      return false;
+    }
+    long postings = 0;
+    int minID = maxDoc;
+    int maxID = -1;
+    for (int i : index)
+    {
+      if (i <= 0)
+      {
+        // docs without a value have no postings
+        return false;
+      }
+      postings += dataCache.freqs[i];
+      minID = Math.min(minID, dataCache.minIDs[i]);
+      maxID = Math.max(maxID, dataCache.maxIDs[i]);
     }
+    long span = takeCompliment ? maxDoc : Math.max(0, maxID - minID + 1);
+    return postings * POSTING_COST + (maxDoc >> 6) < span * checkCost;
+  }
+  
+  /**
+   * ORs the postings of the selected values into a bitset of the segment's docs.
+   */
+  static OpenBitSet orPostings(IndexReader reader, FacetDataCache dataCache, int[] index, boolean takeCompliment) throws IOException
+  {
+    int maxDoc = reader.maxDoc();
+    OpenBitSet bitset = new OpenBitSet(maxDoc);
+    int[] docs = new int[128];
+    int[] freqs = new int[128];
+    TermDocs termDocs = reader.termDocs();
+    try
+    {
+      String field = dataCache.getFieldName();
+      for (int i : index)
+      {
+        termDocs.seek(new Term(field, dataCache.valArray.get(i)));
+        int n;
+        while ((n = termDocs.read(docs, freqs)) > 0)
+        {
+          for (int j = 0; j < n; ++j)
+          {
+            bitset.fastSet(docs[j]);
+          }
+        }
+      }
+    }
+    finally
+    {
+      termDocs.close();
+    }
+    if (takeCompliment)
+    {
+      bitset.flip(0, maxDoc);
+    }
+    return bitset;
+  }
+  
+  /**
+   * ORs the cached doc sets of the selected values, block by block when they are all roaring.
+   * @param docs sets taken from the {@link ValueDocIdSetCache}
+   * @param takeCompliment whether the docs in none of the sets are wanted
+   */
+  static RandomAccessDocIdSet orCached(RandomAccessDocIdSet[] docs, int maxDoc, boolean takeCompliment) throws IOException
+  {
+    if (docs.length == 1 && !takeCompliment)
+    {
+      return docs[0];
+    }
+    RoaringDocIdSet union = RoaringDocIdSet.orAll(docs);
+    if (union != null)
+    {
+      return takeCompliment ? RoaringDocIdSet.range(0, maxDoc).andNot(union) : union;
+    }
+    OpenBitSet bitset = new OpenBitSet(maxDoc);
+    for (RandomAccessDocIdSet set : docs)
+    {
+      if (set instanceof BitsetRandomAccessDocIdSet)
+      {
+        bitset.union(((BitsetRandomAccessDocIdSet)set).getBitSet());
+      }
+      else
+      {
+        DocIdSetIterator iter = set.iterator();
+        int doc;
+        while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS)
+        {
+          bitset.fastSet(doc);
+        }
+      }
+    }
+    if (takeCompliment)
+    {
+      bitset.flip(0, maxDoc);
+    }
+    return new BitsetRandomAccessDocIdSet(bitset);
   }
   
   public static class FacetOrRandomAccessDocIdSet extends RandomAccessDocIdSet{
@@ -91,9 +244,13 @@ public class FacetOrFilter extends RandomAccessFilter
 	
 	FacetOrRandomAccessDocIdSet(FacetHandler<FacetDataCache> facetHandler,BoboIndexReader reader,
 								String[] vals,FacetValueConverter valConverter,boolean takeCompliment){
-		_dataCache = facetHandler.getFacetData(reader);
+		this(facetHandler.getFacetData(reader), valConverter.convert(facetHandler.getFacetData(reader), vals), takeCompliment);
+	}
+	
+	FacetOrRandomAccessDocIdSet(FacetDataCache dataCache,int[] index,boolean takeCompliment){
+		_dataCache = dataCache;
 		_orderArray = _dataCache.orderArray;
-	    _index = valConverter.convert(_dataCache, vals);
+	    _index = index;
 	    
 	    _bitset = new BitVector(_dataCache.valArray.size());
 	    for (int i : _index)
@@ -12,6 +12,7 @@ import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.OrdinalBlockSummary;
 import com.browseengine.bobo.facets.impl.RangeFacetHandler;
 import com.browseengine.bobo.util.BigSegmentedArray;
 
@@ -59,6 +60,7 @@ public final class FacetRangeFilter extends RandomAccessFilter
 		private final int _start;
 		private final int _end;
 		private final BigSegmentedArray _orderArray;
+		private final OrdinalBlockSummary _blockSummary;
 		
 		
 		FacetRangeDocIdSetIterator(int start,int end,FacetDataCache dataCache)
@@ -74,6 +76,7 @@ public final class FacetRangeFilter extends RandomAccessFilter
 			}
 			_doc=Math.max(-1,_minID-1);
 			_orderArray = dataCache.orderArray;
+			_blockSummary = dataCache.getBlockSummary();
 		}
 		
 		@Override
@@ -84,7 +87,7 @@ public final class FacetRangeFilter extends RandomAccessFilter
 		@Override
 		final public int nextDoc() throws IOException
 		{
-          return (_doc = (_doc < _maxID ? _orderArray.findValueRange(_start, _end, (_doc + 1), _maxID) : NO_MORE_DOCS));
+          return (_doc = (_doc < _maxID ? findValueRange(_doc + 1) : NO_MORE_DOCS));
 		}
 
 		@Override
@@ -92,10 +95,15 @@ public final class FacetRangeFilter extends RandomAccessFilter
 		{
 		  if (_doc < id)
 		  {
-		    return (_doc = (id <= _maxID ? _orderArray.findValueRange(_start, _end, id, _maxID) : NO_MORE_DOCS));
+		    return (_doc = (id <= _maxID ? findValueRange(id) : NO_MORE_DOCS));
 		  }
           return nextDoc();
 		}
+		
+		private int findValueRange(int id)
+		{
+		  return _blockSummary == null ? _orderArray.findValueRange(_start, _end, id, _maxID) : _blockSummary.findValueRange(_orderArray, _start, _end, id, _maxID);
+		}
 	}
 	
 	public static class FacetRangeValueConverter implements FacetValueConverter{
@@ -39,6 +39,29 @@ public final class GeoSimpleFacetFilter extends RandomAccessFilter {
 		_longRangeString = longRangeString;
 	}
 
+	/**
+	 * Estimates the selectivity as the product of the shares of docs in the latitude and in the longitude
+	 * range, taking the two as independent.
+	 */
+	@Override
+	public double getFacetSelectivity(BoboIndexReader reader) {
+		FacetDataCache latDataCache = _latFacetHandler.getFacetData(reader);
+		FacetDataCache longDataCache = _longFacetHandler.getFacetData(reader);
+		int[] latRange = FacetRangeFilter.parse(latDataCache, _latRangeString);
+		int[] longRange = FacetRangeFilter.parse(longDataCache, _longRangeString);
+		if((latRange == null) || (longRange == null)) return 0.0;
+		double total = reader.maxDoc();
+		return (rangeFreq(latDataCache, latRange) / total) * (rangeFreq(longDataCache, longRange) / total);
+	}
+
+	private static int rangeFreq(FacetDataCache dataCache, int[] range) {
+		int freq = 0;
+		for(int i = range[0]; i <= range[1]; ++i) {
+			freq += dataCache.freqs[i];
+		}
+		return freq;
+	}
+
 	private final static class GeoSimpleDocIdSetIterator extends DocIdSetIterator {
 		private int _doc = -1;
 		private int _totalFreq;
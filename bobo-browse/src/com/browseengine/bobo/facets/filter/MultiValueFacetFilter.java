@@ -7,6 +7,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
 import com.browseengine.bobo.facets.filter.FacetFilter.FacetDocIdSetIterator;
@@ -69,31 +70,49 @@ public class MultiValueFacetFilter extends RandomAccessFilter
         }
     }
 
+    static final class MultiValueFacetDataRandomAccessDocIdSet extends RandomAccessDocIdSet
+    {
+        private final MultiValueFacetDataCache _dataCache;
+        private final BigNestedIntArray _nestedArray;
+        private final int _index;
+
+        MultiValueFacetDataRandomAccessDocIdSet(MultiValueFacetDataCache dataCache, int index)
+        {
+            _dataCache = dataCache;
+            _nestedArray = dataCache._nestedArray;
+            _index = index;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() 
+        {
+            return new MultiValueFacetDocIdSetIterator(_dataCache, _index);
+        }
+
+        @Override
+        final public boolean get(int docId)
+        {
+            return _nestedArray.contains(docId, _index);
+        }
+    }
+
     @Override
     public RandomAccessDocIdSet getRandomAccessDocIdSet(BoboIndexReader reader) throws IOException {
     	final MultiValueFacetDataCache dataCache = _facetHandler.getFacetData(reader);
         final int index = dataCache.valArray.indexOf(_val);
-        final BigNestedIntArray nestedArray = dataCache._nestedArray; 
         if(index < 0)
         {
             return EmptyDocIdSet.getInstance();
         }
         else
         {
-            return new RandomAccessDocIdSet()
+            RandomAccessDocIdSet docs = new MultiValueFacetDataRandomAccessDocIdSet(dataCache, index);
+            ValueDocIdSetCache cache = FacetFilter.getValueDocIdSetCache(reader, _facetHandler);
+            if (cache != null)
             {
-                @Override
-                public DocIdSetIterator iterator() 
-                {
-                    return new MultiValueFacetDocIdSetIterator(dataCache, index);
-                }
-		        @Override
-		        final public boolean get(int docId)
-		        {
-		          return nestedArray.contains(docId, index);
-		        }
-                
-            };
+              docs = cache.get(_facetHandler.getName(), index, dataCache.freqs[index], reader.maxDoc(), docs);
+            }
+            return docs;
         }
     }
 
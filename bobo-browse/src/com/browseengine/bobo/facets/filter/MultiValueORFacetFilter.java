@@ -7,8 +7,10 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitVector;
 
 import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.docidset.BitsetRandomAccessDocIdSet;
 import com.browseengine.bobo.docidset.EmptyDocIdSet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
@@ -19,6 +21,11 @@ public class MultiValueORFacetFilter extends RandomAccessFilter
 {
 
   private static final long serialVersionUID = 1L;
+  /**
+   * cost of checking one doc against the selected values, relative to single valued facet data, as the
+   * values of the doc are walked
+   */
+  private static final int CHECK_COST = 3;
   private final FacetHandler<?> _facetHandler;
   private final String[] _vals;
   private final boolean _takeCompliment;
@@ -41,21 +48,26 @@ public class MultiValueORFacetFilter extends RandomAccessFilter
     double selectivity = 0;
     MultiValueFacetDataCache dataCache = (MultiValueFacetDataCache)_facetHandler.getFacetData(reader);
     int[] idxes = _valueConverter.convert(dataCache, _vals);
-    if(idxes == null)
-    {
-      return 0.0;
-    }
     int accumFreq=0;
-    for(int idx : idxes)
+    if(idxes != null)
     {
-      accumFreq +=dataCache.freqs[idx];
+      for(int idx : idxes)
+      {
+        accumFreq +=dataCache.freqs[idx];
+      }
     }
     int total = reader.maxDoc();
-    selectivity = (double)accumFreq/(double)total;
+    // docs with several of the values are counted once per value
+    selectivity = Math.min(1.0, (double)accumFreq/(double)total);
     if(selectivity > 0.999) 
     {
       selectivity = 1.0;
     }
+    if(_takeCompliment)
+    {
+      // a doc with values outside of the selection matches the compliment as well, so this is a lower bound
+      selectivity = 1.0 - selectivity;
+    }
     return selectivity;
   }
   
@@ -90,6 +102,31 @@ public class MultiValueORFacetFilter extends RandomAccessFilter
   {
 	final MultiValueFacetDataCache dataCache = (MultiValueFacetDataCache)_facetHandler.getFacetData(reader);
 	final int[] index = _valueConverter.convert(dataCache, _vals);
+	// a doc matches the compliment when it has any value outside the selection, which neither the docs of
+	// the single values nor their postings tell
+	ValueDocIdSetCache cache = FacetFilter.getValueDocIdSetCache(reader, _facetHandler);
+	if (cache != null && !_takeCompliment && index != null && index.length <= FacetOrFilter.MAX_CACHED_VALUES)
+	{
+	  RandomAccessDocIdSet[] docs = new RandomAccessDocIdSet[index.length];
+	  for (int i = 0; i < index.length; ++i)
+	  {
+	    RandomAccessDocIdSet uncached = new MultiValueFacetFilter.MultiValueFacetDataRandomAccessDocIdSet(dataCache, index[i]);
+	    docs[i] = cache.get(_facetHandler.getName(), index[i], dataCache.freqs[index[i]], reader.maxDoc(), uncached);
+	    if (docs[i] == uncached)
+	    {
+	      docs = null;
+	      break;
+	    }
+	  }
+	  if (docs != null)
+	  {
+	    return FacetOrFilter.orCached(docs, reader.maxDoc(), false);
+	  }
+	}
+	if (!_takeCompliment && FacetOrFilter.usePostings(dataCache, index, false, reader.maxDoc(), CHECK_COST))
+	{
+	  return new BitsetRandomAccessDocIdSet(FacetOrFilter.orPostings(reader, dataCache, index, false));
+	}
 	final BigNestedIntArray nestedArray = dataCache._nestedArray;
 	final BitVector bitset = new BitVector(dataCache.valArray.size());
 	
@@ -2,14 +2,19 @@ package com.browseengine.bobo.facets.filter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 
-import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
 
 import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.docidset.EmptyDocIdSet;
+import com.browseengine.bobo.docidset.FilteredDocSetIterator;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
-import com.kamikaze.docidset.impl.AndDocIdSet;
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
 
 public class RandomAccessAndFilter extends RandomAccessFilter
 {
@@ -24,20 +29,36 @@ public class RandomAccessAndFilter extends RandomAccessFilter
   
   public double getFacetSelectivity(BoboIndexReader reader)
   {
-    double selectivity = Double.MAX_VALUE;
+    // the clauses are taken to be independent
+    double selectivity = 1.0;
     for(RandomAccessFilter filter : _filters)
     {
-      double curSelectivity = filter.getFacetSelectivity(reader);
-      if(selectivity > curSelectivity)
-      {
-        selectivity = curSelectivity;
-      }
+      selectivity *= filter.getFacetSelectivity(reader);
     }
-    if(selectivity > 0.999)
+    return selectivity;
+  }
+  
+  /**
+   * Orders filters by their estimated selectivity on a segment, the most selective first. Filters that
+   * are not {@link RandomAccessFilter}s have no estimate and are put with the default one of 0.5.
+   */
+  static <F extends Filter> List<F> sortBySelectivity(List<F> filters, BoboIndexReader reader)
+  {
+    final IdentityHashMap<Filter,Double> selectivities = new IdentityHashMap<Filter,Double>();
+    for (Filter f : filters)
     {
-      selectivity = 1.0;
+      selectivities.put(f, f instanceof RandomAccessFilter ? ((RandomAccessFilter)f).getFacetSelectivity(reader) : 0.5);
     }
-    return selectivity;
+    List<F> sorted = new ArrayList<F>(filters);
+    // stable, so clauses with the same estimate keep their order
+    Collections.sort(sorted, new Comparator<Filter>()
+    {
+      public int compare(Filter f1, Filter f2)
+      {
+        return Double.compare(selectivities.get(f1), selectivities.get(f2));
+      }
+    });
+    return sorted;
   }
   
   @Override
@@ -49,33 +70,63 @@ public class RandomAccessAndFilter extends RandomAccessFilter
     }
     else
     {
-      List<DocIdSet> list = new ArrayList<DocIdSet>(_filters.size());
-      List<RandomAccessDocIdSet> randomAccessList = new ArrayList<RandomAccessDocIdSet>(_filters.size());
-      for (RandomAccessFilter f : _filters)
+      List<RandomAccessFilter> filters = sortBySelectivity(_filters, reader);
+      final RandomAccessDocIdSet[] randomAccessDocIdSets = new RandomAccessDocIdSet[filters.size()];
+      for (int i = 0; i < randomAccessDocIdSets.length; ++i)
+      {
+        RandomAccessDocIdSet s = filters.get(i).getRandomAccessDocIdSet(reader);
+        if (s == null || s == EmptyDocIdSet.getInstance())
+        {
+          return EmptyDocIdSet.getInstance();
+        }
+        randomAccessDocIdSets[i] = s;
+      }
+      RoaringDocIdSet roaring = RoaringDocIdSet.andAll(randomAccessDocIdSets);
+      if (roaring != null)
+      {
+        return roaring;
+      }
+      return new AndRandomAccessDocIdSet(randomAccessDocIdSets);
+    }
+  }
+
+  /**
+   * Intersection of random access sets ordered by selectivity. The first, sparsest set is iterated and
+   * every doc it yields is probed in the others, so only the docs of the sparsest clause are ever visited.
+   */
+  static final class AndRandomAccessDocIdSet extends RandomAccessDocIdSet
+  {
+    private final RandomAccessDocIdSet[] _sets;
+
+    AndRandomAccessDocIdSet(RandomAccessDocIdSet[] sets)
+    {
+      _sets = sets;
+    }
+
+    @Override
+    public boolean get(int docId)
+    {
+      for(RandomAccessDocIdSet s : _sets)
       {
-        RandomAccessDocIdSet s = f.getRandomAccessDocIdSet(reader);
-        list.add(s);
-        randomAccessList.add(s);
+        if(!s.get(docId)) return false;
       }
-      final RandomAccessDocIdSet[] randomAccessDocIdSets = randomAccessList.toArray(new RandomAccessDocIdSet[randomAccessList.size()]);
-      final DocIdSet andDocIdSet = new AndDocIdSet(list);
-      return new RandomAccessDocIdSet()
+      return true;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() throws IOException
+    {
+      return new FilteredDocSetIterator(_sets[0].iterator())
       {
         @Override
-        public boolean get(int docId)
+        protected boolean match(int doc)
         {
-          for(RandomAccessDocIdSet s : randomAccessDocIdSets)
+          for (int i = 1; i < _sets.length; ++i)
           {
-            if(!s.get(docId)) return false;
+            if (!_sets[i].get(doc)) return false;
           }
           return true;
         }
-
-        @Override
-        public DocIdSetIterator iterator() throws IOException
-        {
-          return andDocIdSet.iterator();
-        }
       };
     }
   }
@@ -9,6 +9,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.kamikaze.docidset.impl.OrDocIdSet;
 
@@ -62,6 +63,11 @@ public class RandomAccessOrFilter extends RandomAccessFilter
         randomAccessList.add(s);
       }
       final RandomAccessDocIdSet[] randomAccessDocIdSets = randomAccessList.toArray(new RandomAccessDocIdSet[randomAccessList.size()]);
+      RoaringDocIdSet roaring = RoaringDocIdSet.orAll(randomAccessDocIdSets);
+      if (roaring != null)
+      {
+        return roaring;
+      }
       final DocIdSet orDocIdSet = new OrDocIdSet(list);
       return new RandomAccessDocIdSet()
       {
@@ -51,7 +51,7 @@ public class BucketFacetCountCollector implements FacetCountCollector
 		_collapsedCounts = new int[_bucketValues.size()];
 		FacetDataCache dataCache = _subCollector._dataCache;
 		TermValueList<?> subList = dataCache.valArray; 
-		int[] subcounts = _subCollector._count;
+		int[] subcounts = _subCollector.getCountDistribution();
 		BitVector indexSet = new BitVector(subcounts.length);
 		int c = 0;
 		int i = 0;
@@ -107,6 +107,10 @@ public class BucketFacetCountCollector implements FacetCountCollector
 	  _subCollector.collect(docid);
   }
   
+  public final void collect(int[] docs, int len) {
+	  _subCollector.collect(docs, len);
+  }
+  
   public final void collectAll()
   {
 	  _subCollector.collectAll();
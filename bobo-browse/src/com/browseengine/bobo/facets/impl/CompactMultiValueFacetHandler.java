@@ -393,6 +393,13 @@ public class CompactMultiValueFacetHandler extends FacetHandler<FacetDataCache>
 	    }
       }
 	
+	  @Override
+	  public void setCountDistribution(int[] count)
+	  {
+	    super.setCountDistribution(count);
+	    _aggregated = true;
+	  }
+	  
 	  @Override
 	  public BrowseFacet getFacet(String value)
 	  {
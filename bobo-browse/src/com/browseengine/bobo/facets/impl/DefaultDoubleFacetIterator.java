@@ -14,6 +14,8 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
 
   public TermDoubleList _valList;
   private int[] _count;
+  // value index of each count, null when the counts are indexed by value
+  private int[] _keys;
   private int _countlength;
   private int _countLengthMinusOne;
   private int _index;
@@ -32,6 +34,21 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
     count = 0;
   }
 
+  /**
+   * Iterates over sparse counts, countarray[i] is the count of the value at index keys[i].
+   * @param keys value indexes in increasing order
+   */
+  public DefaultDoubleFacetIterator(TermDoubleList valList, int[] keys, int[] countarray, int countlength)
+  {
+    this(valList, countarray, countlength, true);
+    _keys = keys;
+  }
+
+  private int valueIndex(int index)
+  {
+    return _keys == null ? index : _keys[index];
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -83,9 +100,9 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
     if ((_index >= 0) && (_index >= _countLengthMinusOne))
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
-    return _valList.get(_index);
+    return _valList.get(valueIndex(_index));
   }
 
   /* (non-Javadoc)
@@ -96,7 +113,7 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
     if (_index >= _countLengthMinusOne)
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
     return facet;
   }
@@ -123,7 +140,7 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return _valList.format(facet);
       }
@@ -142,7 +159,7 @@ public class DefaultDoubleFacetIterator extends DoubleFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return facet;
       }
@@ -29,6 +29,7 @@ import com.browseengine.bobo.facets.data.TermShortList;
 import com.browseengine.bobo.facets.data.TermValueList;
 import com.browseengine.bobo.jmx.JMXUtil;
 import com.browseengine.bobo.util.BigSegmentedArray;
+import com.browseengine.bobo.util.IntCountMap;
 import com.browseengine.bobo.util.IntBoundedPriorityQueue;
 import com.browseengine.bobo.util.IntBoundedPriorityQueue.IntComparator;
 import com.browseengine.bobo.util.MemoryManager;
@@ -37,9 +38,23 @@ import com.browseengine.bobo.util.MemoryManagerAdminMBean;
 public abstract class DefaultFacetCountCollector implements FacetCountCollector
 {
   private static final Logger log = Logger.getLogger(DefaultFacetCountCollector.class.getName());
+
+  /** facets with at least this many values start counting into a sparse map instead of a count array */
+  public static final int SPARSE_MIN_CARDINALITY = 1 << 16;
+  /** a sparse count map is turned into a count array once 1/2^SPARSE_FILL_SHIFT of the values were hit */
+  private static final int SPARSE_FILL_SHIFT = 5;
+
   protected final FacetSpec _ospec;
+  /**
+   * count array, null while counting sparsely, see {@link #_sparseCount}
+   */
   public int[] _count;
   public int _countlength;
+  /**
+   * counts of a high cardinality facet while only few of its values were hit, null once counting densely
+   */
+  protected IntCountMap _sparseCount;
+  private final int _sparseLimit;
   protected FacetDataCache _dataCache;
   private final String _name;
   protected final BrowseSelection _sel;
@@ -84,23 +99,72 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
 
   public DefaultFacetCountCollector(String name,FacetDataCache dataCache,int docBase,
       BrowseSelection sel,FacetSpec ospec)
+  {
+    this(name, dataCache, docBase, sel, ospec, false);
+  }
+
+  /**
+   * @param sparse whether the subclass counts through {@link #countSparse(int)} while {@link #_count} is null,
+   * allowing high cardinality facets to start with a sparse count map
+   */
+  protected DefaultFacetCountCollector(String name,FacetDataCache dataCache,int docBase,
+      BrowseSelection sel,FacetSpec ospec,boolean sparse)
   {
     _sel = sel;
     _ospec = ospec;
     _name = name;
     _dataCache=dataCache;
-    if (_dataCache.freqs.length <= 3096)
+    _countlength = _dataCache.freqs.length;
+    if (sparse && _countlength >= SPARSE_MIN_CARDINALITY)
+    {
+      _sparseLimit = _countlength >> SPARSE_FILL_SHIFT;
+      _sparseCount = new IntCountMap(256);
+    }
+    else
+    {
+      _sparseLimit = 0;
+      allocateCount();
+    }
+    _array = _dataCache.orderArray;
+    _docBase = docBase;
+  }
+
+  private void allocateCount()
+  {
+    if (_countlength <= 3096)
     {
-      _countlength = _dataCache.freqs.length;
       _count = new int[_countlength];
     } else
     {
-      _countlength = _dataCache.freqs.length;
       _count = intarraymgr.get(_countlength);//new int[_dataCache.freqs.length];
       intarraylist.add(_count);
     }
-    _array = _dataCache.orderArray;
-    _docBase = docBase;
+  }
+
+  /**
+   * Counts a value while counting sparsely, switches to a count array when too many values were hit.
+   * @param index value index
+   */
+  protected final void countSparse(int index)
+  {
+    _sparseCount.increment(index);
+    if (_sparseCount.size() > _sparseLimit)
+    {
+      toDense();
+    }
+  }
+
+  /**
+   * Moves the sparse counts, if any, to a count array.
+   */
+  protected final void toDense()
+  {
+    if (_sparseCount != null)
+    {
+      allocateCount();
+      _sparseCount.addTo(_count);
+      _sparseCount = null;
+    }
   }
 
   public String getName()
@@ -110,6 +174,18 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
 
   abstract public void collect(int docid);
 
+  /**
+   * Collects a batch of hits one by one. Subclasses override this with a loop that does not
+   * dispatch per hit; while counting sparsely they must go through {@link #countSparse(int)}.
+   */
+  public void collect(int[] docs, int len)
+  {
+    for (int i = 0; i < len; ++i)
+    {
+      collect(docs[i]);
+    }
+  }
+
   abstract public void collectAll();
 
   public BrowseFacet getFacet(String value)
@@ -121,7 +197,7 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
     BrowseFacet facet = null;
     int index=_dataCache.valArray.indexOf(value);
     if (index >=0 ){
-      facet = new BrowseFacet(_dataCache.valArray.get(index),_count[index]);
+      facet = new BrowseFacet(_dataCache.valArray.get(index),_sparseCount != null ? _sparseCount.get(index) : _count[index]);
     }
     else{
       facet = new BrowseFacet(_dataCache.valArray.format(value),0);  
@@ -131,14 +207,66 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
 
   public int[] getCountDistribution()
   {
+    toDense();
     return _count;
   }
   
+  /**
+   * Uses a previously computed count distribution, e.g. one taken from the facet count cache,
+   * instead of collecting hits. The array is shared and must not be modified.
+   * @param count count distribution as returned by {@link #getCountDistribution()}
+   */
+  public void setCountDistribution(int[] count)
+  {
+    _sparseCount = null;
+    _count = count;
+  }
+
   public FacetDataCache getFacetDataCache(){
 	  return _dataCache;
   }
   
   public static List<BrowseFacet> getFacets(FacetSpec ospec,int[] count, int countlength, final TermValueList<?> valList){
+    return getFacets(ospec, count, 1, countlength, new FieldValueAccessor(){
+
+      public String getFormatedValue(int index) {
+        return valList.get(index);
+      }
+
+      public Object getRawValue(int index) {
+        return valList.getRawValue(index);
+      }
+
+    });
+  }
+
+  /**
+   * Gets the facets of sparse counts. Only the hit values are visited, the counts and values are
+   * compacted in value order so the facet comparators see the same order as with a count array.
+   */
+  private static List<BrowseFacet> getFacets(FacetSpec ospec, IntCountMap sparseCount, final TermValueList<?> valList){
+    final int[] keys = sparseCount.sortedKeys();
+    int[] count = new int[keys.length];
+    for (int i = 0; i < keys.length; ++i)
+    {
+      count[i] = sparseCount.get(keys[i]);
+    }
+    // index 0 is the "no value" slot and is never returned
+    int start = (keys.length > 0 && keys[0] == 0) ? 1 : 0;
+    return getFacets(ospec, count, start, keys.length, new FieldValueAccessor(){
+
+      public String getFormatedValue(int index) {
+        return valList.get(keys[index]);
+      }
+
+      public Object getRawValue(int index) {
+        return valList.getRawValue(keys[index]);
+      }
+
+    });
+  }
+
+  private static List<BrowseFacet> getFacets(FacetSpec ospec,int[] count, int start, int countlength, FieldValueAccessor valAccessor){
 	  if (ospec!=null)
 	    {
 	      int minCount=ospec.getMinHitCount();
@@ -150,12 +278,12 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
 	      if (sortspec == FacetSortSpec.OrderValueAsc)
 	      {
 	        facetColl=new ArrayList<BrowseFacet>(max);
-	        for (int i = 1; i < countlength;++i) // exclude zero
+	        for (int i = start; i < countlength;++i) // exclude zero
 	        {
 	          int hits=count[i];
 	          if (hits>=minCount)
 	          {
-	            BrowseFacet facet=new BrowseFacet(valList.get(i),hits);
+	            BrowseFacet facet=new BrowseFacet(valAccessor.getFormatedValue(i),hits);
 	            facetColl.add(facet);
 	          }
 	          if (facetColl.size()>=max) break;
@@ -175,34 +303,32 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
 	          throw new IllegalArgumentException("facet comparator factory not specified");
 	        }
 
-	        final IntComparator comparator = comparatorFactory.newComparator(new FieldValueAccessor(){
-
-	          public String getFormatedValue(int index) {
-	            return valList.get(index);
-	          }
-
-	          public Object getRawValue(int index) {
-	            return valList.getRawValue(index);
-	          }
-
-	        }, count);
+	        final IntComparator comparator = comparatorFactory.newComparator(valAccessor, count);
 	        facetColl=new LinkedList<BrowseFacet>();
 	        final int forbidden = -1;
 	        IntBoundedPriorityQueue pq=new IntBoundedPriorityQueue(comparator,max, forbidden);
 
-	        for (int i=1;i<countlength;++i)
+	        // ordered by hits, a full queue only takes values with more hits than its head, later
+	        // values lose ties, so the rest can be skipped on the count alone
+	        boolean byHits = (sortspec == FacetSortSpec.OrderHitsDesc);
+	        int threshold = minCount;
+	        for (int i=start;i<countlength;++i)
 	        {
 	          int hits=count[i];
-	          if (hits>=minCount)
+	          if (hits>=threshold)
 	          {
 	            pq.offer(i);
+	            if (byHits && pq.size() == max)
+	            {
+	              threshold = Math.max(minCount, count[pq.intElement()] + 1);
+	            }
 	          }
 	        }
 
 	        int val;
 	        while((val = pq.pollInt()) != forbidden)
 	        {
-	          BrowseFacet facet=new BrowseFacet(valList.get(val),count[val]);
+	          BrowseFacet facet=new BrowseFacet(valAccessor.getFormatedValue(val),count[val]);
 	          ((LinkedList<BrowseFacet>)facetColl).addFirst(facet);
 	        }
 	      }
@@ -220,6 +346,15 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
       throw new IllegalStateException("This instance of count collector for " + _name + " was already closed");
     }
     
+    if (_sparseCount != null)
+    {
+      if (_ospec != null && _ospec.getMinHitCount() > 0)
+      {
+        return getFacets(_ospec, _sparseCount, _dataCache.valArray);
+      }
+      // values without hits are requested as well
+      toDense();
+    }
     return getFacets(_ospec,_count, _countlength, _dataCache.valArray);
     
   }
@@ -240,7 +375,9 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
   }
 
   /**
-   * This function returns an Iterator to visit the facets in value order
+   * This function returns an Iterator to visit the facets in value order.
+   * Sparse counts are iterated as they are when the facet spec asks for at least one hit, otherwise
+   * they are moved to a count array first.
    * @return	The Iterator to iterate over the facets in value order
    */
   public FacetIterator iterator()
@@ -249,6 +386,11 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
     {
       throw new IllegalStateException("This instance of count collector for '" + _name + "' was already closed");
     }
+    if (_sparseCount != null && _ospec != null && _ospec.getMinHitCount() > 0)
+    {
+      return sparseIterator();
+    }
+    toDense();
     if (_dataCache.valArray.getType().equals(Integer.class))
     {
       return new DefaultIntFacetIterator((TermIntList) _dataCache.valArray, _count, _countlength, false);
@@ -267,4 +409,39 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
     } else
     return new DefaultFacetIterator(_dataCache.valArray, _count, _countlength, false);
   }
+
+  /**
+   * Iterates over the hit values of the sparse counts in value order, values without hits are skipped.
+   */
+  private FacetIterator sparseIterator()
+  {
+    int[] keys = _sparseCount.sortedKeys();
+    // index 0 is the "no value" slot and is never returned
+    if (keys.length > 0 && keys[0] == 0)
+    {
+      keys = Arrays.copyOfRange(keys, 1, keys.length);
+    }
+    int[] count = new int[keys.length];
+    for (int i = 0; i < keys.length; ++i)
+    {
+      count[i] = _sparseCount.get(keys[i]);
+    }
+    if (_dataCache.valArray.getType().equals(Integer.class))
+    {
+      return new DefaultIntFacetIterator((TermIntList) _dataCache.valArray, keys, count, count.length);
+    } else if (_dataCache.valArray.getType().equals(Long.class))
+    {
+      return new DefaultLongFacetIterator((TermLongList) _dataCache.valArray, keys, count, count.length);
+    } else if (_dataCache.valArray.getType().equals(Short.class))
+    {
+      return new DefaultShortFacetIterator((TermShortList) _dataCache.valArray, keys, count, count.length);
+    } else if (_dataCache.valArray.getType().equals(Float.class))
+    {
+      return new DefaultFloatFacetIterator((TermFloatList) _dataCache.valArray, keys, count, count.length);
+    } else if (_dataCache.valArray.getType().equals(Double.class))
+    {
+      return new DefaultDoubleFacetIterator((TermDoubleList) _dataCache.valArray, keys, count, count.length);
+    } else
+    return new DefaultFacetIterator(_dataCache.valArray, keys, count, count.length);
+  }
 }
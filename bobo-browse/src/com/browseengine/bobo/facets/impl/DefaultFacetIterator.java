@@ -14,6 +14,8 @@ public class DefaultFacetIterator extends FacetIterator {
 
   private TermValueList _valList;
   private int[] _count;
+  // value index of each count, null when the counts are indexed by value
+  private int[] _keys;
   private int _countlength;
   private int _index;
   private int _lastIndex;
@@ -31,6 +33,21 @@ public class DefaultFacetIterator extends FacetIterator {
     count = 0;
   }
 
+  /**
+   * Iterates over sparse counts, countarray[i] is the count of the value at index keys[i].
+   * @param keys value indexes in increasing order
+   */
+  public DefaultFacetIterator(TermValueList valList, int[] keys, int[] countarray, int countlength)
+  {
+    this(valList, countarray, countlength, true);
+    _keys = keys;
+  }
+
+  private int valueIndex(int index)
+  {
+    return _keys == null ? index : _keys[index];
+  }
+
 
   /* (non-Javadoc)
    * @see java.util.Iterator#hasNext()
@@ -44,7 +61,7 @@ public class DefaultFacetIterator extends FacetIterator {
    */
   public Comparable next() {
     _index++;
-    facet = (Comparable)_valList.getRawValue(_index);
+    facet = (Comparable)_valList.getRawValue(valueIndex(_index));
     count = _count[_index];
     return format(facet);
   }
@@ -65,7 +82,7 @@ public class DefaultFacetIterator extends FacetIterator {
     {
       if(_count[_index] >= minHits)
       {
-    	facet = (Comparable)_valList.getRawValue(_index);
+    	facet = (Comparable)_valList.getRawValue(valueIndex(_index));
         count = _count[_index];
         return format(facet);
       }
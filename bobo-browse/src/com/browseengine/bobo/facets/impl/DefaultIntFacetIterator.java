@@ -10,6 +10,8 @@ public class DefaultIntFacetIterator extends IntFacetIterator
 
   public TermIntList _valList;
   private int[] _count;
+  // value index of each count, null when the counts are indexed by value
+  private int[] _keys;
   private int _countlength;
   private int _countLengthMinusOne;
   private int _index;
@@ -27,6 +29,21 @@ public class DefaultIntFacetIterator extends IntFacetIterator
     count = 0;
   }
 
+  /**
+   * Iterates over sparse counts, countarray[i] is the count of the value at index keys[i].
+   * @param keys value indexes in increasing order
+   */
+  public DefaultIntFacetIterator(TermIntList valList, int[] keys, int[] countarray, int countlength)
+  {
+    this(valList, countarray, countlength, true);
+    _keys = keys;
+  }
+
+  private int valueIndex(int index)
+  {
+    return _keys == null ? index : _keys[index];
+  }
+
   /* (non-Javadoc)
    * @see com.browseengine.bobo.api.FacetIterator#getFacet()
    */
@@ -63,9 +80,9 @@ public class DefaultIntFacetIterator extends IntFacetIterator
     if((_index >= 0) && (_index >= _countLengthMinusOne))
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
-    return _valList.get(_index);
+    return _valList.get(valueIndex(_index));
   }
 
   /* (non-Javadoc)
@@ -76,7 +93,7 @@ public class DefaultIntFacetIterator extends IntFacetIterator
     if(_index >= _countLengthMinusOne)
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
     return facet;
   }
@@ -97,7 +114,7 @@ public class DefaultIntFacetIterator extends IntFacetIterator
     {
       if(_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return _valList.format(facet);
       }
@@ -115,7 +132,7 @@ public class DefaultIntFacetIterator extends IntFacetIterator
     {
       if(_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return facet;
       }
@@ -16,6 +16,8 @@ public class DefaultLongFacetIterator extends LongFacetIterator
 
   public TermLongList _valList;
   private int[] _count;
+  // value index of each count, null when the counts are indexed by value
+  private int[] _keys;
   private int _countlength;
   private int _countLengthMinusOne;
   private int _index;
@@ -34,6 +36,21 @@ public class DefaultLongFacetIterator extends LongFacetIterator
     count = 0;
   }
 
+  /**
+   * Iterates over sparse counts, countarray[i] is the count of the value at index keys[i].
+   * @param keys value indexes in increasing order
+   */
+  public DefaultLongFacetIterator(TermLongList valList, int[] keys, int[] countarray, int countlength)
+  {
+    this(valList, countarray, countlength, true);
+    _keys = keys;
+  }
+
+  private int valueIndex(int index)
+  {
+    return _keys == null ? index : _keys[index];
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -85,9 +102,9 @@ public class DefaultLongFacetIterator extends LongFacetIterator
     if ((_index >= 0) && (_index >= _countLengthMinusOne))
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
-    return _valList.get(_index);
+    return _valList.get(valueIndex(_index));
   }
 
   /* (non-Javadoc)
@@ -98,7 +115,7 @@ public class DefaultLongFacetIterator extends LongFacetIterator
     if (_index >= _countLengthMinusOne)
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
     return facet;
   }
@@ -125,7 +142,7 @@ public class DefaultLongFacetIterator extends LongFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return _valList.format(facet);
       }
@@ -144,7 +161,7 @@ public class DefaultLongFacetIterator extends LongFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return facet;
       }
@@ -17,6 +17,8 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
 
   public TermShortList _valList;
   private int[] _count;
+  // value index of each count, null when the counts are indexed by value
+  private int[] _keys;
   private int _countlength;
   private int _countLengthMinusOne;
   private int _index;
@@ -35,6 +37,21 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
     count = 0;
   }
 
+  /**
+   * Iterates over sparse counts, countarray[i] is the count of the value at index keys[i].
+   * @param keys value indexes in increasing order
+   */
+  public DefaultShortFacetIterator(TermShortList valList, int[] keys, int[] countarray, int countlength)
+  {
+    this(valList, countarray, countlength, true);
+    _keys = keys;
+  }
+
+  private int valueIndex(int index)
+  {
+    return _keys == null ? index : _keys[index];
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -86,9 +103,9 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
     if ((_index >= 0) && (_index >= _countLengthMinusOne))
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
-    return _valList.get(_index);
+    return _valList.get(valueIndex(_index));
   }
 
   /* (non-Javadoc)
@@ -99,7 +116,7 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
     if (_index >= _countLengthMinusOne)
       throw new NoSuchElementException("No more facets in this iteration");
     _index++;
-    facet = _valList.getPrimitiveValue(_index);
+    facet = _valList.getPrimitiveValue(valueIndex(_index));
     count = _count[_index];
     return facet;
   }
@@ -126,7 +143,7 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return _valList.format(facet);
       }
@@ -145,7 +162,7 @@ public class DefaultShortFacetIterator extends ShortFacetIterator
     {
       if (_count[_index] >= minHits)
       {
-        facet = _valList.getPrimitiveValue(_index);
+        facet = _valList.getPrimitiveValue(valueIndex(_index));
         count = _count[_index];
         return facet;
       }
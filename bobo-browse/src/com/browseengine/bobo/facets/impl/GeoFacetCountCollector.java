@@ -155,6 +155,12 @@ public class GeoFacetCountCollector implements FacetCountCollector {
 		}
 	}
 
+	public void collect(int[] docs, int len) {
+		for(int i = 0; i < len; ++i) {
+			collect(docs[i]);
+		}
+	}
+
 	public void collectAll() {
 		throw new UnsupportedOperationException("collectAll is not supported for Geo Facets yet");
 	}
@@ -92,6 +92,15 @@ public class GeoSimpleFacetCountCollector implements FacetCountCollector {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see com.browseengine.bobo.facets.FacetCountCollector#collect(int[], int)
+	 */
+	public void collect(int[] docs, int len) {
+		for(int i = 0; i < len; ++i) {
+			collect(docs[i]);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.browseengine.bobo.facets.FacetCountCollector#collectAll()
 	 */
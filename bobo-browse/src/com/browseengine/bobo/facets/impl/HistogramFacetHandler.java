@@ -184,6 +184,11 @@ public class HistogramFacetHandler<T extends Number> extends RuntimeFacetHandler
       _baseCollector.collect(docid);
     }
     
+    public final void collect(int[] docs, int len)
+    {
+      _baseCollector.collect(docs, len);
+    }
+    
     public final void collectAll()
     {
       _baseCollector.collectAll();
@@ -145,9 +145,10 @@ public class MultiValueFacetHandler extends FacetHandler<MultiValueFacetDataCach
   @Override
   public MultiValueFacetDataCache load(BoboIndexReader reader, WorkArea workArea) throws IOException
   {
-	MultiValueFacetDataCache dataCache = new MultiValueFacetDataCache();
+	MultiValueFacetDataCache dataCache = new MultiValueFacetDataCache(getArrayStorage());
     
 	dataCache.setMaxItems(_maxItems);
+	dataCache.setSnapshotEnabled(isSnapshotEnabled());
 
     if(_sizePayloadTerm == null)
     {
@@ -160,6 +161,12 @@ public class MultiValueFacetHandler extends FacetHandler<MultiValueFacetDataCach
     return dataCache;
   }
 
+  @Override
+  public MultiValueFacetDataCache reuseFacetData(BoboIndexReader reader, BoboIndexReader oldReader, MultiValueFacetDataCache oldData) throws IOException
+  {
+    return oldData.withDeletions(oldReader, reader);
+  }
+
   @Override
   public RandomAccessFilter buildRandomAccessFilter(String value, Properties prop) throws IOException
   {
@@ -298,20 +305,73 @@ public class MultiValueFacetHandler extends FacetHandler<MultiValueFacetDataCach
     							  BrowseSelection sel,
                                   FacetSpec ospec)
                                   {
-      super(name,dataCache,docBase,sel,ospec);
+      super(name,dataCache,docBase,sel,ospec,true);
       _array = dataCache._nestedArray;
     }
 
+    private int[] _valBuf;
+
+    private void countSparse(BigNestedIntArray array, int docid)
+    {
+      if (_valBuf == null)
+      {
+        _valBuf = new int[BigNestedIntArray.MAX_ITEMS];
+      }
+      int num = array.getData(docid, _valBuf);
+      if (num == 0)
+      {
+        countSparse(0);
+      }
+      else
+      {
+        for (int k = 0; k < num; ++k)
+        {
+          // the counts may move to the count array midway
+          if (_sparseCount != null)
+          {
+            countSparse(_valBuf[k]);
+          }
+          else
+          {
+            _count[_valBuf[k]]++;
+          }
+        }
+      }
+    }
+
     @Override
     public final void collect(int docid) 
     {
-      _array.countNoReturn(docid, _count);
+      if (_sparseCount != null)
+      {
+        countSparse(_array, docid);
+      }
+      else
+      {
+        _array.countNoReturn(docid, _count);
+      }
+    }
+
+    @Override
+    public final void collect(int[] docs, int len)
+    {
+      final BigNestedIntArray array = _array;
+      int i = 0;
+      while (_sparseCount != null && i < len)
+      {
+        countSparse(array, docs[i++]);
+      }
+      final int[] count = _count;
+      for (; i < len; ++i)
+      {
+        array.countNoReturn(docs[i], count);
+      }
     }
 
     @Override
     public final void collectAll()
     {
-      _count = _dataCache.freqs;
+      setCountDistribution(_dataCache.freqs);
     }
   }
 }
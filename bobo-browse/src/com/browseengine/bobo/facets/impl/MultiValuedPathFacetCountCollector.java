@@ -4,15 +4,19 @@ import com.browseengine.bobo.api.BrowseSelection;
 import com.browseengine.bobo.api.FacetSpec;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.facets.data.PathOrdinalTree;
 import com.browseengine.bobo.util.BigNestedIntArray;
 
 public class MultiValuedPathFacetCountCollector extends PathFacetCountCollector {
 
     private final BigNestedIntArray _array;
     
+	/**
+	 * @param tree path tree of the facet data, as given by {@link PathFacetHandler#getPathTree}
+	 */
 	public MultiValuedPathFacetCountCollector(String name, String sep,
-			BrowseSelection sel, FacetSpec ospec, FacetDataCache dataCache) {
-		super(name, sep, sel, ospec, dataCache);
+			BrowseSelection sel, FacetSpec ospec, FacetDataCache dataCache, PathOrdinalTree tree) {
+		super(name, sep, sel, ospec, dataCache, tree);
 		_array = ((MultiValueFacetDataCache)(dataCache))._nestedArray;
 	}
 
@@ -22,6 +26,17 @@ public class MultiValuedPathFacetCountCollector extends PathFacetCountCollector
       _array.countNoReturn(docid, _count);
     }
 
+    @Override
+    public final void collect(int[] docs, int len)
+    {
+      final int[] count = _count;
+      final BigNestedIntArray array = _array;
+      for (int i = 0; i < len; ++i)
+      {
+        array.countNoReturn(docs[i], count);
+      }
+    }
+
     @Override
     public final void collectAll()
     {
@@ -1,12 +1,12 @@
 package com.browseengine.bobo.facets.impl;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
@@ -16,10 +16,13 @@ import com.browseengine.bobo.api.ComparatorFactory;
 import com.browseengine.bobo.api.FacetIterator;
 import com.browseengine.bobo.api.FacetSpec;
 import com.browseengine.bobo.api.FacetSpec.FacetSortSpec;
+import com.browseengine.bobo.api.FieldValueAccessor;
 import com.browseengine.bobo.facets.FacetCountCollector;
 import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.PathOrdinalTree;
 import com.browseengine.bobo.util.BigSegmentedArray;
-import com.browseengine.bobo.util.BoundedPriorityQueue;
+import com.browseengine.bobo.util.IntBoundedPriorityQueue;
+import com.browseengine.bobo.util.IntBoundedPriorityQueue.IntComparator;
 import com.browseengine.bobo.util.ListMerger;
 
 public class PathFacetCountCollector implements FacetCountCollector
@@ -35,27 +38,23 @@ public class PathFacetCountCollector implements FacetCountCollector
 	private final ComparatorFactory _comparatorFactory;
 	private final int _minHitCount;
 	private int _maxCount;
-	private static Pattern _splitPat;
-	private String[] _stringData;
-	private char[] _sepArray;
-	private int _patStart;
-	private int _patEnd;
+	private final PathOrdinalTree _tree;
 	
-	PathFacetCountCollector(String name,String sep,BrowseSelection sel,FacetSpec ospec,FacetDataCache dataCache)
+	PathFacetCountCollector(String name,String sep,BrowseSelection sel,FacetSpec ospec,FacetDataCache dataCache,PathOrdinalTree tree)
 	{
 		_sel = sel;
 		_ospec=ospec;
 		_name = name;
         _dataCache = dataCache;
         _sep = sep;
-        _sepArray = sep.toCharArray();
 		_count=new int[_dataCache.freqs.length];
 		log.info(name +": " + _count.length);
 		_orderArray = _dataCache.orderArray;
+		_tree = tree;
 		_minHitCount = ospec.getMinHitCount();
 		_maxCount = ospec.getMaxCount();
 		if (_maxCount<1){
-			_maxCount = _count.length;
+			_maxCount = Integer.MAX_VALUE;
 		}
 		FacetSortSpec sortOption = ospec.getOrderBy();
 		switch(sortOption){
@@ -64,10 +63,6 @@ public class PathFacetCountCollector implements FacetCountCollector
 		case OrderByCustom: _comparatorFactory=ospec.getCustomComparatorFactory(); break;
 		default: throw new IllegalArgumentException("invalid sort option: "+sortOption);
 		}
-		_splitPat = Pattern.compile(_sep);
-		_stringData = new String[10];
-		_patStart = 0;
-		_patEnd = 0;
 	}
 
 
@@ -85,6 +80,10 @@ public class PathFacetCountCollector implements FacetCountCollector
 		_count[_orderArray.get(docid)]++;
 	}
 	
+	public void collect(int[] docs, int len) {
+		_orderArray.countValues(docs, 0, len, _count);
+	}
+	
 	public void collectAll()
 	{
 	    _count = _dataCache.freqs; 
@@ -92,231 +91,115 @@ public class PathFacetCountCollector implements FacetCountCollector
 	
 	public BrowseFacet getFacet(String value)
 	{
-	  return null;	
+	  int node = _tree.getNode(value);
+	  if (node <= 0)
+	  {
+	    return new BrowseFacet(value, 0);
+	  }
+	  // "a/b/" stands for the hits on a/b itself, see getFacetsForPath
+	  return new BrowseFacet(value, value.endsWith(_sep) ? termCount(node) : _tree.rollUp(node, _count));
 	}
 	
-	private void ensureCapacity(int minCapacity) {
-		int oldCapacity = _stringData.length;
-		if (minCapacity > oldCapacity) {
-			Object oldData[] = _stringData;
-			int newCapacity = (oldCapacity * 3)/2 + 1;
-			if (newCapacity < minCapacity)
-				newCapacity = minCapacity;
-			// minCapacity is usually close to size, so this is a win:
-			_stringData = new String[newCapacity];
-			System.arraycopy(oldData, 0, _stringData, Math.min(oldData.length, newCapacity), newCapacity);
+	/**
+	 * Gets the facets of the nodes at a depth below a selected path. Non strict counts roll up the whole
+	 * subtree of a node, strict counts take only the node's own term. Without strict counting, paths from the
+	 * selected one down to above the wanted depth are also returned with their own counts, named with a trailing
+	 * separator, so every hit below the selected path shows up. The facets are visited in tree order, which is
+	 * value order unless path parts contain characters that sort before the separator.
+	 */
+	private List<BrowseFacet> getFacetsForPath(String selectedPath,int depth,boolean strict,int minCount,int maxCount)
+	{
+		int root = _tree.getNode(selectedPath);
+		if (root < 0)
+		{
+			return new LinkedList<BrowseFacet>();
 		}
-	}
+		int wantedDepth = _tree.getDepth(root) + depth;
 
-	private int patListSize() {
-		return (_patEnd - _patStart);
-	}
-	
-	public boolean splitString(String input) {
-		_patStart = 0;
-		_patEnd = 0;
-		char[] str = input.toCharArray();
-		int index = 0;
-		int sepindex = 0;
-		int tokStart = -1;
-		int tokEnd = 0;
-		while(index < input.length()) {
-			for(sepindex = 0; (sepindex < _sepArray.length) && (str[index+sepindex] == _sepArray[sepindex]); sepindex++);
-			if(sepindex == _sepArray.length) {
-				index += _sepArray.length;
-				if(tokStart >= 0) {
-					ensureCapacity(_patEnd + 1);
-					tokEnd++;
-					_stringData[_patEnd++] = input.substring(tokStart, tokEnd);
+		IntArrayList nodes = new IntArrayList();
+		IntArrayList counts = new IntArrayList();
+		int end = _tree.getEnd(root);
+		int node = root;
+		while (node < end)
+		{
+			int nodeDepth = _tree.getDepth(node);
+			if (node != root && nodeDepth >= wantedDepth)
+			{
+				int cnt = strict ? termCount(node) : _tree.rollUp(node, _count);
+				if (cnt >= minCount)
+				{
+					nodes.add(node);
+					counts.add(cnt);
 				}
-				tokStart = -1;
-			} else {
-				if(tokStart < 0) {
-					tokStart = index;
-					tokEnd = index;
-				}else {
-					tokEnd++;
+				node = _tree.getEnd(node);
+			}
+			else
+			{
+				if (!strict && _tree.getTerm(node) >= 0)
+				{
+					int cnt = termCount(node);
+					if (cnt >= minCount && cnt > 0)
+					{
+						nodes.add(-(node + 1));
+						counts.add(cnt);
+					}
 				}
-				index++;
+				node++;
 			}
 		}
-		
-		if(_patEnd == 0)
-			return false;
-		
-		if(tokStart >= 0) { 
-			ensureCapacity(_patEnd + 1);
-			tokEnd++;
-			_stringData[_patEnd++] = input.substring(tokStart, tokEnd);
-		}
-			
-		// let gc do its job 
-		str = null;
-		
-		// Construct result
-		while (_patEnd > 0 && _stringData[patListSize()-1].equals("")) {
-			_patEnd--;
-		}
-		return true;
-	}
-	
-	private List<BrowseFacet> getFacetsForPath(String selectedPath,int depth,boolean strict,int minCount,int maxCount)
-	{
-		LinkedList<BrowseFacet> list=new LinkedList<BrowseFacet>();
-
-        BoundedPriorityQueue<BrowseFacet> pq=null;
-        if (_comparatorFactory!=null){
-        	final Comparator<BrowseFacet> comparator = _comparatorFactory.newComparator();
-
-        	pq=new BoundedPriorityQueue<BrowseFacet>(new Comparator<BrowseFacet>(){
 
-        		public int compare(BrowseFacet o1, BrowseFacet o2) {
-        			return -comparator.compare(o1,o2);				}
-
-        	},maxCount);
-        }
-
-		String[] startParts=null;
-		int startDepth=0;
-		
-		if (selectedPath!=null && selectedPath.length()>0){					
-			startParts=selectedPath.split(_sep);
-			startDepth=startParts.length;		
-			if (!selectedPath.endsWith(_sep)){
-				selectedPath+=_sep;
-			}
-		}	
-		
-		String currentPath=null;
-		int currentCount=0;
-		
-		int wantedDepth=startDepth+depth;
-		
-		int index=0;
-		if (selectedPath!=null && selectedPath.length()>0){		
-			index=_dataCache.valArray.indexOf(selectedPath);
-			if (index<0)
+		final int[] facetNodes = nodes.toIntArray();
+		final int[] facetCounts = counts.toIntArray();
+		LinkedList<BrowseFacet> list=new LinkedList<BrowseFacet>();
+		if (_comparatorFactory == null)
+		{
+			for (int i = 0; i < facetNodes.length && list.size() < maxCount; ++i)
 			{
-				index=-(index + 1);
+				list.add(new BrowseFacet(getFacetName(facetNodes[i]), facetCounts[i]));
 			}
+			return list;
 		}
-		
-		String[] pathParts;
-		StringBuffer buf = new StringBuffer();
-		for (int i=index;i<_count.length;++i){
-			if (_count[i] >= minCount){
-				String path=_dataCache.valArray.get(i);
-				//if (path==null || path.equals(selectedPath)) continue;						
-				
-				int subCount=_count[i];
 
-				// do not use Java split string in a loop !
-//				String[] pathParts=path.split(_sep);
-				int pathDepth = 0;
-				if(!splitString(path)) {
-					pathDepth = 0;
-				}else {
-					pathDepth = patListSize();
-				}
-				
-				int tmpdepth = 0;
-				if ((startDepth==0) || (startDepth>0 && path.startsWith(selectedPath))){
-						buf.delete(0, buf.length());
-						int minDepth=Math.min(wantedDepth, pathDepth);
-						tmpdepth = 0;
-						for(int k = _patStart; ((k < _patEnd) && (tmpdepth < minDepth)); ++k, tmpdepth++){
-							buf.append(_stringData[k]);
-							if (!_stringData[k].endsWith(_sep)){
-								if (pathDepth!=wantedDepth || k<(wantedDepth-1))
-									buf.append(_sep);
-							}
-						}
-						String wantedPath=buf.toString();
-						if (currentPath==null){
-							currentPath=wantedPath;
-							currentCount=subCount;
-						}
-						else if (wantedPath.equals(currentPath)){
-							if (!strict){
-								currentCount+=subCount;
-							}
-						}
-						else{	
-							boolean directNode=false;
-							
-							if (wantedPath.endsWith(_sep)){
-								if (currentPath.equals(wantedPath.substring(0, wantedPath.length()-1))){
-									directNode=true;
-								}
-							}
-							
-							if (strict){
-								if (directNode){
-									currentCount+=subCount;
-								}
-								else{
-									BrowseFacet ch=new BrowseFacet(currentPath,currentCount);
-									if (pq!=null){
-										pq.add(ch);
-									}
-									else{
-										if (list.size()<maxCount){
-									      list.add(ch);
-										}
-									}
-									currentPath=wantedPath;
-									currentCount=subCount;
-								}
-							}
-							else{
-								if (!directNode){
-									BrowseFacet ch=new BrowseFacet(currentPath,currentCount);
-									if (pq!=null){
-										pq.add(ch);
-									}
-									else{
-										if (list.size()<maxCount){
-										  list.add(ch);
-										}
-									}
-									currentPath=wantedPath;
-									currentCount=subCount;
-								}
-								else{
-									currentCount+=subCount;
-								}
-							}
-						}
-				}
-				else{
-					break;
-				}
-			}
-		}
-		
-		if (currentPath!=null && currentCount>0){
-			BrowseFacet ch=new BrowseFacet(currentPath,currentCount);
-			if (pq!=null){
-			  pq.add(ch);
+		// rank on candidate positions, names are only made for the facets returned
+		IntComparator comparator = _comparatorFactory.newComparator(new FieldValueAccessor()
+		{
+			public String getFormatedValue(int index)
+			{
+				return getFacetName(facetNodes[index]);
 			}
-			else{
-			  if (list.size()<maxCount){
-				  list.add(ch);
-			  }
+
+			public Object getRawValue(int index)
+			{
+				return getFacetName(facetNodes[index]);
 			}
+		}, facetCounts);
+		IntBoundedPriorityQueue pq = new IntBoundedPriorityQueue(comparator, Math.min(maxCount, Math.max(1, facetNodes.length)), -1);
+		for (int i = 0; i < facetNodes.length; ++i)
+		{
+			pq.offer(i);
 		}
-		
-		if (pq!=null){
-			BrowseFacet val;
-			while((val = pq.poll()) != null)
-            {
-              list.addFirst(val);
-            }
+		int i;
+		while ((i = pq.pollInt()) != -1)
+		{
+			list.addFirst(new BrowseFacet(getFacetName(facetNodes[i]), facetCounts[i]));
 		}
-		
 		return list;
 	}
 
+	/**
+	 * @param facetNode a node, or -(node + 1) for the count of the node's own term
+	 */
+	private String getFacetName(int facetNode)
+	{
+		return facetNode >= 0 ? _tree.getName(facetNode) : _tree.getName(-(facetNode + 1)) + _sep;
+	}
+
+	private int termCount(int node)
+	{
+		int term = _tree.getTerm(node);
+		return term < 0 ? 0 : _count[term];
+	}
+
 	public List<BrowseFacet> getFacets() {
 		Properties props = _sel == null ? null : _sel.getSelectionProperties();
 		int depth = PathFacetHandler.getDepth(props);
@@ -366,12 +249,12 @@ public class PathFacetCountCollector implements FacetCountCollector
     String[] paths= _sel == null ? null : _sel.getValues();
     if (paths==null || paths.length == 0)
     {
-      finalList = getFacetsForPath(null, depth, strict, Integer.MIN_VALUE, _count.length);
+      finalList = getFacetsForPath(null, depth, strict, Integer.MIN_VALUE, Integer.MAX_VALUE);
       return new PathFacetIterator(finalList);
     }
 
     if (paths.length==1) {
-      finalList = getFacetsForPath(paths[0],depth,strict, Integer.MIN_VALUE, _count.length);
+      finalList = getFacetsForPath(paths[0],depth,strict, Integer.MIN_VALUE, Integer.MAX_VALUE);
       return new PathFacetIterator(finalList);
     }
 
@@ -379,7 +262,7 @@ public class PathFacetCountCollector implements FacetCountCollector
     ArrayList<Iterator<BrowseFacet>> iterList = new ArrayList<Iterator<BrowseFacet>>(paths.length);
     for (String path : paths)
     {
-      List<BrowseFacet> subList=getFacetsForPath(path, depth, strict, Integer.MIN_VALUE, _count.length);
+      List<BrowseFacet> subList=getFacetsForPath(path, depth, strict, Integer.MIN_VALUE, Integer.MAX_VALUE);
       if (subList.size() > 0)
       {
         iterList.add(subList.iterator());
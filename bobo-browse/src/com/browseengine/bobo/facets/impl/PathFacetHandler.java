@@ -15,6 +15,7 @@ import com.browseengine.bobo.facets.FacetCountCollectorSource;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.facets.data.PathOrdinalTree;
 import com.browseengine.bobo.facets.data.TermListFactory;
 import com.browseengine.bobo.facets.filter.EmptyFilter;
 import com.browseengine.bobo.facets.filter.FacetOrFilter;
@@ -27,6 +28,7 @@ import com.browseengine.bobo.sort.DocComparatorSource;
 public class PathFacetHandler extends FacetHandler<FacetDataCache> 
 {
 	private static final String DEFAULT_SEP = "/";
+	private static final String PATH_TREE_SUFFIX = "$pathtree";
 	
 	public static final String SEL_PROP_NAME_STRICT="strict";
     public static final String SEL_PROP_NAME_DEPTH="depth";
@@ -287,11 +289,12 @@ public class PathFacetHandler extends FacetHandler<FacetDataCache>
 			public FacetCountCollector getFacetCountCollector(BoboIndexReader reader,
 					int docBase) {
 				FacetDataCache dataCache = PathFacetHandler.this.getFacetData(reader);
+				PathOrdinalTree tree = getPathTree(reader);
 				if (_multiValue){
-					return new MultiValuedPathFacetCountCollector(_name, _separator, sel, ospec,dataCache);
+					return new MultiValuedPathFacetCountCollector(_name, _separator, sel, ospec,dataCache,tree);
 				}
 				else{
-					return new PathFacetCountCollector(_name,_separator,sel,ospec,dataCache);
+					return new PathFacetCountCollector(_name,_separator,sel,ospec,dataCache,tree);
 				}
 			}
 		};
@@ -301,13 +304,68 @@ public class PathFacetHandler extends FacetHandler<FacetDataCache>
 	public FacetDataCache load(BoboIndexReader reader) throws IOException {
        if (!_multiValue){
 	      FacetDataCache dataCache = new FacetDataCache();
+	      dataCache.setSnapshotEnabled(isSnapshotEnabled());
+	      dataCache.setArrayStorage(getArrayStorage());
+	      dataCache.setBlockSummaryEnabled(isBlockSummaryEnabled());
 	      dataCache.load(_indexedName, reader, _termListFactory);
 	      return dataCache;
        }
        else{
-    	   MultiValueFacetDataCache dataCache = new MultiValueFacetDataCache();
+    	   MultiValueFacetDataCache dataCache = new MultiValueFacetDataCache(getArrayStorage());
+    	   dataCache.setSnapshotEnabled(isSnapshotEnabled());
     	   dataCache.load(_indexedName, reader, _termListFactory);
  	      return dataCache;
        }
 	}
+	
+	/**
+	 * Gets the tree of the paths of a reader, built when the facet data is loaded.
+	 */
+	public PathOrdinalTree getPathTree(BoboIndexReader reader)
+	{
+		// the facet data first, a lazily loading reader builds the tree with it
+		FacetDataCache dataCache = getFacetData(reader);
+		PathOrdinalTree tree = (PathOrdinalTree)reader.getFacetData(_name + PATH_TREE_SUFFIX);
+		if (tree == null || tree.getValList() != dataCache.valArray)
+		{
+			// facet data put in place without loadFacetData, the tree is built once and kept with it
+			tree = new PathOrdinalTree(dataCache.valArray, _separator);
+			reader.putFacetData(_name + PATH_TREE_SUFFIX, tree);
+		}
+		return tree;
+	}
+	
+	private void loadPathTree(BoboIndexReader reader, PathOrdinalTree oldTree)
+	{
+		FacetDataCache dataCache = getFacetData(reader);
+		// carried over facet data keeps the term list, and so the tree
+		PathOrdinalTree tree = (oldTree != null && oldTree.getValList() == dataCache.valArray) ? oldTree : new PathOrdinalTree(dataCache.valArray, _separator);
+		reader.putFacetData(_name + PATH_TREE_SUFFIX, tree);
+	}
+	
+	@Override
+	public void loadFacetData(BoboIndexReader reader) throws IOException
+	{
+		super.loadFacetData(reader);
+		loadPathTree(reader, null);
+	}
+	
+	@Override
+	public void loadFacetData(BoboIndexReader reader, BoboIndexReader.WorkArea workArea) throws IOException
+	{
+		super.loadFacetData(reader, workArea);
+		loadPathTree(reader, null);
+	}
+	
+	@Override
+	public void loadFacetData(BoboIndexReader reader, BoboIndexReader oldReader, BoboIndexReader.WorkArea workArea) throws IOException
+	{
+		super.loadFacetData(reader, oldReader, workArea);
+		loadPathTree(reader, (PathOrdinalTree)oldReader.getFacetData(_name + PATH_TREE_SUFFIX));
+	}
+	
+	@Override
+	public FacetDataCache reuseFacetData(BoboIndexReader reader, BoboIndexReader oldReader, FacetDataCache oldData) throws IOException {
+		return oldData.withDeletions(oldReader, reader);
+	}
 }
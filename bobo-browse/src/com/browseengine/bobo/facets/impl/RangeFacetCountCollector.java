@@ -114,6 +114,10 @@ public class RangeFacetCountCollector implements FacetCountCollector
   public final void collect(int docid) {
       _count[_array.get(docid)]++;
   }
+
+  public final void collect(int[] docs, int len) {
+    _array.countValues(docs, 0, len, _count);
+  }
   
   public final void collectAll()
   {
@@ -161,7 +161,15 @@ public class RangeFacetHandler extends FacetHandler<FacetDataCache>{
 	@Override
 	public FacetDataCache load(BoboIndexReader reader) throws IOException {
 	    FacetDataCache dataCache = new FacetDataCache();
+	    dataCache.setSnapshotEnabled(isSnapshotEnabled());
+	    dataCache.setArrayStorage(getArrayStorage());
+	    dataCache.setBlockSummaryEnabled(isBlockSummaryEnabled());
 		dataCache.load(_indexFieldName, reader, _termListFactory);
 		return dataCache;
-	}	
+	}
+	
+	@Override
+	public FacetDataCache reuseFacetData(BoboIndexReader reader, BoboIndexReader oldReader, FacetDataCache oldData) throws IOException {
+		return oldData.withDeletions(oldReader, reader);
+	}
 }
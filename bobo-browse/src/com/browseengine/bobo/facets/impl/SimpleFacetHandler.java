@@ -30,6 +30,7 @@ import com.browseengine.bobo.query.scoring.BoboDocScorer;
 import com.browseengine.bobo.query.scoring.FacetScoreable;
 import com.browseengine.bobo.query.scoring.FacetTermScoringFunctionFactory;
 import com.browseengine.bobo.sort.DocComparatorSource;
+import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class SimpleFacetHandler extends FacetHandler<FacetDataCache> implements FacetScoreable
 {
@@ -175,10 +176,18 @@ public class SimpleFacetHandler extends FacetHandler<FacetDataCache> implements
 	@Override
 	public FacetDataCache load(BoboIndexReader reader) throws IOException {
 		FacetDataCache dataCache = new FacetDataCache();
+		dataCache.setSnapshotEnabled(isSnapshotEnabled());
+		dataCache.setArrayStorage(getArrayStorage());
+		dataCache.setBlockSummaryEnabled(isBlockSummaryEnabled());
 		dataCache.load(_indexFieldName, reader, _termListFactory);
 		return dataCache;
 	}
 	
+	@Override
+	public FacetDataCache reuseFacetData(BoboIndexReader reader, BoboIndexReader oldReader, FacetDataCache oldData) throws IOException {
+		return oldData.withDeletions(oldReader, reader);
+	}
+	
 	public BoboDocScorer getDocScorer(BoboIndexReader reader,FacetTermScoringFunctionFactory scoringFunctionFactory,Map<String,Float> boostMap){
 		FacetDataCache dataCache = getFacetData(reader);
 		float[] boostList = BoboDocScorer.buildBoostList(dataCache.valArray, boostMap);
@@ -189,15 +198,32 @@ public class SimpleFacetHandler extends FacetHandler<FacetDataCache> implements
 	{
 		public SimpleFacetCountCollector(String name,FacetDataCache dataCache,int docBase,BrowseSelection sel,FacetSpec ospec)
 		{
-		    super(name,dataCache,docBase,sel,ospec);
+		    super(name,dataCache,docBase,sel,ospec,true);
 		}
 		
 		public final void collect(int docid) {
-			_count[_array.get(docid)]++;
+			if (_sparseCount != null) {
+				countSparse(_array.get(docid));
+			}
+			else {
+				_count[_array.get(docid)]++;
+			}
+		}
+		
+		@Override
+		public final void collect(int[] docs, int len) {
+			final BigSegmentedArray array = _array;
+			int i = 0;
+			while (_sparseCount != null && i < len) {
+				countSparse(array.get(docs[i++]));
+			}
+			if (i < len) {
+				array.countValues(docs, i, len, _count);
+			}
 		}
 		
 		public final void collectAll() {
-		  _count = _dataCache.freqs;
+		  setCountDistribution(_dataCache.freqs);
 		}
 	}
 	
@@ -215,6 +215,12 @@ public class SimpleGroupbyFacetHandler extends FacetHandler<FacetDataNone> {
       _count[idx]++;
     }
 
+    public void collect(int[] docs, int len) {
+      for (int i = 0; i < len; ++i){
+        collect(docs[i]);
+      }
+    }
+
     public void collectAll() {
       for (int i = 0; i < _maxdoc; ++i){
         collect(i);
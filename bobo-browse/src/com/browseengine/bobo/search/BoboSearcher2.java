@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -23,6 +24,7 @@ import com.browseengine.bobo.api.BrowseFacet;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
 import com.browseengine.bobo.facets.FacetCountCollector;
 import com.browseengine.bobo.facets.FacetCountCollectorSource;
+import com.browseengine.bobo.sort.SortCollector;
 
 public class BoboSearcher2 extends IndexSearcher{
   protected List<FacetHitCollector> _facetCollectors;
@@ -52,27 +54,28 @@ public class BoboSearcher2 extends IndexSearcher{
 
   abstract static class FacetValidator
   {
+    /** number of validated hits buffered before they are handed to the count collectors */
+    static final int BATCH_SIZE = 256;
+
     protected final FacetHitCollector[] _collectors;
     protected final int _numPostFilters;
     protected FacetCountCollector[] _countCollectors;
     public int _nextTarget;
+    private final int[] _docBuffer = new int[BATCH_SIZE];
+    private int _bufferLen = 0;
 
     private void sortPostCollectors(final BoboIndexReader reader)
     {
+      // estimates look up facet values, so they are taken once per segment rather than per comparison
+      final IdentityHashMap<FacetHitCollector,Double> selectivities = new IdentityHashMap<FacetHitCollector,Double>();
+      for (int i = 0; i < _numPostFilters; ++i)
+      {
+        selectivities.put(_collectors[i], _collectors[i]._filter.getFacetSelectivity(reader));
+      }
       Comparator<FacetHitCollector> comparator = new Comparator<FacetHitCollector>(){
         public int compare(FacetHitCollector fhc1, FacetHitCollector fhc2)
         {
-          double selectivity1 = fhc1._filter.getFacetSelectivity(reader);
-          double selectivity2 = fhc2._filter.getFacetSelectivity(reader);
-          if (selectivity1 < selectivity2) 
-          {
-            return -1;
-          }
-          else if (selectivity1 > selectivity2) 
-          {
-            return 1;
-          }
-          return 0;
+          return Double.compare(selectivities.get(fhc1), selectivities.get(fhc2));
         }
       };       
       
@@ -92,7 +95,39 @@ public class BoboSearcher2 extends IndexSearcher{
     public abstract boolean validate(final int docid)
     throws IOException;
 
+    /**
+     * Buffers a hit that matched all facets; it is counted by every count collector on the next flush.
+     * @param docid
+     */
+    protected final void collectBuffered(final int docid)
+    {
+      _docBuffer[_bufferLen++] = docid;
+      if (_bufferLen == BATCH_SIZE)
+      {
+        flush();
+      }
+    }
+
+    /**
+     * Hands the buffered hits to the count collectors of the current reader.
+     * Must be called before moving to the next reader and once the search is done.
+     * The batch is counted facet by facet, so each pass reads the blocks of one order array only
+     * rather than touching the arrays of all facets for every hit.
+     */
+    public final void flush()
+    {
+      if (_bufferLen > 0)
+      {
+        for (FacetCountCollector collector : _countCollectors)
+        {
+          collector.collect(_docBuffer, _bufferLen);
+        }
+        _bufferLen = 0;
+      }
+    }
+
     public void setNextReader(BoboIndexReader reader,int docBase) throws IOException{
+      flush();
       ArrayList<FacetCountCollector> collectorList = new ArrayList<FacetCountCollector>();
       sortPostCollectors(reader);
       for (int i=0;i<_collectors.length;++i){
@@ -163,10 +198,7 @@ public class BoboSearcher2 extends IndexSearcher{
       }
       else
       {
-        for (FacetCountCollector collector : _countCollectors)
-        {
-          collector.collect(docid);
-        }
+        collectBuffered(docid);
         return true;
       }
     }
@@ -198,10 +230,7 @@ public class BoboSearcher2 extends IndexSearcher{
       }
       else
       {
-        for (FacetCountCollector collector : _countCollectors)
-        {
-          collector.collect(docid);
-        }
+        collectBuffered(docid);
         return true;
       }
     }
@@ -215,9 +244,7 @@ public class BoboSearcher2 extends IndexSearcher{
 
     @Override
     public final boolean validate(int docid) throws IOException {
-      for (FacetCountCollector collector : _countCollectors){
-        collector.collect(docid);
-      }
+      collectBuffered(docid);
       return true;
     }
 
@@ -270,6 +297,8 @@ public class BoboSearcher2 extends IndexSearcher{
   public void search(Weight weight, Filter filter, Collector collector, int start) throws IOException
   {
     final FacetValidator validator = createFacetValidator();
+    // a sort collector may be done with a segment before its last doc
+    final SortCollector sortCollector = (collector instanceof SortCollector) ? (SortCollector)collector : null;
     int target = 0;
 
     if (filter == null)
@@ -289,6 +318,7 @@ public class BoboSearcher2 extends IndexSearcher{
           if(validator.validate(target))
           {
             collector.collect(target);
+            if (sortCollector != null && sortCollector.isSegmentDone()) break;
             target = scorer.nextDoc();
           }
           else
@@ -298,6 +328,7 @@ public class BoboSearcher2 extends IndexSearcher{
           }
         }
       }
+      validator.flush();
       }
       return;
     }
@@ -327,6 +358,7 @@ public class BoboSearcher2 extends IndexSearcher{
             if(validator.validate(doc))
             {
               collector.collect(doc);
+              if (sortCollector != null && sortCollector.isSegmentDone()) break;
 
               target = filterDocIdIterator.nextDoc();
             }
@@ -343,6 +375,7 @@ public class BoboSearcher2 extends IndexSearcher{
           }
         }
       }
+      validator.flush();
     }
 
   }
@@ -0,0 +1,214 @@
+package com.browseengine.bobo.search;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.FacetSpec;
+
+/**
+ * LRU cache of facet count distributions of one segment. Entries are keyed by the parts of a
+ * {@link BrowseRequest} that decide which documents get counted: the query, the filter, the selections
+ * and the facets with expanded selections. Sorting, paging and the other facet spec settings are
+ * applied on top of the counts and are not part of the key.
+ * <p>
+ * A segment never changes once written, and a segment that gains deletes gets a new reader, so a cache
+ * held by a segment reader stays valid for the life of that reader.
+ */
+public class FacetCountCache
+{
+  private final int _maxEntries;
+  private final LinkedHashMap<Key, Map<String,int[]>> _cache;
+  private final AtomicLong _hitCount = new AtomicLong();
+  private final AtomicLong _missCount = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of requests kept, the least recently used one is evicted first
+   */
+  public FacetCountCache(final int maxEntries)
+  {
+    _maxEntries = maxEntries;
+    _cache = new LinkedHashMap<Key, Map<String,int[]>>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Map<String,int[]>> eldest)
+      {
+        return size() > _maxEntries;
+      }
+    };
+  }
+
+  public int getMaxEntries()
+  {
+    return _maxEntries;
+  }
+
+  /**
+   * Gets the counts cached for a request.
+   * @param key request key, see {@link #createKey(BrowseRequest)}
+   * @return map of facet name to count distribution, null if nothing is cached for the request
+   */
+  public Map<String,int[]> get(Key key)
+  {
+    Map<String,int[]> counts;
+    synchronized(_cache)
+    {
+      counts = _cache.get(key);
+    }
+    if (counts == null)
+    {
+      _missCount.incrementAndGet();
+    }
+    else
+    {
+      _hitCount.incrementAndGet();
+    }
+    return counts;
+  }
+
+  /**
+   * Caches the count distribution of a facet. The array must not be modified afterwards.
+   */
+  public void put(Key key, String name, int[] count)
+  {
+    Map<String,int[]> counts;
+    synchronized(_cache)
+    {
+      counts = _cache.get(key);
+      if (counts == null)
+      {
+        counts = new ConcurrentHashMap<String,int[]>();
+        _cache.put(key, counts);
+      }
+    }
+    counts.put(name, count);
+  }
+
+  public int size()
+  {
+    synchronized(_cache)
+    {
+      return _cache.size();
+    }
+  }
+
+  public void clear()
+  {
+    synchronized(_cache)
+    {
+      _cache.clear();
+    }
+  }
+
+  public long getHitCount()
+  {
+    return _hitCount.get();
+  }
+
+  public long getMissCount()
+  {
+    return _missCount.get();
+  }
+
+  /**
+   * Builds the normalized cache key of a request. Selection values are sorted, so requests that
+   * select the same values in a different order share an entry.
+   */
+  public static Key createKey(BrowseRequest req)
+  {
+    Query q = req.getQuery();
+    if (q == null)
+    {
+      q = new MatchAllDocsQuery();
+    }
+
+    StringBuilder buf = new StringBuilder();
+    Map<String,BrowseSelection> selections = new TreeMap<String,BrowseSelection>(req.getAllSelections());
+    for (BrowseSelection sel : selections.values())
+    {
+      buf.append(sel.getFieldName()).append('\u0000');
+      buf.append(sel.getSelectionOperation()).append('\u0000');
+      appendSorted(buf, sel.getValues());
+      appendSorted(buf, sel.getNotValues());
+      Properties props = sel.getSelectionProperties();
+      TreeMap<String,String> sortedProps = new TreeMap<String,String>();
+      Enumeration<?> names = props.propertyNames();
+      while (names.hasMoreElements())
+      {
+        String name = (String)names.nextElement();
+        sortedProps.put(name, props.getProperty(name));
+      }
+      buf.append(sortedProps).append('\u0001');
+    }
+    buf.append('\u0002');
+    TreeSet<String> expanded = new TreeSet<String>();
+    for (Map.Entry<String,FacetSpec> entry : req.getFacetSpecs().entrySet())
+    {
+      if (entry.getValue() != null && entry.getValue().isExpandSelection())
+      {
+        expanded.add(entry.getKey());
+      }
+    }
+    buf.append(expanded);
+    return new Key(q, req.getFilter(), buf.toString());
+  }
+
+  private static void appendSorted(StringBuilder buf, String[] vals)
+  {
+    String[] sorted = vals.clone(); // leave the caller's array in selection order
+    Arrays.sort(sorted);
+    for (String val : sorted)
+    {
+      buf.append(val).append('\u0000');
+    }
+    buf.append('\u0001');
+  }
+
+  public static final class Key
+  {
+    private final Query _query;
+    private final Filter _filter;
+    private final String _selections;
+    private final int _hashCode;
+
+    Key(Query query, Filter filter, String selections)
+    {
+      _query = query;
+      _filter = filter;
+      _selections = selections;
+      _hashCode = 31 * (31 * query.hashCode() + (filter == null ? 0 : filter.hashCode())) + selections.hashCode();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key)o;
+      return _hashCode == other._hashCode
+          && _query.equals(other._query)
+          && (_filter == null ? other._filter == null : _filter.equals(other._filter))
+          && _selections.equals(other._selections);
+    }
+  }
+}
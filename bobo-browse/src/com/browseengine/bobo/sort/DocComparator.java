@@ -11,4 +11,42 @@ public abstract class DocComparator{
   public void setScorer(Scorer scorer){
 	  
   }
+
+  /**
+   * Sets the sort value, as returned by {@link #value(ScoreDoc)}, of a doc of another segment, e.g. the bottom
+   * of a full queue, for {@link #compareBottom(ScoreDoc)} to compare the docs of this segment against without
+   * building their values.
+   * @param value sort value built by a comparator of the same source
+   * @return false if this comparator cannot compare its docs against the value
+   */
+  public boolean setBottomValue(Comparable value){
+    return false;
+  }
+
+  /**
+   * Compares a doc of this segment against the value given to {@link #setBottomValue(Comparable)}, which
+   * must have returned true.
+   * @return less than, equal to or greater than zero as the value of the doc sorts before, with or after it
+   */
+  public int compareBottom(ScoreDoc doc){
+    throw new UnsupportedOperationException("no bottom value");
+  }
+
+  /**
+   * Number of primitive sort keys of a doc, see {@link #sortKey(ScoreDoc, int)}.
+   * @return 0 (the default) if the docs of different segments can only be compared through their values
+   */
+  public int sortKeyCount(){
+    return 0;
+  }
+
+  /**
+   * Gets a primitive sort key of a doc, for comparing docs of different segments without building their
+   * values. The keys of a doc, compared one after the other as longs, order it like
+   * {@link #compare(ScoreDoc, ScoreDoc)} against any doc of a comparator of the same source.
+   * @param i index of the key, below {@link #sortKeyCount()}
+   */
+  public long sortKey(ScoreDoc doc, int i){
+    throw new UnsupportedOperationException("no sort keys");
+  }
 }
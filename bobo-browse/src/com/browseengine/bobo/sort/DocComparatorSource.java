@@ -8,6 +8,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.util.NumericUtils;
 
 public abstract class DocComparatorSource {
 	
@@ -51,6 +52,27 @@ public abstract class DocComparatorSource {
 				public Integer value(ScoreDoc doc) {
 					return Integer.valueOf(values[doc.doc]);
 				}
+
+				private int _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Integer)) return false;
+					_bottom = ((Integer)value).intValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					int v = values[doc.doc];
+					return v < _bottom ? -1 : (v == _bottom ? 0 : 1);
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return values[doc.doc];
+				}
 			};
 		}
 	}
@@ -167,6 +189,14 @@ public abstract class DocComparatorSource {
 				public Short value(ScoreDoc doc) {
 					return Short.valueOf(values[doc.doc]);
 				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return values[doc.doc];
+				}
 			};
 		}
 	}
@@ -198,6 +228,27 @@ public abstract class DocComparatorSource {
 				public Long value(ScoreDoc doc) {
 					return Long.valueOf(values[doc.doc]);
 				}
+
+				private long _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Long)) return false;
+					_bottom = ((Long)value).longValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					long v = values[doc.doc];
+					return v < _bottom ? -1 : (v == _bottom ? 0 : 1);
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return values[doc.doc];
+				}
 			};
 		}
 	}
@@ -229,6 +280,27 @@ public abstract class DocComparatorSource {
 				public Float value(ScoreDoc doc) {
 					return Float.valueOf(values[doc.doc]);
 				}
+
+				private float _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Float)) return false;
+					_bottom = ((Float)value).floatValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					float v = values[doc.doc];
+					return v < _bottom ? -1 : (v > _bottom ? 1 : 0);
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return NumericUtils.floatToSortableInt(values[doc.doc]);
+				}
 			};
 		}
 	}
@@ -260,6 +332,27 @@ public abstract class DocComparatorSource {
 				public Double value(ScoreDoc doc) {
 					return Double.valueOf(values[doc.doc]);
 				}
+
+				private double _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Double)) return false;
+					_bottom = ((Double)value).doubleValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					double v = values[doc.doc];
+					return v < _bottom ? -1 : (v > _bottom ? 1 : 0);
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return NumericUtils.doubleToSortableLong(values[doc.doc]);
+				}
 			};
 		}
 	}
@@ -286,6 +379,26 @@ public abstract class DocComparatorSource {
 				public Float value(ScoreDoc doc) {
 					return Float.valueOf(doc.score);
 				}
+
+				private float _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Float)) return false;
+					_bottom = ((Float)value).floatValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					return doc.score < _bottom ? -1 : (doc.score > _bottom ? 1 : 0);
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return NumericUtils.floatToSortableInt(doc.score);
+				}
 			};
 		}
 		
@@ -309,6 +422,26 @@ public abstract class DocComparatorSource {
 				public Integer value(ScoreDoc doc) {
 					return Integer.valueOf(doc.doc+_docbase);
 				}
+
+				private int _bottom;
+
+				public boolean setBottomValue(Comparable value) {
+					if (!(value instanceof Integer)) return false;
+					_bottom = ((Integer)value).intValue();
+					return true;
+				}
+
+				public int compareBottom(ScoreDoc doc) {
+					return doc.doc + _docbase - _bottom;
+				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return doc.doc + _docbase;
+				}
 			};
 		}
 	}
@@ -333,6 +466,14 @@ public abstract class DocComparatorSource {
 				public Byte value(ScoreDoc doc) {
 					return Byte.valueOf(values[doc.doc]);
 				}
+
+				public int sortKeyCount() {
+					return 1;
+				}
+
+				public long sortKey(ScoreDoc doc, int i) {
+					return values[doc.doc];
+				}
 			};
 		}
 	}
@@ -42,6 +42,14 @@ public class DocIDPriorityQueue {
     return comparator.value(doc);
   }
 
+  public int sortKeyCount() {
+    return comparator.sortKeyCount();
+  }
+
+  public long sortKey(ScoreDoc doc, int i) {
+    return comparator.sortKey(doc, i);
+  }
+
   private final int compare(ScoreDoc doc1, ScoreDoc doc2) {
     final int cmp = comparator.compare(doc1, doc2);
     if (cmp != 0) {
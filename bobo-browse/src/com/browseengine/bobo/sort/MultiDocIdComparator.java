@@ -1,14 +1,45 @@
 package com.browseengine.bobo.sort;
 
+import java.io.Serializable;
+import java.util.Arrays;
+
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Scorer;
 
 
 public class MultiDocIdComparator extends DocComparator {
 	private final DocComparator[] _comparators;
+	// comparator and key index of each sort key, null if a comparator has no keys
+	private final int[] _keyComparators;
+	private final int[] _keyIndexes;
 	
 	public MultiDocIdComparator(DocComparator[] comparators){
 		_comparators = comparators;
+		int keyCount = 0;
+		for (DocComparator comparator : comparators){
+			int count = comparator.sortKeyCount();
+			if (count == 0){
+				keyCount = 0;
+				break;
+			}
+			keyCount += count;
+		}
+		if (keyCount == 0){
+			_keyComparators = null;
+			_keyIndexes = null;
+		}
+		else{
+			_keyComparators = new int[keyCount];
+			_keyIndexes = new int[keyCount];
+			int k = 0;
+			for (int i=0;i<comparators.length;++i){
+				for (int j=0;j<comparators[i].sortKeyCount();++j){
+					_keyComparators[k] = i;
+					_keyIndexes[k] = j;
+					k++;
+				}
+			}
+		}
 	}
 	
 	public int compare(ScoreDoc doc1, ScoreDoc doc2) {
@@ -29,31 +60,71 @@ public class MultiDocIdComparator extends DocComparator {
 	public Comparable value(ScoreDoc doc) {
 		return new MultiDocIdComparable(doc, _comparators);
 	}
+
+	@Override
+	public boolean setBottomValue(Comparable value) {
+		if (!(value instanceof MultiDocIdComparable)) return false;
+		MultiDocIdComparable other = (MultiDocIdComparable)value;
+		if (other._values.length != _comparators.length) return false;
+		for (int i=0;i<_comparators.length;++i){
+			if (!_comparators[i].setBottomValue(other._values[i])) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int sortKeyCount() {
+		return _keyComparators == null ? 0 : _keyComparators.length;
+	}
+
+	@Override
+	public long sortKey(ScoreDoc doc, int i) {
+		return _comparators[_keyComparators[i]].sortKey(doc, _keyIndexes[i]);
+	}
+
+	@Override
+	public int compareBottom(ScoreDoc doc) {
+		for (int i=0;i<_comparators.length;++i){
+			int v=_comparators[i].compareBottom(doc);
+			if (v!=0) return v;
+		}
+		return 0;
+	}
 	
-	public static class MultiDocIdComparable implements Comparable
+	/**
+	 * Values of a doc for each of the comparators, built once so that the comparable can outlive the segment
+	 * and be serialized, e.g. in a {@link com.browseengine.bobo.api.BrowseCursor}.
+	 */
+	public static class MultiDocIdComparable implements Comparable,Serializable
 	{
-	  private ScoreDoc _doc;
-	  private DocComparator[] _comparators;
+	  private static final long serialVersionUID = 1L;
+	  
+	  private final Comparable[] _values;
 
 	  public MultiDocIdComparable(ScoreDoc doc, DocComparator[] comparators)
 	  {
-	    _doc = doc;
-	    _comparators = comparators;
+	    _values = new Comparable[comparators.length];
+	    for (int i=0;i<comparators.length;++i){
+	      _values[i] = comparators[i].value(doc);
+	    }
 	  }
 	  
 	  public int compareTo(Object o)
       {
 	    MultiDocIdComparable other = (MultiDocIdComparable)o;
-        Comparable c1,c2;
-        for (int i=0;i<_comparators.length;++i){
-            c1 = _comparators[i].value(_doc);
-            c2 = other._comparators[i].value(other._doc);
-            int v = c1.compareTo(c2);
+        for (int i=0;i<_values.length;++i){
+            int v = _values[i].compareTo(other._values[i]);
             if (v!=0) {
                 return v;
             }
         }
         return 0;
       }
+	  
+	  @Override
+	  public String toString()
+	  {
+	    return Arrays.toString(_values);
+	  }
 	}
 }
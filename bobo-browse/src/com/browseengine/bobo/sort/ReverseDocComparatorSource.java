@@ -34,6 +34,27 @@ public class ReverseDocComparatorSource extends DocComparatorSource {
 			return new ReverseComparable(_comparator.value(doc));
 			
 		}
+
+		@Override
+		public boolean setBottomValue(Comparable value) {
+			return value instanceof ReverseComparable && _comparator.setBottomValue(((ReverseComparable)value)._inner);
+		}
+
+		@Override
+		public int compareBottom(ScoreDoc doc) {
+			return -_comparator.compareBottom(doc);
+		}
+
+		@Override
+		public int sortKeyCount() {
+			return _comparator.sortKeyCount();
+		}
+
+		@Override
+		public long sortKey(ScoreDoc doc, int i) {
+			// reverses the order without the overflow of negating Long.MIN_VALUE
+			return ~_comparator.sortKey(doc, i);
+		}
 		
 		private static class ReverseComparable implements Comparable,Serializable{
 			/**
@@ -5,6 +5,8 @@ import java.util.Locale;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
@@ -13,7 +15,9 @@ import org.apache.lucene.search.SortField;
 import com.browseengine.bobo.api.BoboCustomSortField;
 import com.browseengine.bobo.api.BoboSubBrowser;
 import com.browseengine.bobo.api.Browsable;
+import com.browseengine.bobo.api.BrowseCursor;
 import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.BrowseRequest;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.sort.DocComparatorSource.DocIdDocComparatorSource;
 import com.browseengine.bobo.sort.DocComparatorSource.RelevanceDocComparatorSource;
@@ -24,12 +28,83 @@ public abstract class SortCollector extends Collector {
 	protected Collector _collector = null;
 	protected final SortField[] _sortFields;
 	protected final boolean _fetchStoredFields;
+	protected Set<String> _fieldsToFetch = null;
+	protected FieldSelector _storedFieldSelector = null;
+	protected boolean _lazyFieldValues = false;
+	protected BrowseCursor _cursor = null;
+	protected boolean _earlyTermination = false;
 	
 	protected SortCollector(SortField[] sortFields,boolean fetchStoredFields){
 		_sortFields = sortFields;
 		_fetchStoredFields = fetchStoredFields;
 	}
 	
+	/**
+	 * Sets which values the hits built by {@link #topDocs()} get.
+	 * @param fieldsToFetch facets whose values the hits get, null for all
+	 * @param storedFieldsToFetch stored fields loaded when stored fields are fetched, null for all and the facet values
+	 * @param lazyFieldValues whether the facet values are read from the facet data on first access
+	 * @see BrowseRequest#setFieldsToFetch(Set)
+	 */
+	public void setFieldsToFetch(Set<String> fieldsToFetch, Set<String> storedFieldsToFetch, boolean lazyFieldValues){
+		_fieldsToFetch = fieldsToFetch;
+		_storedFieldSelector = storedFieldsToFetch == null ? null : new MapFieldSelector(storedFieldsToFetch.toArray(new String[storedFieldsToFetch.size()]));
+		_lazyFieldValues = lazyFieldValues;
+	}
+	
+	/**
+	 * Sets the hit the collected hits sort after.
+	 * @param cursor cursor of a hit sorted the same way, null to collect from the first hit
+	 * @see BrowseRequest#setCursor(BrowseCursor)
+	 */
+	public void setCursor(BrowseCursor cursor){
+		_cursor = cursor;
+	}
+	
+	/**
+	 * Sets whether the collector may stop collecting a segment sorted like its sort.
+	 * @see BrowseRequest#setEarlyTermination(boolean)
+	 * @see #isSegmentDone()
+	 */
+	public void setEarlyTermination(boolean earlyTermination){
+		_earlyTermination = earlyTermination;
+	}
+	
+	/**
+	 * @return true if no more docs of the current segment can be hits, the searcher then moves on to the next one
+	 */
+	public boolean isSegmentDone(){
+		return false;
+	}
+	
+	/**
+	 * @return true if the collector stopped collecting a segment, its hit count is then a lower bound
+	 */
+	public boolean isTerminatedEarly(){
+		return false;
+	}
+	
+	/**
+	 * Whether docs in docid order are in the order of a sort: the sort, less trailing docid sorts, is a
+	 * prefix of the sort of the index.
+	 * @param sort sort of a request
+	 * @param indexSort sort of the docs of the segments, null if they are in no particular order
+	 */
+	public static boolean isIndexSorted(SortField[] sort, SortField[] indexSort){
+		int len = sort.length;
+		while (len > 0 && sort[len-1].getType() == SortField.DOC && !sort[len-1].getReverse()){
+			len--;
+		}
+		if (len == 0) return true;
+		if (indexSort == null || indexSort.length < len) return false;
+		for (int i=0;i<len;++i){
+			String field = sort[i].getField();
+			if (field == null || sort[i].getType() == SortField.SCORE) return false;
+			if (!field.equals(indexSort[i].getField()) || sort[i].getReverse() != indexSort[i].getReverse()) return false;
+		}
+		return true;
+	}
+	
 	abstract public BrowseHit[] topDocs() throws IOException;
 
 	abstract public int getTotalHits();
@@ -12,6 +12,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Scorer;
@@ -20,6 +21,7 @@ import org.apache.lucene.search.SortField;
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.api.Browsable;
 import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.LazyBrowseHit;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.util.ListMerger;
 
@@ -27,30 +29,39 @@ public class SortCollectorImpl extends SortCollector {
   private static final Comparator<MyScoreDoc> MERGE_COMPATATOR = new Comparator<MyScoreDoc>()
   {
     public int compare(MyScoreDoc o1, MyScoreDoc o2) {
-      Comparable s1 = o1.getValue();
-      Comparable s2 = o2.getValue();
-      int r;
-      if (s1 == null) {
-        if (s2 == null) {
-          r = 0;
-        } else {
-          r = -1;
-        }
-      } else if (s2 == null) {
-        r = 1;
+      int r = compareValues(o1.getValue(), o2.getValue());
+      if (r == 0) {
+        r = o1.doc + o1.queue.base - o2.doc - o2.queue.base;
+      }
+      return r;
+    }
+  };
+
+  // merges by the primitive sort keys, see DocComparator.sortKey
+  private static final Comparator<MyScoreDoc> KEY_MERGE_COMPARATOR = new Comparator<MyScoreDoc>()
+  {
+    public int compare(MyScoreDoc o1, MyScoreDoc o2) {
+      if (o1.sortKeys == null) {
+        if (o1.sortKey != o2.sortKey) return o1.sortKey < o2.sortKey ? -1 : 1;
       }
-      else{
-        int v = s1.compareTo(s2);
-        if (v==0){
-          r = o1.doc + o1.queue.base - o2.doc - o2.queue.base;
-        } else {
-          r = v;
+      else {
+        for (int i = 0; i < o1.sortKeys.length; ++i) {
+          if (o1.sortKeys[i] != o2.sortKeys[i]) return o1.sortKeys[i] < o2.sortKeys[i] ? -1 : 1;
         }
       }
-      return r;
+      return o1.doc + o1.queue.base - o2.doc - o2.queue.base;
     }
   };
 
+  private static int compareValues(Comparable s1, Comparable s2) {
+    if (s1 == null) {
+      return s2 == null ? 0 : -1;
+    } else if (s2 == null) {
+      return 1;
+    }
+    return s1.compareTo(s2);
+  }
+
   private final LinkedList<DocIDPriorityQueue> _pqList;
   private final int _numHits;
   private int _totalHits;
@@ -62,6 +73,20 @@ public class SortCollectorImpl extends SortCollector {
   private DocIDPriorityQueue _currentQueue;
   private BoboIndexReader _currentReader=null;
 
+  // best bottom of the full queues of the segments collected so far, no later doc sorting after it is a hit
+  private MyScoreDoc _threshold;
+  private int _thresholdDocid;
+  private boolean _thresholdSet;
+
+  // compares the docs of the current segment against the cursor
+  private DocComparator _cursorComparator;
+  private boolean _cursorSet;
+
+  // whether the docs of the current segment come in sort order, and no more of them can be hits
+  private boolean _segmentSorted;
+  private boolean _segmentDone;
+  private boolean _terminatedEarly;
+
   private final boolean _doScoring;
   private Scorer _scorer;
   private final int _offset;
@@ -74,6 +99,9 @@ public class SortCollectorImpl extends SortCollector {
     DocIDPriorityQueue queue;
     BoboIndexReader reader;
     Comparable sortValue;
+    // set for the merge when the comparators have primitive keys, the array only with more than one
+    long sortKey;
+    long[] sortKeys;
     
     public MyScoreDoc(){
       this(0,0.0f,null,null);
@@ -118,11 +146,26 @@ public class SortCollectorImpl extends SortCollector {
     _totalHits++;
     if (_count > 0){
 	    final float score = (_doScoring ? _scorer.score() : 0.0f);
+	    _tmpScoreDoc.doc = doc;
+	    _tmpScoreDoc.score = score;
 	
-	    if (_queueFull){
-	      _tmpScoreDoc.doc = doc;
-	      _tmpScoreDoc.score = score;
+	    if (_cursor != null && !isAfterCursor(doc)){
+	      if (_collector != null) _collector.collect(doc);
+	      return;
+	    }
 	
+	    if (_thresholdSet){
+	      // rejected against the earlier segments without building a sort value
+	      int cmp = _currentComparator.compareBottom(_tmpScoreDoc);
+	      if (cmp > 0 || (cmp == 0 && _currentQueue.base + doc > _thresholdDocid)){
+	        // the docs after it sort after the threshold as well
+	        if (_segmentSorted) segmentDone();
+	        if (_collector != null) _collector.collect(doc);
+	        return;
+	      }
+	    }
+	
+	    if (_queueFull){
 	      if (_currentComparator.compare(_bottom,_tmpScoreDoc) > 0){
 	        ScoreDoc tmp = _bottom;
 	        _bottom = _currentQueue.replace(_tmpScoreDoc);
@@ -132,17 +175,53 @@ public class SortCollectorImpl extends SortCollector {
 	    else{ 
 	      _bottom = _currentQueue.add(new MyScoreDoc(doc,score,_currentQueue,_currentReader));
 	      _queueFull = (_currentQueue.size >= _numHits);
+	      if (_queueFull && _segmentSorted) segmentDone();
 	    }
     }
 
     if (_collector != null) _collector.collect(doc);
   }
 
+  private void segmentDone() {
+    _segmentDone = true;
+    _terminatedEarly = true;
+  }
+
+  @Override
+  public boolean isSegmentDone() {
+    return _segmentDone;
+  }
+
+  @Override
+  public boolean isTerminatedEarly() {
+    return _terminatedEarly;
+  }
+
+  private boolean isAfterCursor(int doc) {
+    int cmp;
+    if (_cursorSet){
+      cmp = _cursorComparator.compareBottom(_tmpScoreDoc);
+    }
+    else{
+      cmp = compareValues(_currentComparator.value(_tmpScoreDoc), _cursor.getSortValue());
+    }
+    return cmp > 0 || (cmp == 0 && _currentQueue.base + doc > _cursor.getDocid());
+  }
+
   @Override
   public void setNextReader(IndexReader reader, int docBase) throws IOException {
     assert reader instanceof BoboIndexReader;
+    updateThreshold();
     _currentReader = (BoboIndexReader)reader;
     _currentComparator = _compSource.getComparator(reader,docBase);
+    _segmentSorted = _earlyTermination && isIndexSorted(_sortFields, _currentReader.getIndexSort());
+    _segmentDone = false;
+    _thresholdSet = (_threshold != null && _currentComparator.setBottomValue(_threshold.getValue()));
+    if (_cursor != null){
+      // a comparator of its own, the bottom value of the current one is the threshold
+      _cursorComparator = _compSource.getComparator(reader,docBase);
+      _cursorSet = _cursorComparator.setBottomValue(_cursor.getSortValue());
+    }
     _currentQueue = new DocIDPriorityQueue(_currentComparator, _numHits, docBase);
     MyScoreDoc myScoreDoc = (MyScoreDoc)_tmpScoreDoc;
     myScoreDoc.queue = _currentQueue;
@@ -152,6 +231,19 @@ public class SortCollectorImpl extends SortCollector {
     _queueFull = false;
   }
 
+  /**
+   * Keeps the bottom of the queue of the last segment as the threshold if the queue is full and its bottom
+   * sorts before the one kept so far: the queue holds <code>offset+count</code> docs sorting before it.
+   */
+  private void updateThreshold(){
+    if (_currentQueue == null || _numHits == 0 || _currentQueue.size() < _numHits) return;
+    MyScoreDoc bottom = (MyScoreDoc)_currentQueue.top();
+    if (_threshold == null || MERGE_COMPATATOR.compare(bottom, _threshold) < 0){
+      _threshold = bottom;
+      _thresholdDocid = bottom.doc + bottom.queue.base;
+    }
+  }
+
   @Override
   public void setScorer(Scorer scorer) throws IOException {
     _scorer = scorer;
@@ -163,25 +255,78 @@ public class SortCollectorImpl extends SortCollector {
     return _totalHits;
   }
 
+  /**
+   * Adds the segment queues and hit count gathered by another collector, built from the same sort,
+   * to this collector so that {@link #topDocs()} merges across both.
+   * @param other collector that has finished collecting
+   */
+  public void merge(SortCollectorImpl other){
+    _pqList.addAll(other._pqList);
+    _totalHits += other._totalHits;
+    _terminatedEarly |= other._terminatedEarly;
+  }
+
   @Override
   public BrowseHit[] topDocs() throws IOException{
+    // the queues are merged by primitive keys if the comparators of all segments have the same ones
+    int keyCount = -1;
+    for (DocIDPriorityQueue pq : _pqList){
+      int count = pq.sortKeyCount();
+      keyCount = (keyCount < 0 || keyCount == count) ? count : 0;
+    }
     ArrayList<Iterator<MyScoreDoc>> iterList = new ArrayList<Iterator<MyScoreDoc>>(_pqList.size());
     for (DocIDPriorityQueue pq : _pqList){
       int count = pq.size();
       MyScoreDoc[] resList = new MyScoreDoc[count];
       for (int i = count - 1; i >= 0; i--) { 
-        resList[i] = (MyScoreDoc)pq.pop();
+        MyScoreDoc scoreDoc = (MyScoreDoc)pq.pop();
+        if (keyCount == 1){
+          scoreDoc.sortKey = pq.sortKey(scoreDoc, 0);
+        }
+        else if (keyCount > 1){
+          scoreDoc.sortKeys = new long[keyCount];
+          for (int k = 0; k < keyCount; ++k){
+            scoreDoc.sortKeys[k] = pq.sortKey(scoreDoc, k);
+          }
+        }
+        resList[i] = scoreDoc;
       }
       iterList.add(Arrays.asList(resList).iterator());
     }
 
-    List<MyScoreDoc> resList = _count > 0 ? ListMerger.mergeLists(_offset, _count, iterList, MERGE_COMPATATOR) : Collections.EMPTY_LIST;
+    Comparator<MyScoreDoc> mergeComparator = keyCount > 0 ? KEY_MERGE_COMPARATOR : MERGE_COMPATATOR;
+    List<MyScoreDoc> resList = _count > 0 ? ListMerger.mergeLists(_offset, _count, iterList, mergeComparator) : Collections.EMPTY_LIST;
     Map<String,FacetHandler<?>> facetHandlerMap = _boboBrowser.getFacetHandlerMap();
-    return buildHits(resList.toArray(new MyScoreDoc[resList.size()]), _sortFields, facetHandlerMap, _fetchStoredFields);
+    if (_fieldsToFetch != null && resList.size() > 0)
+    {
+      Map<String,FacetHandler<?>> projectedMap = new HashMap<String,FacetHandler<?>>();
+      for (String name : _fieldsToFetch)
+      {
+        FacetHandler<?> facetHandler = facetHandlerMap.get(name);
+        if (facetHandler != null)
+        {
+          projectedMap.put(name, facetHandler);
+        }
+      }
+      facetHandlerMap = projectedMap;
+    }
+    return buildHits(resList.toArray(new MyScoreDoc[resList.size()]), _sortFields, facetHandlerMap, _fetchStoredFields, _storedFieldSelector, _lazyFieldValues);
   }
 
   protected static BrowseHit[] buildHits(MyScoreDoc[] scoreDocs,SortField[] sortFields,Map<String,FacetHandler<?>> facetHandlerMap,boolean fetchStoredFields)
   throws IOException
+  {
+    return buildHits(scoreDocs, sortFields, facetHandlerMap, fetchStoredFields, null, false);
+  }
+
+  /**
+   * @param facetHandlerMap facets whose values the hits get
+   * @param storedFieldSelector stored fields to load, null for the whole document with the facet values
+   * @param lazyFieldValues whether to build {@link LazyBrowseHit}s
+   */
+  protected static BrowseHit[] buildHits(MyScoreDoc[] scoreDocs,SortField[] sortFields,Map<String,FacetHandler<?>> facetHandlerMap,boolean fetchStoredFields,
+                                         FieldSelector storedFieldSelector,boolean lazyFieldValues)
+  throws IOException
   {
     BrowseHit[] hits = new BrowseHit[scoreDocs.length];
     Collection<FacetHandler<?>> facetHandlers= facetHandlerMap.values();
@@ -189,20 +334,28 @@ public class SortCollectorImpl extends SortCollector {
     {
       MyScoreDoc fdoc = scoreDocs[i];
       BoboIndexReader reader = fdoc.reader;
-      BrowseHit hit=new BrowseHit();
-      if (fetchStoredFields){
-
-        hit.setStoredFields(reader.document(fdoc.doc));
+      BrowseHit hit;
+      if (lazyFieldValues)
+      {
+        hit = new LazyBrowseHit(reader, fdoc.doc, facetHandlerMap);
       }
-      Map<String,String[]> map = new HashMap<String,String[]>();
-      Map<String,Object[]> rawMap = new HashMap<String,Object[]>();
-      for (FacetHandler<?> facetHandler : facetHandlers)
+      else
       {
-          map.put(facetHandler.getName(),facetHandler.getFieldValues(reader,fdoc.doc));
-          rawMap.put(facetHandler.getName(),facetHandler.getRawFieldValues(reader,fdoc.doc));
+        hit = new BrowseHit();
+        Map<String,String[]> map = new HashMap<String,String[]>();
+        Map<String,Object[]> rawMap = new HashMap<String,Object[]>();
+        for (FacetHandler<?> facetHandler : facetHandlers)
+        {
+            map.put(facetHandler.getName(),facetHandler.getFieldValues(reader,fdoc.doc));
+            rawMap.put(facetHandler.getName(),facetHandler.getRawFieldValues(reader,fdoc.doc));
+        }
+        hit.setFieldValues(map);
+        hit.setRawFieldValues(rawMap);
+      }
+      if (fetchStoredFields){
+        // a selector skips BoboIndexReader.document, which adds the values of all facets
+        hit.setStoredFields(storedFieldSelector != null ? reader.document(fdoc.doc, storedFieldSelector) : reader.document(fdoc.doc));
       }
-      hit.setFieldValues(map);
-      hit.setRawFieldValues(rawMap);
       hit.setDocid(fdoc.doc+fdoc.queue.base);
       hit.setScore(fdoc.score);
       hit.setComparable(fdoc.getValue());
@@ -41,6 +41,17 @@ public class BigByteArray extends BigSegmentedArray implements Serializable
 	    return _array[docId >> SHIFT_SIZE][docId & MASK];
 	  }
 	  
+	  @Override
+	  public final void countValues(int[] docs, int from, int to, int[] count)
+	  {
+	    final byte[][] array = _array;
+	    for (int i = from; i < to; ++i)
+	    {
+	      int docId = docs[i];
+	      count[array[docId >> SHIFT_SIZE][docId & MASK]]++;
+	    }
+	  }
+
 	  @Override
 	  public final int findValue(int val, int docId, int maxId)
 	  {
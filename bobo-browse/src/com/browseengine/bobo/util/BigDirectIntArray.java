@@ -0,0 +1,192 @@
+package com.browseengine.bobo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitVector;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Off-heap version of {@link BigIntArray}. The blocks are direct buffers, so the data
+ * does not count against the java heap and is never copied by the garbage collector.
+ * No check is done in insertion and getting a value for performance reasons.
+ */
+public final class BigDirectIntArray extends BigSegmentedArray
+{
+  private IntBuffer[] _array;
+  /* Remember that 2^SHIFT_SIZE = BLOCK_SIZE */
+  final private static int BLOCK_SIZE = 65536;
+  final private static int SHIFT_SIZE = 16;
+  final private static int MASK = BLOCK_SIZE -1;
+
+  public BigDirectIntArray(int size)
+  {
+    super(size);
+    _array = new IntBuffer[_numrows];
+    for (int i = 0; i < _numrows; i++)
+    {
+      _array[i] = newBlock(blockLength(i, size));
+    }
+  }
+
+  /**
+   * Blocks are full size except for the last one, which only holds what <code>size</code> needs,
+   * so that a small segment does not reserve a whole block of direct memory.
+   */
+  private static int blockLength(int row, int size)
+  {
+    return row < (size >> SHIFT_SIZE) ? BLOCK_SIZE : (size & MASK) + 1;
+  }
+
+  private static IntBuffer newBlock(int length)
+  {
+    return ByteBuffer.allocateDirect(length << 2).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+  private static IntBuffer grow(IntBuffer block, int length)
+  {
+    IntBuffer newBlock = newBlock(length);
+    newBlock.put(block.duplicate());
+    newBlock.clear();
+    return newBlock;
+  }
+
+  @Override
+  public final void add(int docId, int val)
+  {
+    _array[docId >> SHIFT_SIZE].put(docId & MASK, val);
+  }
+
+  @Override
+  public final int get(int docId)
+  {
+    return _array[docId >> SHIFT_SIZE].get(docId & MASK);
+  }
+
+  @Override
+  public final void countValues(int[] docs, int from, int to, int[] count)
+  {
+    final IntBuffer[] array = _array;
+    for (int i = from; i < to; ++i)
+    {
+      int docId = docs[i];
+      count[array[docId >> SHIFT_SIZE].get(docId & MASK)]++;
+    }
+  }
+
+  @Override
+  public final int findValue(int val, int docId, int maxId)
+  {
+    while(true)
+    {
+      if(_array[docId >> SHIFT_SIZE].get(docId & MASK) == val) return docId;
+      if(docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findValues(OpenBitSet bitset, int docId, int maxId)
+  {
+    while(true)
+    {
+      if(bitset.fastGet(_array[docId >> SHIFT_SIZE].get(docId & MASK))) return docId;
+      if(docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findValues(BitVector bitset, int docId, int maxId)
+  {
+    while(true)
+    {
+      if(bitset.get(_array[docId >> SHIFT_SIZE].get(docId & MASK))) return docId;
+      if(docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findValueRange(int minVal, int maxVal, int docId, int maxId)
+  {
+    while(true)
+    {
+      int val = _array[docId >> SHIFT_SIZE].get(docId & MASK);
+      if(val >= minVal && val <= maxVal) return docId;
+      if(docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findBits(int bits, int docId, int maxId)
+  {
+    while(true)
+    {
+      if((_array[docId >> SHIFT_SIZE].get(docId & MASK) & bits) != 0) return docId;
+      if(docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final void fill(int val)
+  {
+    for(IntBuffer block : _array)
+    {
+      for (int i = 0, len = block.capacity(); i < len; ++i)
+      {
+        block.put(i, val);
+      }
+    }
+  }
+
+  @Override
+  public void ensureCapacity(int size)
+  {
+    int newNumrows = (size >> SHIFT_SIZE) + 1;
+    if (newNumrows > _array.length || _array[newNumrows - 1].capacity() < blockLength(newNumrows - 1, size))
+    {
+      IntBuffer[] newArray = new IntBuffer[Math.max(newNumrows, _array.length)];           // grow
+      System.arraycopy(_array, 0, newArray, 0, _array.length);
+      for (int i = 0; i < newNumrows; ++i)
+      {
+        int length = blockLength(i, size);
+        if (newArray[i] == null)
+        {
+          newArray[i] = newBlock(length);
+        }
+        else if (newArray[i].capacity() < length)
+        {
+          newArray[i] = grow(newArray[i], length);
+        }
+      }
+      _array = newArray;
+    }
+    _numrows = newNumrows;
+  }
+
+  @Override
+  public int capacity()
+  {
+    return ((_numrows - 1) << SHIFT_SIZE) + _array[_numrows - 1].capacity();
+  }
+
+  @Override
+  final int getBlockSize() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  final int getShiftSize() {
+    return SHIFT_SIZE;
+  }
+
+  @Override
+  public int maxValue() {
+    return Integer.MAX_VALUE;
+  }
+}
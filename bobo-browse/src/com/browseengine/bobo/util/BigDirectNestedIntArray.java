@@ -0,0 +1,60 @@
+package com.browseengine.bobo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Off-heap version of {@link BigNestedIntArray}. Data is loaded the same way, then the pages are
+ * moved into direct buffers, so that only the page table stays on the java heap.
+ */
+public final class BigDirectNestedIntArray extends BigNestedIntArray
+{
+  private static final int CHUNK_SIZE = 4 * 1024 * 1024; // ints per direct buffer
+
+  @Override
+  public void load(int size, Loader loader) throws Exception
+  {
+    _list = null; // pages are not reused
+    super.load(size, loader);
+    _list = null;
+  }
+
+  /**
+   * Copies the pages into direct buffers of up to {@link #CHUNK_SIZE} ints, sized to what the pages need.
+   */
+  @Override
+  IntBuffer[] toPages(int[][] list)
+  {
+    int remaining = 0;
+    for (int[] page : list)
+    {
+      if (page != null) remaining += page.length;
+    }
+
+    IntBuffer[] pages = new IntBuffer[list.length];
+    IntBuffer chunk = null;
+    for (int i = 0; i < list.length; i++)
+    {
+      int[] page = list[i];
+      if (page == null) continue;
+
+      if (chunk == null || chunk.remaining() < page.length)
+      {
+        int chunkSize = Math.max(Math.min(CHUNK_SIZE, remaining), page.length);
+        chunk = ByteBuffer.allocateDirect(chunkSize << 2).order(ByteOrder.nativeOrder()).asIntBuffer();
+      }
+      int start = chunk.position();
+      chunk.put(page);
+      int end = chunk.position();
+      chunk.position(start);
+      chunk.limit(end);
+      pages[i] = chunk.slice();
+      chunk.limit(chunk.capacity());
+      chunk.position(end);
+      remaining -= page.length;
+      list[i] = null;
+    }
+    return pages;
+  }
+}
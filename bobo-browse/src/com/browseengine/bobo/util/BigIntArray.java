@@ -46,6 +46,17 @@ public final class BigIntArray extends BigSegmentedArray implements Serializable
     return _array[docId >> SHIFT_SIZE][docId & MASK];
   }
   
+  @Override
+  public final void countValues(int[] docs, int from, int to, int[] count)
+  {
+    final int[][] array = _array;
+    for (int i = from; i < to; ++i)
+    {
+      int docId = docs[i];
+      count[array[docId >> SHIFT_SIZE][docId & MASK]]++;
+    }
+  }
+
   @Override
   public final int findValue(int val, int docId, int maxId)
   {
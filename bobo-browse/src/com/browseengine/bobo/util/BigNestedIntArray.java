@@ -3,6 +3,7 @@
  */
 package com.browseengine.bobo.util;
 
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -18,29 +19,33 @@ import com.browseengine.bobo.query.scoring.FacetTermScoringFunction;
  * @author ymatsuda
  *
  */
-public final class BigNestedIntArray
+public class BigNestedIntArray
 {
   public static final int MAX_ITEMS = 1024;
-  private static final int MAX_SLOTS = 1024;
-  private static final int SLOTID_MASK = 0x3FF;
-  private static final int PAGEID_SHIFT = 10;
-  private static final int COUNT_MASK = 0x7FF;
-  private static final int VALIDX_SHIFT = 11;
+  static final int MAX_SLOTS = 1024;
+  static final int SLOTID_MASK = 0x3FF;
+  static final int PAGEID_SHIFT = 10;
+  static final int COUNT_MASK = 0x7FF;
+  static final int VALIDX_SHIFT = 11;
   private static final int ROUNDING = 255;
   
-  private static final int MISSING = Integer.MIN_VALUE;
-  private static final int[] MISSING_PAGE;
+  static final int MISSING = Integer.MIN_VALUE;
+  private static final IntBuffer MISSING_BUFFER;
   static
   {
-    MISSING_PAGE = new int[MAX_SLOTS];
-    Arrays.fill(MISSING_PAGE, MISSING);
+    int[] missingPage = new int[MAX_SLOTS];
+    Arrays.fill(missingPage, MISSING);
+    MISSING_BUFFER = IntBuffer.wrap(missingPage);
   }
 
-  private int _maxItems = MAX_ITEMS;
-  private int[][] _list;
+  int _maxItems = MAX_ITEMS;
+  // pages as loaded, kept so that the next load can reuse them
+  int[][] _list;
+  // pages read by the accessors, views of _list unless a subclass stores them elsewhere
+  private IntBuffer[] _pages = new IntBuffer[0];
   private int _size;
   
-  static final private String[] EMPTY = new String[0];
+  static final String[] EMPTY = new String[0];
 
   static public abstract class Loader
   {
@@ -321,7 +326,7 @@ public final class BigNestedIntArray
    * @param loader
    * @throws Exception
    */
-  public final void load(int size, Loader loader) throws Exception
+  public void load(int size, Loader loader) throws Exception
   {
      _size = size;
     loader.initialize(size, _list);
@@ -329,7 +334,24 @@ public final class BigNestedIntArray
     {
       loader.load();
     }
-    _list = loader.finish();    
+    _list = loader.finish();
+    _pages = toPages(_list);
+  }
+  
+  /**
+   * Gives the storage of the loaded pages. The pages stay on the java heap, subclasses may copy them
+   * elsewhere.
+   * @param list loaded pages, null for pages without data
+   * @return the pages, null for pages without data
+   */
+  IntBuffer[] toPages(int[][] list)
+  {
+    IntBuffer[] pages = new IntBuffer[list.length];
+    for(int i = 0; i < list.length; i++)
+    {
+      if(list[i] != null) pages[i] = IntBuffer.wrap(list[i]);
+    }
+    return pages;
   }
   
   public int size(){
@@ -342,12 +364,12 @@ public final class BigNestedIntArray
    * @param defaultValue
    * @return
    */
-  public final int getData(int id, int idx, int defaultValue)
+  public int getData(int id, int idx, int defaultValue)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return defaultValue;
-    
-    int val = page[id & SLOTID_MASK];
+
+    int val = page.get(id & SLOTID_MASK);
     if(val >= 0)
     {
       return val;
@@ -359,7 +381,7 @@ public final class BigNestedIntArray
     else
     {
       val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-      return page[idx - val];
+      return page.get(idx - val);
     }
   }
   
@@ -370,12 +392,12 @@ public final class BigNestedIntArray
    * @param defaultValue
    * @return length
    */
-  public final int getData(int id, int[] buf)
+  public int getData(int id, int[] buf)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return 0;
-    
-    int val = page[id & SLOTID_MASK];
+
+    int val = page.get(id & SLOTID_MASK);
     if(val >= 0)
     {
       buf[0] = val;
@@ -389,7 +411,10 @@ public final class BigNestedIntArray
     {
       final int num = (val & COUNT_MASK);
       val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-      System.arraycopy(page, (- val), buf, 0, num);
+      for(int i = 0; i < num; i++)
+      {
+        buf[i] = page.get(i - val);
+      }
       return num;
     }
   }
@@ -402,38 +427,31 @@ public final class BigNestedIntArray
    * @param valarray
    * @return
    */
-  public final String[] getTranslatedData(int id, TermValueList valarray)
+  public String[] getTranslatedData(int id, TermValueList valarray)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
-    
-    if(page == null)
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
+    if(page == null) return EMPTY;
+
+    int val = page.get(id & SLOTID_MASK);
+    if(val >= 0)
+    {
+      return new String[]{valarray.get(val)};
+    }
+    else if(val == MISSING)
     {
       return EMPTY;
     }
     else
     {
-      int val = page[id & SLOTID_MASK];
-    
-      if(val >= 0)
-      {
-        return new String[]{valarray.get(val)};
-      }
-      else if(val == MISSING)
-      {
-        return EMPTY;
-      }
-      else
+      final int num = (val & COUNT_MASK);
+      val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
+
+      String[] ret = new String[num];
+      for(int i = 0; i < num; i++)
       {
-        final int num = (val & COUNT_MASK);
-        val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-    
-        String[] ret = new String[num];
-        for(int i = 0; i < num; i++)
-        {
-          ret[i] = valarray.get(page[i - val]);
-        }
-        return ret;
+        ret[i] = valarray.get(page.get(i - val));
       }
+      return ret;
     }
   }
   
@@ -445,140 +463,120 @@ public final class BigNestedIntArray
    * @param valarray
    * @return
    */
-  public final Object[] getRawData(int id, TermValueList valarray)
+  public Object[] getRawData(int id, TermValueList valarray)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
-    
-    if(page == null)
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
+    if(page == null) return EMPTY;
+
+    int val = page.get(id & SLOTID_MASK);
+    if(val >= 0)
+    {
+      return new Object[]{valarray.getRawValue(val)};
+    }
+    else if(val == MISSING)
     {
       return EMPTY;
     }
     else
     {
-      int val = page[id & SLOTID_MASK];
-    
-      if(val >= 0)
-      {
-    	return new Object[]{valarray.getRawValue(val)};
-      }
-      else if(val == MISSING)
-      {
-        return EMPTY;
-      }
-      else
+      final int num = (val & COUNT_MASK);
+      val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
+
+      Object[] ret = new Object[num];
+      for(int i = 0; i < num; i++)
       {
-        final int num = (val & COUNT_MASK);
-        val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-    
-        Object[] ret = new Object[num];
-        for(int i = 0; i < num; i++)
-        {
-          ret[i] = valarray.getRawValue(page[i - val]);
-        }
-        return ret;
+        ret[i] = valarray.getRawValue(page.get(i - val));
       }
+      return ret;
     }
   }
   
-  public final float getScores(int id,int[] freqs,float[] boosts,FacetTermScoringFunction function){
-	  function.clearScores();
-	  final int[] page = _list[id >> PAGEID_SHIFT];
-	  int val = page[id & SLOTID_MASK];
-	    
-      if(val >= 0)
-      {
-    	return function.score(freqs[val], boosts[val]);
-      }
-      else
+  public float getScores(int id,int[] freqs,float[] boosts,FacetTermScoringFunction function)
+  {
+    function.clearScores();
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
+    int val = page.get(id & SLOTID_MASK);
+
+    if(val >= 0)
+    {
+      return function.score(freqs[val], boosts[val]);
+    }
+    else
+    {
+      final int num = (val & COUNT_MASK);
+      val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
+      int idx;
+      for(int i = 0; i < num; i++)
       {
-        final int num = (val & COUNT_MASK);
-        val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-        int idx;
-        for(int i = 0; i < num; i++)
-        {
-          idx = page[i-val];
-          function.scoreAndCollect(freqs[idx],boosts[idx]);
-        }
-        return function.getCurrentScore();
+        idx = page.get(i - val);
+        function.scoreAndCollect(freqs[idx],boosts[idx]);
       }
+      return function.getCurrentScore();
+    }
   }
   
-  public final int compare(int i,int j){
-	  final int[] page1 = _list[i >> PAGEID_SHIFT];
-	  final int[] page2 = _list[j >> PAGEID_SHIFT];
-	  
-	  if (page1 == null){
-		  if (page2 == null) return 0;
-		  else return -1;
-	  }
-	  else{
-		  if (page2 == null) return 1;
-	  }
-	  
-	  final int val1 = page1[i & SLOTID_MASK];
-	  final int val2 = page2[j & SLOTID_MASK];
-	  
-	  if (val1>=0 && val2>=0) return val1 - val2;
-	  
-	  if (val1>=0){
-		  if (val2 == MISSING) return 1;
-		  int idx = - (val2 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
-	      int val = val1 - page2[idx];
-	      if (val == 0){
-	    	return -1;   
-	      }
-	      else{
-	    	return val;
-	      }
-	  }
-	  if (val2>=0){
-		  if (val1 == MISSING) return -1;
-		  int idx = - (val1 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
-	      int val = page1[idx] - val2;
-	      if (val==0){
-	    	  return 1;
-	      }
-	      else{
-	    	  return val;
-	      }
-	  }
-	  
-	  if (val1 == MISSING){
-		  if (val2 == MISSING){
-			  return 0;
-		  }
-		  else return -1;
-	  }
-	  else{
-		  if (val2 == MISSING){
-			  return 1;
-		  }
-	  }
-	  
-	  int idx1 = - (val1 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
-	  int len1 = (val1 & COUNT_MASK);
-	  
-	  int idx2 = - (val2 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
-	  int len2 = (val2 & COUNT_MASK);
-	  
-	  for (int k=0;k<len1;++k){
-		if (k>=len2){
-          return 1;
-		}
-		  
-		int compVal = page1[idx1+k] - page2[idx2+k];
-		if (compVal!=0) return compVal;
-	  }
-	  if (len1 == len2) return 0;
-	  return -1;
+  public int compare(int i,int j)
+  {
+    final IntBuffer page1 = _pages[i >> PAGEID_SHIFT];
+    final IntBuffer page2 = _pages[j >> PAGEID_SHIFT];
+
+    if (page1 == null){
+      if (page2 == null) return 0;
+      else return -1;
+    }
+    else{
+      if (page2 == null) return 1;
+    }
+
+    final int val1 = page1.get(i & SLOTID_MASK);
+    final int val2 = page2.get(j & SLOTID_MASK);
+
+    if (val1>=0 && val2>=0) return val1 - val2;
+
+    if (val1>=0){
+      if (val2 == MISSING) return 1;
+      int idx = - (val2 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
+      int val = val1 - page2.get(idx);
+      return (val == 0 ? -1 : val);
+    }
+    if (val2>=0){
+      if (val1 == MISSING) return -1;
+      int idx = - (val1 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
+      int val = page1.get(idx) - val2;
+      return (val == 0 ? 1 : val);
+    }
+
+    if (val1 == MISSING){
+      return (val2 == MISSING ? 0 : -1);
+    }
+    else if (val2 == MISSING){
+      return 1;
+    }
+
+    int idx1 = - (val1 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
+    int len1 = (val1 & COUNT_MASK);
+
+    int idx2 = - (val2 >> VALIDX_SHIFT);// signed shift, remember this is a negative number
+    int len2 = (val2 & COUNT_MASK);
+
+    for (int k=0;k<len1;++k){
+      if (k>=len2){
+        return 1;
+      }
+
+      int compVal = page1.get(idx1+k) - page2.get(idx2+k);
+      if (compVal!=0) return compVal;
+    }
+    if (len1 == len2) return 0;
+    return -1;
   }
 
-  public final boolean contains(int id, int value)
+  public boolean contains(int id, int value)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return false;
-    
-    final int val = page[id & SLOTID_MASK];
+
+    final int val = page.get(id & SLOTID_MASK);
     if (val >= 0)
     {
       return (val == value);
@@ -587,20 +585,20 @@ public final class BigNestedIntArray
     {
       int idx = - (val >> VALIDX_SHIFT);// signed shift, remember this is a negative number
       int end = idx + (val & COUNT_MASK);
-      while(idx < end)          
+      while(idx < end)
       {
-        if(page[idx++] == value) return true;  
+        if(page.get(idx++) == value) return true;
       }
     }
     return false;
   }
   
-  public final boolean contains(int id, BitVector values)
+  public boolean contains(int id, BitVector values)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return false;
-    
-    final int val = page[id & SLOTID_MASK];
+
+    final int val = page.get(id & SLOTID_MASK);
     if (val >= 0)
     {
       return (values.get(val));
@@ -609,22 +607,22 @@ public final class BigNestedIntArray
     {
       int idx = - (val >> VALIDX_SHIFT);// signed shift, remember this is a negative number
       int end = idx + (val & COUNT_MASK);
-      while(idx < end)          
+      while(idx < end)
       {
-        if(values.get(page[idx++])) return true;  
+        if(values.get(page.get(idx++))) return true;
       }
     }
     return false;
   }
   
-  public final int findValue(int value, int id, int maxID)
+  public int findValue(int value, int id, int maxID)
   {
-    int[] page = _list[id >> PAGEID_SHIFT];
-    if(page == null) page = MISSING_PAGE;
-    
+    IntBuffer page = _pages[id >> PAGEID_SHIFT];
+    if(page == null) page = MISSING_BUFFER;
+
     while(true)
     {
-      final int val = page[id & SLOTID_MASK];
+      final int val = page.get(id & SLOTID_MASK);
       if (val >= 0)
       {
         if(val == value) return id;
@@ -633,31 +631,31 @@ public final class BigNestedIntArray
       {
         int idx = - (val >> VALIDX_SHIFT);// signed shift, remember this is a negative number
         int end = idx + (val & COUNT_MASK);
-        while(idx < end)          
+        while(idx < end)
         {
-          if(page[idx++] == value) return id;  
+          if(page.get(idx++) == value) return id;
         }
       }
       if(id >= maxID) break;
-      
+
       if(((++id) & SLOTID_MASK) == 0)
       {
-        page = _list[id >> PAGEID_SHIFT];
-        if(page == null) page = MISSING_PAGE;
+        page = _pages[id >> PAGEID_SHIFT];
+        if(page == null) page = MISSING_BUFFER;
       }
     }
-    
+
     return DocIdSetIterator.NO_MORE_DOCS;
   }
   
-  public final int findValues(BitVector values, int id, int maxID)
+  public int findValues(BitVector values, int id, int maxID)
   {
-    int[] page = _list[id >> PAGEID_SHIFT];
-    if(page == null) page = MISSING_PAGE;
+    IntBuffer page = _pages[id >> PAGEID_SHIFT];
+    if(page == null) page = MISSING_BUFFER;
 
     while(true)
     {
-      final int val = page[id & SLOTID_MASK];
+      final int val = page.get(id & SLOTID_MASK);
       if (val >= 0)
       {
         if(values.get(val)) return id;
@@ -666,32 +664,32 @@ public final class BigNestedIntArray
       {
         int idx = - (val >> VALIDX_SHIFT);// signed shift, remember this is a negative number
         int end = idx + (val & COUNT_MASK);
-        while(idx < end)          
+        while(idx < end)
         {
-          if(values.get(page[idx++])) return id;  
+          if(values.get(page.get(idx++))) return id;
         }
       }
       if(id >= maxID) break;
-      
+
       if((++id & SLOTID_MASK) == 0)
       {
-        page = _list[id >> PAGEID_SHIFT];
-        if(page == null) page = MISSING_PAGE;
+        page = _pages[id >> PAGEID_SHIFT];
+        if(page == null) page = MISSING_BUFFER;
       }
     }
-    
+
     return DocIdSetIterator.NO_MORE_DOCS;
   }
   
-  public final int count(final int id, final int[] count)
+  public int count(final int id, final int[] count)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) {
       count[0]++;
       return 0;
     }
-    
-    int val = page[id & SLOTID_MASK];
+
+    int val = page.get(id & SLOTID_MASK);
     if(val >= 0)
     {
       count[val]++;
@@ -704,7 +702,7 @@ public final class BigNestedIntArray
       int end = idx + cnt;
       while(idx < end)
       {
-        count[page[idx++]]++;
+        count[page.get(idx++)]++;
       }
       return cnt;
     }
@@ -712,44 +710,20 @@ public final class BigNestedIntArray
     return 0;
   }
   
-  public final void countNoReturn(final int id, final int[] count)
+  public void countNoReturn(final int id, final int[] count)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
-    if(page == null) {
-      count[0]++;
-      return;
-    }
-    
-    int val = page[id & SLOTID_MASK];
-    if(val >= 0)
-    {
-      count[val]++;
-      return;
-    }
-    else if(val != MISSING)
-    {
-      int idx = - (val >> VALIDX_SHIFT); // signed shift, remember val is a negative number
-      int cnt = (val & COUNT_MASK);
-      int end = idx + cnt;
-      while(idx < end)
-      {
-        count[page[idx++]]++;
-      }
-      return;
-    }
-    count[0]++;
-    return;
+    count(id, count);
   }
-  
-  public final void countNoReturnWithFilter(final int id, final int[] count, BitVector filter)
+
+  public void countNoReturnWithFilter(final int id, final int[] count, BitVector filter)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) {
       count[0]++;
       return;
     }
-    
-    int val = page[id & SLOTID_MASK];
+
+    int val = page.get(id & SLOTID_MASK);
     if(val >= 0)
     {
       if (filter.get(val))
@@ -765,7 +739,7 @@ public final class BigNestedIntArray
       int end = idx + cnt;
       while(idx < end)
       {
-        int value = page[idx++];
+        int value = page.get(idx++);
         if (filter.get(value))
         {
           count[value]++;
@@ -774,7 +748,6 @@ public final class BigNestedIntArray
       return;
     }
     count[0]++;
-    return;
   }
 
   /**
@@ -782,49 +755,49 @@ public final class BigNestedIntArray
    * @param id
    * @return
    */
-  public final int getNumItems(int id)
+  public int getNumItems(int id)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return 0;
-    
-    int val = page[id & SLOTID_MASK];
-    
+
+    int val = page.get(id & SLOTID_MASK);
+
     if(val >= 0) return 1;
-    
+
     if(val == MISSING) return 0;
-    
+
     return (val & COUNT_MASK);
   }
   
   /**
    * adds Data to id
    */
-  public final boolean addData(final int id, final int data)
+  public boolean addData(final int id, final int data)
   {
-    final int[] page = _list[id >> PAGEID_SHIFT];
+    final IntBuffer page = _pages[id >> PAGEID_SHIFT];
     if(page == null) return true;
-    
+
     final int slotId = (id & SLOTID_MASK);
-    int val = page[slotId];
-    
+    int val = page.get(slotId);
+
     if(val == MISSING)
     {
       return true; // don't store
     }
     else if(val >= 0)
     {
-      page[slotId] = data; // only one value
+      page.put(slotId, data); // only one value
       return true;
     }
     else
     {
       int num = (val & COUNT_MASK);
       if(num >= _maxItems) return false;
-      
+
       val >>= VALIDX_SHIFT; // signed shift, remember this is a negative number
-      page[num - val] = data;
+      page.put(num - val, data);
       val = ((val << VALIDX_SHIFT) | (num + 1));
-      page[slotId] = val;
+      page.put(slotId, val);
       return true;
     }
   }
@@ -52,4 +52,17 @@ public abstract class BigSegmentedArray {
 	abstract public int findValueRange(int minVal, int maxVal, int docId, int maxId);
 	  
 	abstract public int findBits(int bits, int docId, int maxId);
+	
+	/**
+	 * Counts the values of a batch of docs: <code>count[get(docs[i])]++</code> for every i in
+	 * <code>[from, to)</code>. Subclasses read their blocks directly rather than calling {@link #get(int)}
+	 * per doc.
+	 */
+	public void countValues(int[] docs, int from, int to, int[] count)
+	{
+	  for (int i = from; i < to; ++i)
+	  {
+	    count[get(docs[i])]++;
+	  }
+	}
 }
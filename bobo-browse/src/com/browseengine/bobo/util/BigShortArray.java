@@ -38,6 +38,17 @@ public class BigShortArray extends BigSegmentedArray {
 	    return _array[docId >> SHIFT_SIZE][docId & MASK];
 	  }
 	  
+	  @Override
+	  public final void countValues(int[] docs, int from, int to, int[] count)
+	  {
+	    final short[][] array = _array;
+	    for (int i = from; i < to; ++i)
+	    {
+	      int docId = docs[i];
+	      count[array[docId >> SHIFT_SIZE][docId & MASK]]++;
+	    }
+	  }
+
 	  @Override
 	  public final int findValue(int val, int docId, int maxId)
 	  {
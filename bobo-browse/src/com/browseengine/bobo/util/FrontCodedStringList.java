@@ -0,0 +1,304 @@
+package com.browseengine.bobo.util;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.lucene.util.UnicodeUtil;
+
+/**
+ * Append only list of strings in ascending order, front coded into one byte array. The strings are stored
+ * as UTF-8 in blocks of {@link #BLOCK_SIZE}: the first string of a block in full, every other one as the
+ * number of leading bytes it shares with the string before it followed by the rest of its bytes. A string
+ * takes its distinct suffix and two short length prefixes instead of a String object, which for sorted
+ * terms with common prefixes, e.g. ids, urls or paths, is a fraction of the heap.
+ * <p>
+ * Getting a string decodes the strings of its block up to it, {@link #indexOf(Object)} binary searches the
+ * first strings of the blocks and scans one block. The list can be read by many threads once it is filled.
+ */
+public final class FrontCodedStringList extends AbstractList<String> implements RandomAccess
+{
+  public static final int BLOCK_SHIFT = 4;
+  public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+  private byte[] _bytes;
+  private int _length = 0;
+  private int[] _blockStarts;
+  private int _size = 0;
+
+  // utf-8 of the last string added and of the one being added
+  private UnicodeUtil.UTF8Result _last = new UnicodeUtil.UTF8Result();
+  private UnicodeUtil.UTF8Result _current = new UnicodeUtil.UTF8Result();
+
+  public FrontCodedStringList()
+  {
+    this(16);
+  }
+
+  /**
+   * @param capacity expected number of strings
+   */
+  public FrontCodedStringList(int capacity)
+  {
+    capacity = Math.max(capacity, 1);
+    _bytes = new byte[capacity * 4];
+    _blockStarts = new int[(capacity + BLOCK_SIZE - 1) >>> BLOCK_SHIFT];
+  }
+
+  /**
+   * Appends a string, which must not be smaller than the last one added.
+   */
+  @Override
+  public boolean add(String s)
+  {
+    UnicodeUtil.UTF16toUTF8(s, 0, s.length(), _current);
+    int prefix = 0;
+    if ((_size & BLOCK_MASK) == 0)
+    {
+      int block = _size >>> BLOCK_SHIFT;
+      if (block == _blockStarts.length)
+      {
+        int[] blockStarts = new int[Math.max(block + 1, block + (block >>> 1))];
+        System.arraycopy(_blockStarts, 0, blockStarts, 0, block);
+        _blockStarts = blockStarts;
+      }
+      _blockStarts[block] = _length;
+    }
+    else
+    {
+      int max = Math.min(_last.length, _current.length);
+      byte[] last = _last.result;
+      byte[] current = _current.result;
+      while (prefix < max && last[prefix] == current[prefix])
+      {
+        prefix++;
+      }
+    }
+    int suffix = _current.length - prefix;
+    ensureCapacity(_length + 10 + suffix);
+    writeVInt(prefix);
+    writeVInt(suffix);
+    System.arraycopy(_current.result, prefix, _bytes, _length, suffix);
+    _length += suffix;
+    _size++;
+
+    UnicodeUtil.UTF8Result tmp = _last;
+    _last = _current;
+    _current = tmp;
+    return true;
+  }
+
+  private void ensureCapacity(int length)
+  {
+    if (length > _bytes.length)
+    {
+      byte[] bytes = new byte[Math.max(length, _bytes.length + (_bytes.length >>> 1))];
+      System.arraycopy(_bytes, 0, bytes, 0, _length);
+      _bytes = bytes;
+    }
+  }
+
+  private void writeVInt(int i)
+  {
+    while ((i & ~0x7F) != 0)
+    {
+      _bytes[_length++] = (byte)((i & 0x7F) | 0x80);
+      i >>>= 7;
+    }
+    _bytes[_length++] = (byte)i;
+  }
+
+  /**
+   * Releases the spare capacity, once no more strings are added.
+   */
+  public void trimToSize()
+  {
+    if (_bytes.length > _length)
+    {
+      byte[] bytes = new byte[_length];
+      System.arraycopy(_bytes, 0, bytes, 0, _length);
+      _bytes = bytes;
+    }
+    int numBlocks = (_size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    if (_blockStarts.length > numBlocks)
+    {
+      int[] blockStarts = new int[numBlocks];
+      System.arraycopy(_blockStarts, 0, blockStarts, 0, numBlocks);
+      _blockStarts = blockStarts;
+    }
+    _current = new UnicodeUtil.UTF8Result();
+  }
+
+  @Override
+  public int size()
+  {
+    return _size;
+  }
+
+  @Override
+  public String get(int index)
+  {
+    if (index < 0 || index >= _size)
+    {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + _size);
+    }
+    Decoder decoder = new Decoder();
+    decoder.seekBlock(index >>> BLOCK_SHIFT);
+    for (int i = index & BLOCK_MASK; i >= 0; --i)
+    {
+      decoder.next();
+    }
+    return decoder.term();
+  }
+
+  /**
+   * @return the index of a string, or <code>-(insertion point) - 1</code> if it is not in the list,
+   * like {@link java.util.Collections#binarySearch(java.util.List, Object)}
+   */
+  @Override
+  public int indexOf(Object o)
+  {
+    String val = (String)o;
+    int numBlocks = (_size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    Decoder decoder = new Decoder();
+    // last block whose first string is not larger
+    int lo = 0;
+    int hi = numBlocks - 1;
+    while (lo <= hi)
+    {
+      int mid = (lo + hi) >>> 1;
+      decoder.seekBlock(mid);
+      decoder.next();
+      int cmp = decoder.term().compareTo(val);
+      if (cmp < 0)
+      {
+        lo = mid + 1;
+      }
+      else if (cmp > 0)
+      {
+        hi = mid - 1;
+      }
+      else
+      {
+        return mid << BLOCK_SHIFT;
+      }
+    }
+    if (hi < 0) return -1;
+
+    decoder.seekBlock(hi);
+    decoder.next();
+    int start = hi << BLOCK_SHIFT;
+    int end = Math.min(_size, start + BLOCK_SIZE);
+    for (int i = start + 1; i < end; ++i)
+    {
+      decoder.next();
+      int cmp = decoder.term().compareTo(val);
+      if (cmp == 0) return i;
+      if (cmp > 0) return -i - 1;
+    }
+    return -end - 1;
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    return indexOf(o) >= 0;
+  }
+
+  @Override
+  public Iterator<String> iterator()
+  {
+    return new Iterator<String>()
+    {
+      private final Decoder _decoder = new Decoder();
+      private int _next = 0;
+
+      public boolean hasNext()
+      {
+        return _next < _size;
+      }
+
+      public String next()
+      {
+        if (_next >= _size) throw new NoSuchElementException();
+        if ((_next & BLOCK_MASK) == 0)
+        {
+          _decoder.seekBlock(_next >>> BLOCK_SHIFT);
+        }
+        _decoder.next();
+        _next++;
+        return _decoder.term();
+      }
+
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * @return approximate heap size of the encoded strings in bytes
+   */
+  public long sizeInBytes()
+  {
+    return _bytes.length + 4L * _blockStarts.length;
+  }
+
+  /**
+   * Decodes the strings of a block one after the other.
+   */
+  private final class Decoder
+  {
+    private int _pos;
+    private byte[] _term = new byte[32];
+    private int _termLength;
+    private UnicodeUtil.UTF16Result _utf16;
+
+    void seekBlock(int block)
+    {
+      _pos = _blockStarts[block];
+      _termLength = 0;
+    }
+
+    void next()
+    {
+      int prefix = readVInt();
+      int suffix = readVInt();
+      int length = prefix + suffix;
+      if (length > _term.length)
+      {
+        byte[] term = new byte[Math.max(length, _term.length << 1)];
+        System.arraycopy(_term, 0, term, 0, prefix);
+        _term = term;
+      }
+      System.arraycopy(_bytes, _pos, _term, prefix, suffix);
+      _pos += suffix;
+      _termLength = length;
+    }
+
+    private int readVInt()
+    {
+      byte b = _bytes[_pos++];
+      int i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7)
+      {
+        b = _bytes[_pos++];
+        i |= (b & 0x7F) << shift;
+      }
+      return i;
+    }
+
+    String term()
+    {
+      if (_utf16 == null)
+      {
+        _utf16 = new UnicodeUtil.UTF16Result();
+      }
+      UnicodeUtil.UTF8toUTF16(_term, 0, _termLength, _utf16);
+      return new String(_utf16.result, 0, _utf16.length);
+    }
+  }
+}
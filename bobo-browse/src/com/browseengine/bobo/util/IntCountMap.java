@@ -0,0 +1,140 @@
+package com.browseengine.bobo.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from non-negative int keys to int counts, used in place of a count array
+ * when only a small part of the keys gets counted. Missing keys have a count of 0.
+ */
+public final class IntCountMap
+{
+  private static final int FREE = -1;
+
+  private int[] _keys;
+  private int[] _counts;
+  private int _mask;
+  private int _size;
+  private int _resizeThreshold;
+
+  public IntCountMap(int expectedSize)
+  {
+    int capacity = 16;
+    while (capacity < expectedSize * 2)
+    {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity)
+  {
+    _keys = new int[capacity];
+    Arrays.fill(_keys, FREE);
+    _counts = new int[capacity];
+    _mask = capacity - 1;
+    _resizeThreshold = capacity >> 1;
+  }
+
+  private static int hash(int key)
+  {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Adds one to the count of a key.
+   * @param key a non-negative key
+   */
+  public void increment(int key)
+  {
+    int slot = hash(key) & _mask;
+    while (true)
+    {
+      int k = _keys[slot];
+      if (k == key)
+      {
+        _counts[slot]++;
+        return;
+      }
+      if (k == FREE)
+      {
+        _keys[slot] = key;
+        _counts[slot] = 1;
+        if (++_size > _resizeThreshold)
+        {
+          rehash();
+        }
+        return;
+      }
+      slot = (slot + 1) & _mask;
+    }
+  }
+
+  public int get(int key)
+  {
+    int slot = hash(key) & _mask;
+    while (true)
+    {
+      int k = _keys[slot];
+      if (k == key) return _counts[slot];
+      if (k == FREE) return 0;
+      slot = (slot + 1) & _mask;
+    }
+  }
+
+  /**
+   * @return number of keys with a non-zero count
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  private void rehash()
+  {
+    int[] oldKeys = _keys;
+    int[] oldCounts = _counts;
+    allocate(oldKeys.length << 1);
+    for (int i = 0; i < oldKeys.length; ++i)
+    {
+      int key = oldKeys[i];
+      if (key != FREE)
+      {
+        int slot = hash(key) & _mask;
+        while (_keys[slot] != FREE)
+        {
+          slot = (slot + 1) & _mask;
+        }
+        _keys[slot] = key;
+        _counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  /**
+   * @return the counted keys in increasing order
+   */
+  public int[] sortedKeys()
+  {
+    int[] keys = new int[_size];
+    int n = 0;
+    for (int key : _keys)
+    {
+      if (key != FREE) keys[n++] = key;
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Adds the counts to a dense count array.
+   */
+  public void addTo(int[] count)
+  {
+    for (int i = 0; i < _keys.length; ++i)
+    {
+      int key = _keys[i];
+      if (key != FREE) count[key] += _counts[i];
+    }
+  }
+}
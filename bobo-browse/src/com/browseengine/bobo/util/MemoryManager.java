@@ -3,22 +3,28 @@
  */
 package com.browseengine.bobo.util;
 
-import java.lang.ref.WeakReference;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-
-import org.apache.log4j.Logger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Pool of reusable buffers bucketed by size class. The pool is lock-free: every size class is a
+ * fixed array of slots split into stripes, a thread takes and returns buffers in the stripe picked by
+ * its thread id first and only scans the other stripes when its own is empty or full. A released buffer
+ * is re-initialized by the releasing thread once it has claimed a slot for it. The total size of the pooled buffers is bounded, buffers
+ * released beyond the bound are left to the garbage collector.
+ *
  * @author "Xiaoyang Gu<xgu@linkedin.com>"
  *
  */
 public class MemoryManager<T> implements MemoryManagerAdminMBean
 {
-  private static final Logger log = Logger.getLogger(MemoryManager.class.getName());
+  /** default bound on the summed {@link Initializer#size(Object)} of the pooled buffers */
+  public static final long DEFAULT_MAX_RETAINED_SIZE = 16L * 1024 * 1024;
+
   private static final int[] sizetable;
+  private static final int SLOTS_PER_STRIPE = 4;
+  // marks a slot claimed by a release that is still initializing its buffer
+  private static final Object CLAIMED = new Object();
   private AtomicLong _hits = new AtomicLong(0);
   private AtomicLong _miss = new AtomicLong(0);
   static
@@ -33,48 +39,32 @@ public class MemoryManager<T> implements MemoryManagerAdminMBean
       sizetable[i] = (int) (sizetable[i-1]*ratio);
     }
   }
-  private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<WeakReference<T>>> _sizeMap = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<WeakReference<T>>>();
-  private volatile ConcurrentLinkedQueue<T> _releaseQueue = new ConcurrentLinkedQueue<T>();
-  private volatile ConcurrentLinkedQueue<T> _releaseQueueb = new ConcurrentLinkedQueue<T>();
-  private final AtomicInteger _releaseQueueSize = new AtomicInteger(0);
   private final Initializer<T> _initializer;
-  private final Thread _cleanThread;
+  private final long _maxRetainedSize;
+  private final AtomicLong _retainedSize = new AtomicLong(0);
+  private final int _stripeMask;
+  private final AtomicReferenceArray<AtomicReferenceArray<Object>> _pools;
+
   public MemoryManager(Initializer<T> initializer)
   {
-    this._initializer = initializer;
-    _cleanThread = new Thread(new Runnable(){
+    this(initializer, DEFAULT_MAX_RETAINED_SIZE);
+  }
 
-      public void run()
-      {
-        T buf = null;
-        while(true)
-        {
-          synchronized(MemoryManager.this)
-          {
-            try
-            {
-              MemoryManager.this.wait(10);
-            } catch (InterruptedException e)
-            {
-              log.error(e);
-            }
-          }
-          ConcurrentLinkedQueue<T> t = _releaseQueue;
-          _releaseQueue = _releaseQueueb;
-          _releaseQueueb =t;
-          while((buf = _releaseQueueb.poll()) != null)
-          {
-            ConcurrentLinkedQueue<WeakReference<T>> queue = _sizeMap.get(_initializer.size(buf));
-            // buf is wrapped in WeakReference. this allows GC to reclaim the buffer memory
-            _initializer.init(buf);// pre-initializing the buffer in parallel so we save time when it is requested later.
-            queue.offer(new WeakReference<T>(buf));
-            int x =_releaseQueueSize.decrementAndGet();
-          }
-          buf = null;
-        }
-      }});
-    _cleanThread.setDaemon(true);
-    _cleanThread.start();
+  /**
+   * @param initializer creates, measures and resets buffers
+   * @param maxRetainedSize bound on the summed size of the pooled buffers
+   */
+  public MemoryManager(Initializer<T> initializer, long maxRetainedSize)
+  {
+    _initializer = initializer;
+    _maxRetainedSize = maxRetainedSize;
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors() * 2)
+    {
+      stripes <<= 1;
+    }
+    _stripeMask = stripes - 1;
+    _pools = new AtomicReferenceArray<AtomicReferenceArray<Object>>(sizetable.length);
   }
   
   public MemoryManagerAdminMBean getAdminMBean(){
@@ -98,53 +88,80 @@ public class MemoryManager<T> implements MemoryManagerAdminMBean
 	    return (double)hit/(double)(hit + miss);
 	}
 
-  /**
-   * @return an initialized instance of type T. The size of the instance may not be the same as the requested size.
-   */
-  public T get(int reqsize)
+  @Override
+  public long getRetainedSize() {
+    return _retainedSize.get();
+  }
+
+  private static int sizeClass(int reqsize)
   {
-    long t0 = System.currentTimeMillis();
-    int size = reqsize;
-    for(int i = 0; i<sizetable.length; i++)
+    int low = 0;
+    int high = sizetable.length - 1;
+    if (reqsize > sizetable[high]) return -1;
+    while (low < high)
     {
-      if (sizetable[i] >= reqsize)
+      int mid = (low + high) >>> 1;
+      if (sizetable[mid] >= reqsize)
+      {
+        high = mid;
+      }
+      else
       {
-        size = sizetable[i];
-        break;
+        low = mid + 1;
       }
     }
-    ConcurrentLinkedQueue<WeakReference<T>> queue = _sizeMap.get(size);
-    if (queue==null)
+    return low;
+  }
+
+  private AtomicReferenceArray<Object> getPool(int sizeClass)
+  {
+    AtomicReferenceArray<Object> pool = _pools.get(sizeClass);
+    if (pool == null)
     {
-      queue =  new ConcurrentLinkedQueue<WeakReference<T>>();
-      _sizeMap.putIfAbsent(size, queue);
-      queue = _sizeMap.get(size);
+      _pools.compareAndSet(sizeClass, null, new AtomicReferenceArray<Object>((_stripeMask + 1) * SLOTS_PER_STRIPE));
+      pool = _pools.get(sizeClass);
     }
-    while(true)
+    return pool;
+  }
+
+  private int stripeStart()
+  {
+    return ((int)Thread.currentThread().getId() & _stripeMask) * SLOTS_PER_STRIPE;
+  }
+
+  /**
+   * @return an initialized instance of type T. The size of the instance may not be the same as the requested size.
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int reqsize)
+  {
+    int sizeClass = sizeClass(reqsize);
+    if (sizeClass >= 0)
     {
-      WeakReference<T> ref = (WeakReference<T>) queue.poll();
-      if(ref != null)
+      AtomicReferenceArray<Object> pool = getPool(sizeClass);
+      int len = pool.length();
+      int start = stripeStart();
+      for (int i = 0; i < len; ++i)
       {
-        T buf = ref.get();
-        if(buf != null)
+        int slot = (start + i) % len;
+        Object buf = pool.get(slot);
+        if (buf != null && buf != CLAIMED && pool.compareAndSet(slot, buf, null))
         {
+          _retainedSize.addAndGet(-_initializer.size((T)buf));
           _hits.incrementAndGet();
-          return buf;
+          return (T)buf;
         }
       }
-      else
-      {
-        T ret = _initializer.newInstance(size);
-        _miss.incrementAndGet();
-        long hit = _hits.get();
-        if (hit > Long.MAX_VALUE/2)
-        {
-          _hits.set(0);
-          _miss.set(0);
-        }
-        return ret;
-      }
     }
+    T ret = _initializer.newInstance(sizeClass >= 0 ? sizetable[sizeClass] : reqsize);
+    _miss.incrementAndGet();
+    long hit = _hits.get();
+    if (hit > Long.MAX_VALUE/2)
+    {
+      _hits.set(0);
+      _miss.set(0);
+    }
+    return ret;
   }
 
   /**
@@ -153,24 +170,32 @@ public class MemoryManager<T> implements MemoryManagerAdminMBean
    */
   public void release(T buf)
   {
-    if (_releaseQueueSize.get()>8000)
+    if(buf == null) return;
+    int size = _initializer.size(buf);
+    int sizeClass = sizeClass(size);
+    // only buffers handed out by get() have the exact size of their class
+    if (sizeClass < 0 || sizetable[sizeClass] != size) return;
+    if (_retainedSize.addAndGet(size) > _maxRetainedSize)
     {
-      log.info("release queue full");
-      synchronized(MemoryManager.this)
-      {
-        MemoryManager.this.notifyAll();
-      }
+      _retainedSize.addAndGet(-size);
       return;
     }
-    if(buf != null)
+    AtomicReferenceArray<Object> pool = getPool(sizeClass);
+    int len = pool.length();
+    int start = stripeStart();
+    for (int i = 0; i < len; ++i)
     {
-      _releaseQueue.offer(buf);
-      _releaseQueueSize.incrementAndGet();
-      synchronized(MemoryManager.this)
+      int slot = (start + i) % len;
+      if (pool.get(slot) == null && pool.compareAndSet(slot, null, CLAIMED))
       {
-        MemoryManager.this.notifyAll();
+        // only a buffer that is kept gets reset
+        _initializer.init(buf);
+        pool.set(slot, buf);
+        return;
       }
     }
+    // every slot of this size class is taken
+    _retainedSize.addAndGet(-size);
   }
 
   public static interface Initializer<E>
@@ -4,4 +4,5 @@ public interface MemoryManagerAdminMBean {
   long getNumCacheHits();
   long getNumCacheMisses();
   double getHitRate();
+  long getRetainedSize();
 }
@@ -0,0 +1,123 @@
+package com.browseengine.bobo.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetCountCollector;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.util.BigNestedIntArray;
+
+/**
+ * Measures the per-document facet counting loops: the single value, multi value and
+ * compact multi value collectors and the raw {@link BigNestedIntArray#countNoReturn} loop.
+ * Each invocation counts every document of the segment once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FacetCountBenchmark
+{
+  @Param({"1000000"})
+  public int numDocs;
+
+  @Param({"100", "10000"})
+  public int cardinality;
+
+  @Param({"3"})
+  public int valuesPerDoc;
+
+  private Directory _dir;
+  private BoboIndexReader _topReader;
+  private BoboIndexReader _reader;
+  private FacetHandler<?> _colorHandler;
+  private FacetHandler<?> _tagHandler;
+  private FacetHandler<?> _ctagHandler;
+  private BigNestedIntArray _nestedArray;
+  private int[] _count;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException
+  {
+    _dir = SyntheticIndex.build(numDocs, cardinality, valuesPerDoc);
+    _topReader = SyntheticIndex.open(_dir);
+    _reader = SyntheticIndex.segment(_topReader);
+    _colorHandler = _reader.getFacetHandler(SyntheticIndex.COLOR);
+    _tagHandler = _reader.getFacetHandler(SyntheticIndex.TAG);
+    _ctagHandler = _reader.getFacetHandler(SyntheticIndex.CTAG);
+    MultiValueFacetDataCache<?> dataCache = (MultiValueFacetDataCache<?>)_tagHandler.getFacetData(_reader);
+    _nestedArray = dataCache._nestedArray;
+    _count = new int[dataCache.freqs.length];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException
+  {
+    _topReader.close();
+    _dir.close();
+  }
+
+  private void countAll(FacetHandler<?> handler, Blackhole bh)
+  {
+    FacetCountCollector collector = handler.getFacetCountCollectorSource(null, new FacetSpec()).getFacetCountCollector(_reader, 0);
+    final int maxDoc = _reader.maxDoc();
+    for (int doc = 0; doc < maxDoc; ++doc)
+    {
+      collector.collect(doc);
+    }
+    bh.consume(collector.getCountDistribution());
+    collector.close();
+  }
+
+  @Benchmark
+  public void simpleCollect(Blackhole bh)
+  {
+    countAll(_colorHandler, bh);
+  }
+
+  @Benchmark
+  public void multiValueCollect(Blackhole bh)
+  {
+    countAll(_tagHandler, bh);
+  }
+
+  @Benchmark
+  public void compactMultiValueCollect(Blackhole bh)
+  {
+    countAll(_ctagHandler, bh);
+  }
+
+  @Benchmark
+  public int[] nestedArrayCountNoReturn()
+  {
+    final int[] count = _count;
+    final BigNestedIntArray nestedArray = _nestedArray;
+    final int maxDoc = _reader.maxDoc();
+    for (int doc = 0; doc < maxDoc; ++doc)
+    {
+      nestedArray.countNoReturn(doc, count);
+    }
+    return count;
+  }
+}
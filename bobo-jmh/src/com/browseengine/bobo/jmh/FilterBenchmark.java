@@ -0,0 +1,121 @@
+package com.browseengine.bobo.jmh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.filter.RandomAccessAndFilter;
+import com.browseengine.bobo.facets.filter.RandomAccessFilter;
+import com.browseengine.bobo.facets.filter.RandomAccessOrFilter;
+
+/**
+ * Measures docid iteration of the range filter and of the random access AND / OR
+ * filters combining value filters on the synthetic index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilterBenchmark
+{
+  @Param({"1000000"})
+  public int numDocs;
+
+  @Param({"100", "10000"})
+  public int cardinality;
+
+  @Param({"3"})
+  public int valuesPerDoc;
+
+  /** number of color values OR-ed together */
+  @Param({"5"})
+  public int orClauses;
+
+  private Directory _dir;
+  private BoboIndexReader _topReader;
+  private BoboIndexReader _reader;
+  private RandomAccessFilter _rangeFilter;
+  private RandomAccessFilter _orFilter;
+  private RandomAccessFilter _andFilter;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException
+  {
+    _dir = SyntheticIndex.build(numDocs, cardinality, valuesPerDoc);
+    _topReader = SyntheticIndex.open(_dir);
+    _reader = SyntheticIndex.segment(_topReader);
+
+    FacetHandler<?> numHandler = _reader.getFacetHandler(SyntheticIndex.NUM);
+    _rangeFilter = numHandler.buildRandomAccessFilter("[" + SyntheticIndex.numValue(0) + " TO " + SyntheticIndex.numValue(SyntheticIndex.NUM_RANGE / 2) + "]", null);
+
+    FacetHandler<?> colorHandler = _reader.getFacetHandler(SyntheticIndex.COLOR);
+    List<RandomAccessFilter> orList = new ArrayList<RandomAccessFilter>();
+    for (int i = 0; i < orClauses; ++i)
+    {
+      orList.add(colorHandler.buildRandomAccessFilter(SyntheticIndex.colorValue(i * cardinality / orClauses), null));
+    }
+    _orFilter = new RandomAccessOrFilter(orList);
+
+    List<RandomAccessFilter> andList = new ArrayList<RandomAccessFilter>();
+    andList.add(_rangeFilter);
+    andList.add(_orFilter);
+    _andFilter = new RandomAccessAndFilter(andList);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException
+  {
+    _topReader.close();
+    _dir.close();
+  }
+
+  private int iterate(RandomAccessFilter filter) throws IOException
+  {
+    DocIdSetIterator iter = filter.getRandomAccessDocIdSet(_reader).iterator();
+    int count = 0;
+    while (iter.nextDoc() != DocIdSetIterator.NO_MORE_DOCS)
+    {
+      ++count;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int rangeFilter() throws IOException
+  {
+    return iterate(_rangeFilter);
+  }
+
+  @Benchmark
+  public int orFilter() throws IOException
+  {
+    return iterate(_orFilter);
+  }
+
+  @Benchmark
+  public int andFilter() throws IOException
+  {
+    return iterate(_andFilter);
+  }
+}
@@ -0,0 +1,87 @@
+package com.browseengine.bobo.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.api.BrowseException;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.sort.SortCollectorImpl;
+
+/**
+ * Measures a match-all browse sorted on a facet field, which is dominated by
+ * {@link SortCollectorImpl} comparing and queueing every document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SortCollectorBenchmark
+{
+  @Param({"1000000"})
+  public int numDocs;
+
+  @Param({"100", "10000"})
+  public int cardinality;
+
+  @Param({"1"})
+  public int valuesPerDoc;
+
+  @Param({SyntheticIndex.NUM, SyntheticIndex.COLOR})
+  public String sortField;
+
+  @Param({"10"})
+  public int count;
+
+  private Directory _dir;
+  private BoboIndexReader _reader;
+  private BoboBrowser _browser;
+  private BrowseRequest _req;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException
+  {
+    _dir = SyntheticIndex.build(numDocs, cardinality, valuesPerDoc);
+    _reader = SyntheticIndex.open(_dir);
+    _browser = new BoboBrowser(_reader);
+    _req = new BrowseRequest();
+    _req.setQuery(new MatchAllDocsQuery());
+    _req.setCount(count);
+    _req.setSort(new SortField[]{new SortField(sortField, SortField.CUSTOM, true)});
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException
+  {
+    _browser.close();
+    _reader.close();
+    _dir.close();
+  }
+
+  @Benchmark
+  public BrowseResult sortedBrowse() throws BrowseException
+  {
+    return _browser.browse(_req);
+  }
+}
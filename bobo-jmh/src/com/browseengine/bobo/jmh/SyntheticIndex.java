@@ -0,0 +1,116 @@
+package com.browseengine.bobo.jmh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.CompactMultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.RangeFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+/**
+ * Builds a random in-memory index for the benchmarks. All documents end up in a single
+ * segment so the per-segment hot paths can be measured without the MultiReader overhead.
+ * The content is seeded, so two runs with the same parameters see the same index.
+ */
+public final class SyntheticIndex
+{
+  public static final String COLOR = "color";
+  public static final String TAG = "tag";
+  public static final String CTAG = "ctag";
+  public static final String NUM = "num";
+
+  /** compact multi-value fields are limited to 32 values per field */
+  public static final int MAX_COMPACT_VALUES = 31;
+  public static final int NUM_RANGE = 10000000;
+
+  private SyntheticIndex()
+  {
+  }
+
+  public static String colorValue(int i)
+  {
+    return String.format("v%05d", i);
+  }
+
+  public static String numValue(int i)
+  {
+    return String.format("%07d", i);
+  }
+
+  /**
+   * @param numDocs number of documents
+   * @param cardinality number of distinct values of the color and tag fields
+   * @param valuesPerDoc number of values per document of the multi-valued fields
+   */
+  public static Directory build(int numDocs, int cardinality, int valuesPerDoc) throws IOException
+  {
+    Random rand = new Random(numDocs * 31L + cardinality);
+    int compactCardinality = Math.min(cardinality, MAX_COMPACT_VALUES);
+    Directory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMergeFactor(100);
+    writer.setRAMBufferSizeMB(64);
+    for (int i = 0; i < numDocs; ++i)
+    {
+      Document doc = new Document();
+      doc.add(newField(COLOR, colorValue(rand.nextInt(cardinality))));
+      for (int k = 0; k < valuesPerDoc; ++k)
+      {
+        doc.add(newField(TAG, colorValue(rand.nextInt(cardinality))));
+        doc.add(newField(CTAG, colorValue(rand.nextInt(compactCardinality))));
+      }
+      doc.add(newField(NUM, numValue(rand.nextInt(NUM_RANGE))));
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+    return dir;
+  }
+
+  private static Field newField(String name, String value)
+  {
+    Field f = new Field(name, value, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS);
+    f.setOmitTermFreqAndPositions(true);
+    return f;
+  }
+
+  public static List<FacetHandler<?>> createFacetHandlers()
+  {
+    List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+    handlers.add(new SimpleFacetHandler(COLOR));
+    handlers.add(new MultiValueFacetHandler(TAG));
+    handlers.add(new CompactMultiValueFacetHandler(CTAG));
+    handlers.add(new RangeFacetHandler(NUM, Arrays.asList(
+        "[0000000 TO 0999999]", "[1000000 TO 4999999]", "[5000000 TO 9999999]")));
+    return handlers;
+  }
+
+  /**
+   * Returns the bobo reader of the only segment of an index opened with {@link #open(Directory)}.
+   * The segment reader is closed with the top level reader.
+   */
+  public static BoboIndexReader segment(BoboIndexReader reader)
+  {
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    return subReaders == null || subReaders.length == 0 ? reader : (BoboIndexReader)subReaders[0];
+  }
+
+  public static BoboIndexReader open(Directory dir) throws IOException
+  {
+    return BoboIndexReader.getInstance(IndexReader.open(dir, true), createFacetHandlers());
+  }
+}
@@ -25,12 +25,18 @@
 
 package com.browseengine.bobo.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -41,7 +47,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
@@ -64,6 +75,7 @@ import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.DefaultSimilarity;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
@@ -71,6 +83,7 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 
@@ -78,6 +91,7 @@ import com.browseengine.bobo.api.BoboBrowser;
 import com.browseengine.bobo.api.BoboCustomSortField;
 import com.browseengine.bobo.api.BoboIndexReader;
 import com.browseengine.bobo.api.Browsable;
+import com.browseengine.bobo.api.BrowseCursor;
 import com.browseengine.bobo.api.BrowseException;
 import com.browseengine.bobo.api.BrowseFacet;
 import com.browseengine.bobo.api.BrowseHit;
@@ -87,22 +101,40 @@ import com.browseengine.bobo.api.BrowseSelection;
 import com.browseengine.bobo.api.BrowseSelection.ValueOperation;
 import com.browseengine.bobo.api.ComparatorFactory;
 import com.browseengine.bobo.api.FacetAccessible;
+import com.browseengine.bobo.api.FacetIterator;
 import com.browseengine.bobo.api.FacetSpec;
 import com.browseengine.bobo.api.FacetSpec.FacetSortSpec;
 import com.browseengine.bobo.api.FieldValueAccessor;
+import com.browseengine.bobo.api.IntFacetIterator;
+import com.browseengine.bobo.api.LazyBrowseHit;
 import com.browseengine.bobo.api.MultiBoboBrowser;
+import com.browseengine.bobo.facets.FacetCountCollector;
+import com.browseengine.bobo.facets.FacetCountCollectorSource;
+import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
+import com.browseengine.bobo.docidset.ValueDocIdSetCache;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.FacetHandler.TermCountSize;
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.FacetDataCacheSnapshot;
+import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.facets.data.OrdinalBlockSummary;
+import com.browseengine.bobo.facets.data.PathOrdinalTree;
 import com.browseengine.bobo.facets.data.PredefinedTermListFactory;
+import com.browseengine.bobo.facets.data.TermFrontCodedStringList;
 import com.browseengine.bobo.facets.data.TermListFactory;
 import com.browseengine.bobo.facets.impl.BucketFacetHandler;
 import com.browseengine.bobo.facets.impl.ComboFacetHandler;
 import com.browseengine.bobo.facets.impl.CompactMultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.DefaultFacetCountCollector;
 import com.browseengine.bobo.facets.impl.DynamicTimeRangeFacetHandler;
 import com.browseengine.bobo.facets.impl.FacetHitcountComparatorFactory;
 import com.browseengine.bobo.facets.impl.FacetValueComparatorFactory;
 import com.browseengine.bobo.facets.impl.FilteredRangeFacetHandler;
 import com.browseengine.bobo.facets.impl.GeoFacetHandler;
+import com.browseengine.bobo.facets.filter.RandomAccessAndFilter;
+import com.browseengine.bobo.facets.filter.RandomAccessFilter;
+import com.browseengine.bobo.facets.filter.RandomAccessOrFilter;
 import com.browseengine.bobo.facets.impl.GeoSimpleFacetHandler;
 import com.browseengine.bobo.facets.impl.HistogramFacetHandler;
 import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
@@ -116,6 +148,7 @@ import com.browseengine.bobo.query.FacetBasedBoostScorerBuilder;
 import com.browseengine.bobo.query.RecencyBoostScorerBuilder;
 import com.browseengine.bobo.query.ScoreAdjusterQuery;
 import com.browseengine.bobo.query.scoring.FacetTermQuery;
+import com.browseengine.bobo.search.FacetCountCache;
 import com.browseengine.bobo.sort.DocComparator;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.IntBoundedPriorityQueue.IntComparator;
@@ -949,6 +982,46 @@ public class BoboTestCase extends TestCase {
 		doTest(br,7,answer,null);
 	}
 	
+	public void testPathDepth() throws Exception{
+		BrowseRequest br=new BrowseRequest();
+		br.setCount(10);
+		br.setOffset(0);
+
+		BrowseSelection sel=new BrowseSelection("path");
+		sel.addValue("a");
+		PathFacetHandler.setDepth(sel.getSelectionProperties(), 2);
+		br.addSelection(sel);
+
+		FacetSpec pathSpec=new FacetSpec();
+		pathSpec.setOrderBy(FacetSortSpec.OrderValueAsc);
+		br.setFacetSpec("path", pathSpec);
+
+		// paths ending above the wanted depth come with their own counts
+		HashMap<String,List<BrowseFacet>> answer=new HashMap<String,List<BrowseFacet>>();
+		answer.put("path", Arrays.asList(new BrowseFacet[]{new BrowseFacet("a-b-",1),new BrowseFacet("a-c-",2),new BrowseFacet("a-c-d",2),new BrowseFacet("a-e-",1),new BrowseFacet("a-e-f",1)}));
+		doTest(br,7,answer,null);
+
+		pathSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+		pathSpec.setMaxCount(3);
+		answer=new HashMap<String,List<BrowseFacet>>();
+		answer.put("path", Arrays.asList(new BrowseFacet[]{new BrowseFacet("a-c-",2),new BrowseFacet("a-c-d",2),new BrowseFacet("a-b-",1)}));
+		doTest(br,7,answer,null);
+
+		BoboBrowser browser = newBrowser();
+		BrowseResult result = browser.browse(br);
+		try{
+			FacetAccessible facets = result.getFacetAccessor("path");
+			assertEquals(4, facets.getFacet("a-c").getFacetValueHitCount());
+			assertEquals(2, facets.getFacet("a-c-").getFacetValueHitCount());
+			assertEquals(7, facets.getFacet("a").getFacetValueHitCount());
+			assertEquals(0, facets.getFacet("a-x").getFacetValueHitCount());
+		}
+		finally{
+			result.close();
+			browser.close();
+		}
+	}
+	
 	public void testComboFacetHandlerSelectionOnly(){
 		
 		BrowseRequest br=new BrowseRequest();
@@ -2317,6 +2390,1374 @@ public class BoboTestCase extends TestCase {
 
 	}
 	
+	private Directory createMultiSegmentIndex() throws IOException{
+		Directory idxDir = new RAMDirectory();
+		Document[] docs = buildData();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.setMergeFactor(docs.length+1);
+		for (Document doc : docs){
+			writer.addDocument(doc);
+			writer.commit();
+		}
+		writer.close();
+		return idxDir;
+	}
+	
+	public void testParallelBrowse() throws Exception{
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(createMultiSegmentIndex(),true),_fconf);
+		assertTrue(reader.getSequentialSubReaders().length > 1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(3);
+			br.setOffset(2);
+			br.addSortField(new SortField("number",SortField.CUSTOM,true));
+			BrowseSelection sel = new BrowseSelection("color");
+			sel.addValue("red");
+			sel.addValue("blue");
+			br.addSelection(sel);
+			FacetSpec colorSpec = new FacetSpec();
+			colorSpec.setExpandSelection(true);
+			colorSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+			br.setFacetSpec("color", colorSpec);
+			br.setFacetSpec("tag", new FacetSpec());
+			br.setFacetSpec("shape", new FacetSpec());
+
+			BrowseResult serial = new BoboBrowser(reader).browse(br);
+			BrowseResult parallel = new BoboBrowser(reader,executor).browse(br);
+
+			assertEquals(serial.getNumHits(), parallel.getNumHits());
+			BrowseHit[] serialHits = serial.getHits();
+			BrowseHit[] parallelHits = parallel.getHits();
+			assertEquals(serialHits.length, parallelHits.length);
+			for (int i=0;i<serialHits.length;++i){
+				assertEquals(serialHits[i].getDocid(), parallelHits[i].getDocid());
+				assertEquals(serialHits[i].getField("id"), parallelHits[i].getField("id"));
+			}
+			for (String name : new String[]{"color","tag","shape"}){
+				assertEquals(name, serial.getFacetAccessor(name).getFacets(), parallel.getFacetAccessor(name).getFacets());
+			}
+			serial.close();
+			parallel.close();
+		}
+		finally{
+			executor.shutdown();
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Three copies of the test data in segments of four docs.
+	 */
+	private Directory createRepeatedDataIndex() throws IOException{
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.setMergeFactor(100);
+		for (int i=0;i<3;++i){
+			for (Document doc : buildData()){
+				writer.addDocument(doc);
+				if (writer.numRamDocs() == 4){
+					writer.commit();
+				}
+			}
+		}
+		writer.close();
+		return idxDir;
+	}
+	
+	private static final SortField[][] MULTI_SEGMENT_SORTS = new SortField[][]{
+		{new SortField("color",SortField.CUSTOM,false)},
+		{new SortField("color",SortField.CUSTOM,true)},
+		{new SortField("number",SortField.CUSTOM,true)},
+		{new SortField("color",SortField.CUSTOM,false),new SortField("number",SortField.CUSTOM,true)},
+		{new SortField("shape",SortField.CUSTOM,true),SortField.FIELD_DOC},
+		{SortField.FIELD_DOC}
+	};
+	
+	public void testSortThresholdAcrossSegments() throws Exception{
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(createRepeatedDataIndex(),true),_fconf);
+		assertTrue(reader.getSequentialSubReaders().length > 2);
+		try{
+			BoboBrowser browser = new BoboBrowser(reader);
+			for (SortField[] sort : MULTI_SEGMENT_SORTS){
+				// no queue fills up with all the docs, the threshold never applies
+				BrowseRequest all = new BrowseRequest();
+				all.setCount(reader.maxDoc());
+				all.setSort(sort);
+				BrowseHit[] expected = browser.browse(all).getHits();
+				assertEquals(reader.maxDoc(), expected.length);
+				for (int offset=0;offset<3;++offset){
+					for (int count=1;count<4;++count){
+						BrowseRequest br = new BrowseRequest();
+						br.setOffset(offset);
+						br.setCount(count);
+						br.setSort(sort);
+						BrowseResult result = browser.browse(br);
+						assertEquals(reader.maxDoc(), result.getNumHits());
+						BrowseHit[] hits = result.getHits();
+						assertEquals(count, hits.length);
+						for (int i=0;i<hits.length;++i){
+							assertEquals(Arrays.toString(sort)+" offset: "+offset+" count: "+count, expected[offset+i].getDocid(), hits[i].getDocid());
+						}
+					}
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testBrowseCursor() throws Exception{
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(createRepeatedDataIndex(),true),_fconf);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try{
+			for (SortField[] sort : MULTI_SEGMENT_SORTS){
+				BrowseRequest all = new BrowseRequest();
+				all.setCount(reader.maxDoc());
+				all.setSort(sort);
+				BrowseHit[] expected = new BoboBrowser(reader).browse(all).getHits();
+				
+				for (BoboBrowser browser : new BoboBrowser[]{new BoboBrowser(reader), new BoboBrowser(reader,executor)}){
+					List<Integer> docids = new ArrayList<Integer>();
+					BrowseCursor cursor = null;
+					for (int page=0;;++page){
+						assertTrue("too many pages: "+Arrays.toString(sort), page <= reader.maxDoc());
+						BrowseRequest br = new BrowseRequest();
+						br.setCount(2);
+						br.setSort(sort);
+						br.setCursor(cursor);
+						BrowseResult result = browser.browse(br);
+						assertEquals(reader.maxDoc(), result.getNumHits());
+						cursor = result.getCursor();
+						if (cursor == null) break;
+						for (BrowseHit hit : result.getHits()){
+							docids.add(hit.getDocid());
+						}
+						// the cursor goes through serialization, as it would to and from a client
+						ByteArrayOutputStream bout = new ByteArrayOutputStream();
+						ObjectOutputStream out = new ObjectOutputStream(bout);
+						out.writeObject(cursor);
+						out.close();
+						cursor = (BrowseCursor)new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+					}
+					assertEquals(Arrays.toString(sort), expected.length, docids.size());
+					for (int i=0;i<expected.length;++i){
+						assertEquals(Arrays.toString(sort), expected[i].getDocid(), docids.get(i).intValue());
+					}
+				}
+			}
+		}
+		finally{
+			executor.shutdown();
+			reader.close();
+		}
+	}
+	
+	public void testEarlyTermination() throws Exception{
+		// the test data written in color order, docs without a color first, in segments of three docs
+		Document[] docs = buildData();
+		Arrays.sort(docs, new Comparator<Document>(){
+			public int compare(Document d1, Document d2){
+				String c1 = d1.get("color");
+				String c2 = d2.get("color");
+				return (c1 == null ? "" : c1).compareTo(c2 == null ? "" : c2);
+			}
+		});
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.setMergeFactor(100);
+		for (Document doc : docs){
+			writer.addDocument(doc);
+			if (writer.numRamDocs() == 3){
+				writer.commit();
+			}
+		}
+		writer.close();
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		reader.setIndexSort(new SortField[]{new SortField("color",SortField.CUSTOM)});
+		try{
+			BoboBrowser browser = new BoboBrowser(reader);
+			SortField[][] sorts = new SortField[][]{
+				{new SortField("color",SortField.CUSTOM)},
+				{new SortField("color",SortField.CUSTOM),SortField.FIELD_DOC},
+				{SortField.FIELD_DOC},
+				{new SortField("color",SortField.CUSTOM,true)}
+			};
+			for (int i=0;i<sorts.length;++i){
+				BrowseRequest br = new BrowseRequest();
+				br.setCount(2);
+				br.setSort(sorts[i]);
+				// a selection matching every doc, so that the facets are counted on the hits
+				BrowseSelection sel = new BrowseSelection("shape");
+				sel.addNotValue("nosuchshape");
+				br.addSelection(sel);
+				br.setFacetSpec("color", new FacetSpec());
+				BrowseResult expected = browser.browse(br);
+				br.setEarlyTermination(true);
+				BrowseResult result = browser.browse(br);
+				assertFalse(expected.isNumHitsLowerBound());
+				assertEquals(docs.length, expected.getNumHits());
+				assertEquals(2, result.getHits().length);
+				for (int j=0;j<2;++j){
+					assertEquals(expected.getHits()[j].getDocid(), result.getHits()[j].getDocid());
+				}
+				if (i < 3){
+					assertTrue(result.isNumHitsLowerBound());
+					assertTrue(result.getNumHits() < docs.length);
+					// the facets are only counted on the docs searched
+					int counted = 0;
+					for (BrowseFacet facet : result.getFacetAccessor("color").getFacets()){
+						counted += facet.getFacetValueHitCount();
+					}
+					int expectedCounted = 0;
+					for (BrowseFacet facet : expected.getFacetAccessor("color").getFacets()){
+						expectedCounted += facet.getFacetValueHitCount();
+					}
+					assertTrue(counted <= result.getNumHits());
+					assertTrue(counted < expectedCounted);
+				}
+				else{
+					// the reverse sort is not the order of the docs
+					assertFalse(result.isNumHitsLowerBound());
+					assertEquals(docs.length, result.getNumHits());
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testPrimitiveSortKeys() throws Exception{
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(createRepeatedDataIndex(),true),_fconf);
+		try{
+			BoboIndexReader segment = (BoboIndexReader)reader.getSequentialSubReaders()[0];
+			assertEquals(1, reader.getFacetHandler("number").getDocComparatorSource().getComparator(segment, 0).sortKeyCount());
+			assertEquals(1, reader.getFacetHandler("date").getDocComparatorSource().getComparator(segment, 0).sortKeyCount());
+			// string indexes do not hold across segments
+			assertEquals(0, reader.getFacetHandler("color").getDocComparatorSource().getComparator(segment, 0).sortKeyCount());
+
+			SortField[][] sorts = new SortField[][]{
+				{new SortField("number",SortField.CUSTOM)},
+				{new SortField("number",SortField.CUSTOM,true)},
+				{new SortField("date",SortField.CUSTOM,true),new SortField("number",SortField.CUSTOM)},
+				{new SortField("number",SortField.CUSTOM,true),SortField.FIELD_DOC}
+			};
+			BoboBrowser browser = new BoboBrowser(reader);
+			for (SortField[] sort : sorts){
+				BrowseRequest all = new BrowseRequest();
+				all.setCount(reader.maxDoc());
+				all.setSort(sort);
+				BrowseHit[] hits = browser.browse(all).getHits();
+				assertEquals(reader.maxDoc(), hits.length);
+				// merged by keys in the order of the values
+				for (int i=1;i<hits.length;++i){
+					int cmp = ((Comparable)hits[i-1].getComparable()).compareTo(hits[i].getComparable());
+					assertTrue(Arrays.toString(sort), cmp < 0 || (cmp == 0 && hits[i-1].getDocid() < hits[i].getDocid()));
+				}
+				BrowseRequest br = new BrowseRequest();
+				br.setOffset(3);
+				br.setCount(5);
+				br.setSort(sort);
+				BrowseHit[] page = browser.browse(br).getHits();
+				for (int i=0;i<page.length;++i){
+					assertEquals(Arrays.toString(sort), hits[3+i].getDocid(), page[i].getDocid());
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testParallelFacetLoading() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>(_fconf);
+		handlers.add(new GeoSimpleFacetHandler("badDistance", "latitude", "nosuchfacet"));
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		BoboIndexReader parallelReader = null;
+		try{
+			parallelReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers,null,new BoboIndexReader.WorkArea(),executor);
+			assertTrue(parallelReader.getSequentialSubReaders().length > 1);
+			assertSame(executor, parallelReader.getLoadExecutorService());
+			// handlers with missing dependencies are dropped, the ones depending on loaded facets are kept
+			assertFalse(parallelReader.getFacetNames().contains("badDistance"));
+			assertTrue(parallelReader.getFacetNames().contains("distance"));
+			assertEquals(reader.getFacetNames(), parallelReader.getFacetNames());
+			for (IndexReader subReader : parallelReader.getSequentialSubReaders()){
+				assertEquals(reader.getFacetNames(), ((BoboIndexReader)subReader).getFacetNames());
+			}
+
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			BrowseSelection sel = new BrowseSelection("distance");
+			sel.addValue("30,70:5");
+			sel.addValue("60,120:1");
+			br.addSelection(sel);
+			String[] names = new String[]{"color","tag","shape","number","location","distance","groupby"};
+			for (String name : names){
+				br.setFacetSpec(name, new FacetSpec());
+			}
+			BrowseResult expected = new BoboBrowser(reader).browse(br);
+			BrowseResult result = new BoboBrowser(parallelReader).browse(br);
+			assertEquals(expected.getNumHits(), result.getNumHits());
+			for (String name : names){
+				assertEquals(name, expected.getFacetAccessor(name).getFacets(), result.getFacetAccessor(name).getFacets());
+			}
+			expected.close();
+			result.close();
+		}
+		finally{
+			executor.shutdown();
+			reader.close();
+			if (parallelReader != null) parallelReader.close();
+		}
+	}
+	
+	public void testLazyFacetLoading() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		BoboIndexReader lazyReader = null;
+		try{
+			lazyReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf,null,new BoboIndexReader.WorkArea(),executor,true);
+			assertTrue(lazyReader.isLazyFacetLoading());
+			for (String name : reader.getFacetNames()){
+				assertFalse(name, lazyReader.isFacetDataLoaded(name));
+			}
+			assertEquals(reader.getFacetNames(), lazyReader.getFacetNames());
+
+			final BrowseRequest br = new BrowseRequest();
+			br.setCount(0);
+			BrowseSelection sel = new BrowseSelection("distance");
+			sel.addValue("30,70:5");
+			sel.addValue("60,120:1");
+			br.addSelection(sel);
+			final String[] names = new String[]{"color","location","groupby"};
+			for (String name : names){
+				br.setFacetSpec(name, new FacetSpec());
+			}
+			final BrowseResult expected = new BoboBrowser(reader).browse(br);
+
+			// concurrent first requests share the loads
+			final BoboIndexReader browsedReader = lazyReader;
+			List<Future<BrowseResult>> futures = new ArrayList<Future<BrowseResult>>();
+			for (int i=0;i<4;++i){
+				futures.add(executor.submit(new Callable<BrowseResult>(){
+					public BrowseResult call() throws Exception{
+						return new BoboBrowser(browsedReader).browse(br);
+					}
+				}));
+			}
+			for (Future<BrowseResult> future : futures){
+				BrowseResult result = future.get();
+				assertEquals(expected.getNumHits(), result.getNumHits());
+				for (String name : names){
+					assertEquals(name, expected.getFacetAccessor(name).getFacets(), result.getFacetAccessor(name).getFacets());
+				}
+				result.close();
+			}
+			expected.close();
+			for (String name : new String[]{"color","location","latitude","longitude"}){
+				assertTrue(name, lazyReader.isFacetDataLoaded(name));
+			}
+			assertFalse(lazyReader.isFacetDataLoaded("tag"));
+			assertFalse(lazyReader.isFacetDataLoaded("char"));
+
+			lazyReader.prefetchFacetData(Arrays.asList(new String[]{"tag","char"}));
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertTrue(lazyReader.isFacetDataLoaded("tag"));
+			assertTrue(lazyReader.isFacetDataLoaded("char"));
+			assertFalse(lazyReader.isFacetDataLoaded("id"));
+		}
+		finally{
+			executor.shutdown();
+			reader.close();
+			if (lazyReader != null) lazyReader.close();
+		}
+	}
+	
+	public void testLazyFacetLoadFailure() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		handlers.add(new SimpleFacetHandler("color"));
+		handlers.add(new SimpleFacetHandler("broken","color"){
+			@Override
+			public FacetDataCache load(BoboIndexReader reader) throws IOException{
+				throw new IOException("broken");
+			}
+		});
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers,null,new BoboIndexReader.WorkArea(),null,true);
+		try{
+			BoboIndexReader[] subReaders = (BoboIndexReader[])reader.getSequentialSubReaders();
+			assertTrue(subReaders.length > 1);
+
+			// the first use sees the failure, later uses find no handler
+			try{
+				subReaders[0].getFacetData("broken");
+				fail("load failure should be reported to the first use");
+			}
+			catch(RuntimeException e){
+				assertTrue(e.getCause() instanceof IOException);
+			}
+			assertNull(subReaders[0].getFacetHandler("broken"));
+			assertNull(subReaders[0].getFacetData("broken"));
+
+			// a prefetch logs the failure and drops the facet
+			reader.prefetchFacetData(Arrays.asList(new String[]{"broken"}));
+			for (BoboIndexReader subReader : subReaders){
+				assertNull(subReader.getFacetHandler("broken"));
+				assertNull(subReader.getFacetData("broken"));
+				assertNotNull(subReader.getFacetHandler("color"));
+			}
+
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(0);
+			br.setFacetSpec("color", new FacetSpec());
+			br.setFacetSpec("broken", new FacetSpec());
+			BrowseResult result = new BoboBrowser(reader).browse(br);
+			assertEquals(reader.numDocs(), result.getNumHits());
+			assertFalse(result.getFacetAccessor("color").getFacets().isEmpty());
+			assertNull(result.getFacetAccessor("broken"));
+			result.close();
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	public void testFrontCodedTermList() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		BoboIndexReader[] readers = new BoboIndexReader[2];
+		for (int i=0;i<readers.length;++i){
+			TermListFactory<String> listFactory = i == 0 ? null : TermListFactory.FrontCodedStringListFactory;
+			List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+			handlers.add(new SimpleFacetHandler("color", listFactory));
+			handlers.add(new MultiValueFacetHandler("tag", listFactory));
+			handlers.add(new SimpleFacetHandler("shape", listFactory));
+			readers[i] = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		}
+		try{
+			BoboIndexReader segment = (BoboIndexReader)readers[1].getSequentialSubReaders()[0];
+			FacetDataCache<?> dataCache = (FacetDataCache<?>)segment.getFacetData("color");
+			assertTrue(dataCache.valArray instanceof TermFrontCodedStringList);
+
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			BrowseSelection sel = new BrowseSelection("tag");
+			sel.addValue("dog");
+			sel.addValue("humane");
+			br.addSelection(sel);
+			BrowseSelection colorSel = new BrowseSelection("color");
+			colorSel.addValue("red");
+			colorSel.addValue("nosuchcolor");
+			br.addSelection(colorSel);
+			FacetSpec spec = new FacetSpec();
+			spec.setExpandSelection(true);
+			br.setFacetSpec("color", spec);
+			br.setFacetSpec("tag", spec);
+			FacetSpec shapeSpec = new FacetSpec();
+			shapeSpec.setOrderBy(FacetSortSpec.OrderValueAsc);
+			br.setFacetSpec("shape", shapeSpec);
+
+			BrowseResult expected = new BoboBrowser(readers[0]).browse(br);
+			BrowseResult result = new BoboBrowser(readers[1]).browse(br);
+			assertTrue(expected.getNumHits() > 0);
+			assertEquals(expected.getNumHits(), result.getNumHits());
+			for (String name : new String[]{"color","tag","shape"}){
+				assertEquals(name, expected.getFacetAccessor(name).getFacets(), result.getFacetAccessor(name).getFacets());
+			}
+			for (int i=0;i<expected.getHits().length;++i){
+				assertEquals(expected.getHits()[i].getDocid(), result.getHits()[i].getDocid());
+				assertTrue(Arrays.equals(expected.getHits()[i].getFields("tag"), result.getHits()[i].getFields("tag")));
+			}
+			expected.close();
+			result.close();
+		}
+		finally{
+			for (BoboIndexReader reader : readers){
+				reader.close();
+			}
+		}
+	}
+	
+	public void testHitFieldProjection() throws Exception{
+		BoboIndexReader reader = newIndexReader();
+		try{
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			br.addSortField(new SortField("id",SortField.CUSTOM));
+			BrowseSelection sel = new BrowseSelection("testStored");
+			sel.addValue("stored");
+			br.addSelection(sel);
+			br.setFetchStoredFields(true);
+			BrowseResult all = new BoboBrowser(reader).browse(br);
+			assertEquals(1, all.getNumHits());
+			BrowseHit fullHit = all.getHits()[0];
+			assertTrue(fullHit.getStoredFields().getValues("color").length > 0);
+
+			br.setFieldsToFetch(new HashSet<String>(Arrays.asList(new String[]{"color","tag","nosuchfacet"})));
+			br.setStoredFieldsToFetch(Collections.singleton("testStored"));
+			BrowseResult projected = new BoboBrowser(reader).browse(br);
+			BrowseHit hit = projected.getHits()[0];
+			assertEquals(fullHit.getDocid(), hit.getDocid());
+			assertEquals(new HashSet<String>(Arrays.asList(new String[]{"color","tag"})), hit.getFieldValues().keySet());
+			assertTrue(Arrays.equals(fullHit.getFields("tag"), hit.getFields("tag")));
+			assertTrue(Arrays.equals(fullHit.getRawFields("color"), hit.getRawFields("color")));
+			assertNull(hit.getFields("shape"));
+			assertEquals("stored", hit.getStoredFields().get("testStored"));
+			assertNull(hit.getStoredFields().getField("color"));
+
+			br.setFieldsToFetch(null);
+			br.setFetchStoredFields(false);
+			br.setLazyFieldValues(true);
+			BrowseResult lazy = new BoboBrowser(reader).browse(br);
+			BrowseHit lazyHit = lazy.getHits()[0];
+			assertTrue(lazyHit instanceof LazyBrowseHit);
+			assertTrue(Arrays.equals(fullHit.getFields("shape"), lazyHit.getFields("shape")));
+			assertTrue(Arrays.equals(fullHit.getRawFields("number"), lazyHit.getRawFields("number")));
+			assertEquals(fullHit.getField("path"), lazyHit.getField("path"));
+
+			// serialized hits carry all values
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(lazyHit);
+			out.close();
+			BrowseHit copy = (BrowseHit)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+			assertEquals(fullHit.getFieldValues().keySet(), copy.getFieldValues().keySet());
+			assertTrue(Arrays.equals(fullHit.getFields("multinum"), copy.getFields("multinum")));
+
+			all.close();
+			projected.close();
+			lazy.close();
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testDirectArrayStorage() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		BoboIndexReader[] readers = new BoboIndexReader[2];
+		for (int i=0;i<readers.length;++i){
+			List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+			handlers.add(new SimpleFacetHandler("color"));
+			handlers.add(new MultiValueFacetHandler("tag"));
+			if (i == 1){
+				for (FacetHandler<?> handler : handlers){
+					handler.setArrayStorage(FacetHandler.ArrayStorage.direct);
+				}
+			}
+			readers[i] = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		}
+		try{
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			br.addSortField(new SortField("color",SortField.CUSTOM,false));
+			br.addSortField(new SortField("tag",SortField.CUSTOM,true));
+			BrowseSelection sel = new BrowseSelection("tag");
+			sel.addValue("dog");
+			sel.addValue("rabbit");
+			br.addSelection(sel);
+			br.setFacetSpec("color", new FacetSpec());
+			FacetSpec tagSpec = new FacetSpec();
+			tagSpec.setExpandSelection(true);
+			br.setFacetSpec("tag", tagSpec);
+
+			BrowseResult heap = new BoboBrowser(readers[0]).browse(br);
+			BrowseResult direct = new BoboBrowser(readers[1]).browse(br);
+			assertTrue(heap.getNumHits() > 0);
+			assertEquals(heap.getNumHits(), direct.getNumHits());
+			BrowseHit[] heapHits = heap.getHits();
+			BrowseHit[] directHits = direct.getHits();
+			assertEquals(heapHits.length, directHits.length);
+			for (int i=0;i<heapHits.length;++i){
+				assertEquals(heapHits[i].getDocid(), directHits[i].getDocid());
+			}
+			for (String name : new String[]{"color","tag"}){
+				assertEquals(name, heap.getFacetAccessor(name).getFacets(), direct.getFacetAccessor(name).getFacets());
+			}
+			heap.close();
+			direct.close();
+		}
+		finally{
+			for (BoboIndexReader reader : readers){
+				reader.close();
+			}
+		}
+	}
+	
+	public void testBatchCollect() throws Exception{
+		BoboIndexReader reader = newIndexReader();
+		try{
+			String[] names = new String[]{"color","size","path","multipath","tag","compactnum","groups","sets","groupby"};
+			IndexReader[] subReaders = reader.getSequentialSubReaders();
+			for (IndexReader subReader : subReaders){
+				BoboIndexReader segReader = (BoboIndexReader)subReader;
+				int[] docs = new int[segReader.maxDoc()];
+				int len = 0;
+				for (int doc = 0; doc < segReader.maxDoc(); doc += 2){
+					docs[len++] = doc;
+				}
+				for (String name : names){
+					FacetCountCollectorSource source = segReader.getFacetHandler(name).getFacetCountCollectorSource(null, new FacetSpec());
+					FacetCountCollector single = source.getFacetCountCollector(segReader, 0);
+					FacetCountCollector batch = source.getFacetCountCollector(segReader, 0);
+					for (int i = 0; i < len; ++i){
+						single.collect(docs[i]);
+					}
+					batch.collect(docs, len);
+					assertTrue(name, Arrays.equals(single.getCountDistribution(), batch.getCountDistribution()));
+					single.close();
+					batch.close();
+				}
+			}
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testSparseFacetCounts() throws Exception{
+		int numDocs = DefaultFacetCountCollector.SPARSE_MIN_CARDINALITY + 100;
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.setMaxBufferedDocs(numDocs + 1);
+		for (int i=0;i<numDocs;++i){
+			Document doc = new Document();
+			doc.add(buildMetaField("uid",String.format("%06d",i)));
+			doc.add(buildMetaField("utag",String.format("t%06d",i)));
+			doc.add(buildMetaField("utag",String.format("t%06d",(i+1)%numDocs)));
+			doc.add(buildMetaField("grp",String.format("%03d",i%1000)));
+			writer.addDocument(doc);
+		}
+		writer.optimize();
+		writer.close();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		handlers.add(new SimpleFacetHandler("uid"));
+		handlers.add(new SimpleFacetHandler("iuid", "uid", new PredefinedTermListFactory(Integer.class, "000000")));
+		handlers.add(new MultiValueFacetHandler("utag"));
+		handlers.add(new SimpleFacetHandler("grp"));
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		try{
+			// few hits: counted sparsely
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(0);
+			BrowseSelection sel = new BrowseSelection("grp");
+			sel.addValue("007");
+			br.addSelection(sel);
+			FacetSpec uidSpec = new FacetSpec();
+			uidSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+			uidSpec.setMaxCount(3);
+			br.setFacetSpec("uid", uidSpec);
+			FacetSpec tagSpec = new FacetSpec();
+			tagSpec.setMaxCount(4);
+			br.setFacetSpec("utag", tagSpec);
+			br.setFacetSpec("iuid", uidSpec);
+			BrowseResult result = new BoboBrowser(reader).browse(br);
+			assertEquals(numDocs/1000 + (numDocs%1000 > 7 ? 1 : 0), result.getNumHits());
+			assertEquals(Arrays.asList(new BrowseFacet("000007",1),new BrowseFacet("001007",1),new BrowseFacet("002007",1)), result.getFacetAccessor("uid").getFacets());
+			assertEquals(Arrays.asList(new BrowseFacet("t000007",1),new BrowseFacet("t000008",1),new BrowseFacet("t001007",1),new BrowseFacet("t001008",1)), result.getFacetAccessor("utag").getFacets());
+			assertEquals(1, result.getFacetAccessor("uid").getFacet("065007").getFacetValueHitCount());
+			assertEquals(0, result.getFacetAccessor("uid").getFacet("000008").getFacetValueHitCount());
+			FacetIterator iter = result.getFacetAccessor("utag").iterator();
+			assertEquals("t000007", iter.next(1));
+			assertEquals(1, iter.count);
+			int tagCount = 1;
+			while (iter.next(1) != null) tagCount++;
+			assertEquals(2 * result.getNumHits(), tagCount);
+			assertEquals(Arrays.asList(new BrowseFacet("000007",1),new BrowseFacet("001007",1),new BrowseFacet("002007",1)), result.getFacetAccessor("iuid").getFacets());
+			IntFacetIterator intIter = (IntFacetIterator)result.getFacetAccessor("iuid").iterator();
+			assertEquals(7, intIter.nextInt(1));
+			assertEquals(1007, intIter.nextInt(1));
+			result.close();
+
+			// many hits: the counts move to a count array midway
+			br = new BrowseRequest();
+			br.setCount(0);
+			sel = new BrowseSelection("grp");
+			sel.addNotValue("007");
+			br.addSelection(sel);
+			br.setFacetSpec("uid", uidSpec);
+			br.setFacetSpec("utag", tagSpec);
+			result = new BoboBrowser(reader).browse(br);
+			assertEquals(Arrays.asList(new BrowseFacet("000000",1),new BrowseFacet("000001",1),new BrowseFacet("000002",1)), result.getFacetAccessor("uid").getFacets());
+			assertEquals(Arrays.asList(new BrowseFacet("t000000",2),new BrowseFacet("t000001",2),new BrowseFacet("t000002",2),new BrowseFacet("t000003",2)), result.getFacetAccessor("utag").getFacets());
+			result.close();
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testTopFacetsByHits() throws Exception{
+		int numValues = 200;
+		final Map<String,Integer> counts = new HashMap<String,Integer>();
+		List<String> docValues = new ArrayList<String>();
+		for (int v=0;v<numValues;++v){
+			String val = String.format("%04d",v);
+			int cnt = (v*37)%11 + 1;
+			counts.put(val, cnt);
+			for (int i=0;i<cnt;++i){
+				docValues.add(val);
+			}
+		}
+		Collections.shuffle(docValues, new Random(17));
+		List<BrowseFacet> expected = new ArrayList<BrowseFacet>();
+		for (Map.Entry<String,Integer> entry : counts.entrySet()){
+			expected.add(new BrowseFacet(entry.getKey(),entry.getValue()));
+		}
+		Collections.sort(expected, FacetHitcountComparatorFactory.FACET_HITS_COMPARATOR);
+		expected = expected.subList(0, 10);
+
+		for (boolean optimize : new boolean[]{false,true}){
+			Directory idxDir = new RAMDirectory();
+			IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+			writer.setMaxBufferedDocs(docValues.size()/3 + 1);
+			for (String val : docValues){
+				Document doc = new Document();
+				doc.add(buildMetaField("str",val));
+				doc.add(buildMetaField("num",val));
+				writer.addDocument(doc);
+			}
+			if (optimize){
+				writer.optimize();
+			}
+			writer.close();
+			List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+			handlers.add(new SimpleFacetHandler("str"));
+			handlers.add(new SimpleFacetHandler("num",new PredefinedTermListFactory(Integer.class, "0000")));
+			BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+			try{
+				BrowseRequest br = new BrowseRequest();
+				br.setCount(0);
+				FacetSpec spec = new FacetSpec();
+				spec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+				spec.setMaxCount(10);
+				br.setFacetSpec("str", spec);
+				br.setFacetSpec("num", spec);
+				BrowseResult result = new BoboBrowser(reader).browse(br);
+				assertEquals("optimize: "+optimize, expected, result.getFacetAccessor("str").getFacets());
+				assertEquals("optimize: "+optimize, expected, result.getFacetAccessor("num").getFacets());
+				result.close();
+			}
+			finally{
+				reader.close();
+			}
+		}
+	}
+	
+	public void testOrFilterPostings() throws Exception{
+		int numDocs = 5000;
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		for (int i=0;i<numDocs;++i){
+			Document doc = new Document();
+			doc.add(buildMetaField("sv",String.format("v%03d",i%500)));
+			doc.add(buildMetaField("mv",String.format("v%03d",i%500)));
+			doc.add(buildMetaField("mv","w"+(i%7)));
+			doc.add(buildMetaField("mp",String.format("v%03d",i%500)));
+			if (i%2==0) doc.add(buildMetaField("mp","w"+(i%7)));
+			writer.addDocument(doc);
+		}
+		writer.optimize();
+		writer.close();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		handlers.add(new SimpleFacetHandler("sv"));
+		handlers.add(new MultiValueFacetHandler("mv"));
+		handlers.add(new PathFacetHandler("mp",true));
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		try{
+			// sparse values spread over the whole segment: the postings are read into a bitset
+			int[] expected = new int[5];
+			for (int i=0;i<numDocs;++i){
+				int v = i%500;
+				boolean sel = (v==1 || v==250 || v==499);
+				if (sel) expected[0]++;
+				if (v!=1 && v!=250) expected[1]++;
+				if (v==2 || i%7==3) expected[2]++;
+				if (sel && i%7!=1) expected[3]++;
+				// a multi valued doc is in the compliment when it has any value outside the selection
+				if (!sel || i%2==0) expected[4]++;
+			}
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(0);
+			BrowseSelection sel = new BrowseSelection("sv");
+			sel.setValues(new String[]{"v001","v250","v499"});
+			br.addSelection(sel);
+			assertEquals(expected[0], new BoboBrowser(reader).browse(br).getNumHits());
+
+			br = new BrowseRequest();
+			br.setCount(0);
+			sel = new BrowseSelection("sv");
+			sel.setNotValues(new String[]{"v001","v250"});
+			br.addSelection(sel);
+			assertEquals(expected[1], new BoboBrowser(reader).browse(br).getNumHits());
+
+			br = new BrowseRequest();
+			br.setCount(0);
+			sel = new BrowseSelection("mv");
+			sel.setValues(new String[]{"v002","w3"});
+			br.addSelection(sel);
+			assertEquals(expected[2], new BoboBrowser(reader).browse(br).getNumHits());
+
+			// one filter leads, the other one is checked per doc
+			br = new BrowseRequest();
+			br.setCount(0);
+			sel = new BrowseSelection("sv");
+			sel.setValues(new String[]{"v001","v250","v499"});
+			br.addSelection(sel);
+			sel = new BrowseSelection("mv");
+			sel.setNotValues(new String[]{"w1"});
+			br.addSelection(sel);
+			assertEquals(expected[3], new BoboBrowser(reader).browse(br).getNumHits());
+
+			br = new BrowseRequest();
+			br.setCount(0);
+			sel = new BrowseSelection("mp");
+			sel.setNotValues(new String[]{"v001","v250","v499"});
+			br.addSelection(sel);
+			assertEquals(expected[4], new BoboBrowser(reader).browse(br).getNumHits());
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testValueDocIdSetCache() throws Exception{
+		int numDocs = 5000;
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		for (int i=0;i<numDocs;++i){
+			Document doc = new Document();
+			doc.add(buildMetaField("sv",String.format("v%03d",i%500)));
+			doc.add(buildMetaField("mv",String.format("v%03d",i%500)));
+			doc.add(buildMetaField("mv","w"+(i%7)));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		SimpleFacetHandler sv = new SimpleFacetHandler("sv");
+		handlers.add(sv);
+		handlers.add(new MultiValueFacetHandler("mv"));
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		BoboIndexReader uncachedReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		try{
+			reader.setValueDocIdSetCacheSize(1024*1024);
+			assertNull(reader.getValueDocIdSetCache());
+			List<BrowseRequest> reqs = new ArrayList<BrowseRequest>();
+			// a sparse single value
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			BrowseSelection sel = new BrowseSelection("sv");
+			sel.addValue("v007");
+			br.addSelection(sel);
+			reqs.add(br);
+			// dense values
+			br = new BrowseRequest();
+			br.setCount(10);
+			sel = new BrowseSelection("mv");
+			sel.setValues(new String[]{"w2","w5"});
+			br.addSelection(sel);
+			sel = new BrowseSelection("sv");
+			sel.setNotValues(new String[]{"v001","v250"});
+			br.addSelection(sel);
+			reqs.add(br);
+			br = new BrowseRequest();
+			br.setCount(10);
+			sel = new BrowseSelection("mv");
+			sel.setNotValues(new String[]{"w1"});
+			br.addSelection(sel);
+			reqs.add(br);
+			for (int round=0;round<3;++round){
+				for (BrowseRequest req : reqs){
+					assertSameBrowseResult(new BoboBrowser(uncachedReader).browse(req), new BoboBrowser(reader).browse(req), new String[0]);
+				}
+			}
+			long hits = 0;
+			int cached = 0;
+			for (IndexReader subReader : reader.getSequentialSubReaders()){
+				ValueDocIdSetCache cache = ((BoboIndexReader)subReader).getValueDocIdSetCache();
+				hits += cache.getHitCount();
+				cached += cache.size();
+				assertTrue(cache.getBytes() <= cache.getMaxBytes());
+			}
+			assertTrue(hits > 0);
+			// v007, w2, w5, v001, v250 and w1
+			assertEquals(6, cached);
+			// cached values are combined without iterating them
+			for (IndexReader subReader : reader.getSequentialSubReaders()){
+				List<RandomAccessFilter> clauses = new ArrayList<RandomAccessFilter>();
+				clauses.add(sv.buildRandomAccessFilter("v001", new Properties()));
+				clauses.add(sv.buildRandomAccessFilter("v250", new Properties()));
+				RandomAccessDocIdSet docs = new RandomAccessOrFilter(clauses).getRandomAccessDocIdSet((BoboIndexReader)subReader);
+				assertTrue(docs instanceof RoaringDocIdSet);
+				assertTrue(docs.get(1));
+				assertTrue(docs.get(750));
+				assertFalse(docs.get(2));
+			}
+		}
+		finally{
+			reader.close();
+			uncachedReader.close();
+		}
+	}
+	
+	public void testAndFilterSelectivity() throws Exception{
+		int numDocs = 3000;
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		for (int i=0;i<numDocs;++i){
+			Document doc = new Document();
+			doc.add(buildMetaField("dense",String.valueOf(i%2)));
+			doc.add(buildMetaField("sparse",String.format("s%03d",i%100)));
+			doc.add(buildMetaField("path","p"+(i%3)+"/q"+(i%5)));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		SimpleFacetHandler dense = new SimpleFacetHandler("dense");
+		SimpleFacetHandler sparse = new SimpleFacetHandler("sparse");
+		PathFacetHandler path = new PathFacetHandler("path");
+		handlers.add(dense);
+		handlers.add(sparse);
+		handlers.add(path);
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		try{
+			BoboIndexReader segment = (BoboIndexReader)reader.getSequentialSubReaders()[0];
+			RandomAccessFilter denseFilter = dense.buildRandomAccessFilter("1", new Properties());
+			RandomAccessFilter sparseFilter = sparse.buildRandomAccessFilter("s007", new Properties());
+			assertEquals(0.5, denseFilter.getFacetSelectivity(segment), 0.001);
+			assertEquals(0.01, sparseFilter.getFacetSelectivity(segment), 0.001);
+			// a path prefix selects all paths below it
+			assertEquals(1.0/3, path.buildRandomAccessFilter("p1", new Properties()).getFacetSelectivity(segment), 0.001);
+			// a path tree missing from the reader is rebuilt once and kept
+			PathOrdinalTree tree = path.getPathTree(segment);
+			segment.putFacetData("path$pathtree", null);
+			PathOrdinalTree rebuilt = path.getPathTree(segment);
+			assertNotSame(tree, rebuilt);
+			assertSame(rebuilt, path.getPathTree(segment));
+
+			List<RandomAccessFilter> clauses = new ArrayList<RandomAccessFilter>();
+			clauses.add(denseFilter);
+			clauses.add(sparseFilter);
+			RandomAccessAndFilter and = new RandomAccessAndFilter(clauses);
+			assertEquals(0.005, and.getFacetSelectivity(segment), 0.001);
+			RandomAccessDocIdSet docs = and.getRandomAccessDocIdSet(segment);
+			DocIdSetIterator iter = docs.iterator();
+			for (int i=0;i<numDocs;++i){
+				boolean expected = i%2==1 && i%100==7;
+				assertEquals(expected, docs.get(i));
+				if (expected){
+					assertEquals(i, iter.nextDoc());
+				}
+			}
+			assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+			assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.docID());
+
+			// the same through a browse, where the clauses are given densest first
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(0);
+			BrowseSelection sel = new BrowseSelection("dense");
+			sel.addValue("1");
+			br.addSelection(sel);
+			sel = new BrowseSelection("sparse");
+			sel.addValue("s007");
+			br.addSelection(sel);
+			assertEquals(numDocs/100, new BoboBrowser(reader).browse(br).getNumHits());
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	public void testRangeFilterBlockSkipping() throws Exception{
+		int numDocs = 20000;
+		Directory idxDir = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		for (int i=0;i<numDocs;++i){
+			Document doc = new Document();
+			// docs in time order, 10 per day, with a few stragglers of days 3 to 6 and 0 at the end
+			int day = i < numDocs-5 ? i/10 : i%7;
+			doc.add(buildMetaField("day",String.format("%05d",day)));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+		RangeFacetHandler dayRange = new RangeFacetHandler("day",(List<String>)null);
+		dayRange.setBlockSummaryEnabled(true);
+		handlers.add(dayRange);
+		// same data without a block summary
+		RangeFacetHandler plainDayRange = new RangeFacetHandler("plainday","day",(List<String>)null);
+		handlers.add(plainDayRange);
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+		try{
+			BoboIndexReader segment = (BoboIndexReader)reader.getSequentialSubReaders()[0];
+			FacetDataCache dataCache = (FacetDataCache)dayRange.getFacetData(segment);
+			OrdinalBlockSummary summary = dataCache.getBlockSummary();
+			assertNotNull(summary);
+			assertNull(((FacetDataCache)plainDayRange.getFacetData(segment)).getBlockSummary());
+			int lo = dataCache.valArray.indexOf("00500");
+			int hi = dataCache.valArray.indexOf("00509");
+			assertTrue(summary.mayContain(5000/OrdinalBlockSummary.BLOCK_SIZE, lo, hi));
+			assertFalse(summary.mayContain(0, lo, hi));
+			assertFalse(summary.mayContain(10000/OrdinalBlockSummary.BLOCK_SIZE, lo, hi));
+
+			RandomAccessDocIdSet docs = dayRange.buildRandomAccessFilter("[00500 TO 00509]", new Properties()).getRandomAccessDocIdSet(segment);
+			DocIdSetIterator iter = docs.iterator();
+			for (int i=5000;i<5100;++i){
+				assertEquals(i, iter.nextDoc());
+			}
+			assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+
+			// the stragglers sit in the last block, the blocks in between are skipped
+			docs = dayRange.buildRandomAccessFilter("[00002 TO 00003]", new Properties()).getRandomAccessDocIdSet(segment);
+			iter = docs.iterator();
+			assertEquals(39, iter.advance(39));
+			assertEquals(numDocs-5, iter.nextDoc());
+			assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+
+			// without a summary the order array is scanned
+			iter = plainDayRange.buildRandomAccessFilter("[00002 TO 00003]", new Properties()).getRandomAccessDocIdSet(segment).iterator();
+			assertEquals(39, iter.advance(39));
+			assertEquals(numDocs-5, iter.nextDoc());
+			assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+		}
+		finally{
+			reader.close();
+		}
+	}
+	
+	private static void assertSameBrowseResult(BrowseResult expected, BrowseResult actual, String[] facetNames){
+		assertEquals(expected.getNumHits(), actual.getNumHits());
+		BrowseHit[] expectedHits = expected.getHits();
+		BrowseHit[] actualHits = actual.getHits();
+		assertEquals(expectedHits.length, actualHits.length);
+		for (int i=0;i<expectedHits.length;++i){
+			assertEquals(expectedHits[i].getDocid(), actualHits[i].getDocid());
+		}
+		for (String name : facetNames){
+			assertEquals(name, expected.getFacetAccessor(name).getFacets(), actual.getFacetAccessor(name).getFacets());
+		}
+	}
+	
+	public void testFacetCountCache() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		reader.setFacetCountCacheSize(16);
+		BoboIndexReader plainReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		
+		BrowseRequest br = new BrowseRequest();
+		br.setCount(10);
+		br.addSortField(new SortField("number",SortField.CUSTOM,false));
+		BrowseSelection colorSel = new BrowseSelection("color");
+		colorSel.addValue("red");
+		colorSel.addValue("blue");
+		br.addSelection(colorSel);
+		BrowseSelection shapeSel = new BrowseSelection("shape");
+		shapeSel.addNotValue("circle");
+		br.addSelection(shapeSel);
+		FacetSpec colorSpec = new FacetSpec();
+		colorSpec.setExpandSelection(true);
+		br.setFacetSpec("color", colorSpec);
+		String[] facetNames = new String[]{"color","shape","tag","compactnum","size"};
+		for (int i=1;i<facetNames.length;++i){
+			br.setFacetSpec(facetNames[i], new FacetSpec());
+		}
+		
+		// same request with the selection values in a different order
+		BrowseRequest br2 = new BrowseRequest();
+		br2.setCount(10);
+		br2.addSortField(new SortField("number",SortField.CUSTOM,false));
+		BrowseSelection colorSel2 = new BrowseSelection("color");
+		colorSel2.addValue("blue");
+		colorSel2.addValue("red");
+		br2.addSelection(colorSel2);
+		br2.addSelection(shapeSel);
+		br2.setFacetSpecs(br.getFacetSpecs());
+		
+		BrowseResult expected = new BoboBrowser(plainReader).browse(br);
+		assertTrue(expected.getNumHits() > 0);
+		BrowseResult first = new BoboBrowser(reader).browse(br);
+		BrowseResult second = new BoboBrowser(reader).browse(br2);
+		assertSameBrowseResult(expected, first, facetNames);
+		assertSameBrowseResult(expected, second, facetNames);
+		IndexReader[] segments = reader.getSequentialSubReaders();
+		for (IndexReader segment : segments){
+			FacetCountCache cache = ((BoboIndexReader)segment).getFacetCountCache();
+			assertEquals(1, cache.size());
+			assertEquals(1, cache.getMissCount());
+			assertEquals(1, cache.getHitCount());
+		}
+		expected.close();
+		first.close();
+		second.close();
+		plainReader.close();
+		
+		// only the new segment has to be counted after a reopen
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.addDocument(buildData()[0]);
+		writer.close();
+		BoboIndexReader newReader = (BoboIndexReader)reader.reopen(true);
+		assertNotSame(reader, newReader);
+		plainReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		expected = new BoboBrowser(plainReader).browse(br);
+		BrowseResult reopened = new BoboBrowser(newReader).browse(br);
+		assertSameBrowseResult(expected, reopened, facetNames);
+		IndexReader[] newSegments = newReader.getSequentialSubReaders();
+		assertEquals(segments.length + 1, newSegments.length);
+		for (int i=0;i<newSegments.length;++i){
+			FacetCountCache cache = ((BoboIndexReader)newSegments[i]).getFacetCountCache();
+			if (i < segments.length){
+				assertSame(segments[i], newSegments[i]);
+				assertEquals(2, cache.getHitCount());
+			}
+			else{
+				assertEquals(0, cache.getHitCount());
+				assertEquals(1, cache.getMissCount());
+			}
+		}
+		expected.close();
+		reopened.close();
+		plainReader.close();
+		newReader.close();
+		reader.close();
+	}
+	
+	private static BoboIndexReader getFirstSegment(BoboIndexReader reader){
+		IndexReader[] subReaders = reader.getSequentialSubReaders();
+		return (subReaders == null ? reader : (BoboIndexReader)subReaders[0]);
+	}
+	
+	public void testFacetDataSnapshot() throws Exception{
+		File idxFile = File.createTempFile("bobo-snapshot", "");
+		idxFile.delete();
+		Directory idxDir = FSDirectory.open(idxFile);
+		try{
+			IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+			for (Document doc : buildData()){
+				writer.addDocument(doc);
+			}
+			writer.optimize();
+			writer.deleteDocuments(new Term("id","1"));
+			writer.commit();
+			
+			List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+			SimpleFacetHandler colorHandler = new SimpleFacetHandler("color");
+			colorHandler.setSnapshotEnabled(true);
+			handlers.add(colorHandler);
+			MultiValueFacetHandler tagHandler = new MultiValueFacetHandler("tag");
+			tagHandler.setSnapshotEnabled(true);
+			handlers.add(tagHandler);
+			
+			BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+			BoboIndexReader segReader = getFirstSegment(reader);
+			File colorSnapshot = FacetDataCacheSnapshot.getSnapshotFile(segReader, "color");
+			File tagSnapshot = FacetDataCacheSnapshot.getSnapshotFile(segReader, "tag");
+			assertTrue(colorSnapshot.exists());
+			assertTrue(tagSnapshot.exists());
+			colorSnapshot.setLastModified(1000L);
+			tagSnapshot.setLastModified(1000L);
+			
+			BoboIndexReader snapshotReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+			BoboIndexReader snapshotSegReader = getFirstSegment(snapshotReader);
+			// loaded from the snapshots, which are not rewritten
+			assertEquals(1000L, colorSnapshot.lastModified());
+			assertEquals(1000L, tagSnapshot.lastModified());
+			
+			FacetDataCache color = (FacetDataCache)segReader.getFacetData("color");
+			FacetDataCache snapshotColor = (FacetDataCache)snapshotSegReader.getFacetData("color");
+			assertEquals(Arrays.asList(color.valArray.toArray()), Arrays.asList(snapshotColor.valArray.toArray()));
+			assertTrue(Arrays.equals(color.freqs, snapshotColor.freqs));
+			assertTrue(Arrays.equals(color.minIDs, snapshotColor.minIDs));
+			assertTrue(Arrays.equals(color.maxIDs, snapshotColor.maxIDs));
+			for (int i=0;i<segReader.maxDoc();++i){
+				assertEquals(color.orderArray.get(i), snapshotColor.orderArray.get(i));
+			}
+			
+			MultiValueFacetDataCache tag = (MultiValueFacetDataCache)segReader.getFacetData("tag");
+			MultiValueFacetDataCache snapshotTag = (MultiValueFacetDataCache)snapshotSegReader.getFacetData("tag");
+			assertEquals(Arrays.asList(tag.valArray.toArray()), Arrays.asList(snapshotTag.valArray.toArray()));
+			assertTrue(Arrays.equals(tag.freqs, snapshotTag.freqs));
+			int[] buf = new int[1024];
+			int[] snapshotBuf = new int[1024];
+			for (int i=0;i<segReader.maxDoc();++i){
+				int len = tag._nestedArray.getData(i, buf);
+				assertEquals(len, snapshotTag._nestedArray.getData(i, snapshotBuf));
+				for (int k=0;k<len;++k){
+					assertEquals(buf[k], snapshotBuf[k]);
+				}
+			}
+			snapshotReader.close();
+			
+			// new deletes make the snapshot stale
+			writer.deleteDocuments(new Term("id","2"));
+			writer.commit();
+			writer.close();
+			BoboIndexReader newReader = (BoboIndexReader)reader.reopen(true);
+			assertNotSame(reader, newReader);
+			FacetDataCache newColor = (FacetDataCache)getFirstSegment(newReader).getFacetData("color");
+			int red = newColor.valArray.indexOf("red");
+			assertEquals(color.freqs[red]-1, newColor.freqs[red]);
+			reader.close();
+			newReader.close();
+		}
+		finally{
+			idxDir.close();
+			for (File f : idxFile.listFiles()){
+				f.delete();
+			}
+			idxFile.delete();
+		}
+	}
+	
+	public void testFacetDataSnapshotCleanup() throws Exception{
+		File idxFile = File.createTempFile("bobo-snapshot", "");
+		idxFile.delete();
+		Directory idxDir = FSDirectory.open(idxFile);
+		try{
+			IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+			Document[] docs = buildData();
+			for (int i=0;i<docs.length;++i){
+				writer.addDocument(docs[i]);
+				if (i==docs.length/2) writer.commit();
+			}
+			writer.commit();
+			// left behind by a segment that is gone
+			File staleSnapshot = new File(idxFile, "_zz_color"+FacetDataCacheSnapshot.SNAPSHOT_EXTENSION);
+			File staleTmp = new File(idxFile, "_zz_color"+FacetDataCacheSnapshot.SNAPSHOT_EXTENSION+".1.tmp");
+			assertTrue(staleSnapshot.createNewFile());
+			assertTrue(staleTmp.createNewFile());
+			
+			List<FacetHandler<?>> handlers = new ArrayList<FacetHandler<?>>();
+			SimpleFacetHandler colorHandler = new SimpleFacetHandler("color");
+			colorHandler.setSnapshotEnabled(true);
+			handlers.add(colorHandler);
+			BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),handlers);
+			assertFalse(staleSnapshot.exists());
+			assertFalse(staleTmp.exists());
+			IndexReader[] subReaders = reader.getSequentialSubReaders();
+			assertEquals(2, subReaders.length);
+			List<File> oldSnapshots = new ArrayList<File>();
+			for (IndexReader subReader : subReaders){
+				File snapshot = FacetDataCacheSnapshot.getSnapshotFile(subReader, "color");
+				assertTrue(snapshot.exists());
+				oldSnapshots.add(snapshot);
+			}
+			
+			// merging the segments leaves their snapshots stale
+			writer.optimize();
+			writer.close();
+			BoboIndexReader newReader = (BoboIndexReader)reader.reopen(true);
+			assertNotSame(reader, newReader);
+			for (File snapshot : oldSnapshots){
+				assertFalse(snapshot.exists());
+			}
+			assertTrue(FacetDataCacheSnapshot.getSnapshotFile(getFirstSegment(newReader), "color").exists());
+			for (File f : idxFile.listFiles()){
+				assertFalse(f.getName(), f.getName().endsWith(".tmp"));
+			}
+			reader.close();
+			newReader.close();
+		}
+		finally{
+			idxDir.close();
+			for (File f : idxFile.listFiles()){
+				f.delete();
+			}
+			idxFile.delete();
+		}
+	}
+	
+	public void testReopenWithDeletions() throws Exception{
+		Directory idxDir = createMultiSegmentIndex();
+		BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		
+		IndexWriter writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		writer.deleteDocuments(new Term("id","1"));
+		writer.deleteDocuments(new Term("id","4"));
+		writer.close();
+		
+		BoboIndexReader newReader = (BoboIndexReader)reader.reopen();
+		assertNotSame(reader, newReader);
+		BoboIndexReader freshReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		try{
+			IndexReader[] oldSegments = reader.getSequentialSubReaders();
+			IndexReader[] newSegments = newReader.getInnerReader().getSequentialSubReaders();
+			assertEquals(oldSegments.length, newSegments.length);
+			int reused = 0;
+			for (int i=0;i<newSegments.length;++i){
+				FacetDataCache oldColor = (FacetDataCache)((BoboIndexReader)oldSegments[i]).getFacetData("color");
+				FacetDataCache newColor = (FacetDataCache)((BoboIndexReader)newSegments[i]).getFacetData("color");
+				MultiValueFacetDataCache oldTag = (MultiValueFacetDataCache)((BoboIndexReader)oldSegments[i]).getFacetData("tag");
+				MultiValueFacetDataCache newTag = (MultiValueFacetDataCache)((BoboIndexReader)newSegments[i]).getFacetData("tag");
+				if (oldSegments[i] != newSegments[i]){
+					assertSame(oldColor.orderArray, newColor.orderArray);
+					assertSame(oldTag._nestedArray, newTag._nestedArray);
+					assertEquals(0, newSegments[i].numDocs());
+					for (int k=1;k<newColor.freqs.length;++k){
+						assertEquals(0, newColor.freqs[k]);
+						assertEquals(-1, newColor.minIDs[k]);
+					}
+					reused++;
+				}
+			}
+			assertEquals(2, reused);
+			
+			BrowseRequest br = new BrowseRequest();
+			br.setCount(10);
+			br.setFacetSpec("color", new FacetSpec());
+			br.setFacetSpec("tag", new FacetSpec());
+			BrowseResult result = new BoboBrowser(newReader).browse(br);
+			BrowseResult expected = new BoboBrowser(freshReader).browse(br);
+			assertEquals(expected.getNumHits(), result.getNumHits());
+			for (String name : new String[]{"color","tag"}){
+				assertEquals(name, expected.getFacetAccessor(name).getFacets(), result.getFacetAccessor(name).getFacets());
+			}
+			result.close();
+			expected.close();
+		}
+		finally{
+			freshReader.close();
+			newReader.close();
+			reader.close();
+		}
+		
+		// single segment, the carried over freqs and min/max ids have to match a fresh load
+		idxDir = new RAMDirectory();
+		writer = new IndexWriter(idxDir,new StandardAnalyzer(Version.LUCENE_29),MaxFieldLength.UNLIMITED);
+		for (Document doc : buildData()){
+			writer.addDocument(doc);
+		}
+		writer.optimize();
+		writer.commit();
+		reader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		writer.deleteDocuments(new Term("id","1"));
+		writer.deleteDocuments(new Term("id","7"));
+		writer.close();
+		newReader = (BoboIndexReader)reader.reopen();
+		freshReader = BoboIndexReader.getInstance(IndexReader.open(idxDir,true),_fconf);
+		try{
+			for (String name : new String[]{"color","tag"}){
+				FacetDataCache oldData = (FacetDataCache)getFirstSegment(reader).getFacetData(name);
+				FacetDataCache newData = (FacetDataCache)getFirstSegment(newReader).getFacetData(name);
+				FacetDataCache freshData = (FacetDataCache)getFirstSegment(freshReader).getFacetData(name);
+				assertSame(oldData.valArray, newData.valArray);
+				assertTrue(name, Arrays.equals(freshData.freqs, newData.freqs));
+				assertTrue(name, Arrays.equals(freshData.minIDs, newData.minIDs));
+				assertTrue(name, Arrays.equals(freshData.maxIDs, newData.maxIDs));
+			}
+		}
+		finally{
+			freshReader.close();
+			newReader.close();
+			reader.close();
+		}
+	}
+	
 	public void testIndexReaderReopen() throws Exception{
 		Directory idxDir = new RAMDirectory();
 		Document[] docs = buildData();
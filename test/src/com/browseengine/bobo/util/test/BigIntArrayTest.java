@@ -3,7 +3,16 @@
  */
 package com.browseengine.bobo.util.test;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import com.browseengine.bobo.util.BigByteArray;
+import com.browseengine.bobo.util.BigDirectByteArray;
+import com.browseengine.bobo.util.BigDirectIntArray;
+import com.browseengine.bobo.util.BigDirectShortArray;
 import com.browseengine.bobo.util.BigIntArray;
+import com.browseengine.bobo.util.BigSegmentedArray;
+import com.browseengine.bobo.util.BigShortArray;
 
 import junit.framework.TestCase;
 
@@ -42,4 +51,58 @@ public class BigIntArrayTest extends TestCase
     end=System.currentTimeMillis();
     System.out.println("int[] took: "+(end-start));
   }
+  
+  public void testCountValues()
+  {
+    int size = 200000;
+    BigSegmentedArray[] arrays = new BigSegmentedArray[]{
+        new BigIntArray(size), new BigShortArray(size), new BigByteArray(size),
+        new BigDirectIntArray(size), new BigDirectShortArray(size), new BigDirectByteArray(size)};
+    Random rand = new Random(7);
+    int[] docs = new int[1000];
+    int doc = 0;
+    for (int i = 0; i < docs.length; ++i)
+    {
+      doc += 1 + rand.nextInt(size / docs.length - 1);
+      docs[i] = doc;
+    }
+    for (BigSegmentedArray array : arrays)
+    {
+      for (int i = 0; i < size; ++i)
+      {
+        array.add(i, i % 100);
+      }
+      int[] expected = new int[100];
+      for (int i = 10; i < docs.length; ++i)
+      {
+        expected[array.get(docs[i])]++;
+      }
+      int[] count = new int[100];
+      array.countValues(docs, 10, docs.length, count);
+      assertTrue(array.getClass().getName(), Arrays.equals(expected, count));
+    }
+  }
+  
+  public void testDirectGrow()
+  {
+    BigSegmentedArray[] arrays = new BigSegmentedArray[]{
+        new BigDirectIntArray(1000), new BigDirectShortArray(1000), new BigDirectByteArray(1000)};
+    for (BigSegmentedArray array : arrays)
+    {
+      assertTrue(array.getClass().getName(), array.capacity() < 65536);
+      array.fill(3);
+      for (int i = 0; i < 1000; ++i)
+      {
+        array.add(i, i % 100);
+      }
+      array.ensureCapacity(100000);
+      assertTrue(array.getClass().getName(), array.capacity() > 100000);
+      for (int i = 0; i < 1000; ++i)
+      {
+        assertEquals(array.getClass().getName(), i % 100, array.get(i));
+      }
+      array.add(100000, 7);
+      assertEquals(7, array.get(100000));
+    }
+  }
 }
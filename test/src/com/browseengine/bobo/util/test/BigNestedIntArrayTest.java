@@ -3,6 +3,7 @@
  */
 package com.browseengine.bobo.util.test;
 
+import com.browseengine.bobo.util.BigDirectNestedIntArray;
 import com.browseengine.bobo.util.BigIntBuffer;
 import com.browseengine.bobo.util.BigNestedIntArray;
 import com.browseengine.bobo.util.BigNestedIntArray.BufferedLoader;
@@ -347,4 +348,47 @@ public class BigNestedIntArrayTest extends TestCase
     }
     return;
   }
+  
+  public void testDirect() throws Throwable
+  {
+    int maxId = 5000;
+    BufferedLoader loader = new BufferedLoader(maxId);
+    BufferedLoader directLoader = new BufferedLoader(maxId);
+    for(int id = 0; id < maxId; id += ((id % 7) + 1))
+    {
+      for(int val = 0; val < 50; val += ((id % 5) + 1))
+      {
+        loader.add(id, val);
+        directLoader.add(id, val);
+      }
+    }
+    BigNestedIntArray nestedArray = new BigNestedIntArray();
+    nestedArray.load(maxId, loader);
+    BigNestedIntArray directArray = new BigDirectNestedIntArray();
+    directArray.load(maxId, directLoader);
+    
+    int[] buf = new int[1024];
+    int[] directBuf = new int[1024];
+    int[] count = new int[50];
+    int[] directCount = new int[50];
+    for(int id = 0; id < maxId; id++)
+    {
+      int cnt = nestedArray.getData(id, buf);
+      assertEquals("item count", cnt, directArray.getData(id, directBuf));
+      for(int i = 0; i < cnt; i++)
+      {
+        assertEquals("item["+i+"]", buf[i], directBuf[i]);
+      }
+      assertEquals(nestedArray.getNumItems(id), directArray.getNumItems(id));
+      assertEquals(nestedArray.contains(id, 3), directArray.contains(id, 3));
+      assertEquals(nestedArray.count(id, count), directArray.count(id, directCount));
+      if(id > 0) assertEquals(nestedArray.compare(id - 1, id), directArray.compare(id - 1, id));
+    }
+    assertTrue(Arrays.equals(count, directCount));
+    
+    for(int val = 0; val < 50; val++)
+    {
+      assertEquals(nestedArray.findValue(val, 0, maxId - 1), directArray.findValue(val, 0, maxId - 1));
+    }
+  }
 }
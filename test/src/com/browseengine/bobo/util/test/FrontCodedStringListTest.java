@@ -0,0 +1,83 @@
+package com.browseengine.bobo.util.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import com.browseengine.bobo.util.FrontCodedStringList;
+
+public class FrontCodedStringListTest extends TestCase
+{
+  private final Random _rand = new Random(11);
+
+  private List<String> randomTerms(int count)
+  {
+    String[] prefixes = new String[]{ "", "http://www.example.com/", "caf\u00e9/", "\ud834\udd1e", "\uffef" };
+    TreeSet<String> terms = new TreeSet<String>();
+    while (terms.size() < count)
+    {
+      StringBuilder buf = new StringBuilder(prefixes[_rand.nextInt(prefixes.length)]);
+      int len = _rand.nextInt(8);
+      for (int i = 0; i < len; ++i)
+      {
+        buf.append((char)('a' + _rand.nextInt(5)));
+      }
+      terms.add(buf.toString());
+    }
+    return new ArrayList<String>(terms);
+  }
+
+  public void testGetAndIndexOf() throws Exception
+  {
+    for (int count : new int[]{ 0, 1, 15, 16, 17, 1000 })
+    {
+      List<String> terms = randomTerms(count);
+      FrontCodedStringList list = new FrontCodedStringList();
+      for (String term : terms)
+      {
+        list.add(term);
+      }
+      list.trimToSize();
+      assertEquals(terms.size(), list.size());
+      for (int i = 0; i < terms.size(); ++i)
+      {
+        assertEquals(terms.get(i), list.get(i));
+        assertEquals(i, list.indexOf(terms.get(i)));
+      }
+      Iterator<String> iter = list.iterator();
+      for (String term : terms)
+      {
+        assertEquals(term, iter.next());
+      }
+      assertFalse(iter.hasNext());
+
+      // missing values give the insertion point of a binary search
+      for (int i = 0; i < 200; ++i)
+      {
+        String val = randomTerms(1).get(0) + (i % 2 == 0 ? "z" : "");
+        assertEquals(val, Collections.binarySearch(terms, val), list.indexOf(val));
+      }
+    }
+  }
+
+  public void testCompression() throws Exception
+  {
+    FrontCodedStringList list = new FrontCodedStringList(100000);
+    long stringBytes = 0;
+    for (int i = 0; i < 100000; ++i)
+    {
+      String term = "http://www.example.com/item/" + (1000000 + i);
+      list.add(term);
+      stringBytes += term.length();
+    }
+    list.trimToSize();
+    assertTrue(list.sizeInBytes() < stringBytes / 3);
+    assertEquals("http://www.example.com/item/1054321", list.get(54321));
+    assertEquals(54321, list.indexOf("http://www.example.com/item/1054321"));
+  }
+}
@@ -0,0 +1,132 @@
+package com.browseengine.bobo.util.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import com.browseengine.bobo.util.MemoryManager;
+
+public class MemoryManagerTest extends TestCase
+{
+  private static final MemoryManager.Initializer<int[]> INITIALIZER = new MemoryManager.Initializer<int[]>()
+  {
+    public void init(int[] buf)
+    {
+      Arrays.fill(buf, 0);
+    }
+
+    public int[] newInstance(int size)
+    {
+      return new int[size];
+    }
+
+    public int size(int[] buf)
+    {
+      return buf.length;
+    }
+  };
+
+  public void testReuse()
+  {
+    MemoryManager<int[]> mgr = new MemoryManager<int[]>(INITIALIZER);
+    int[] buf = mgr.get(2000);
+    assertTrue(buf.length >= 2000);
+    assertEquals(1, mgr.getNumCacheMisses());
+    buf[5] = 7;
+    mgr.release(buf);
+    assertEquals(buf.length, mgr.getRetainedSize());
+
+    int[] buf2 = mgr.get(2000);
+    assertSame(buf, buf2);
+    assertEquals(0, buf2[5]);
+    assertEquals(1, mgr.getNumCacheHits());
+    assertEquals(0, mgr.getRetainedSize());
+
+    // a smaller size class does not hand out the bigger buffer
+    mgr.release(buf2);
+    int[] small = mgr.get(100);
+    assertNotSame(buf2, small);
+    assertTrue(small.length >= 100);
+
+    // arrays not handed out by the manager are not pooled
+    mgr.release(new int[3000]);
+    assertEquals(buf2.length, mgr.getRetainedSize());
+  }
+
+  public void testBoundedRetention()
+  {
+    MemoryManager<int[]> mgr = new MemoryManager<int[]>(INITIALIZER, 5000);
+    List<int[]> bufs = new ArrayList<int[]>();
+    for (int i = 0; i < 10; ++i)
+    {
+      bufs.add(mgr.get(1024));
+    }
+    for (int[] buf : bufs)
+    {
+      mgr.release(buf);
+    }
+    assertEquals(4 * 1024, mgr.getRetainedSize());
+  }
+
+  public void testDroppedBuffersNotReset()
+  {
+    MemoryManager<int[]> mgr = new MemoryManager<int[]>(INITIALIZER, 1024);
+    int[] kept = mgr.get(1024);
+    int[] dropped = mgr.get(1024);
+    kept[0] = 1;
+    dropped[0] = 1;
+    mgr.release(kept);
+    mgr.release(dropped);
+    assertEquals(0, kept[0]);
+    assertEquals(1, dropped[0]);
+    assertSame(kept, mgr.get(1024));
+  }
+
+  public void testConcurrentAccess() throws Exception
+  {
+    final MemoryManager<int[]> mgr = new MemoryManager<int[]>(INITIALIZER);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t)
+    {
+      final int id = t + 1;
+      threads[t] = new Thread()
+      {
+        public void run()
+        {
+          try
+          {
+            for (int i = 0; i < 2000; ++i)
+            {
+              int[] buf = mgr.get(1024 + (i % 3) * 1000);
+              for (int k = 0; k < buf.length; ++k)
+              {
+                if (buf[k] != 0) throw new IllegalStateException("buffer not reset");
+                buf[k] = id;
+              }
+              for (int k = 0; k < buf.length; ++k)
+              {
+                if (buf[k] != id) throw new IllegalStateException("buffer shared between threads");
+              }
+              mgr.release(buf);
+            }
+          }
+          catch (Throwable e)
+          {
+            error.set(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    assertNull(String.valueOf(error.get()), error.get());
+    assertTrue(mgr.getNumCacheHits() > 0);
+  }
+}
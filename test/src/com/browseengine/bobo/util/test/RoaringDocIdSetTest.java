@@ -0,0 +1,163 @@
+package com.browseengine.bobo.util.test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+import com.browseengine.bobo.docidset.RoaringDocIdSet;
+
+public class RoaringDocIdSetTest extends TestCase
+{
+  private static final int MAX_DOC = 300000;
+
+  private final Random _rand = new Random(3);
+
+  /**
+   * Sparse docs end up in arrays, dense docs in bitmaps and long stretches in runs.
+   */
+  private BitSet randomBits()
+  {
+    BitSet bits = new BitSet(MAX_DOC);
+    for (int block = 0; block < (MAX_DOC >>> 16) + 1; ++block)
+    {
+      int base = block << 16;
+      int end = Math.min(MAX_DOC, base + 65536);
+      switch (_rand.nextInt(4))
+      {
+      case 0: // empty block
+        break;
+      case 1:
+        for (int i = 0; i < 100; ++i) bits.set(base + _rand.nextInt(end - base));
+        break;
+      case 2:
+        for (int doc = base; doc < end; ++doc)
+        {
+          if (_rand.nextInt(3) == 0) bits.set(doc);
+        }
+        break;
+      default:
+        for (int i = 0; i < 5; ++i)
+        {
+          int from = base + _rand.nextInt(end - base);
+          bits.set(from, Math.min(end, from + _rand.nextInt(5000)));
+        }
+      }
+    }
+    return bits;
+  }
+
+  private static RoaringDocIdSet build(BitSet bits)
+  {
+    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder();
+    for (int doc = bits.nextSetBit(0); doc >= 0; doc = bits.nextSetBit(doc + 1))
+    {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  private static void assertSame(BitSet expected, RoaringDocIdSet set) throws Exception
+  {
+    assertEquals(expected.cardinality(), set.cardinality());
+    DocIdSetIterator iter = set.iterator();
+    for (int doc = expected.nextSetBit(0); doc >= 0; doc = expected.nextSetBit(doc + 1))
+    {
+      assertEquals(doc, iter.nextDoc());
+    }
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+    for (int doc = 0; doc < MAX_DOC; doc += 7)
+    {
+      assertEquals(expected.get(doc), set.get(doc));
+    }
+  }
+
+  public void testIterateAndGet() throws Exception
+  {
+    for (int round = 0; round < 5; ++round)
+    {
+      BitSet bits = randomBits();
+      assertSame(bits, build(bits));
+    }
+    assertSame(new BitSet(), RoaringDocIdSet.empty());
+    BitSet range = new BitSet();
+    range.set(65530, 200000);
+    RoaringDocIdSet rangeSet = RoaringDocIdSet.range(65530, 200000);
+    assertSame(range, rangeSet);
+    assertTrue(rangeSet.sizeInBytes() < 200);
+  }
+
+  public void testAdvance() throws Exception
+  {
+    BitSet bits = randomBits();
+    RoaringDocIdSet set = build(bits);
+    DocIdSetIterator iter = set.iterator();
+    int target = 0;
+    while (true)
+    {
+      target += 1 + _rand.nextInt(5000);
+      int expected = bits.nextSetBit(target);
+      int doc = iter.advance(target);
+      if (expected < 0)
+      {
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+        break;
+      }
+      assertEquals(expected, doc);
+      target = doc;
+      // mixes next and advance
+      expected = bits.nextSetBit(doc + 1);
+      doc = iter.nextDoc();
+      assertEquals(expected < 0 ? DocIdSetIterator.NO_MORE_DOCS : expected, doc);
+      if (expected < 0) break;
+      target = doc;
+    }
+  }
+
+  public void testSetOperations() throws Exception
+  {
+    for (int round = 0; round < 5; ++round)
+    {
+      BitSet bits1 = randomBits();
+      BitSet bits2 = randomBits();
+      RoaringDocIdSet set1 = build(bits1);
+      RoaringDocIdSet set2 = build(bits2);
+
+      BitSet and = (BitSet)bits1.clone();
+      and.and(bits2);
+      assertSame(and, set1.and(set2));
+
+      BitSet or = (BitSet)bits1.clone();
+      or.or(bits2);
+      assertSame(or, set1.or(set2));
+
+      BitSet andNot = (BitSet)bits1.clone();
+      andNot.andNot(bits2);
+      assertSame(andNot, set1.andNot(set2));
+    }
+  }
+
+  public void testCompression() throws Exception
+  {
+    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder();
+    for (int doc = 0; doc < MAX_DOC; doc += 1000)
+    {
+      builder.add(doc);
+    }
+    RoaringDocIdSet sparse = builder.build();
+    assertTrue(sparse.sizeInBytes() < MAX_DOC / 8 / 10);
+
+    try
+    {
+      builder = new RoaringDocIdSet.Builder();
+      builder.add(5).add(5);
+      fail("docs out of order accepted");
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+}